@@ -0,0 +1,127 @@
+/**
+ * 滑动窗口式的差分噪声估计.
+ *
+ * 类作用:
+ * - analyzeSingleEnded 只用录波开头 preN 个点估计一次噪声, 之后整段使用同一阈值;
+ *   噪声随时间变化 (例如前小后大的波形、故障后持续扰动) 时, 固定阈值要么漏掉小波头, 要么被后段噪声误触发.
+ * - 本类对差分 dx 维护指数加权的均值与方差 (时间常数约 window 个点), 每个采样 O(1) 更新, 不分配对象;
+ *   判定时用 |dx - mean()| 与 sigma * std() 比较 (按平方比较, 逐点路径上没有开方), 阈值随局部噪声升降.
+ * - 稳健性: 预热结束后, 偏离均值超过 clipSigma 倍 std 的差分先截断到该边界再参与更新 (Huber 截断),
+ *   波头本身的大差分只会让噪声估计小幅上升, 不会把随后的阈值抬高到失效.
+ * - 前 warmup 个差分按等权累计 (等价于普通样本均值 / 方差), 之后才切换为指数加权, 开头不需要单独的噪声窗口.
+ *
+ * 使用方式:
+ * - 先 reset(warmup), 再对每个差分依次: 用 exceeds(dx, sigma) 判定, 然后 update(dx).
+ *   判定在 update 之前进行, 当前点不参与自身的阈值; 找到入射波后不再 update, 反射波沿用故障前的噪声水平.
+ * - WaveformFaultAnalyzer.analyzeSingleEndedAdaptive (整段) 与 StreamingWavefrontDetector (流式) 共用本类,
+ *   对同一录波两者结果一致.
+ * - 实例不是线程安全的, 一路数据对应一个实例; reset 后可重复使用.
+ */
+public final class AdaptiveNoiseEstimator {
+
+    /** 默认时间常数, 采样点; 与 analyzeSingleEnded 噪声窗口的上限相同. */
+    public static final int DEFAULT_WINDOW = 1000;
+    /** 默认截断倍数. */
+    public static final double DEFAULT_CLIP_SIGMA = 3.0;
+    /** 默认标准差下限 (原始整数单位), 避免平直段之后 1 个量化台阶就越限. */
+    public static final double DEFAULT_MIN_STD = 0.5;
+
+    private final double alpha;
+    private final double clipSigma;
+    private final double clipSigma2;
+    private final double minStd;
+    private final double minVar;
+
+    private int warmup;
+    private long count;
+    private double mean;
+    private double var;
+
+    /**
+     * 输入:
+     * - window: 指数加权的等效窗口长度, 采样点, 权重 alpha = 2 / (window + 1).
+     * - clipSigma: 预热后差分偏离超过 clipSigma * std() 时截断, <= 0 表示不截断.
+     * - minStd: std() 的下限, 与采样值同单位.
+     */
+    public AdaptiveNoiseEstimator(int window, double clipSigma, double minStd) {
+        if (window < 2) {
+            throw new IllegalArgumentException("window 必须 >= 2: " + window);
+        }
+        this.alpha = 2.0 / (window + 1.0);
+        this.clipSigma = clipSigma;
+        this.clipSigma2 = clipSigma * clipSigma;
+        this.minStd = minStd;
+        this.minVar = minStd * minStd;
+    }
+
+    /** 使用默认参数构造. */
+    public AdaptiveNoiseEstimator() {
+        this(DEFAULT_WINDOW, DEFAULT_CLIP_SIGMA, DEFAULT_MIN_STD);
+    }
+
+    /**
+     * 清空统计, 开始新的一路数据.
+     *
+     * 输入:
+     * - warmup: 等权累计的差分个数; 整段分析时取 analyzeSingleEnded 的 preN - 1, 使预热段与固定窗口统计相同.
+     */
+    public void reset(int warmup) {
+        this.warmup = Math.max(1, warmup);
+        this.count = 0L;
+        this.mean = 0.0;
+        this.var = 0.0;
+    }
+
+    /** 是否已完成预热; 预热期间不应据此判定波头. */
+    public boolean warmedUp() {
+        return count >= warmup;
+    }
+
+    /** 已输入的差分个数. */
+    public long count() {
+        return count;
+    }
+
+    /** 当前差分均值估计. */
+    public double mean() {
+        return mean;
+    }
+
+    /** 当前差分标准差估计, 不小于构造时给定的下限. */
+    public double std() {
+        return Math.max(Math.sqrt(var), minStd);
+    }
+
+    /** |dx - mean()| 是否大于 sigma * std(); 与直接比较等价, 但不需要开方. */
+    public boolean exceeds(double dx, double sigma) {
+        double d = dx - mean;
+        return d * d > sigma * sigma * Math.max(var, minVar);
+    }
+
+    /** 差分相对当前均值的偏离 |dx - mean()|. */
+    public double deviation(double dx) {
+        return Math.abs(dx - mean);
+    }
+
+    /**
+     * 输入一个差分值, O(1) 更新均值与方差.
+     */
+    public void update(double dx) {
+        long k = ++count;
+        if (k <= warmup) {
+            // 等权累计 (Welford), 预热结束时 var 为总体方差
+            double d = dx - mean;
+            mean += d / k;
+            var += (d * (dx - mean) - var) / k;
+            return;
+        }
+        double d = dx - mean;
+        if (clipSigma > 0.0 && d * d > clipSigma2 * Math.max(var, minVar)) {
+            // 只有越界时才需要开方求截断边界
+            d = d > 0.0 ? clipSigma * std() : -clipSigma * std();
+        }
+        // 指数加权均值与方差 (West 递推)
+        mean += alpha * d;
+        var = (1.0 - alpha) * (var + alpha * d * d);
+    }
+}
@@ -1,19 +1,40 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Locale;
-import java.util.stream.Stream;
 
 /**
- * 批量遍历并解析 src/data 目录下的所有 .all 文件。
+ * 批量遍历、解析并分析 src/data 目录下的所有 .all 文件。
  *
  * 使用方法（在项目根目录执行）：
  * javac src\\*.java
  * java -cp src AllDataBatchRunner
  *
- * 也可以通过命令行参数指定起始目录：
- * java -cp src AllDataBatchRunner d:\\FaultLocation_demo\\src\\data
+ * 也可以通过命令行参数指定起始目录和并行线程数（默认为 CPU 核数）：
+ * java -cp src AllDataBatchRunner d:\\FaultLocation_demo\\src\\data 8
+ *
+ * 每个文件会对 A/B/C 三相分别做单端测距，结果按文件路径顺序输出。
+ *
+ * 第三个参数为 pipeline 时改用 DecodePipeline（I/O 级每文件一个线程，CPU 级固定线程数），
+ * 适合归档位于慢速网络盘的场景；此时结果按完成顺序输出，最后打印吞吐量统计：
+ * java -cp src AllDataBatchRunner d:\\archive 8 pipeline
+ *
+ * 第三个参数为 headers 时只清点归档：每个文件只读取头部（AllFileDecoder.readHeader），
+ * 不读取波形、不做测距，打印头部摘要和每秒清点的文件数：
+ * java -cp src AllDataBatchRunner d:\\archive 1 headers
+ *
+ * 最后一个参数为 out=<文件> 时，结果不再逐行打印，而是由单独的写出线程成批写入文件，
+ * 格式按扩展名选择：.csv（双端结果另存 *-pairs.csv）、.jsonl、.flr（列式二进制，见 ColumnarResultFile）：
+ * java -cp src AllDataBatchRunner d:\\archive 8 out=results.csv
+ * java -cp src AllDataBatchRunner d:\\archive 8 pipeline out=results.flr
+ *
+ * 以 -Dfl.metrics=true 启动时统计读取、头部解析、解码、噪声估计、波头搜索、距离计算各阶段的耗时分布，
+ * 结束时在 stderr 打印汇总；-Dfl.metrics.period=10 每 10 秒打印一次，
+ * -Dfl.metrics.jsonl=metrics.jsonl 另以 JSON lines 记录每个文件的统计：
+ * java -Dfl.metrics=true -Dfl.metrics.jsonl=metrics.jsonl -cp src AllDataBatchRunner d:\\archive 8
  */
 public final class AllDataBatchRunner {
 
@@ -30,6 +51,10 @@ public final class AllDataBatchRunner {
             // 默认从 src/data 开始递归查找
             root = Paths.get("src", "data");
         }
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1) {
+            parallelism = Integer.parseInt(args[1]);
+        }
 
         if (!Files.exists(root)) {
             System.err.println("目录不存在: " + root.toAbsolutePath());
@@ -37,24 +62,162 @@ public final class AllDataBatchRunner {
         }
 
         System.out.println("扫描目录: " + root.toAbsolutePath());
-        try (Stream<Path> stream = Files.walk(root)) {
-            stream.filter(p -> p.toString().toLowerCase(Locale.ROOT).endsWith(".all"))
-                    .sorted()
-                    .forEach(AllDataBatchRunner::handleOneFile);
+        List<Path> files = BatchAnalysisEngine.listAllFiles(root);
+        System.out.println("文件数: " + files.size() + ", 并行线程数: " + parallelism);
+
+        String mode = "";
+        Path outFile = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("out=")) {
+                outFile = Paths.get(args[i].substring(4));
+            } else {
+                mode = args[i];
+            }
+        }
+
+        Instrumentation.Reporter metrics = Instrumentation.reporterFromSystemProperties();
+        try {
+            if ("headers".equalsIgnoreCase(mode)) {
+                runInventory(files);
+                return;
+            }
+            ResultSink out = outFile == null ? null : ResultWriters.open(outFile);
+            try {
+                if ("pipeline".equalsIgnoreCase(mode)) {
+                    runPipeline(files, parallelism, out);
+                } else {
+                    runEngine(files, parallelism, out);
+                }
+            } finally {
+                if (out != null) {
+                    out.close();
+                    System.out.println("结果已写入: " + outFile.toAbsolutePath());
+                }
+            }
+        } finally {
+            metrics.close();
         }
     }
 
-    private static void handleOneFile(Path path) {
+    /**
+     * 以 BatchAnalysisEngine 运行批量分析, 按文件路径顺序输出三相结果.
+     */
+    private static void runEngine(List<Path> files, int parallelism, ResultSink out) throws InterruptedException {
+        long t0 = System.nanoTime();
+        // 每个文件只分析一次, 解码缓冲区在文件之间循环使用
+        BatchAnalysisEngine engine = new BatchAnalysisEngine(parallelism,
+                WaveformFaultAnalyzer.Config.defaultConfig(), null, new DecodeArena(parallelism * 2 + 1));
+        engine.run(files, out == null ? AllDataBatchRunner::handleOneResult : r -> write(out, r));
+        double elapsedMs = (System.nanoTime() - t0) / 1e6;
+
         System.out.println("------------------------------------------------------------");
-        System.out.println("文件: " + path.toString());
+        System.out.printf(Locale.ROOT, "完成 %d 个文件, 耗时 %.1f ms%n", files.size(), elapsedMs);
+    }
+
+    /**
+     * 以 DecodePipeline 运行批量分析, 每个文件输出一行结果.
+     */
+    private static void runPipeline(List<Path> files, int cpuThreads, ResultSink out) throws InterruptedException {
+        DecodePipeline pipeline = new DecodePipeline(64, cpuThreads, cpuThreads * 2,
+                WaveformFaultAnalyzer.Config.defaultConfig(), new DecodeArena(64 + cpuThreads * 3));
+        pipeline.run(files, out == null ? AllDataBatchRunner::printOneLine : r -> write(out, r));
+
+        DecodePipeline.Stats st = pipeline.stats();
+        System.out.println("------------------------------------------------------------");
+        System.out.printf(Locale.ROOT,
+                "完成 %d 个文件, 耗时 %.1f ms, %.1f 文件/s, %.2f MB/s, 队列深度 %d, 虚拟线程: %s%n",
+                st.filesDone, st.elapsedSec * 1000.0, st.filesPerSecond(), st.megabytesPerSecond(),
+                st.queueDepth, st.virtualThreads ? "是" : "否");
+    }
+
+    /**
+     * 只读取头部清点文件, 不解码波形.
+     */
+    private static void runInventory(List<Path> files) {
+        long t0 = System.nanoTime();
+        int failed = 0;
+        for (Path p : files) {
+            System.out.println("------------------------------------------------------------");
+            System.out.println("文件: " + p.toString());
+            Instrumentation.FileScope scope = Instrumentation.begin(p);
+            try {
+                printSummary(AllFileDecoder.readHeader(p));
+            } catch (IOException | RuntimeException e) {
+                failed++;
+                System.out.println("头部解析失败: " + e.getMessage());
+            } finally {
+                scope.end();
+            }
+        }
+        double elapsedSec = (System.nanoTime() - t0) / 1e9;
+        System.out.println("------------------------------------------------------------");
+        System.out.printf(Locale.ROOT, "清点 %d 个文件 (失败 %d), 耗时 %.1f ms, %.0f 文件/s%n",
+                files.size(), failed, elapsedSec * 1000.0, elapsedSec > 0.0 ? files.size() / elapsedSec : 0.0);
+    }
+
+    /** 把结果行交给异步输出; 输出已失败时终止批次. */
+    private static void write(ResultSink out, BatchAnalysisEngine.FileResult r) {
         try {
-            CurrentData df = AllFileDecoder.decode(path);
-            printSummary(df);
+            out.file(ResultSink.FileRow.of(r));
         } catch (IOException e) {
-            System.out.println("解析失败: " + e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static synchronized void printOneLine(BatchAnalysisEngine.FileResult r) {
+        if (!r.isSuccess()) {
+            System.out.println(r.path.getFileName() + " 解析失败: " + r.error.getMessage());
+            return;
+        }
+        StringBuilder sb = new StringBuilder(r.path.getFileName().toString());
+        for (WaveformFaultAnalyzer.Phase phase : WaveformFaultAnalyzer.Phase.values()) {
+            WaveformFaultAnalyzer.Result res = r.result(phase);
+            sb.append(' ').append(phase).append('=');
+            if (res == null) {
+                sb.append('-');
+            } else {
+                sb.append(String.format(Locale.ROOT, "%.3fkm", res.distanceFromMeasuredEndKm));
+            }
+        }
+        System.out.println(sb);
+    }
+
+    private static void handleOneResult(BatchAnalysisEngine.FileResult r) {
+        System.out.println("------------------------------------------------------------");
+        System.out.println("文件: " + r.path.toString());
+        if (!r.isSuccess()) {
+            System.out.println("解析失败: " + r.error.getMessage());
+            return;
+        }
+        printSummary(r.data);
+        for (WaveformFaultAnalyzer.Phase phase : WaveformFaultAnalyzer.Phase.values()) {
+            WaveformFaultAnalyzer.Result res = r.result(phase);
+            if (res == null) {
+                System.out.println(phase + " 相: 自动波头识别失败");
+            } else {
+                System.out.printf(Locale.ROOT,
+                        "%s 相: t1=%d, t2=%d, 距测量端 %.3f km%n",
+                        phase, res.firstWaveIndex, res.secondWaveIndex, res.distanceFromMeasuredEndKm);
+            }
         }
     }
 
+    /**
+     * 打印头部摘要信息（只读头部时使用）。
+     */
+    private static void printSummary(RecordingHeader h) {
+        System.out.printf(Locale.ROOT,
+                "站号: %d, 线路: %d%n", h.station, h.line);
+        System.out.printf(Locale.ROOT,
+                "日期时间: %04d-%02d-%02d %02d:%02d:%02d.%s%n",
+                h.year, h.month, h.day, h.hour, h.minute, h.second, h.microSecond);
+        System.out.printf(Locale.ROOT,
+                "数据点数: %d%n", h.dataLength);
+        System.out.printf(Locale.ROOT,
+                "GPS频率: %s, GPS标志: %d, 跳闸标志: %d%n",
+                h.gpsFrequency, h.gpsFlag, h.breakFlag);
+    }
+
     /**
      * 打印小段摘要信息，方便快速验证解析是否正确。
      */
@@ -71,9 +234,10 @@ public final class AllDataBatchRunner {
                 df.gpsFrequency, df.gpsFlag, df.breakFlag);
 
         int printN = Math.min(df.dataLength, 10);
+        PhaseSamples a = df.samples(WaveformFaultAnalyzer.Phase.A);
         System.out.println("前 " + printN + " 个 A 相数据:");
         for (int i = 0; i < printN; i++) {
-            System.out.printf(Locale.ROOT, "A[%d] = %f%n", i, df.dataA[i]);
+            System.out.printf(Locale.ROOT, "A[%d] = %f%n", i, a.get(i));
         }
     }
 }
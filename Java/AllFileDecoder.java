@@ -1,7 +1,12 @@
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
 
 /**
  * .all 波形文件解析模块.
@@ -12,7 +17,14 @@ import java.nio.file.Path;
  * - 将头部字段和三相波形数据封装为 CurrentData 实例.
  *
  * 使用方式:
- * - 外部调用 decode(path) 获得 CurrentData.
+ * - 外部调用 decode(path) 获得 CurrentData, 三相波形以 short 紧凑保存 (CompactPhaseSamples).
+ * - 内容已在内存中 (例如由服务请求上传) 时调用 decode(bytes, fileName).
+ * - 逐个解码大量文件时可改用 DecodeArena.decode(path), 复用读缓冲区和三相数组.
+ * - 批量扫描时可调用 decodeMapped(path), 以内存映射方式按需解码, 不复制数据区.
+ * - decode / decodeMapped 只接受不超过 MAX_DATA_LENGTH 的文件; 更大的录波用 ChunkedRecordingReader
+ *   分块流式读取或按窗口随机读取.
+ * - 只需要头部时调用 readHeader(path), 只定位读取文件开头 80 字节, 数据点数由文件大小推算,
+ *   清点大量文件时耗时取决于寻道次数而不是磁盘带宽.
  */
 /*
  * 数据总长度，数据点数，
@@ -23,7 +35,10 @@ import java.nio.file.Path;
 public final class AllFileDecoder {
 
     /** 512 * 1024 字节. */
-    private static final int MAX_DATA_LENGTH = 512 * 1024;
+    static final int MAX_DATA_LENGTH = 512 * 1024;
+
+    /** 头部 16 个空格分隔符只在文件前 80 字节内查找. */
+    private static final int HEADER_SCAN_LENGTH = 80;
 
     private AllFileDecoder() {
     }
@@ -39,18 +54,281 @@ public final class AllFileDecoder {
      * - 解析失败抛出 IOException.
      */
     public static CurrentData decode(Path path) throws IOException {
+        return decode(path, null);
+    }
+
+    /**
+     * 同 decode(path); 解析成功后把读取的文件字节数交给 bytesRead (可以为 null), 调用方不必再 stat 一次文件.
+     */
+    static CurrentData decode(Path path, LongConsumer bytesRead) throws IOException {
+        long t = Instrumentation.start();
         byte[] buf = Files.readAllBytes(path);
-        if (buf.length == 0) {
+        Instrumentation.stop(Instrumentation.Stage.READ, t);
+        CurrentData df = decode(buf, buf.length, path.getFileName().toString(), path, null);
+        if (bytesRead != null) {
+            bytesRead.accept(buf.length);
+        }
+        return df;
+    }
+
+    /**
+     * 解析已读入内存的 .all 文件内容.
+     *
+     * 输入:
+     * - buf: 完整文件内容, 解析后不再引用.
+     * - fileName: 写入 CurrentData.fileName, 也用于错误信息.
+     *
+     * 输出:
+     * - 与 decode(path) 相同.
+     */
+    public static CurrentData decode(byte[] buf, String fileName) throws IOException {
+        return decode(buf, buf.length, fileName, fileName, null);
+    }
+
+    /**
+     * 解析 buf 的前 length 字节.
+     *
+     * 输入:
+     * - path: 文件路径或名称, 仅用于错误信息.
+     * - arena: 不为 null 时三相数组从中借用, 返回的 CurrentData 在 release() 时归还;
+     *   为 null 时按点数新建数组.
+     */
+    static CurrentData decode(byte[] buf, int length, String fileName, Object path, DecodeArena arena)
+            throws IOException {
+        if (length == 0) {
             throw new IOException("文件为空: " + path);
         }
-        if (buf.length > MAX_DATA_LENGTH) {
-            throw new IOException("文件过大(> " + MAX_DATA_LENGTH + " bytes): " + path);
+        if (length > MAX_DATA_LENGTH) {
+            throw new IOException("文件过大(> " + MAX_DATA_LENGTH + " bytes), 请改用 ChunkedRecordingReader 分块读取: " + path);
         }
 
+        long t = Instrumentation.start();
+        Header h = parseHeader(buf, length, length, path);
+        Instrumentation.stop(Instrumentation.Stage.HEADER_PARSE, t);
+        int start = h.dataStart;
+
+        // ---------- 3. 解析数据区（三相波形） ----------
+        int rawDataBytes = length - start;
+        if (rawDataBytes < 0) {
+            throw new IOException("数据区长度为负，文件=" + path);
+        }
+
+        int dataLength = rawDataBytes / 6; // 每个采样点 3 相 * 2 字节 = 6 字节
+        if (dataLength <= 0) {
+            throw new IOException("数据点数为 0，文件=" + path);
+        }
+
+        // 原始采样值最多 16bit, 直接以 short 紧凑保存, 需要 double 时由 PhaseSamples 按需换算
+        short[][] abc = arena != null ? arena.acquireSamples(dataLength) : null;
+        short[] dataA = abc != null ? abc[0] : new short[dataLength];
+        short[] dataB = abc != null ? abc[1] : new short[dataLength];
+        short[] dataC = abc != null ? abc[2] : new short[dataLength];
+
+        t = Instrumentation.start();
+        decodeTriplets(buf, start, dataLength, isTwelveBit(dataLength), dataA, dataB, dataC, 0);
+        Instrumentation.stop(Instrumentation.Stage.DECODE, t);
+        Instrumentation.count(length, dataLength);
+
+        CurrentData df = new CurrentData(
+                h.station,
+                h.line,
+                h.year,
+                h.month,
+                h.day,
+                h.hour,
+                h.minute,
+                h.second,
+                h.microSecond,
+                h.gpsFrequency,
+                h.gpsFlag,
+                h.breakFlag,
+                h.startupType,
+                h.startupValue1,
+                h.startupValue2,
+                h.startupValue3,
+                dataLength,
+                new CompactPhaseSamples(dataA, dataLength),
+                new CompactPhaseSamples(dataB, dataLength),
+                new CompactPhaseSamples(dataC, dataLength),
+                fileName);
+        if (abc != null) {
+            df.onRelease(() -> arena.releaseSamples(abc));
+        }
+        return df;
+    }
+
+    /**
+     * 以内存映射方式解析单个 .all 文件.
+     *
+     * 与 decode 的区别:
+     * - 不把整个文件读入堆内存, 只用 FileChannel.map 建立只读映射.
+     * - 头部照常解析; 三相波形不展开为 double[], 而是返回直接读取映射缓冲区的 PhaseSamples 视图,
+     *   某一相只有在被访问时才会真正读到对应的磁盘页.
+     *
+     * 输入:
+     * - path: .all 文件路径.
+     *
+     * 输出:
+     * - 解析成功返回 CurrentData, 采样值与 decode 的结果逐点一致.
+     * - 解析失败抛出 IOException.
+     */
+    public static CurrentData decodeMapped(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        long size;
+        long t = Instrumentation.start();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = ch.size();
+            if (size == 0) {
+                throw new IOException("文件为空: " + path);
+            }
+            if (size > MAX_DATA_LENGTH) {
+                throw new IOException("文件过大(> " + MAX_DATA_LENGTH + " bytes), 请改用 ChunkedRecordingReader 分块读取: " + path);
+            }
+            // 映射建立后即使通道关闭也一直有效, 直到缓冲区被回收
+            mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        Instrumentation.stop(Instrumentation.Stage.READ, t);
+
+        // 三相按需从映射读取, 这里只计入头部字节; 采样解码发生在访问时, 不单独计时
+        int fileLength = (int) size;
+        byte[] head = new byte[Math.min(HEADER_SCAN_LENGTH, fileLength)];
+        mapped.get(0, head);
+        t = Instrumentation.start();
+        Header h = parseHeader(head, head.length, fileLength, path);
+        Instrumentation.stop(Instrumentation.Stage.HEADER_PARSE, t);
+
+        int dataLength = (fileLength - h.dataStart) / 6;
+        if (dataLength <= 0) {
+            throw new IOException("数据点数为 0，文件=" + path);
+        }
+        boolean twelveBit = isTwelveBit(dataLength);
+        Instrumentation.count(head.length, dataLength);
+
+        return new CurrentData(
+                h.station,
+                h.line,
+                h.year,
+                h.month,
+                h.day,
+                h.hour,
+                h.minute,
+                h.second,
+                h.microSecond,
+                h.gpsFrequency,
+                h.gpsFlag,
+                h.breakFlag,
+                h.startupType,
+                h.startupValue1,
+                h.startupValue2,
+                h.startupValue3,
+                dataLength,
+                new MappedPhaseSamples(mapped, h.dataStart, 0, dataLength, twelveBit),
+                new MappedPhaseSamples(mapped, h.dataStart, 1, dataLength, twelveBit),
+                new MappedPhaseSamples(mapped, h.dataStart, 2, dataLength, twelveBit),
+                path.getFileName().toString());
+    }
+
+    /**
+     * 只解析头部, 不读取数据区.
+     *
+     * 与 decode 的区别:
+     * - 打开文件后只做一次定位读取 (FileChannel.read(buf, 0)), 读取开头 HEADER_SCAN_LENGTH 字节,
+     *   数据区一个字节也不读; 文件大小取自已打开的通道, 不再单独查询文件属性.
+     * - 不受 MAX_DATA_LENGTH 限制, 数据点数 = (文件大小 - 数据区起点) / 6.
+     *
+     * 输入:
+     * - path: .all 文件路径.
+     *
+     * 输出:
+     * - 头部字段与由文件大小推算的数据点数; 文件为空或头部格式异常时抛出 IOException.
+     */
+    public static RecordingHeader readHeader(Path path) throws IOException {
+        byte[] head = new byte[HEADER_SCAN_LENGTH];
+        ByteBuffer buf = ByteBuffer.wrap(head);
+        long size;
+        long t = Instrumentation.start();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = ch.size();
+            if (size == 0) {
+                throw new IOException("文件为空: " + path);
+            }
+            buf.limit((int) Math.min(HEADER_SCAN_LENGTH, size));
+            while (buf.hasRemaining() && ch.read(buf, buf.position()) >= 0) {
+                // 定位读取可能一次读不满, 继续读到 limit 或文件末尾
+            }
+        }
+        Instrumentation.stop(Instrumentation.Stage.READ, t);
+        Instrumentation.count(buf.position(), 0L);
+        t = Instrumentation.start();
+        Header h = parseHeader(head, buf.position(), size, path);
+        Instrumentation.stop(Instrumentation.Stage.HEADER_PARSE, t);
+        long dataLength = (size - h.dataStart) / 6;
+        if (dataLength > Integer.MAX_VALUE) {
+            throw new IOException("数据点数超出范围: " + dataLength + ", 文件=" + path);
+        }
+        return new RecordingHeader(
+                h.station,
+                h.line,
+                h.year,
+                h.month,
+                h.day,
+                h.hour,
+                h.minute,
+                h.second,
+                h.microSecond,
+                h.gpsFrequency,
+                h.gpsFlag,
+                h.breakFlag,
+                h.startupType,
+                h.startupValue1,
+                h.startupValue2,
+                h.startupValue3,
+                h.dataStart,
+                (int) dataLength,
+                size,
+                path.getFileName().toString());
+    }
+
+    /**
+     * 把数据区中连续 count 个 6 字节三相采样组解码到三个 short 数组, 由 SampleKernels.get() 选定的内核完成.
+     *
+     * 输入:
+     * - src, srcOff: 原始字节及第一个采样组的起点.
+     * - count: 采样组个数.
+     * - twelveBit: 数据区编码, 由整个文件的数据点数决定 (见 isTwelveBit), 与本次解码多少点无关.
+     * - dstA, dstB, dstC, dstOff: 三相输出数组及写入起点.
+     */
+    static void decodeTriplets(byte[] src, int srcOff, int count, boolean twelveBit,
+            short[] dstA, short[] dstB, short[] dstC, int dstOff) {
+        SampleKernels.get().decodeTriplets(src, srcOff, count, twelveBit, dstA, dstB, dstC, dstOff);
+    }
+
+    /**
+     * 按数据点数判断数据区编码方式: 小于 32769 点为 12bit 编码, 否则为 16bit 短整型.
+     */
+    static boolean isTwelveBit(int dataLength) {
+        return dataLength < 32769;
+    }
+
+    // ------------------------- 头部解析 -------------------------
+
+    /**
+     * 解析文件开头的文本头部.
+     *
+     * 输入:
+     * - buf: 前 length 字节为文件开头的内容.
+     * - length: 有效字节数, 至少为 HEADER_SCAN_LENGTH (文件更短时为整个文件).
+     * - fileLength: 文件总字节数, 用于校验数据区起点.
+     * - path: 文件路径或名称, 仅用于错误信息.
+     *
+     * 输出:
+     * - 头部各字段及数据区起始偏移; 格式异常时抛出 IOException.
+     */
+    private static Header parseHeader(byte[] buf, int length, long fileLength, Object path) throws IOException {
         // ---------- 1. 在前 80 字节内寻找 16 个空格， ----------
         int[] pos = new int[16];
         int j = 0;
-        int limit = Math.min(80, buf.length);
+        int limit = Math.min(HEADER_SCAN_LENGTH, length);
         for (int i = 0; i < limit && j < 16; i++) {
             if (buf[i] == ' ') {
                 pos[j++] = i;
@@ -61,124 +339,175 @@ public final class AllFileDecoder {
         }
 
         // start = pos[15] + 2，假定头部行以 CRLF (\r\n) 结束
-        int start = pos[15] + 2;
-        if (start >= buf.length) {
+        Header h = new Header();
+        h.dataStart = pos[15] + 2;
+        if (h.dataStart >= fileLength) {
             throw new IOException("数据区起始位置超出文件长度，文件=" + path);
         }
 
         // ---------- 2. 解析头部各字段 ----------
-        int station = parseIntField(buf, 0, pos[0]);
-        int line = parseIntField(buf, pos[0], pos[1]);
-        int year = parseIntField(buf, pos[1], pos[2]);
-        int month = parseIntField(buf, pos[2], pos[3]);
-        int day = parseIntField(buf, pos[3], pos[4]);
-        int hour = parseIntField(buf, pos[4], pos[5]);
-        int minute = parseIntField(buf, pos[5], pos[6]);
-        int second = parseIntField(buf, pos[6], pos[7]);
-
-        String microSecond = parseStringField(buf, pos[7], pos[8]);
-        String gpsFrequency = parseStringField(buf, pos[8], pos[9]);
-
-        int gpsFlag = parseIntField(buf, pos[9], pos[10]);
-        int breakFlag = parseIntField(buf, pos[10], pos[11]);
-        int startupType = parseIntField(buf, pos[11], pos[12]);
-        double startupValue1 = parseDoubleField(buf, pos[12], pos[13]);
-        double startupValue2 = parseDoubleField(buf, pos[13], pos[14]);
-        double startupValue3 = parseDoubleField(buf, pos[14], pos[15]);
-
-        // ---------- 3. 解析数据区（三相波形） ----------
-        int rawDataBytes = buf.length - start;
-        if (rawDataBytes < 0) {
-            throw new IOException("数据区长度为负，文件=" + path);
-        }
+        h.station = parseIntField(buf, 0, pos[0]);
+        h.line = parseIntField(buf, pos[0], pos[1]);
+        h.year = parseIntField(buf, pos[1], pos[2]);
+        h.month = parseIntField(buf, pos[2], pos[3]);
+        h.day = parseIntField(buf, pos[3], pos[4]);
+        h.hour = parseIntField(buf, pos[4], pos[5]);
+        h.minute = parseIntField(buf, pos[5], pos[6]);
+        h.second = parseIntField(buf, pos[6], pos[7]);
 
-        int dataLength = rawDataBytes / 6; // 每个采样点 3 相 * 2 字节 = 6 字节
-        if (dataLength <= 0) {
-            throw new IOException("数据点数为 0，文件=" + path);
-        }
+        h.microSecond = parseStringField(buf, pos[7], pos[8]);
+        h.gpsFrequency = parseStringField(buf, pos[8], pos[9]);
 
-        double[] dataA = new double[dataLength + 150];
-        double[] dataB = new double[dataLength + 150];
-        double[] dataC = new double[dataLength + 150];
-
-        // 小于 32769 点时按 12bit 编码解码，否则按 16bit 短整型解码
-        if (dataLength < 32769) {
-            // 12bit 数据：((b1 << 4) | b0) - 0x800
-            for (int i = 0; i < dataLength; i++) {
-                int base = start + i * 6;
-                int a0 = buf[base] & 0xFF;
-                int a1 = buf[base + 1] & 0xFF;
-                int b0 = buf[base + 2] & 0xFF;
-                int b1 = buf[base + 3] & 0xFF;
-                int c0 = buf[base + 4] & 0xFF;
-                int c1 = buf[base + 5] & 0xFF;
-
-                dataA[i] = ((a1 << 4) | a0) - 0x800;
-                dataB[i] = ((b1 << 4) | b0) - 0x800;
-                dataC[i] = ((c1 << 4) | c0) - 0x800;
-            }
-        } else {
-            // 16bit 小端短整型
-            for (int i = 0; i < dataLength; i++) {
-                int base = start + i * 6;
-                short a = (short) ((buf[base] & 0xFF) | ((buf[base + 1] & 0xFF) << 8));
-                short b = (short) ((buf[base + 2] & 0xFF) | ((buf[base + 3] & 0xFF) << 8));
-                short c = (short) ((buf[base + 4] & 0xFF) | ((buf[base + 5] & 0xFF) << 8));
-
-                dataA[i] = a;
-                dataB[i] = b;
-                dataC[i] = c;
-            }
-        }
+        h.gpsFlag = parseIntField(buf, pos[9], pos[10]);
+        h.breakFlag = parseIntField(buf, pos[10], pos[11]);
+        h.startupType = parseIntField(buf, pos[11], pos[12]);
+        h.startupValue1 = parseDoubleField(buf, pos[12], pos[13]);
+        h.startupValue2 = parseDoubleField(buf, pos[13], pos[14]);
+        h.startupValue3 = parseDoubleField(buf, pos[14], pos[15]);
+        return h;
+    }
 
-        return new CurrentData(
-                station,
-                line,
-                year,
-                month,
-                day,
-                hour,
-                minute,
-                second,
-                microSecond,
-                gpsFrequency,
-                gpsFlag,
-                breakFlag,
-                startupType,
-                startupValue1,
-                startupValue2,
-                startupValue3,
-                dataLength,
-                dataA,
-                dataB,
-                dataC,
-                path.getFileName().toString());
+    /** 头部字段的临时载体, 仅在解析过程中使用. */
+    private static final class Header {
+        int dataStart;
+        int station;
+        int line;
+        int year;
+        int month;
+        int day;
+        int hour;
+        int minute;
+        int second;
+        String microSecond;
+        String gpsFrequency;
+        int gpsFlag;
+        int breakFlag;
+        int startupType;
+        double startupValue1;
+        double startupValue2;
+        double startupValue3;
     }
 
     // ------------------------- 头部字段解析辅助方法 -------------------------
 
+    /** 10 的 0..22 次幂, 均可用 double 精确表示. */
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     /**
-     * 将 [from, to) 范围内的字节解析为 int.
-     * 空字符串返回 0.
+     * 将 [from, to) 范围内的字节解析为 int, 直接按字节累加, 不创建中间字符串.
+     * 空字段返回 0; 格式非法或溢出时与 Integer.parseInt 一样抛出 NumberFormatException.
      */
     private static int parseIntField(byte[] buf, int from, int to) {
-        String s = parseStringField(buf, from, to);
-        if (s.isEmpty()) {
+        int begin = trimStart(buf, from, to);
+        int end = trimEnd(buf, begin, to);
+        if (end <= begin) {
             return 0;
         }
-        return Integer.parseInt(s);
+        int i = begin;
+        boolean negative = buf[i] == '-';
+        if (negative || buf[i] == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw numberFormat(buf, begin, end);
+        }
+        long value = 0L;
+        for (; i < end; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                throw numberFormat(buf, begin, end);
+            }
+            value = value * 10L + d;
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw numberFormat(buf, begin, end);
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw numberFormat(buf, begin, end);
+        }
+        return (int) value;
     }
 
     /**
      * 将 [from, to) 范围内的字节解析为 double.
-     * 空字符串返回 0.0.
+     * 空字段返回 0.0.
+     *
+     * 头部中的启动值都是普通小数 ("12.5", "-0.031"), 直接按字节累加为整数尾数 m 和小数位数 s,
+     * 当 m < 2^53 且 s <= 22 时 m 与 10^s 都能用 double 精确表示, 一次除法的结果即为正确舍入值,
+     * 与 Double.parseDouble 完全相同. 其他写法 (指数形式、超长尾数等) 退回 Double.parseDouble.
      */
     private static double parseDoubleField(byte[] buf, int from, int to) {
-        String s = parseStringField(buf, from, to);
-        if (s.isEmpty()) {
+        int begin = trimStart(buf, from, to);
+        int end = trimEnd(buf, begin, to);
+        if (end <= begin) {
             return 0.0;
         }
-        return Double.parseDouble(s);
+        int i = begin;
+        boolean negative = buf[i] == '-';
+        if (negative || buf[i] == '+') {
+            i++;
+        }
+        long mantissa = 0L;
+        int scale = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b == '.' && !seenDot) {
+                seenDot = true;
+                continue;
+            }
+            int d = b - '0';
+            if (d < 0 || d > 9) {
+                return Double.parseDouble(asciiString(buf, begin, end));
+            }
+            mantissa = mantissa * 10L + d;
+            if (mantissa > 1L << 53) {
+                return Double.parseDouble(asciiString(buf, begin, end));
+            }
+            if (seenDot) {
+                scale++;
+            }
+            seenDigit = true;
+        }
+        if (!seenDigit || scale >= POW10.length) {
+            return Double.parseDouble(asciiString(buf, begin, end));
+        }
+        double value = mantissa / POW10[scale];
+        return negative ? -value : value;
+    }
+
+    private static NumberFormatException numberFormat(byte[] buf, int begin, int end) {
+        return new NumberFormatException("For input string: \"" + asciiString(buf, begin, end) + "\"");
+    }
+
+    /** 跳过 [from, to) 开头的空白, 返回第一个非空白字节的位置. */
+    private static int trimStart(byte[] buf, int from, int to) {
+        int begin = Math.max(0, from);
+        int end = Math.min(buf.length, to);
+        while (begin < end && isWhitespace(buf[begin])) {
+            begin++;
+        }
+        return begin;
+    }
+
+    /** 去掉 [begin, to) 结尾的空白, 返回新的结束位置. */
+    private static int trimEnd(byte[] buf, int begin, int to) {
+        int end = Math.min(buf.length, to);
+        while (end > begin && isWhitespace(buf[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    private static String asciiString(byte[] buf, int begin, int end) {
+        return new String(buf, begin, end - begin, StandardCharsets.US_ASCII);
     }
 
     /**
@@ -192,19 +521,13 @@ public final class AllFileDecoder {
      * - 去掉空白后的字符串.
      */
     private static String parseStringField(byte[] buf, int from, int to) {
-        int begin = Math.max(0, from);
-        int end = Math.min(buf.length, to);
         // 去掉开头结尾的空白字符
-        while (begin < end && isWhitespace(buf[begin])) {
-            begin++;
-        }
-        while (end > begin && isWhitespace(buf[end - 1])) {
-            end--;
-        }
+        int begin = trimStart(buf, from, to);
+        int end = trimEnd(buf, begin, to);
         if (end <= begin) {
             return "";
         }
-        return new String(buf, begin, end - begin, StandardCharsets.US_ASCII);
+        return asciiString(buf, begin, end);
     }
 
     /**
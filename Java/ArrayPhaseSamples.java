@@ -0,0 +1,37 @@
+/**
+ * 基于 double 数组的单相采样视图.
+ *
+ * 类作用:
+ * - 兼容早期按 double[] 保存三相波形的构造方式.
+ *
+ * 使用方式:
+ * - 数组长度可以大于 length (例如 C 代码中的 dataLength + 150 余量), 只有前 length 个元素有效.
+ */
+final class ArrayPhaseSamples implements PhaseSamples {
+
+    private final double[] data;
+    private final int length;
+
+    ArrayPhaseSamples(double[] data, int length) {
+        if (length > data.length) {
+            throw new IllegalArgumentException("length 超出数组长度: " + length + " > " + data.length);
+        }
+        this.data = data;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public double get(int i) {
+        return data[i];
+    }
+
+    @Override
+    public long heapBytes() {
+        return data.length * 8L;
+    }
+}
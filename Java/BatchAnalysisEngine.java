@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 多文件并行批量分析模块.
+ *
+ * 类作用:
+ * - 用固定大小的工作线程池并发解析 .all 文件, 并对 A/B/C 三相分别做单端测距.
+ * - 同时在途的文件数量有上限 (parallelism * 2), 内存占用不随文件总数增长.
+ * - 结果按输入文件顺序依次交给调用方, 输出顺序与线程调度无关.
+ *
+ * 使用方式:
+ * - new BatchAnalysisEngine(parallelism, cfg).run(files, consumer).
+ * - 同一批文件会被反复分析时, 可传入共享的 DecodedRecordingCache, 避免重复解码.
+ * - 每个文件只分析一次时, 可传入 DecodeArena 复用解码缓冲区; 此时 FileResult.data 只在 consumer
+ *   调用期间有效, consumer 返回后其采样数组即被归还 (头部字段仍可读取).
+ * - consumer 在调用 run 的线程上被依次调用, 无需自行加锁.
+ * - 默认每次 run 新建工作线程池并在结束时关闭; 长期反复调用 run 的场景 (例如 RecordingWatcher)
+ *   可传入 newWorkerPool 建立的共享线程池, 由调用方负责关闭.
+ */
+public final class BatchAnalysisEngine {
+
+    private final int parallelism;
+    private final WaveformFaultAnalyzer.Config cfg;
+    private final DecodedRecordingCache cache;
+    private final DecodeArena arena;
+    private final ExecutorService pool;
+
+    /**
+     * 输入:
+     * - parallelism: 工作线程数, 必须 >= 1.
+     * - cfg: 单端测距配置参数, 所有文件共用.
+     */
+    public BatchAnalysisEngine(int parallelism, WaveformFaultAnalyzer.Config cfg) {
+        this(parallelism, cfg, null);
+    }
+
+    /**
+     * 输入:
+     * - cache: 解码结果缓存, 为 null 时每次都直接解码.
+     * - 其余同上.
+     */
+    public BatchAnalysisEngine(int parallelism, WaveformFaultAnalyzer.Config cfg, DecodedRecordingCache cache) {
+        this(parallelism, cfg, cache, null);
+    }
+
+    /**
+     * 输入:
+     * - arena: 解码缓冲区池, 为 null 时每个文件新建缓冲区; 同时给出 cache 时以 cache 为准, 不使用 arena
+     *   (缓存中的数据被多处共享, 不能归还).
+     * - 其余同上.
+     */
+    public BatchAnalysisEngine(int parallelism, WaveformFaultAnalyzer.Config cfg, DecodedRecordingCache cache,
+            DecodeArena arena) {
+        this(parallelism, cfg, cache, arena, null);
+    }
+
+    /**
+     * 输入:
+     * - pool: 共享工作线程池, 为 null 时每次 run 新建并关闭; 非 null 时 run 结束后不关闭, 由调用方负责.
+     *   其线程数宜与 parallelism 相同.
+     * - 其余同上.
+     */
+    public BatchAnalysisEngine(int parallelism, WaveformFaultAnalyzer.Config cfg, DecodedRecordingCache cache,
+            DecodeArena arena, ExecutorService pool) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism 必须 >= 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.cfg = cfg;
+        this.cache = cache;
+        this.arena = cache == null ? arena : null;
+        this.pool = pool;
+    }
+
+    /**
+     * 建立与 run 内部相同的工作线程池 (守护线程), 供多次 run 共用.
+     */
+    public static ExecutorService newWorkerPool(int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+    }
+
+    /**
+     * 递归列出目录下的全部 .all 文件, 按路径排序.
+     *
+     * 输入:
+     * - root: 起始目录.
+     *
+     * 输出:
+     * - 排序后的文件路径列表.
+     */
+    public static List<Path> listAllFiles(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(p -> p.toString().toLowerCase(Locale.ROOT).endsWith(".all"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 并行分析一组文件.
+     *
+     * 输入:
+     * - files: 待分析文件, 结果按该列表顺序输出.
+     * - consumer: 结果回调, 每个文件恰好调用一次.
+     *
+     * 输出:
+     * - 无; 被中断时停止提交新任务并抛出 InterruptedException.
+     */
+    public void run(List<Path> files, Consumer<FileResult> consumer) throws InterruptedException {
+        ExecutorService pool = this.pool != null ? this.pool : newWorkerPool(parallelism);
+        ArrayDeque<Future<FileResult>> inFlight = new ArrayDeque<>();
+        try {
+            int window = parallelism * 2;
+            Iterator<Path> it = files.iterator();
+            while (it.hasNext() || !inFlight.isEmpty()) {
+                while (it.hasNext() && inFlight.size() < window) {
+                    Path path = it.next();
+                    inFlight.add(pool.submit(() -> analyzeFile(path, cfg, cache, arena)));
+                }
+                FileResult r = await(inFlight.poll());
+                consumer.accept(r);
+                if (r.data != null) {
+                    r.data.release();
+                }
+            }
+        } finally {
+            if (pool != this.pool) {
+                pool.shutdownNow();
+            } else {
+                // 共享线程池不关闭, 只取消本次提前结束 (异常或中断) 时剩下的任务
+                for (Future<FileResult> f : inFlight) {
+                    f.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析单个文件并对三相分别做单端测距.
+     *
+     * 输出:
+     * - 返回 FileResult; 解析失败时 error 非空, 不会抛出异常.
+     */
+    public static FileResult analyzeFile(Path path, WaveformFaultAnalyzer.Config cfg) {
+        return analyzeFile(path, cfg, null);
+    }
+
+    /**
+     * 同上, 先在 cache 中查找解码结果; cache 为 null 时直接解码.
+     */
+    public static FileResult analyzeFile(Path path, WaveformFaultAnalyzer.Config cfg, DecodedRecordingCache cache) {
+        return analyzeFile(path, cfg, cache, null);
+    }
+
+    private static FileResult analyzeFile(Path path, WaveformFaultAnalyzer.Config cfg, DecodedRecordingCache cache,
+            DecodeArena arena) {
+        Instrumentation.FileScope scope = Instrumentation.begin(path);
+        long t0 = System.nanoTime();
+        try {
+            CurrentData df = cache != null ? cache.get(path)
+                    : arena != null ? arena.decode(path) : AllFileDecoder.decode(path);
+            // 三相在一次遍历中完成, 结果与逐相调用 analyzeSingleEnded 相同
+            ThreePhaseAnalyzer.Result analysis = ThreePhaseAnalyzer.analyze(df, cfg);
+            return new FileResult(path, df, analysis, null, System.nanoTime() - t0);
+        } catch (IOException | RuntimeException e) {
+            // 单个文件头部损坏等异常只记录在结果中, 不中断整个批次
+            return new FileResult(path, null, null, e, System.nanoTime() - t0);
+        } finally {
+            scope.end();
+        }
+    }
+
+    private static FileResult await(Future<FileResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // analyzeFile 自身不抛异常, 走到这里说明是 Error 等严重问题
+            throw new IllegalStateException("批量分析任务异常终止", e.getCause());
+        }
+    }
+
+    // ----------------- 结果类型 -----------------
+
+    /**
+     * 单个文件的批量分析结果.
+     *
+     * 字段含义:
+     * - path: 源文件路径.
+     * - data: 解析结果, 失败时为 null.
+     * - results: 按 Phase.ordinal() 索引的三相单端测距结果, 某相识别失败时对应元素为 null.
+     * - error: 解析失败原因, 成功时为 null.
+     * - elapsedNanos: 解码与三相分析在工作线程上的耗时 (不含排队), ns.
+     */
+    public static final class FileResult {
+        public final Path path;
+        public final CurrentData data;
+        private final ThreePhaseAnalyzer.Result analysis;
+        public final Exception error;
+        public final long elapsedNanos;
+
+        FileResult(Path path, CurrentData data, ThreePhaseAnalyzer.Result analysis, Exception error,
+                long elapsedNanos) {
+            this.path = path;
+            this.data = data;
+            this.analysis = analysis;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** 指定相别的单端测距结果, 解析失败或识别失败时返回 null. */
+        public WaveformFaultAnalyzer.Result result(WaveformFaultAnalyzer.Phase phase) {
+            return analysis == null ? null : analysis.result(phase);
+        }
+
+        /** 指定相别的入射波采样点, 不要求找到反射波; 解析失败或没有越限点时返回 -1. */
+        public int firstWaveIndex(WaveformFaultAnalyzer.Phase phase) {
+            return analysis == null ? -1 : analysis.firstWaveIndex(phase);
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /** 工作线程命名为 batch-worker-N, 并设为守护线程, 避免异常退出时阻塞 JVM 关闭. */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "batch-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 大录波文件的分块 / 按窗口读取模块.
+ *
+ * 类作用:
+ * - AllFileDecoder.decode 要把整个文件读入一个 byte[], 并拒绝超过 512 KB 的文件;
+ *   高采样率、长时窗的录波可达数 MB 以上, 由本类处理, 文件大小不设上限.
+ * - forEachBlock 按固定点数分块顺序读取数据区并解码为三相 short, 各块复用同一组缓冲区,
+ *   内存占用只与块大小有关.
+ * - readWindow 定位读取任意采样区间 (例如已识别波头附近的一段), 只读取该区间的字节,
+ *   返回的 CurrentData 只包含窗口内的点, 可直接交给 WaveformFaultAnalyzer 等模块.
+ * - analyze 分块驱动 A/B/C 三路 StreamingWavefrontDetector, 得到与 analyzeSingleEnded 一致的整段测距结果.
+ *
+ * 使用方式:
+ * - try (ChunkedRecordingReader r = ChunkedRecordingReader.open(path)) {
+ *       WaveformFaultAnalyzer.Result[] res = r.analyze(cfg);
+ *       int t1 = res[0].firstWaveIndex;
+ *       int from = Math.max(0, t1 - 2000);
+ *       CurrentData win = r.readWindow(from, Math.min(4000, r.header().dataLength - from));
+ *   }
+ * - 实例持有打开的文件通道, 用完需 close(); 不同线程可同时调用 readWindow (定位读取互不干扰),
+ *   forEachBlock / analyze 每次调用各自分配缓冲区.
+ */
+public final class ChunkedRecordingReader implements Closeable {
+
+    /** 默认分块点数: 每块 16384 个采样组 (96 KB). */
+    public static final int DEFAULT_BLOCK_SAMPLES = 16384;
+
+    /**
+     * 分块回调.
+     *
+     * 输入:
+     * - firstSample: 本块第一个点在整个录波中的下标.
+     * - a, b, c: 三相采样值, 前 count 个有效; 数组在各块之间复用, 回调返回后内容会被覆盖.
+     * - count: 本块点数.
+     */
+    @FunctionalInterface
+    public interface BlockConsumer {
+        void accept(int firstSample, short[] a, short[] b, short[] c, int count);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final RecordingHeader header;
+    private final boolean twelveBit;
+
+    private ChunkedRecordingReader(Path path, FileChannel channel, RecordingHeader header) {
+        this.path = path;
+        this.channel = channel;
+        this.header = header;
+        this.twelveBit = AllFileDecoder.isTwelveBit(header.dataLength);
+    }
+
+    /**
+     * 打开录波文件并解析头部, 不读取数据区.
+     *
+     * 输出:
+     * - 读取器; 文件为空、头部格式异常或数据点数为 0 时抛出 IOException.
+     */
+    public static ChunkedRecordingReader open(Path path) throws IOException {
+        RecordingHeader h = AllFileDecoder.readHeader(path);
+        if (h.dataLength <= 0) {
+            throw new IOException("数据点数为 0，文件=" + path);
+        }
+        return new ChunkedRecordingReader(path, FileChannel.open(path, StandardOpenOption.READ), h);
+    }
+
+    /** 头部信息, dataLength 为整个录波的点数. */
+    public RecordingHeader header() {
+        return header;
+    }
+
+    /** 数据区编码, 按整个录波的点数判定. */
+    public boolean isTwelveBit() {
+        return twelveBit;
+    }
+
+    /**
+     * 从头到尾分块读取整个数据区.
+     *
+     * 输入:
+     * - blockSamples: 每块点数, 必须 > 0; 最后一块可能不足.
+     * - consumer: 分块回调, 按采样顺序依次调用.
+     */
+    public void forEachBlock(int blockSamples, BlockConsumer consumer) throws IOException {
+        if (blockSamples <= 0) {
+            throw new IllegalArgumentException("blockSamples 必须 > 0: " + blockSamples);
+        }
+        int n = header.dataLength;
+        int block = Math.min(blockSamples, n);
+        byte[] raw = new byte[block * 6];
+        short[] a = new short[block];
+        short[] b = new short[block];
+        short[] c = new short[block];
+        for (int from = 0; from < n; from += block) {
+            int count = Math.min(block, n - from);
+            long t = Instrumentation.start();
+            readFully(raw, count * 6, dataOffset(from));
+            Instrumentation.stop(Instrumentation.Stage.READ, t);
+            t = Instrumentation.start();
+            AllFileDecoder.decodeTriplets(raw, 0, count, twelveBit, a, b, c, 0);
+            Instrumentation.stop(Instrumentation.Stage.DECODE, t);
+            Instrumentation.count(count * 6L, count);
+            consumer.accept(from, a, b, c, count);
+        }
+    }
+
+    /**
+     * 读取采样区间 [from, from + length) 作为一段独立的录波.
+     *
+     * 输入:
+     * - from: 起始采样下标, 0 <= from.
+     * - length: 点数, > 0 且 from + length <= header().dataLength.
+     *
+     * 输出:
+     * - 头部字段与原文件相同、dataLength = length 的 CurrentData, 窗口内第 i 个点对应原录波第 from + i 个点;
+     *   对它做测距得到的下标也是相对窗口起点的.
+     */
+    public CurrentData readWindow(int from, int length) throws IOException {
+        if (from < 0 || length <= 0 || length > header.dataLength - from) {
+            throw new IndexOutOfBoundsException("窗口越界: from=" + from + ", length=" + length
+                    + ", 点数=" + header.dataLength);
+        }
+        byte[] raw = new byte[length * 6];
+        long t = Instrumentation.start();
+        readFully(raw, raw.length, dataOffset(from));
+        Instrumentation.stop(Instrumentation.Stage.READ, t);
+        short[] a = new short[length];
+        short[] b = new short[length];
+        short[] c = new short[length];
+        t = Instrumentation.start();
+        AllFileDecoder.decodeTriplets(raw, 0, length, twelveBit, a, b, c, 0);
+        Instrumentation.stop(Instrumentation.Stage.DECODE, t);
+        Instrumentation.count(raw.length, length);
+        RecordingHeader h = header;
+        return new CurrentData(
+                h.station,
+                h.line,
+                h.year,
+                h.month,
+                h.day,
+                h.hour,
+                h.minute,
+                h.second,
+                h.microSecond,
+                h.gpsFrequency,
+                h.gpsFlag,
+                h.breakFlag,
+                h.startupType,
+                h.startupValue1,
+                h.startupValue2,
+                h.startupValue3,
+                length,
+                new CompactPhaseSamples(a, length),
+                new CompactPhaseSamples(b, length),
+                new CompactPhaseSamples(c, length),
+                h.fileName);
+    }
+
+    /**
+     * 分块读取整个录波, 对 A/B/C 三相做单端测距.
+     *
+     * 输出:
+     * - 按 Phase.ordinal() 索引的三相结果, 某相识别失败时对应元素为 null;
+     *   与对整个文件调用 analyzeSingleEnded 的结果一致, 但内存占用只与块大小有关.
+     */
+    public WaveformFaultAnalyzer.Result[] analyze(WaveformFaultAnalyzer.Config cfg) throws IOException {
+        WaveformFaultAnalyzer.Phase[] phases = WaveformFaultAnalyzer.Phase.values();
+        StreamingWavefrontDetector[] detectors = new StreamingWavefrontDetector[phases.length];
+        for (WaveformFaultAnalyzer.Phase phase : phases) {
+            detectors[phase.ordinal()] = new StreamingWavefrontDetector(header.fileName, cfg, phase,
+                    header.dataLength, 0, null);
+        }
+        forEachBlock(DEFAULT_BLOCK_SAMPLES, (first, a, b, c, count) -> {
+            detectors[0].accept(a, 0, count);
+            detectors[1].accept(b, 0, count);
+            detectors[2].accept(c, 0, count);
+        });
+        WaveformFaultAnalyzer.Result[] results = new WaveformFaultAnalyzer.Result[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            results[i] = detectors[i].finish();
+        }
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long dataOffset(int sample) {
+        return header.dataStart + sample * 6L;
+    }
+
+    /** 从 position 起定位读取 len 字节到 dst; 文件被截短时抛出 IOException. */
+    private void readFully(byte[] dst, int len, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(dst, 0, len);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IOException("文件在读取过程中被截短: " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,520 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 测距结果的紧凑二进制列式文件 (.flr).
+ *
+ * 文件格式 (小端):
+ * - 8 字节魔数 "FLRCOL01", 之后是若干行组, 直到文件末尾.
+ * - 行组: 1 字节类型 (1 = FileRow, 2 = PairRow), int 行数, int 原始字节数, int 压缩字节数,
+ *   之后是 Deflate 压缩的列数据; 列数据按 ResultSink 行类型的字段顺序逐列存放:
+ *   int / long / double 列为定长数组; 字符串列先是每行的 UTF-8 字节数 (null 为 -1), 再是全部字节.
+ * - FileRow 的三相结果按 A、B、C 依次为 t1Index、t2Index、t1Ms、t2Ms、distanceKm 五列.
+ * - 同一列的数值相邻存放, 路径前缀、头部字段等重复内容压缩率高, 每行约 30 ~ 60 字节.
+ *
+ * 使用方式:
+ * - 写: ResultSink out = ColumnarResultFile.writer(path) (或 ResultWriters.open("x.flr") 得到异步版本);
+ *   每 ROW_GROUP 行写出一个行组, 不足的部分在 close() 时写出, flush() 不会写出未满的行组.
+ * - 读: ColumnarResultFile.read(path, fileRow -> ..., pairRow -> ...), 按写入顺序回调.
+ */
+public final class ColumnarResultFile {
+
+    /** 每个行组的最大行数. */
+    public static final int ROW_GROUP = 4096;
+
+    private static final byte[] MAGIC = "FLRCOL01".getBytes(StandardCharsets.US_ASCII);
+    private static final byte KIND_FILE = 1;
+    private static final byte KIND_PAIR = 2;
+    private static final int PHASES = WaveformFaultAnalyzer.Phase.values().length;
+
+    private ColumnarResultFile() {
+    }
+
+    /** 创建 (覆盖) 列式结果文件. */
+    public static ResultSink writer(Path path) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        out.write(MAGIC);
+        return new Writer(out);
+    }
+
+    /**
+     * 读取列式结果文件.
+     *
+     * 输入:
+     * - files / pairs: 两类结果行的回调, 可以为 null (跳过该类行组).
+     *
+     * 输出:
+     * - 无; 魔数不符、文件截断或行组数据损坏时抛出 IOException. 每个行组先完整解码再回调,
+     *   回调自身抛出的异常原样传出.
+     */
+    public static void read(Path path, Consumer<ResultSink.FileRow> files, Consumer<ResultSink.PairRow> pairs)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("不是列式结果文件: " + path);
+            }
+            long remaining = Files.size(path) - MAGIC.length;
+            byte[] head = new byte[13];
+            while (true) {
+                int first = in.read();
+                if (first < 0) {
+                    return;
+                }
+                head[0] = (byte) first;
+                in.readFully(head, 1, head.length - 1);
+                remaining -= head.length;
+                ByteBuffer h = ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN);
+                byte kind = h.get();
+                int rows = h.getInt();
+                int rawBytes = h.getInt();
+                int packedBytes = h.getInt();
+                // 损坏的头不能用来分配数组: 压缩数据不超过文件剩余长度, deflate 压缩比不超过 1032:1,
+                // 每行每列至少 4 字节
+                if (rows < 0 || rawBytes < 0 || packedBytes < 0 || packedBytes > remaining
+                        || rawBytes > packedBytes * 1032L + 64L || rows > rawBytes / 4) {
+                    throw new IOException("行组头损坏: rows=" + rows + ", rawBytes=" + rawBytes
+                            + ", packedBytes=" + packedBytes + ", 文件=" + path);
+                }
+                byte[] packed = new byte[packedBytes];
+                in.readFully(packed);
+                remaining -= packedBytes;
+                if ((kind == KIND_FILE && files == null) || (kind == KIND_PAIR && pairs == null)) {
+                    continue;
+                }
+                ByteBuffer col = ByteBuffer.wrap(inflate(packed, rawBytes, path)).order(ByteOrder.LITTLE_ENDIAN);
+                if (kind == KIND_FILE) {
+                    for (ResultSink.FileRow r : decode(path, () -> readFileGroup(col, rows))) {
+                        files.accept(r);
+                    }
+                } else if (kind == KIND_PAIR) {
+                    for (ResultSink.PairRow r : decode(path, () -> readPairGroup(col, rows))) {
+                        pairs.accept(r);
+                    }
+                } else {
+                    throw new IOException("未知行组类型 " + kind + ": " + path);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("列式结果文件被截断: " + path, e);
+        }
+    }
+
+    // ----------------- 写 -----------------
+
+    private static final class Writer implements ResultSink {
+        private final OutputStream out;
+        private final List<FileRow> files = new ArrayList<>();
+        private final List<PairRow> pairs = new ArrayList<>();
+        private final Columns col = new Columns();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] packed = new byte[1 << 16];
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void file(FileRow row) throws IOException {
+            files.add(row);
+            if (files.size() >= ROW_GROUP) {
+                writeFiles();
+            }
+        }
+
+        @Override
+        public void pair(PairRow row) throws IOException {
+            pairs.add(row);
+            if (pairs.size() >= ROW_GROUP) {
+                writePairs();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeFiles();
+                writePairs();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private void writeFiles() throws IOException {
+            List<FileRow> rs = files;
+            if (rs.isEmpty()) {
+                return;
+            }
+            col.reset();
+            for (FileRow r : rs) {
+                col.string(r.path);
+            }
+            col.stringsDone(rs.size());
+            for (FileRow r : rs) {
+                col.string(r.error);
+            }
+            col.stringsDone(rs.size());
+            for (FileRow r : rs) {
+                col.i32(r.station);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.line);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.year);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.month);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.day);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.hour);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.minute);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.second);
+            }
+            for (FileRow r : rs) {
+                col.string(r.microSecond);
+            }
+            col.stringsDone(rs.size());
+            for (FileRow r : rs) {
+                col.string(r.gpsFrequency);
+            }
+            col.stringsDone(rs.size());
+            for (FileRow r : rs) {
+                col.i32(r.gpsFlag);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.breakFlag);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.startupType);
+            }
+            for (FileRow r : rs) {
+                col.f64(r.startupValue1);
+            }
+            for (FileRow r : rs) {
+                col.f64(r.startupValue2);
+            }
+            for (FileRow r : rs) {
+                col.f64(r.startupValue3);
+            }
+            for (FileRow r : rs) {
+                col.i32(r.dataLength);
+            }
+            for (FileRow r : rs) {
+                col.i64(r.elapsedNanos);
+            }
+            for (int p = 0; p < PHASES; p++) {
+                for (FileRow r : rs) {
+                    col.i32(r.t1Index[p]);
+                }
+                for (FileRow r : rs) {
+                    col.i32(r.t2Index[p]);
+                }
+                for (FileRow r : rs) {
+                    col.f64(r.t1Ms[p]);
+                }
+                for (FileRow r : rs) {
+                    col.f64(r.t2Ms[p]);
+                }
+                for (FileRow r : rs) {
+                    col.f64(r.distanceKm[p]);
+                }
+            }
+            writeGroup(KIND_FILE, rs.size());
+            rs.clear();
+        }
+
+        private void writePairs() throws IOException {
+            List<PairRow> rs = pairs;
+            if (rs.isEmpty()) {
+                return;
+            }
+            col.reset();
+            for (PairRow r : rs) {
+                col.string(r.mPath);
+            }
+            col.stringsDone(rs.size());
+            for (PairRow r : rs) {
+                col.string(r.nPath);
+            }
+            col.stringsDone(rs.size());
+            for (PairRow r : rs) {
+                col.f64(r.lineLengthKm);
+            }
+            for (PairRow r : rs) {
+                col.f64(r.tMms);
+            }
+            for (PairRow r : rs) {
+                col.f64(r.tNms);
+            }
+            for (PairRow r : rs) {
+                col.f64(r.distanceFromMKm);
+            }
+            for (PairRow r : rs) {
+                col.f64(r.distanceFromNKm);
+            }
+            for (PairRow r : rs) {
+                col.i64(r.correctionSeconds);
+            }
+            for (PairRow r : rs) {
+                col.i32(r.clockRollover ? 1 : 0);
+            }
+            for (PairRow r : rs) {
+                col.string(r.failure);
+            }
+            col.stringsDone(rs.size());
+            writeGroup(KIND_PAIR, rs.size());
+            rs.clear();
+        }
+
+        private void writeGroup(byte kind, int rows) throws IOException {
+            deflater.reset();
+            deflater.setInput(col.buf, 0, col.size);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == packed.length) {
+                    packed = Arrays.copyOf(packed, packed.length * 2);
+                }
+                n += deflater.deflate(packed, n, packed.length - n);
+            }
+            ByteBuffer h = ByteBuffer.allocate(13).order(ByteOrder.LITTLE_ENDIAN);
+            h.put(kind).putInt(rows).putInt(col.size).putInt(n);
+            out.write(h.array());
+            out.write(packed, 0, n);
+        }
+    }
+
+    /**
+     * 列数据暂存区. 字符串列先逐行调用 string() 收集, 再由 stringsDone() 写出长度数组与字节.
+     */
+    private static final class Columns {
+        byte[] buf = new byte[1 << 16];
+        int size;
+        private final List<byte[]> pending = new ArrayList<>();
+
+        void reset() {
+            size = 0;
+        }
+
+        void i32(int v) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                buf[size++] = (byte) (v >>> (8 * i));
+            }
+        }
+
+        void i64(long v) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[size++] = (byte) (v >>> (8 * i));
+            }
+        }
+
+        void f64(double v) {
+            i64(Double.doubleToRawLongBits(v));
+        }
+
+        void string(String s) {
+            pending.add(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void stringsDone(int rows) {
+            if (pending.size() != rows) {
+                throw new IllegalStateException("字符串列行数不符: " + pending.size() + " != " + rows);
+            }
+            for (byte[] b : pending) {
+                i32(b == null ? -1 : b.length);
+            }
+            for (byte[] b : pending) {
+                if (b != null) {
+                    ensure(b.length);
+                    System.arraycopy(b, 0, buf, size, b.length);
+                    size += b.length;
+                }
+            }
+            pending.clear();
+        }
+
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+            }
+        }
+    }
+
+    // ----------------- 读 -----------------
+
+    private static byte[] inflate(byte[] packed, int rawBytes, Path path) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed);
+            byte[] raw = new byte[rawBytes];
+            int n = 0;
+            while (n < rawBytes && !inflater.finished()) {
+                int k = inflater.inflate(raw, n, rawBytes - n);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += k;
+            }
+            if (n != rawBytes) {
+                throw new IOException("行组解压后长度不符: " + n + " != " + rawBytes + ", 文件=" + path);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("行组数据损坏: " + path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 解码一个行组. 长度列被破坏时列解码抛出 BufferUnderflowException、NegativeArraySizeException、
+     * IndexOutOfBoundsException 等运行时异常, 统一转成 IOException.
+     */
+    private static <T> T[] decode(Path path, Supplier<T[]> group) throws IOException {
+        try {
+            return group.get();
+        } catch (RuntimeException e) {
+            throw new IOException("行组数据损坏: " + path, e);
+        }
+    }
+
+    private static ResultSink.FileRow[] readFileGroup(ByteBuffer c, int rows) {
+        String[] path = strings(c, rows);
+        String[] error = strings(c, rows);
+        int[] station = ints(c, rows);
+        int[] line = ints(c, rows);
+        int[] year = ints(c, rows);
+        int[] month = ints(c, rows);
+        int[] day = ints(c, rows);
+        int[] hour = ints(c, rows);
+        int[] minute = ints(c, rows);
+        int[] second = ints(c, rows);
+        String[] micro = strings(c, rows);
+        String[] gpsFreq = strings(c, rows);
+        int[] gpsFlag = ints(c, rows);
+        int[] breakFlag = ints(c, rows);
+        int[] startupType = ints(c, rows);
+        double[] sv1 = doubles(c, rows);
+        double[] sv2 = doubles(c, rows);
+        double[] sv3 = doubles(c, rows);
+        int[] dataLength = ints(c, rows);
+        long[] elapsed = longs(c, rows);
+        int[][] t1 = new int[PHASES][];
+        int[][] t2 = new int[PHASES][];
+        double[][] t1ms = new double[PHASES][];
+        double[][] t2ms = new double[PHASES][];
+        double[][] km = new double[PHASES][];
+        for (int p = 0; p < PHASES; p++) {
+            t1[p] = ints(c, rows);
+            t2[p] = ints(c, rows);
+            t1ms[p] = doubles(c, rows);
+            t2ms[p] = doubles(c, rows);
+            km[p] = doubles(c, rows);
+        }
+        ResultSink.FileRow[] out = new ResultSink.FileRow[rows];
+        for (int i = 0; i < rows; i++) {
+            int[] a1 = new int[PHASES];
+            int[] a2 = new int[PHASES];
+            double[] m1 = new double[PHASES];
+            double[] m2 = new double[PHASES];
+            double[] d = new double[PHASES];
+            for (int p = 0; p < PHASES; p++) {
+                a1[p] = t1[p][i];
+                a2[p] = t2[p][i];
+                m1[p] = t1ms[p][i];
+                m2[p] = t2ms[p][i];
+                d[p] = km[p][i];
+            }
+            out[i] = new ResultSink.FileRow(path[i], error[i], station[i], line[i], year[i], month[i], day[i],
+                    hour[i], minute[i], second[i], micro[i], gpsFreq[i], gpsFlag[i], breakFlag[i], startupType[i],
+                    sv1[i], sv2[i], sv3[i], dataLength[i], elapsed[i], a1, a2, m1, m2, d);
+        }
+        return out;
+    }
+
+    private static ResultSink.PairRow[] readPairGroup(ByteBuffer c, int rows) {
+        String[] mPath = strings(c, rows);
+        String[] nPath = strings(c, rows);
+        double[] len = doubles(c, rows);
+        double[] tM = doubles(c, rows);
+        double[] tN = doubles(c, rows);
+        double[] dM = doubles(c, rows);
+        double[] dN = doubles(c, rows);
+        long[] corr = longs(c, rows);
+        int[] rollover = ints(c, rows);
+        String[] failure = strings(c, rows);
+        ResultSink.PairRow[] out = new ResultSink.PairRow[rows];
+        for (int i = 0; i < rows; i++) {
+            out[i] = new ResultSink.PairRow(mPath[i], nPath[i], len[i], tM[i], tN[i], dM[i], dN[i],
+                    corr[i], rollover[i] != 0, failure[i]);
+        }
+        return out;
+    }
+
+    private static int[] ints(ByteBuffer c, int rows) {
+        int[] out = new int[rows];
+        c.asIntBuffer().get(out);
+        c.position(c.position() + rows * 4);
+        return out;
+    }
+
+    private static long[] longs(ByteBuffer c, int rows) {
+        long[] out = new long[rows];
+        c.asLongBuffer().get(out);
+        c.position(c.position() + rows * 8);
+        return out;
+    }
+
+    private static double[] doubles(ByteBuffer c, int rows) {
+        double[] out = new double[rows];
+        c.asDoubleBuffer().get(out);
+        c.position(c.position() + rows * 8);
+        return out;
+    }
+
+    private static String[] strings(ByteBuffer c, int rows) {
+        int[] len = ints(c, rows);
+        String[] out = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            if (len[i] >= 0) {
+                out[i] = new String(c.array(), c.position(), len[i], StandardCharsets.UTF_8);
+                c.position(c.position() + len[i]);
+            }
+        }
+        return out;
+    }
+}
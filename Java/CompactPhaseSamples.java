@@ -0,0 +1,120 @@
+/**
+ * 紧凑存储的单相采样视图.
+ *
+ * 类作用:
+ * - .all 文件中的采样值最多 16bit, 这里直接保存原始 short 值, 每点只占 2 字节 (double[] 为 8 字节).
+ * - 物理值按 value = raw * scale + offset 换算, .all 文件解码结果 scale = 1, offset = 0.
+ * - 差分相关的批量方法直接在 short 数组上用整型运算完成, 不展开为 double[].
+ *
+ * 使用方式:
+ * - 由 AllFileDecoder.decode 创建; 需要 double[] 时调用 toDoubleArray() 按需生成.
+ */
+public final class CompactPhaseSamples implements PhaseSamples {
+
+    private final short[] raw;
+    private final int length;
+    private final double scale;
+    private final double offset;
+
+    public CompactPhaseSamples(short[] raw, int length, double scale, double offset) {
+        if (length > raw.length) {
+            throw new IllegalArgumentException("length 超出数组长度: " + length + " > " + raw.length);
+        }
+        this.raw = raw;
+        this.length = length;
+        this.scale = scale;
+        this.offset = offset;
+    }
+
+    /**
+     * 以 scale = 1, offset = 0 构造, 即采样值等于原始整数值.
+     */
+    public CompactPhaseSamples(short[] raw, int length) {
+        this(raw, length, 1.0, 0.0);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public double get(int i) {
+        if (i >= length) {
+            throw new IndexOutOfBoundsException("采样下标越界: " + i + ", 点数=" + length);
+        }
+        return raw[i] * scale + offset;
+    }
+
+    /** 读取第 i 个原始整数采样值. */
+    public int raw(int i) {
+        if (i >= length) {
+            throw new IndexOutOfBoundsException("采样下标越界: " + i + ", 点数=" + length);
+        }
+        return raw[i];
+    }
+
+    public double scale() {
+        return scale;
+    }
+
+    public double offset() {
+        return offset;
+    }
+
+    @Override
+    public long heapBytes() {
+        return raw.length * 2L;
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        double[] out = new double[length];
+        SampleKernels.get().toDouble(raw, 0, out, 0, length, scale, offset);
+        return out;
+    }
+
+    @Override
+    public void copyTo(int from, double[] dst, int dstOff, int len) {
+        if (from < 0 || from + len > length) {
+            throw new IndexOutOfBoundsException("复制区间越界: [" + from + ", " + (from + len) + "), 点数=" + length);
+        }
+        SampleKernels.get().toDouble(raw, from, dst, dstOff, len, scale, offset);
+    }
+
+    // ----------------- 整型差分实现 -----------------
+    // 差分与 offset 无关: dx = (r[i] - r[i-1]) * scale. 内层循环由 SampleKernels 完成.
+
+    @Override
+    public double diffSumSquares(int from, int to) {
+        checkRange(from, to);
+        long sum = SampleKernels.get().diffSumSquares(raw, from, to);
+        return sum * scale * scale;
+    }
+
+    @Override
+    public int firstAbsDiffAbove(int from, int to, double threshold) {
+        checkRange(from, to);
+        return SampleKernels.get().firstAbsDiffAbove(raw, from, to, Math.abs(scale), threshold);
+    }
+
+    @Override
+    public int argMaxAbsDiffAbove(int from, int to, double threshold) {
+        checkRange(from, to);
+        int best = SampleKernels.get().argMaxAbsDiff(raw, from, to);
+        if (best < 0) {
+            return -1;
+        }
+        int bestRaw = Math.abs(raw[best] - raw[best - 1]);
+        if (bestRaw == 0 || bestRaw * Math.abs(scale) <= threshold) {
+            return -1;
+        }
+        return best;
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 1 || to > length) {
+            throw new IndexOutOfBoundsException("差分区间越界: [" + from + ", " + to + "), 点数=" + length);
+        }
+    }
+}
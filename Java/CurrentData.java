@@ -10,6 +10,9 @@
  *
  * 使用方式:
  * - 只读数据载体, 字段在构造函数中一次性赋值.
+ * - 三相波形通过 samples(phase) 以 PhaseSamples 视图读取, 底层可以是数组, 也可以是映射文件.
+ * - 由 DecodeArena 解码得到的实例借用了池中的采样数组, 用完后调用 release() 归还;
+ *   release() 之后不得再读取采样. 其他来源的实例 release() 不做任何事.
  */
 public final class CurrentData {
 
@@ -37,18 +40,21 @@ public final class CurrentData {
 
     /**
      * 实际数据点个数（与 C 代码中的 DataLength 含义一致）。
-     * 三相波形数组中只有前 dataLength 个元素为有效点。
+     * 三相采样视图中只有前 dataLength 个点为有效点。
      */
     public final int dataLength;
 
     // ------------ 三相波形数据 ------------
-    public final double[] dataA;
-    public final double[] dataB;
-    public final double[] dataC;
+    private final PhaseSamples samplesA;
+    private final PhaseSamples samplesB;
+    private final PhaseSamples samplesC;
 
     /** 源文件名，便于日志输出与调试。 */
     public final String fileName;
 
+    /** 归还采样缓冲区的回调, 只执行一次; 非池化数据为 null. */
+    private Runnable releaser;
+
     public CurrentData(
             int station,
             int line,
@@ -71,6 +77,40 @@ public final class CurrentData {
             double[] dataB,
             double[] dataC,
             String fileName) {
+        this(station, line, year, month, day, hour, minute, second,
+                microSecond, gpsFrequency, gpsFlag, breakFlag, startupType,
+                startupValue1, startupValue2, startupValue3, dataLength,
+                new ArrayPhaseSamples(dataA, dataLength),
+                new ArrayPhaseSamples(dataB, dataLength),
+                new ArrayPhaseSamples(dataC, dataLength),
+                fileName);
+    }
+
+    /**
+     * 以任意 PhaseSamples 视图构造, 供映射解码等不展开为 double[] 的数据源使用.
+     */
+    public CurrentData(
+            int station,
+            int line,
+            int year,
+            int month,
+            int day,
+            int hour,
+            int minute,
+            int second,
+            String microSecond,
+            String gpsFrequency,
+            int gpsFlag,
+            int breakFlag,
+            int startupType,
+            double startupValue1,
+            double startupValue2,
+            double startupValue3,
+            int dataLength,
+            PhaseSamples samplesA,
+            PhaseSamples samplesB,
+            PhaseSamples samplesC,
+            String fileName) {
         this.station = station;
         this.line = line;
         this.year = year;
@@ -88,9 +128,56 @@ public final class CurrentData {
         this.startupValue2 = startupValue2;
         this.startupValue3 = startupValue3;
         this.dataLength = dataLength;
-        this.dataA = dataA;
-        this.dataB = dataB;
-        this.dataC = dataC;
+        this.samplesA = samplesA;
+        this.samplesB = samplesB;
+        this.samplesC = samplesC;
         this.fileName = fileName;
     }
+
+    /**
+     * 获取指定相别的采样视图.
+     *
+     * 输入:
+     * - phase: 相别, A/B/C.
+     *
+     * 输出:
+     * - 该相的只读采样视图, 有效点数为 dataLength.
+     */
+    public PhaseSamples samples(WaveformFaultAnalyzer.Phase phase) {
+        switch (phase) {
+            case B:
+                return samplesB;
+            case C:
+                return samplesC;
+            case A:
+            default:
+                return samplesA;
+        }
+    }
+
+    /**
+     * 归还借用的采样缓冲区 (见 DecodeArena); 重复调用或非池化数据调用时不做任何事.
+     */
+    public void release() {
+        Runnable r;
+        synchronized (this) {
+            r = releaser;
+            releaser = null;
+        }
+        if (r != null) {
+            r.run();
+        }
+    }
+
+    /** 由池化解码设置归还回调. */
+    synchronized void onRelease(Runnable r) {
+        this.releaser = r;
+    }
+
+    /**
+     * 三相采样数据占用的堆内存估计, 字节 (见 PhaseSamples.heapBytes).
+     */
+    public long sampleBytes() {
+        return samplesA.heapBytes() + samplesB.heapBytes() + samplesC.heapBytes();
+    }
 }
@@ -0,0 +1,161 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.function.LongConsumer;
+
+/**
+ * 解码缓冲区池.
+ *
+ * 类作用:
+ * - AllFileDecoder.decode 每个文件都新建一个文件大小的 byte[] 和三个 short[], 批量处理时全部成为垃圾.
+ *   本类把这两类缓冲区留下来重复使用: 读缓冲区在解码结束后立即归还, 三相数组随 CurrentData 借出,
+ *   调用方处理完该文件后调用 CurrentData.release() 归还.
+ * - 缓冲区按目前见过的最大录波分配, 此后同样大或更小的录波不再分配; 稳定运行时每个文件只剩头部字符串等少量对象.
+ * - 空闲缓冲区最多保留 maxPooled 组, 多出的直接丢弃, 内存占用有上限.
+ *
+ * 使用方式:
+ * - DecodeArena arena = new DecodeArena(threads * 2 + 1);
+ *   CurrentData df = arena.decode(path);
+ *   ... 分析 ...
+ *   df.release();
+ * - 可在多个线程间共享; 借出与归还可以发生在不同线程 (例如工作线程解码, 汇总线程用完后归还).
+ * - BatchAnalysisEngine 接受 DecodeArena, 在结果交给 consumer 并返回后自动 release().
+ *
+ * 注意:
+ * - release() 之后不得再读取该 CurrentData 的采样, 其数组可能已被下一个文件覆盖.
+ * - 借出的数组长度可能大于 dataLength, 采样视图只暴露前 dataLength 个点.
+ */
+public final class DecodeArena {
+
+    private final int maxPooled;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<byte[]> readBuffers = new ArrayDeque<>();
+    private final ArrayDeque<short[][]> sampleSets = new ArrayDeque<>();
+    /** 目前见过的最大文件字节数与点数, 新分配的缓冲区至少这么大. */
+    private int largestFile;
+    private int largestSamples;
+    private long allocations;
+    private long reuses;
+
+    /**
+     * 输入:
+     * - maxPooled: 每类缓冲区最多保留的空闲组数, 必须 >= 1; 一般取同时在途的文件数 + 1.
+     */
+    public DecodeArena(int maxPooled) {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("maxPooled 必须 >= 1: " + maxPooled);
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * 解码单个 .all 文件, 结果与 AllFileDecoder.decode 逐点一致.
+     *
+     * 输出:
+     * - 借用本池三相数组的 CurrentData, 用完后调用 release().
+     * - 解析失败抛出 IOException, 此时不借出任何缓冲区.
+     */
+    public CurrentData decode(Path path) throws IOException {
+        return decode(path, null);
+    }
+
+    /**
+     * 同 decode(path); 解析成功后把读取的文件字节数交给 bytesRead (可以为 null).
+     */
+    CurrentData decode(Path path, LongConsumer bytesRead) throws IOException {
+        long t = Instrumentation.start();
+        byte[] buf = null;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > AllFileDecoder.MAX_DATA_LENGTH) {
+                throw new IOException("文件过大(> " + AllFileDecoder.MAX_DATA_LENGTH
+                        + " bytes), 请改用 ChunkedRecordingReader 分块读取: " + path);
+            }
+            int length = (int) size;
+            buf = acquireReadBuffer(length);
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, length);
+            while (bb.hasRemaining()) {
+                if (ch.read(bb) < 0) {
+                    throw new EOFException("读取过程中文件变短: " + path);
+                }
+            }
+            Instrumentation.stop(Instrumentation.Stage.READ, t);
+            CurrentData df = AllFileDecoder.decode(buf, length, path.getFileName().toString(), path, this);
+            if (bytesRead != null) {
+                bytesRead.accept(length);
+            }
+            return df;
+        } finally {
+            if (buf != null) {
+                releaseReadBuffer(buf);
+            }
+        }
+    }
+
+    /** 新分配缓冲区的次数 (读缓冲区与三相数组组分别计数). */
+    public long allocations() {
+        synchronized (lock) {
+            return allocations;
+        }
+    }
+
+    /** 复用空闲缓冲区的次数. */
+    public long reuses() {
+        synchronized (lock) {
+            return reuses;
+        }
+    }
+
+    // ----------------- 池操作 -----------------
+
+    private byte[] acquireReadBuffer(int length) {
+        synchronized (lock) {
+            byte[] b = readBuffers.pollFirst();
+            if (b != null && b.length >= length) {
+                reuses++;
+                return b;
+            }
+            // 比当前文件小的空闲缓冲区直接丢弃, 换成更大的
+            largestFile = Math.max(largestFile, length);
+            allocations++;
+            return new byte[largestFile];
+        }
+    }
+
+    private void releaseReadBuffer(byte[] b) {
+        synchronized (lock) {
+            if (b.length >= largestFile && readBuffers.size() < maxPooled) {
+                readBuffers.addFirst(b);
+            }
+        }
+    }
+
+    /** 借出三相数组, 每个长度不小于 dataLength. */
+    short[][] acquireSamples(int dataLength) {
+        synchronized (lock) {
+            short[][] set = sampleSets.pollFirst();
+            if (set != null && set[0].length >= dataLength) {
+                reuses++;
+                return set;
+            }
+            largestSamples = Math.max(largestSamples, dataLength);
+            allocations++;
+            return new short[][] {
+                new short[largestSamples], new short[largestSamples], new short[largestSamples]};
+        }
+    }
+
+    /** 归还三相数组; 比目前最大录波小的数组不再保留. */
+    void releaseSamples(short[][] set) {
+        synchronized (lock) {
+            if (set[0].length >= largestSamples && sampleSets.size() < maxPooled) {
+                sampleSets.addFirst(set);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 读取/解码与波形分析分级流水线.
+ *
+ * 类作用:
+ * - I/O 级: 每个文件一个线程执行 AllFileDecoder.decode. 运行在 JDK 21+ 时使用虚拟线程,
+ *   阻塞在慢速网络盘上的读操作不占用平台线程; 更早的 JDK 上退化为按需创建的平台线程.
+ * - CPU 级: 固定数量的平台线程从有界队列取出解码结果, 对三相做单端测距.
+ * - 背压: 提交文件前先获取在途许可, 许可数 = ioConcurrency + queueCapacity + cpuThreads,
+ *   无论排队文件有多少, 同时驻留内存的解码结果都不超过该值.
+ * - 吞吐量统计: 已完成文件数、读取字节数、队列深度, 可在运行中随时通过 stats() 读取.
+ *
+ * 使用方式:
+ * - new DecodePipeline(ioConcurrency, cpuThreads, queueCapacity, cfg).run(files, consumer).
+ * - 结果按完成顺序回调, consumer 可能被多个 CPU 线程同时调用, 需自行保证线程安全.
+ * - 传入 DecodeArena 时解码缓冲区循环使用, FileResult.data 的采样只在 consumer 调用期间有效.
+ */
+public final class DecodePipeline {
+
+    private final int cpuThreads;
+    private final WaveformFaultAnalyzer.Config cfg;
+    private final DecodeArena arena;
+    private final BlockingQueue<Decoded> queue;
+    private final Semaphore inFlight;
+    private final Semaphore ioSlots;
+
+    private final AtomicLong filesDone = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile long startNanos;
+    private volatile boolean virtualThreads;
+    /** consumer 抛出的异常或解码 / 分析时的 Error, 只记录第一个. */
+    private volatile Throwable failure;
+
+    /**
+     * 输入:
+     * - ioConcurrency: 同时进行读取/解码的文件数上限.
+     * - cpuThreads: 分析线程数.
+     * - queueCapacity: I/O 级与 CPU 级之间的交接队列容量.
+     * - cfg: 单端测距配置参数.
+     */
+    public DecodePipeline(int ioConcurrency, int cpuThreads, int queueCapacity, WaveformFaultAnalyzer.Config cfg) {
+        this(ioConcurrency, cpuThreads, queueCapacity, cfg, null);
+    }
+
+    /**
+     * 输入:
+     * - arena: 解码缓冲区池, 为 null 时每个文件新建缓冲区; 其空闲上限宜不小于
+     *   ioConcurrency + queueCapacity + cpuThreads (同时驻留的解码结果数).
+     * - 其余同上.
+     */
+    public DecodePipeline(int ioConcurrency, int cpuThreads, int queueCapacity, WaveformFaultAnalyzer.Config cfg,
+            DecodeArena arena) {
+        if (ioConcurrency < 1 || cpuThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("ioConcurrency/cpuThreads/queueCapacity 必须 >= 1");
+        }
+        this.cpuThreads = cpuThreads;
+        this.cfg = cfg;
+        this.arena = arena;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inFlight = new Semaphore(ioConcurrency + queueCapacity + cpuThreads);
+        this.ioSlots = new Semaphore(ioConcurrency);
+    }
+
+    /**
+     * 运行流水线, 处理完全部文件后返回.
+     *
+     * 输入:
+     * - files: 待处理文件.
+     * - consumer: 结果回调, 每个文件恰好调用一次 (解析失败时 FileResult.error 非空).
+     *
+     * 输出:
+     * - 无; 被中断时停止提交并抛出 InterruptedException.
+     */
+    public void run(List<Path> files, Consumer<BatchAnalysisEngine.FileResult> consumer) throws InterruptedException {
+        startNanos = System.nanoTime();
+        CountDownLatch done = new CountDownLatch(files.size());
+        ExecutorService io = newIoExecutor();
+        Thread[] workers = new Thread[cpuThreads];
+        for (int i = 0; i < cpuThreads; i++) {
+            workers[i] = new Thread(() -> cpuLoop(consumer, done), "pipeline-cpu-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (Path path : files) {
+                inFlight.acquire();
+                io.execute(() -> decodeStage(path));
+            }
+            done.await();
+        } finally {
+            io.shutdownNow();
+            for (Thread w : workers) {
+                w.interrupt();
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("流水线结果回调或解码 / 分析异常", failure);
+        }
+    }
+
+    /**
+     * 当前吞吐量快照, 可在运行中由其他线程调用.
+     */
+    public Stats stats() {
+        long start = startNanos;
+        double elapsedSec = start == 0L ? 0.0 : (System.nanoTime() - start) / 1e9;
+        return new Stats(filesDone.get(), bytesRead.get(), queue.size(), elapsedSec, virtualThreads);
+    }
+
+    // ----------------- 两级处理 -----------------
+
+    private void decodeStage(Path path) {
+        Decoded item;
+        try {
+            ioSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // 文件范围在 I/O 线程上开始, 交给 CPU 级之前脱离本线程, 由 CPU 线程接着计时并结束
+        Instrumentation.FileScope scope = Instrumentation.begin(path);
+        long t0 = System.nanoTime();
+        try {
+            // 读取的字节数由解码器在成功后回报, 不再单独 stat 文件
+            CurrentData df = arena != null ? arena.decode(path, bytesRead::addAndGet)
+                    : AllFileDecoder.decode(path, bytesRead::addAndGet);
+            item = new Decoded(path, df, null, scope, System.nanoTime() - t0);
+        } catch (IOException | RuntimeException e) {
+            item = new Decoded(path, null, e, scope, System.nanoTime() - t0);
+        } catch (Error e) {
+            // 仍然交给 CPU 级, 保证每个文件都计数; run 结束时抛出
+            if (failure == null) {
+                failure = e;
+            }
+            item = new Decoded(path, null, new IllegalStateException("解码异常终止", e), scope,
+                    System.nanoTime() - t0);
+        } finally {
+            scope.suspend();
+            ioSlots.release();
+        }
+        try {
+            // 队列满时阻塞, 形成背压; 许可保证这里最终一定能放入
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cpuLoop(Consumer<BatchAnalysisEngine.FileResult> consumer, CountDownLatch done) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Decoded item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            item.scope.resume();
+            try {
+                consumer.accept(analyze(item));
+            } catch (Throwable e) {
+                // 只记录第一个异常, 工作线程继续处理剩余文件, 避免 run 永远等不到结束
+                if (failure == null) {
+                    failure = e;
+                }
+            } finally {
+                try {
+                    if (item.data != null) {
+                        item.data.release();
+                    }
+                    item.scope.end();
+                } finally {
+                    filesDone.incrementAndGet();
+                    inFlight.release();
+                    done.countDown();
+                }
+            }
+        }
+    }
+
+    private BatchAnalysisEngine.FileResult analyze(Decoded item) {
+        if (item.error != null) {
+            return new BatchAnalysisEngine.FileResult(item.path, null, null, item.error, item.decodeNanos);
+        }
+        long t0 = System.nanoTime();
+        try {
+            ThreePhaseAnalyzer.Result analysis = ThreePhaseAnalyzer.analyze(item.data, cfg);
+            return new BatchAnalysisEngine.FileResult(item.path, item.data, analysis, null,
+                    item.decodeNanos + System.nanoTime() - t0);
+        } catch (RuntimeException e) {
+            // 与 BatchAnalysisEngine 相同: 分析异常只记录在该文件的结果中, consumer 照常收到
+            return new BatchAnalysisEngine.FileResult(item.path, null, null, e,
+                    item.decodeNanos + System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * 创建 I/O 级执行器: 优先使用 JDK 21+ 的每任务一个虚拟线程执行器, 否则退化为平台线程池.
+     * 两种情况下并发度都由 inFlight 许可限制.
+     */
+    private ExecutorService newIoExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService es = (ExecutorService) m.invoke(null);
+            virtualThreads = true;
+            return es;
+        } catch (ReflectiveOperationException e) {
+            virtualThreads = false;
+            AtomicInteger seq = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "pipeline-io-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** I/O 级交给 CPU 级的解码结果. */
+    private static final class Decoded {
+        final Path path;
+        final CurrentData data;
+        final Exception error;
+        final Instrumentation.FileScope scope;
+        /** I/O 级解码耗时, ns. */
+        final long decodeNanos;
+
+        Decoded(Path path, CurrentData data, Exception error, Instrumentation.FileScope scope, long decodeNanos) {
+            this.path = path;
+            this.data = data;
+            this.error = error;
+            this.scope = scope;
+            this.decodeNanos = decodeNanos;
+        }
+    }
+
+    /**
+     * 流水线吞吐量快照.
+     *
+     * 字段含义:
+     * - filesDone: 已完成分析的文件数.
+     * - bytesRead: 已成功读取的字节数.
+     * - queueDepth: 交接队列中等待分析的文件数.
+     * - elapsedSec: 自 run 开始经过的秒数.
+     * - virtualThreads: I/O 级是否运行在虚拟线程上.
+     */
+    public static final class Stats {
+        public final long filesDone;
+        public final long bytesRead;
+        public final int queueDepth;
+        public final double elapsedSec;
+        public final boolean virtualThreads;
+
+        Stats(long filesDone, long bytesRead, int queueDepth, double elapsedSec, boolean virtualThreads) {
+            this.filesDone = filesDone;
+            this.bytesRead = bytesRead;
+            this.queueDepth = queueDepth;
+            this.elapsedSec = elapsedSec;
+            this.virtualThreads = virtualThreads;
+        }
+
+        public double filesPerSecond() {
+            return elapsedSec > 0.0 ? filesDone / elapsedSec : 0.0;
+        }
+
+        public double megabytesPerSecond() {
+            return elapsedSec > 0.0 ? bytesRead / (1024.0 * 1024.0) / elapsedSec : 0.0;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 解码结果缓存模块.
+ *
+ * 类作用:
+ * - 同一 .all 文件被反复分析 (参数扫描、比较不同相别、重复计算双端配对) 时, 复用已解码的 CurrentData,
+ *   不再重复读盘和解码.
+ * - 缓存键为 (规范化绝对路径, 文件大小, 修改时间), 文件被覆盖或修改后自动视为新文件, 旧版本立即失效.
+ * - 容量按三相采样数据占用的字节数 (CurrentData.sampleBytes) 限制, 而不是按条目数;
+ *   超出时按最近最少使用 (LRU) 顺序淘汰.
+ * - 多线程同时请求同一个未缓存的文件时只解码一次, 其余线程等待同一结果.
+ *
+ * 使用方式:
+ * - DecodedRecordingCache cache = new DecodedRecordingCache(256L << 20);
+ *   CurrentData df = cache.get(path);
+ * - 可在多个线程间共享; stats() 返回命中 / 未命中 / 淘汰等统计.
+ * - 缓存返回的 CurrentData 被多个调用方共享, 只能读取, 不要修改其中的数组.
+ */
+public final class DecodedRecordingCache {
+
+    /**
+     * 文件加载函数, 默认为 AllFileDecoder::decode.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        CurrentData load(Path path) throws IOException;
+    }
+
+    private final long maxSampleBytes;
+    private final Loader loader;
+
+    private final Object lock = new Object();
+    /** 访问顺序的 LinkedHashMap, 迭代顺序即从最久未使用到最近使用. */
+    private final LinkedHashMap<FileKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** 每个路径当前对应的键, 用于文件被修改后使旧版本失效. */
+    private final Map<Path, FileKey> keyByPath = new HashMap<>();
+    private long sampleBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long loadFailures;
+
+    /**
+     * 输入:
+     * - maxSampleBytes: 缓存的采样数据总字节数上限, 必须 > 0.
+     */
+    public DecodedRecordingCache(long maxSampleBytes) {
+        this(maxSampleBytes, AllFileDecoder::decode);
+    }
+
+    /**
+     * 输入:
+     * - maxSampleBytes: 同上.
+     * - loader: 缓存未命中时的加载函数.
+     */
+    public DecodedRecordingCache(long maxSampleBytes, Loader loader) {
+        if (maxSampleBytes <= 0L) {
+            throw new IllegalArgumentException("maxSampleBytes 必须 > 0: " + maxSampleBytes);
+        }
+        this.maxSampleBytes = maxSampleBytes;
+        this.loader = Objects.requireNonNull(loader, "loader");
+    }
+
+    /**
+     * 取得文件的解码结果, 未命中时加载并放入缓存.
+     *
+     * 输入:
+     * - path: .all 文件路径.
+     *
+     * 输出:
+     * - 解码后的 CurrentData; 文件不存在或解码失败时抛出 IOException (失败结果不缓存).
+     */
+    public CurrentData get(Path path) throws IOException {
+        Path abs = path.toAbsolutePath().normalize();
+        BasicFileAttributes attrs = Files.readAttributes(abs, BasicFileAttributes.class);
+        FileKey key = new FileKey(abs, attrs.size(), attrs.lastModifiedTime());
+
+        Entry entry;
+        boolean owner = false;
+        synchronized (lock) {
+            entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+                FileKey previous = keyByPath.put(abs, key);
+                if (previous != null) {
+                    Entry stale = entries.remove(previous);
+                    if (stale != null) {
+                        sampleBytes -= stale.bytes;
+                        invalidations++;
+                    }
+                }
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            load(key, entry);
+        }
+        return entry.await();
+    }
+
+    private void load(FileKey key, Entry entry) {
+        CurrentData data = null;
+        Throwable failure = null;
+        try {
+            data = loader.load(key.path);
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            // 任何失败 (含 Error) 都要结束占位条目, 否则等待它的线程会永远阻塞
+            if (data == null) {
+                synchronized (lock) {
+                    loadFailures++;
+                    entries.remove(key, entry);
+                    keyByPath.remove(key.path, key);
+                }
+                entry.future.completeExceptionally(
+                        failure != null ? failure : new IOException("解码结果为空: " + key.path));
+            }
+        }
+        if (data == null) {
+            return;
+        }
+        synchronized (lock) {
+            // 加载期间可能已被 invalidate / clear, 此时不再计入缓存
+            if (entries.get(key) == entry) {
+                entry.loaded = true;
+                entry.bytes = data.sampleBytes();
+                sampleBytes += entry.bytes;
+                evictOverflow();
+            }
+        }
+        entry.future.complete(data);
+    }
+
+    /** 在持有 lock 时调用: 从最久未使用的条目开始淘汰, 直到总量不超过上限. 正在加载的条目不参与. */
+    private void evictOverflow() {
+        Iterator<Map.Entry<FileKey, Entry>> it = entries.entrySet().iterator();
+        while (sampleBytes > maxSampleBytes && it.hasNext()) {
+            Map.Entry<FileKey, Entry> e = it.next();
+            Entry victim = e.getValue();
+            if (!victim.loaded) {
+                continue;
+            }
+            it.remove();
+            keyByPath.remove(e.getKey().path, e.getKey());
+            sampleBytes -= victim.bytes;
+            evictions++;
+        }
+    }
+
+    /**
+     * 使某个文件的缓存失效.
+     *
+     * 输出:
+     * - 是否确实移除了条目.
+     */
+    public boolean invalidate(Path path) {
+        Path abs = path.toAbsolutePath().normalize();
+        synchronized (lock) {
+            FileKey key = keyByPath.remove(abs);
+            if (key == null) {
+                return false;
+            }
+            Entry e = entries.remove(key);
+            if (e == null) {
+                return false;
+            }
+            sampleBytes -= e.bytes;
+            invalidations++;
+            return true;
+        }
+    }
+
+    /** 清空缓存, 统计计数保留. */
+    public void clear() {
+        synchronized (lock) {
+            invalidations += entries.size();
+            entries.clear();
+            keyByPath.clear();
+            sampleBytes = 0L;
+        }
+    }
+
+    /** 当前统计快照. */
+    public Stats stats() {
+        synchronized (lock) {
+            return new Stats(hits, misses, evictions, invalidations, loadFailures,
+                    entries.size(), sampleBytes, maxSampleBytes);
+        }
+    }
+
+    // ----------------- 辅助类型 -----------------
+
+    private static final class FileKey {
+        final Path path;
+        final long size;
+        final FileTime lastModified;
+
+        FileKey(Path path, long size, FileTime lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileKey)) {
+                return false;
+            }
+            FileKey k = (FileKey) o;
+            return size == k.size && path.equals(k.path) && lastModified.equals(k.lastModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<CurrentData> future = new CompletableFuture<>();
+        /** 以下两个字段只在持有 lock 时读写. */
+        boolean loaded;
+        long bytes;
+
+        CurrentData await() throws IOException {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 缓存统计快照.
+     *
+     * 字段含义:
+     * - hits / misses: 命中与未命中次数; 等待其他线程正在进行的解码也算命中.
+     * - evictions: 因超出容量被淘汰的条目数.
+     * - invalidations: 因文件被修改、invalidate 或 clear 而移除的条目数.
+     * - loadFailures: 解码失败次数.
+     * - entries / sampleBytes: 当前条目数与采样数据总字节数.
+     * - maxSampleBytes: 容量上限.
+     */
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long invalidations;
+        public final long loadFailures;
+        public final int entries;
+        public final long sampleBytes;
+        public final long maxSampleBytes;
+
+        Stats(long hits, long misses, long evictions, long invalidations, long loadFailures,
+                int entries, long sampleBytes, long maxSampleBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.loadFailures = loadFailures;
+            this.entries = entries;
+            this.sampleBytes = sampleBytes;
+            this.maxSampleBytes = maxSampleBytes;
+        }
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total > 0L ? (double) hits / total : 0.0;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * 一阶差分的多分辨率最大值 / 能量金字塔.
+ *
+ * 类作用:
+ * - analyzeSingleEnded 找反射波时要从 searchStart 扫到录波末尾求 |dx| 最大值, 找入射波、估计噪声也都是线性扫描;
+ *   同一录波换阈值、换最小间隔、换相别反复分析时, 每次都重新扫描整段.
+ * - 本类一次遍历建立金字塔: 第 0 层每 FANOUT 个差分一块, 记录块内 max|dx| 与 sum(dx^2);
+ *   第 k 层每块合并下一层的 FANOUT 块, 直到一层不超过 FANOUT 块.
+ * - 查询自顶向下: 先在粗层定位可能越限的块, 只在这些块内逐层细化, 最后在不超过 FANOUT 个采样内逐点比较;
+ *   区间两端不满一块的部分直接计算. 单次查询读取 O(FANOUT * 层数) 个数, 与区间长度基本无关.
+ *
+ * 使用方式:
+ * - DiffPyramid p = DiffPyramid.of(df, phase); 之后作为该相的 PhaseSamples 使用,
+ *   或传给 WaveformFaultAnalyzer.analyzeSingleEnded(df, cfg, phase, p), 可对不同配置反复调用.
+ * - diffSumSquares / firstAbsDiffAbove / argMaxAbsDiffAbove 走金字塔, 其余方法委托给原采样视图.
+ *   采样为整数值 (例如 .all 解码结果) 时, 结果与原视图逐点一致.
+ * - 建立后只读, 可被多个线程同时查询; 额外内存约为每点 1 字节.
+ */
+public final class DiffPyramid implements PhaseSamples {
+
+    /** 每块包含的下一层块数 (第 0 层为差分个数) 的对数. */
+    private static final int SHIFT = 4;
+    /** 每块包含的下一层块数. */
+    public static final int FANOUT = 1 << SHIFT;
+    private static final int MASK = FANOUT - 1;
+
+    /** 建立时每次从原视图复制的采样点数. */
+    private static final int BUILD_CHUNK = 4096;
+
+    private final PhaseSamples x;
+    private final int n;
+    /** max[k][b]: 第 k 层第 b 块内的 max|dx|; 第 k 层一块覆盖 FANOUT^(k+1) 个差分. */
+    private final double[][] max;
+    /** energy[k][b]: 同一块内的 sum(dx^2). */
+    private final double[][] energy;
+
+    private DiffPyramid(PhaseSamples x, double[][] max, double[][] energy) {
+        this.x = x;
+        this.n = x.length();
+        this.max = max;
+        this.energy = energy;
+    }
+
+    /**
+     * 为某一相建立金字塔.
+     */
+    public static DiffPyramid of(CurrentData df, WaveformFaultAnalyzer.Phase phase) {
+        return build(df.samples(phase));
+    }
+
+    /**
+     * 遍历一次采样建立金字塔.
+     *
+     * 输入:
+     * - x: 单相采样视图; 已经是 DiffPyramid 时直接返回.
+     *
+     * 输出:
+     * - 金字塔; 建立耗时不计入 Instrumentation 的任何阶段 (每相只建一次, 不属于单次分析的波头搜索).
+     */
+    public static DiffPyramid build(PhaseSamples x) {
+        if (x instanceof DiffPyramid) {
+            return (DiffPyramid) x;
+        }
+        int n = x.length();
+        int blocks = Math.max(1, (n + MASK) >>> SHIFT);
+        double[] m0 = new double[blocks];
+        double[] e0 = new double[blocks];
+        double[] buf = new double[Math.min(BUILD_CHUNK, Math.max(1, n))];
+        double prev = n > 0 ? x.get(0) : 0.0;
+        for (int from = 0; from < n; from += buf.length) {
+            int len = Math.min(buf.length, n - from);
+            x.copyTo(from, buf, 0, len);
+            for (int j = from == 0 ? 1 : 0; j < len; j++) {
+                double d = buf[j] - prev;
+                prev = buf[j];
+                double a = Math.abs(d);
+                int b = (from + j) >>> SHIFT;
+                if (a > m0[b]) {
+                    m0[b] = a;
+                }
+                e0[b] += d * d;
+            }
+        }
+
+        int levels = 1;
+        for (int c = blocks; c > FANOUT; c = (c + MASK) >>> SHIFT) {
+            levels++;
+        }
+        double[][] max = new double[levels][];
+        double[][] energy = new double[levels][];
+        max[0] = m0;
+        energy[0] = e0;
+        for (int k = 1; k < levels; k++) {
+            double[] cm = max[k - 1];
+            double[] ce = energy[k - 1];
+            int count = (cm.length + MASK) >>> SHIFT;
+            double[] m = new double[count];
+            double[] e = new double[count];
+            for (int c = 0; c < cm.length; c++) {
+                int b = c >>> SHIFT;
+                if (cm[c] > m[b]) {
+                    m[b] = cm[c];
+                }
+                e[b] += ce[c];
+            }
+            max[k] = m;
+            energy[k] = e;
+        }
+        return new DiffPyramid(x, max, energy);
+    }
+
+    /**
+     * 是否由 samples 这个采样视图建立; analyzeSingleEnded 据此确认金字塔与录波、相别对应.
+     * samples 本身是金字塔 (CurrentData 的该相已替换为金字塔) 时比较其原视图; x 不会是金字塔, 因为 build 直接返回已有金字塔.
+     */
+    boolean isBuiltFrom(PhaseSamples samples) {
+        PhaseSamples s = samples instanceof DiffPyramid ? ((DiffPyramid) samples).x : samples;
+        return x == s;
+    }
+
+    /** 金字塔层数. */
+    public int levels() {
+        return max.length;
+    }
+
+    // ----------------- PhaseSamples 委托 -----------------
+
+    @Override
+    public int length() {
+        return n;
+    }
+
+    @Override
+    public double get(int i) {
+        return x.get(i);
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        return x.toDoubleArray();
+    }
+
+    @Override
+    public void copyTo(int from, double[] dst, int dstOff, int len) {
+        x.copyTo(from, dst, dstOff, len);
+    }
+
+    @Override
+    public long heapBytes() {
+        long b = x.heapBytes();
+        for (double[] m : max) {
+            b += m.length * 16L;
+        }
+        return b;
+    }
+
+    // ----------------- 差分查询 -----------------
+
+    @Override
+    public double diffSumSquares(int from, int to) {
+        checkRange(from, to);
+        if (from >= to) {
+            return 0.0;
+        }
+        int b0 = (from + MASK) >>> SHIFT;
+        int b1 = to >>> SHIFT;
+        if (b0 >= b1) {
+            return x.diffSumSquares(from, to);
+        }
+        return x.diffSumSquares(from, b0 << SHIFT) + blockSum(0, b0, b1) + x.diffSumSquares(b1 << SHIFT, to);
+    }
+
+    @Override
+    public int firstAbsDiffAbove(int from, int to, double threshold) {
+        checkRange(from, to);
+        return first(from, to, threshold, true);
+    }
+
+    @Override
+    public int argMaxAbsDiffAbove(int from, int to, double threshold) {
+        checkRange(from, to);
+        if (from >= to) {
+            return -1;
+        }
+        double m = maxAbsDiff(from, to);
+        if (!(m > threshold) || m == 0.0) {
+            return -1;
+        }
+        // 区间内第一个达到最大值的点, 即并列时最早的一个
+        return first(from, to, m, false);
+    }
+
+    /**
+     * [from, to) 上的 max|dx|; 区间为空时返回 0.
+     *
+     * 输入:
+     * - from, to: 差分下标区间, 要求 1 <= from, to <= length().
+     */
+    public double maxAbsDiff(int from, int to) {
+        checkRange(from, to);
+        if (from >= to) {
+            return 0.0;
+        }
+        int b0 = (from + MASK) >>> SHIFT;
+        int b1 = to >>> SHIFT;
+        if (b0 >= b1) {
+            return scanMax(from, to);
+        }
+        return Math.max(Math.max(scanMax(from, b0 << SHIFT), blockMax(0, b0, b1)), scanMax(b1 << SHIFT, to));
+    }
+
+    /** 第 k 层块 [b0, b1) 的 max|dx|. */
+    private double blockMax(int k, int b0, int b1) {
+        double[] m = max[k];
+        int p0 = (b0 + MASK) >>> SHIFT;
+        int p1 = b1 >>> SHIFT;
+        if (k + 1 >= max.length || p0 >= p1) {
+            return scanLevel(m, b0, b1);
+        }
+        return Math.max(Math.max(scanLevel(m, b0, p0 << SHIFT), blockMax(k + 1, p0, p1)),
+                scanLevel(m, p1 << SHIFT, b1));
+    }
+
+    /** 第 k 层块 [b0, b1) 的 sum(dx^2). */
+    private double blockSum(int k, int b0, int b1) {
+        double[] e = energy[k];
+        int p0 = (b0 + MASK) >>> SHIFT;
+        int p1 = b1 >>> SHIFT;
+        if (k + 1 >= energy.length || p0 >= p1) {
+            return sumLevel(e, b0, b1);
+        }
+        return sumLevel(e, b0, p0 << SHIFT) + blockSum(k + 1, p0, p1) + sumLevel(e, p1 << SHIFT, b1);
+    }
+
+    /**
+     * [from, to) 上第一个 |dx| > v (strict) 或 |dx| >= v 的下标, 没有返回 -1.
+     * 两端不满一块的部分逐点比较, 中间整块交给 firstBlock 在粗层定位.
+     */
+    private int first(int from, int to, double v, boolean strict) {
+        if (from >= to) {
+            return -1;
+        }
+        int b0 = (from + MASK) >>> SHIFT;
+        int b1 = to >>> SHIFT;
+        if (b0 >= b1) {
+            return scanFirst(from, to, v, strict);
+        }
+        int i = scanFirst(from, b0 << SHIFT, v, strict);
+        if (i >= 0) {
+            return i;
+        }
+        int b = firstBlock(0, b0, b1, v, strict);
+        if (b >= 0) {
+            return scanFirst(b << SHIFT, (b + 1) << SHIFT, v, strict);
+        }
+        return scanFirst(b1 << SHIFT, to, v, strict);
+    }
+
+    /** 第 k 层块 [b0, b1) 中第一个块内最大值满足条件的块, 没有返回 -1. */
+    private int firstBlock(int k, int b0, int b1, double v, boolean strict) {
+        double[] m = max[k];
+        int p0 = (b0 + MASK) >>> SHIFT;
+        int p1 = b1 >>> SHIFT;
+        if (k + 1 >= max.length || p0 >= p1) {
+            return scanLevelFirst(m, b0, b1, v, strict);
+        }
+        int b = scanLevelFirst(m, b0, p0 << SHIFT, v, strict);
+        if (b >= 0) {
+            return b;
+        }
+        int p = firstBlock(k + 1, p0, p1, v, strict);
+        if (p >= 0) {
+            // 父块整体满足条件, 其子块中必有一个满足
+            return scanLevelFirst(m, p << SHIFT, Math.min(m.length, (p + 1) << SHIFT), v, strict);
+        }
+        return scanLevelFirst(m, p1 << SHIFT, b1, v, strict);
+    }
+
+    // ----------------- 最细一级的逐点计算 -----------------
+
+    private double scanMax(int from, int to) {
+        double best = 0.0;
+        for (int i = from; i < to; i++) {
+            double a = Math.abs(x.get(i) - x.get(i - 1));
+            if (a > best) {
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    private int scanFirst(int from, int to, double v, boolean strict) {
+        for (int i = from; i < to; i++) {
+            double a = Math.abs(x.get(i) - x.get(i - 1));
+            if (strict ? a > v : a >= v) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static double scanLevel(double[] m, int from, int to) {
+        double best = 0.0;
+        for (int b = from; b < to; b++) {
+            if (m[b] > best) {
+                best = m[b];
+            }
+        }
+        return best;
+    }
+
+    private static double sumLevel(double[] e, int from, int to) {
+        double s = 0.0;
+        for (int b = from; b < to; b++) {
+            s += e[b];
+        }
+        return s;
+    }
+
+    private static int scanLevelFirst(double[] m, int from, int to, double v, boolean strict) {
+        for (int b = from; b < to; b++) {
+            if (strict ? m[b] > v : m[b] >= v) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 1 || to > n) {
+            throw new IndexOutOfBoundsException("差分区间越界: [" + from + ", " + to + "), 点数=" + n);
+        }
+    }
+}
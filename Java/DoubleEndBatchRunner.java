@@ -0,0 +1,84 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 批量双端测距入口。
+ *
+ * 递归扫描目录下的 .all 文件，按文件名中的录波时刻和线路名自动配对 M/N 两端，
+ * 从同目录的 *km.txt 读取线路全长，输出每一对的双端测距结果。
+ *
+ * 使用方法（在项目根目录执行）：
+ * java -cp src DoubleEndBatchRunner
+ * java -cp src DoubleEndBatchRunner d:\\FaultLocation_demo\\src\\data A 8 1
+ *
+ * 参数依次为：起始目录、识别相别（默认 A）、并行线程数（默认为 CPU 核数）、
+ * 时钟校正窗口秒数（默认 1；两端时刻差在窗口内或一端日期翻转时仍能配对并校正，
+ * 只接受测距结果落在 [0, L] 内的校正；设为 -1 时只做精确配对且不校正）。
+ *
+ * 最后一个参数为 out=<文件> 时，双端结果写入文件而不逐对打印，格式按扩展名选择（.csv / .jsonl / .flr）：
+ * java -cp src DoubleEndBatchRunner d:\\archive A 8 1 out=pairs.jsonl
+ */
+public final class DoubleEndBatchRunner {
+
+    private DoubleEndBatchRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+
+        Path outFile = null;
+        if (args.length > 0 && args[args.length - 1].startsWith("out=")) {
+            outFile = Paths.get(args[args.length - 1].substring(4));
+            args = Arrays.copyOf(args, args.length - 1);
+        }
+        Path root = args.length > 0 ? Paths.get(args[0]) : Paths.get("src", "data");
+        WaveformFaultAnalyzer.Phase phase = args.length > 1
+                ? WaveformFaultAnalyzer.Phase.valueOf(args[1].trim().toUpperCase(Locale.ROOT))
+                : WaveformFaultAnalyzer.Phase.A;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        if (!Files.exists(root)) {
+            System.err.println("目录不存在: " + root.toAbsolutePath());
+            return;
+        }
+
+        System.out.println("扫描目录: " + root.toAbsolutePath());
+        List<Path> files = BatchAnalysisEngine.listAllFiles(root);
+        DoubleEndPairIndex index = DoubleEndPairIndex.build(files);
+        List<DoubleEndPairIndex.Pair> pairs = window < 0 ? index.pairs() : index.tolerantPairs(window);
+        System.out.printf(Locale.ROOT, "文件数: %d, 文件名无法解析: %d, M/N 配对数: %d%n",
+                files.size(), index.unparsedCount(), pairs.size());
+
+        WaveformFaultAnalyzer.Config cfg = WaveformFaultAnalyzer.Config.defaultConfig();
+        List<DoubleEndLocator.PairResult> results = new DoubleEndLocator(cfg, phase, parallelism, window).locate(pairs);
+        if (outFile != null) {
+            int ok = 0;
+            try (ResultSink out = ResultWriters.open(outFile)) {
+                for (DoubleEndLocator.PairResult r : results) {
+                    out.pair(ResultSink.PairRow.of(r));
+                    ok += r.result == null ? 0 : 1;
+                }
+            }
+            System.out.printf(Locale.ROOT, "双端测距成功 %d / %d 对, 结果已写入: %s%n",
+                    ok, results.size(), outFile.toAbsolutePath());
+            return;
+        }
+        for (DoubleEndLocator.PairResult r : results) {
+            System.out.println("------------------------------------------------------------");
+            System.out.println("配对: " + r.pair);
+            if (r.result == null) {
+                System.out.println("双端测距失败: " + r.failure);
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "到达时间 tM = %.6f ms, tN = %.6f ms, 时间校正: %s%n",
+                    r.tMms, r.tNms, r.correction);
+            System.out.printf(Locale.ROOT, "距 M 端 %.3f km, 距 N 端 %.3f km%n",
+                    r.result.distanceFromA, r.result.distanceFromB);
+        }
+    }
+}
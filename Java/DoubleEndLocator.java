@@ -0,0 +1,319 @@
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 双端行波测距批量计算模块.
+ *
+ * 类作用:
+ * - 对 DoubleEndPairIndex 给出的 M/N 配对, 分别识别两端的入射波波头.
+ * - 用头部 second / microSecond 字段作为录波起点, 加上波头采样点对应的时间, 得到两端的绝对到达时间.
+ * - 调用 FaultLocationAlgorithms.doubleEndByTimes 计算距 M 端 / N 端的故障距离.
+ * - 时钟校正模式: 两端时钟可能相差整秒或一端日期翻转, 此时在 [-window, +window] 秒内
+ *   逐个尝试对 N 端时间的整秒校正, 只接受原始测距结果落在 [0, L] 内的校正量,
+ *   多个可行时取校正量绝对值最小的, 并在结果中报告实际采用的校正.
+ *
+ * 使用方式:
+ * - new DoubleEndLocator(cfg, phase, parallelism).locate(index.pairs()).
+ * - new DoubleEndLocator(cfg, phase, parallelism, windowSeconds).locate(index.tolerantPairs(windowSeconds)).
+ * - 每个文件只解析、识别一次, 即使它出现在多个配对中.
+ */
+public final class DoubleEndLocator {
+
+    private final WaveformFaultAnalyzer.Config cfg;
+    private final WaveformFaultAnalyzer.Phase phase;
+    /** 时钟校正搜索窗口半宽, 秒; 小于 0 表示不做校正, 结果直接限制在 [0, L]. */
+    private final int correctionWindowSeconds;
+    /** 并行识别两端入射波的批量分析引擎. */
+    private final BatchAnalysisEngine engine;
+
+    /**
+     * 不做时钟校正, 直接按头部时间计算.
+     *
+     * 输入:
+     * - cfg: 波头识别与测距配置; 头部 GPS 频率无法解析时用其中的采样间隔.
+     * - phase: 两端用于识别入射波的相别.
+     * - parallelism: 解析与识别的并行线程数.
+     */
+    public DoubleEndLocator(WaveformFaultAnalyzer.Config cfg, WaveformFaultAnalyzer.Phase phase, int parallelism) {
+        this(cfg, phase, parallelism, -1);
+    }
+
+    /**
+     * 启用时钟校正.
+     *
+     * 输入:
+     * - correctionWindowSeconds: N 端时间整秒校正量的搜索范围 [-window, +window], 秒, >= 0.
+     * - 其余同上.
+     */
+    public DoubleEndLocator(WaveformFaultAnalyzer.Config cfg, WaveformFaultAnalyzer.Phase phase, int parallelism,
+            int correctionWindowSeconds) {
+        this(cfg, phase, parallelism, correctionWindowSeconds, null);
+    }
+
+    /**
+     * 同上, 并通过 cache 复用解码结果 (例如同一批配对换相别或换窗口重复计算时).
+     *
+     * 输入:
+     * - correctionWindowSeconds: 小于 0 表示不做时钟校正.
+     * - cache: 解码结果缓存, 可以为 null.
+     */
+    public DoubleEndLocator(WaveformFaultAnalyzer.Config cfg, WaveformFaultAnalyzer.Phase phase, int parallelism,
+            int correctionWindowSeconds, DecodedRecordingCache cache) {
+        this(cfg, phase, correctionWindowSeconds, new BatchAnalysisEngine(parallelism, cfg, cache));
+    }
+
+    /**
+     * 同上, 入射波识别交给调用方提供的引擎 (例如带共享线程池、长期复用的引擎).
+     *
+     * 输入:
+     * - engine: 批量分析引擎, 应使用与 cfg 相同的配置.
+     * - 其余同上.
+     */
+    public DoubleEndLocator(WaveformFaultAnalyzer.Config cfg, WaveformFaultAnalyzer.Phase phase,
+            int correctionWindowSeconds, BatchAnalysisEngine engine) {
+        this.cfg = cfg;
+        this.phase = phase;
+        this.correctionWindowSeconds = correctionWindowSeconds;
+        this.engine = engine;
+    }
+
+    /**
+     * 批量计算双端测距结果.
+     *
+     * 输入:
+     * - pairs: M/N 配对列表.
+     *
+     * 输出:
+     * - 与 pairs 一一对应的结果列表; 单个配对失败时 PairResult.failure 给出原因.
+     */
+    public List<PairResult> locate(List<DoubleEndPairIndex.Pair> pairs) throws InterruptedException {
+        // 1. 去重后并行识别每个文件的入射波
+        Set<Path> unique = new LinkedHashSet<>();
+        for (DoubleEndPairIndex.Pair p : pairs) {
+            unique.add(p.m.path);
+            unique.add(p.n.path);
+        }
+        Map<Path, Arrival> arrivals = new HashMap<>();
+        engine.run(new ArrayList<>(unique),
+                r -> arrivals.put(r.path, Arrival.of(r, phase, cfg)));
+
+        // 2. 逐对套用双端公式
+        List<PairResult> out = new ArrayList<>(pairs.size());
+        for (DoubleEndPairIndex.Pair p : pairs) {
+            out.add(locateOne(p, arrivals.get(p.m.path), arrivals.get(p.n.path)));
+        }
+        return out;
+    }
+
+    private PairResult locateOne(DoubleEndPairIndex.Pair p, Arrival m, Arrival n) {
+        if (m.failure != null) {
+            return PairResult.failed(p, "M 端: " + m.failure);
+        }
+        if (n.failure != null) {
+            return PairResult.failed(p, "N 端: " + n.failure);
+        }
+        if (Double.isNaN(p.lineLengthKm)) {
+            return PairResult.failed(p, "未找到线路全长 *km.txt");
+        }
+        // 以 M 端头部的整秒为公共时间基准, 避免绝对毫秒时间戳损失 double 精度
+        long base = m.epochSecond;
+        double tM = m.timeMs(base);
+        double tN = n.timeMs(base);
+        if (correctionWindowSeconds < 0) {
+            FaultLocationAlgorithms.DoubleEndResult r =
+                    FaultLocationAlgorithms.doubleEndByTimes(p.lineLengthKm, cfg.waveSpeedKmPerMs, tM, tN);
+            return new PairResult(p, tM, tN, r, Correction.NONE, null);
+        }
+
+        // 日期错误时先把 N 端按整天对齐到离 M 端最近的时刻 (跨零点时相差的不是日历日期), 再在窗口内按整秒搜索
+        long dayShift = p.clockRollover
+                ? -Math.floorDiv(n.epochSecond - m.epochSecond + 43200L, 86400L) * 86400L
+                : 0L;
+        for (int k = 0; k <= correctionWindowSeconds; k++) {
+            for (int sign : k == 0 ? new int[] {1} : new int[] {1, -1}) {
+                long shift = dayShift + (long) sign * k;
+                double tNc = tN + shift * 1000.0;
+                double d = FaultLocationAlgorithms.doubleEndRawDistanceFromA(
+                        p.lineLengthKm, cfg.waveSpeedKmPerMs, tM, tNc);
+                if (d >= 0.0 && d <= p.lineLengthKm) {
+                    Correction c = shift == 0L ? Correction.NONE : new Correction(shift, p.clockRollover);
+                    return new PairResult(p, tM, tNc,
+                            FaultLocationAlgorithms.doubleEndByTimes(p.lineLengthKm, cfg.waveSpeedKmPerMs, tM, tNc),
+                            c, null);
+                }
+            }
+        }
+        return PairResult.failed(p, "校正窗口 ±" + correctionWindowSeconds + " s 内所有时间校正的测距结果均超出 [0, L]");
+    }
+
+    // ----------------- 头部时间换算 -----------------
+
+    /**
+     * 由头部 GPS 频率字段 (kHz) 得到采样间隔.
+     *
+     * 输入:
+     * - df: 解析后的 .all 数据.
+     * - fallbackMs: 频率字段无法解析时使用的采样间隔, ms.
+     *
+     * 输出:
+     * - 采样间隔, ms. 例如 1249.98779 kHz 对应约 0.0008 ms.
+     */
+    public static double samplingIntervalMs(CurrentData df, double fallbackMs) {
+        try {
+            double kHz = Double.parseDouble(df.gpsFrequency);
+            if (kHz > 0.0) {
+                return 1.0 / kHz;
+            }
+        } catch (NumberFormatException e) {
+            // 使用 fallback
+        }
+        return fallbackMs;
+    }
+
+    /**
+     * 头部 microSecond 字段, 单位微秒, 允许带小数; 无法解析时返回 0.
+     */
+    public static double headerMicroSecond(CurrentData df) {
+        try {
+            return Double.parseDouble(df.microSecond);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * 头部日期时间 (到整秒) 对应的秒数, 按 UTC 计算, 仅用于两端求差.
+     */
+    public static long headerEpochSecond(CurrentData df) {
+        return LocalDateTime.of(df.year, df.month, df.day, df.hour, df.minute, df.second)
+                .toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // ----------------- 辅助类型 -----------------
+
+    /** 单端入射波到达时间的组成部分. */
+    static final class Arrival {
+        final long epochSecond;
+        final double microSecond;
+        final int firstWaveIndex;
+        final double intervalMs;
+        final String failure;
+
+        private Arrival(long epochSecond, double microSecond, int firstWaveIndex, double intervalMs, String failure) {
+            this.epochSecond = epochSecond;
+            this.microSecond = microSecond;
+            this.firstWaveIndex = firstWaveIndex;
+            this.intervalMs = intervalMs;
+            this.failure = failure;
+        }
+
+        static Arrival of(BatchAnalysisEngine.FileResult r, WaveformFaultAnalyzer.Phase phase,
+                WaveformFaultAnalyzer.Config cfg) {
+            if (!r.isSuccess()) {
+                return failed("解析失败: " + r.error.getMessage());
+            }
+            // 双端只需要入射波, 反射波识别失败不影响
+            int t1 = r.firstWaveIndex(phase);
+            if (t1 < 0) {
+                return failed(phase + " 相入射波识别失败");
+            }
+            long sec;
+            try {
+                sec = headerEpochSecond(r.data);
+            } catch (DateTimeException e) {
+                return failed("头部时间非法: " + e.getMessage());
+            }
+            return new Arrival(sec, headerMicroSecond(r.data), t1,
+                    samplingIntervalMs(r.data, cfg.samplingIntervalMs), null);
+        }
+
+        static Arrival failed(String failure) {
+            return new Arrival(0L, 0.0, -1, 0.0, failure);
+        }
+
+        /** 相对 baseEpochSecond 的到达时间, ms. */
+        double timeMs(long baseEpochSecond) {
+            return (epochSecond - baseEpochSecond) * 1000.0
+                    + microSecond / 1000.0
+                    + FaultLocationAlgorithms.sampleIndexToTimeMs(firstWaveIndex, intervalMs);
+        }
+    }
+
+    /**
+     * 对 N 端时间所做的校正.
+     *
+     * 字段含义:
+     * - shiftSeconds: 加到 N 端头部时间上的秒数, 0 表示未校正.
+     * - clockRollover: 是否包含日期翻转校正 (按 M 端日期对齐 N 端).
+     */
+    public static final class Correction {
+        public static final Correction NONE = new Correction(0L, false);
+
+        public final long shiftSeconds;
+        public final boolean clockRollover;
+
+        Correction(long shiftSeconds, boolean clockRollover) {
+            this.shiftSeconds = shiftSeconds;
+            this.clockRollover = clockRollover;
+        }
+
+        public boolean isApplied() {
+            return shiftSeconds != 0L;
+        }
+
+        @Override
+        public String toString() {
+            if (!isApplied()) {
+                return "无";
+            }
+            if (clockRollover) {
+                long days = Math.floorDiv(shiftSeconds + 43200L, 86400L);
+                long rest = shiftSeconds - days * 86400L;
+                return String.format(Locale.ROOT, "时钟翻转: N 端日期 %+d 天, 时间 %+d s", days, rest);
+            }
+            return String.format(Locale.ROOT, "N 端时间 %+d s", shiftSeconds);
+        }
+    }
+
+    /**
+     * 单个配对的双端测距结果.
+     *
+     * 字段含义:
+     * - pair: 对应的 M/N 配对.
+     * - tMms / tNms: M 端、N 端入射波到达时间 (N 端已含校正), 以 M 端头部整秒为零点, ms.
+     * - result: 距 M 端 (distanceFromA) 与距 N 端 (distanceFromB) 的距离; 失败时为 null.
+     * - correction: 实际采用的 N 端时间校正; 未校正或失败时为 Correction.NONE.
+     * - failure: 失败原因, 成功时为 null.
+     */
+    public static final class PairResult {
+        public final DoubleEndPairIndex.Pair pair;
+        public final double tMms;
+        public final double tNms;
+        public final FaultLocationAlgorithms.DoubleEndResult result;
+        public final Correction correction;
+        public final String failure;
+
+        PairResult(DoubleEndPairIndex.Pair pair, double tMms, double tNms,
+                FaultLocationAlgorithms.DoubleEndResult result, Correction correction, String failure) {
+            this.pair = pair;
+            this.tMms = tMms;
+            this.tNms = tNms;
+            this.result = result;
+            this.correction = correction;
+            this.failure = failure;
+        }
+
+        static PairResult failed(DoubleEndPairIndex.Pair pair, String failure) {
+            return new PairResult(pair, Double.NaN, Double.NaN, null, Correction.NONE, failure);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 双端录波文件配对索引.
+ *
+ * 类作用:
+ * - 按 (录波时刻, 线路名) 对文件名做哈希分组, 同组内的 M 端与 N 端文件两两配成一对.
+ *   分组只需遍历一次文件列表, 不做两两比较, 文件数很大时仍为线性复杂度.
+ * - 从与 .all 文件同目录的 "*km.txt" 文件名中读取线路全长, 例如 964.266km.txt 表示 964.266 km.
+ * - 容错配对: 两端时钟相差若干秒 (两端差1s波形) 或一端日期错误 (一端时钟翻转) 时,
+ *   按规范化线路名建立 N 端的有序时间索引, 在时间窗内查找候选, 复杂度 O(n log n).
+ *
+ * 使用方式:
+ * - DoubleEndPairIndex.build(files) 建立索引, 再通过 pairs() 取得精确配对,
+ *   或通过 tolerantPairs(windowSeconds) 取得容错配对.
+ */
+public final class DoubleEndPairIndex {
+
+    private final Map<GroupKey, Group> groups = new HashMap<>();
+    private final Map<Path, Double> lineLengthByDir = new HashMap<>();
+    private int unparsedCount;
+
+    private DoubleEndPairIndex() {
+    }
+
+    /**
+     * 对一组 .all 文件建立配对索引.
+     *
+     * 输入:
+     * - files: .all 文件路径; 文件名无法解析的文件被忽略并计数.
+     *
+     * 输出:
+     * - 建好的索引.
+     */
+    public static DoubleEndPairIndex build(List<Path> files) {
+        DoubleEndPairIndex index = new DoubleEndPairIndex();
+        for (Path p : files) {
+            RecordingName name = RecordingName.parse(p);
+            if (name == null) {
+                index.unparsedCount++;
+                continue;
+            }
+            Group g = index.groups.computeIfAbsent(new GroupKey(name.timestamp, name.lineName), k -> new Group());
+            if (name.end == 'M') {
+                g.mEnds.add(name);
+            } else {
+                g.nEnds.add(name);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 取出全部 M/N 配对.
+     *
+     * 输出:
+     * - 同组内 M 端与 N 端的全部组合, 按 M 端、N 端路径排序, 输出顺序稳定.
+     * - 线路全长取自 M 端文件所在目录的 *km.txt, 找不到时为 NaN.
+     */
+    public List<Pair> pairs() {
+        List<Pair> out = new ArrayList<>();
+        for (Group g : groups.values()) {
+            for (RecordingName m : g.mEnds) {
+                for (RecordingName n : g.nEnds) {
+                    out.add(new Pair(m, n, lineLengthKm(m.path.toAbsolutePath().getParent()), 0L, false));
+                }
+            }
+        }
+        out.sort(Comparator.comparing((Pair p) -> p.m.path).thenComparing(p -> p.n.path));
+        return out;
+    }
+
+    /** 一天的秒数. */
+    private static final int DAY_SECONDS = 86400;
+
+    /**
+     * 容错配对: 允许两端文件名时刻相差不超过 windowSeconds 秒, 并处理一端日期错误.
+     *
+     * 规则 (对每个 M 端文件, 按规范化线路名 (见 RecordingName.normalizeLineName) 在 N 端有序时间索引中查找):
+     * - 先找 [t - windowSeconds, t + windowSeconds] 内的候选; 若有时刻完全相同的, 只取这些.
+     * - 日期错误规则只在 M 端时间窗内没有候选、且 N 端在自身时刻也没有 M 端配对时使用,
+     *   多日归档中另一天的正常录波不会被配进来:
+     *   先视为一端日期跨零点翻转, 找时刻差在 ±1 天 ± windowSeconds 内的候选
+     *   (23:59:58 与次日被记成当日的 00:00:01 也在其中);
+     *   仍没有时视为一端时钟整体错日 (例如日期被重置), 按当天秒数 (距离模 86400) 在同一窗口内查找.
+     * - 按日期错误规则得到的配对 clockRollover = true.
+     *
+     * 输入:
+     * - windowSeconds: 时间窗半宽, 秒, >= 0.
+     *
+     * 输出:
+     * - 配对列表, 排序规则同 pairs().
+     */
+    public List<Pair> tolerantPairs(int windowSeconds) {
+        // 1. 按规范化线路名建立 N 端的两个有序索引: 绝对秒数, 以及当天秒数
+        Map<String, TreeMap<Long, List<RecordingName>>> byTime = new HashMap<>();
+        Map<String, TreeMap<Integer, List<RecordingName>>> byTimeOfDay = new HashMap<>();
+        for (Group g : groups.values()) {
+            for (RecordingName n : g.nEnds) {
+                String line = n.normalizedLineName();
+                byTime.computeIfAbsent(line, k -> new TreeMap<>())
+                        .computeIfAbsent(epochSecond(n), k -> new ArrayList<>(1)).add(n);
+                byTimeOfDay.computeIfAbsent(line, k -> new TreeMap<>())
+                        .computeIfAbsent(n.timestamp.toLocalTime().toSecondOfDay(), k -> new ArrayList<>(1)).add(n);
+            }
+        }
+
+        // 2. 每个 M 端按时间窗查找; 记下已配上的 N 端, 日期错误规则只在两端都没有正常配对的文件之间使用
+        List<Pair> out = new ArrayList<>();
+        Set<RecordingName> pairedN = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<RecordingName> unpairedM = new ArrayList<>();
+        for (Group g : groups.values()) {
+            for (RecordingName m : g.mEnds) {
+                TreeMap<Long, List<RecordingName>> times = byTime.get(m.normalizedLineName());
+                if (times == null) {
+                    continue;
+                }
+                double lengthKm = lineLengthKm(m.path.toAbsolutePath().getParent());
+                long t = epochSecond(m);
+                List<RecordingName> exact = times.get(t);
+                if (exact != null) {
+                    for (RecordingName n : exact) {
+                        out.add(new Pair(m, n, lengthKm, 0L, false));
+                        pairedN.add(n);
+                    }
+                } else if (!addRange(out, null, pairedN, m, lengthKm, times, t, windowSeconds, false)) {
+                    unpairedM.add(m);
+                }
+            }
+        }
+
+        // 3. 日期跨零点翻转: 时刻差在 ±1 天 ± windowSeconds 内
+        Set<RecordingName> rolledN = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<RecordingName> stillUnpairedM = new ArrayList<>();
+        for (RecordingName m : unpairedM) {
+            TreeMap<Long, List<RecordingName>> times = byTime.get(m.normalizedLineName());
+            double lengthKm = lineLengthKm(m.path.toAbsolutePath().getParent());
+            long t = epochSecond(m);
+            boolean late = addRange(out, pairedN, rolledN, m, lengthKm, times, t + DAY_SECONDS, windowSeconds, true);
+            boolean early = addRange(out, pairedN, rolledN, m, lengthKm, times, t - DAY_SECONDS, windowSeconds, true);
+            if (!late && !early) {
+                stillUnpairedM.add(m);
+            }
+        }
+        pairedN.addAll(rolledN);
+
+        // 4. 时钟整体错日: 剩下的 M 端与同样没有配对的 N 端按当天秒数配对
+        for (RecordingName m : stillUnpairedM) {
+            String line = m.normalizedLineName();
+            double lengthKm = lineLengthKm(m.path.toAbsolutePath().getParent());
+            long t = epochSecond(m);
+            TreeMap<Integer, List<RecordingName>> tods = byTimeOfDay.get(line);
+            int tod = m.timestamp.toLocalTime().toSecondOfDay();
+            // 窗口跨零点时拆成两段, 时间差按模 86400 计
+            List<NavigableMap<Integer, List<RecordingName>>> ranges = new ArrayList<>(3);
+            ranges.add(tods.subMap(Math.max(0, tod - windowSeconds), true,
+                    Math.min(DAY_SECONDS - 1, tod + windowSeconds), true));
+            if (tod - windowSeconds < 0) {
+                ranges.add(tods.subMap(DAY_SECONDS + tod - windowSeconds, true, DAY_SECONDS - 1, true));
+            }
+            if (tod + windowSeconds >= DAY_SECONDS) {
+                ranges.add(tods.subMap(0, true, tod + windowSeconds - DAY_SECONDS, true));
+            }
+            for (NavigableMap<Integer, List<RecordingName>> r : ranges) {
+                for (List<RecordingName> ns : r.values()) {
+                    for (RecordingName n : ns) {
+                        if (!pairedN.contains(n)) {
+                            out.add(new Pair(m, n, lengthKm, epochSecond(n) - t, true));
+                        }
+                    }
+                }
+            }
+        }
+        out.sort(Comparator.comparing((Pair p) -> p.m.path).thenComparing(p -> p.n.path));
+        return out;
+    }
+
+    /**
+     * 把 N 端时刻在 [center - windowSeconds, center + windowSeconds] 内的候选与 m 配对.
+     *
+     * 输入:
+     * - skip: 不参与配对的 N 端, 可以为 null.
+     * - added: 配上的 N 端加入此集合.
+     *
+     * 输出:
+     * - 是否至少配上一个.
+     */
+    private static boolean addRange(List<Pair> out, Set<RecordingName> skip, Set<RecordingName> added,
+            RecordingName m, double lengthKm, TreeMap<Long, List<RecordingName>> times, long center,
+            int windowSeconds, boolean rollover) {
+        long t = epochSecond(m);
+        boolean any = false;
+        for (Map.Entry<Long, List<RecordingName>> e
+                : times.subMap(center - windowSeconds, true, center + windowSeconds, true).entrySet()) {
+            for (RecordingName n : e.getValue()) {
+                if (skip == null || !skip.contains(n)) {
+                    out.add(new Pair(m, n, lengthKm, e.getKey() - t, rollover));
+                    added.add(n);
+                    any = true;
+                }
+            }
+        }
+        return any;
+    }
+
+    private static long epochSecond(RecordingName r) {
+        return r.timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /** 文件名不符合命名规则而被忽略的文件数. */
+    public int unparsedCount() {
+        return unparsedCount;
+    }
+
+    /**
+     * 读取目录下 *km.txt 文件名中的线路全长, 结果按目录缓存.
+     *
+     * 输入:
+     * - dir: 目录.
+     *
+     * 输出:
+     * - 线路全长, km; 目录中没有可解析的 *km.txt 时返回 NaN.
+     */
+    public double lineLengthKm(Path dir) {
+        if (dir == null) {
+            return Double.NaN;
+        }
+        return lineLengthByDir.computeIfAbsent(dir, DoubleEndPairIndex::readLineLengthKm);
+    }
+
+    private static double readLineLengthKm(Path dir) {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*km.txt")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                String number = name.substring(0, name.length() - "km.txt".length());
+                try {
+                    return Double.parseDouble(number.trim());
+                } catch (NumberFormatException e) {
+                    // 文件名前缀不是数字, 继续找下一个
+                }
+            }
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+        return Double.NaN;
+    }
+
+    // ----------------- 辅助类型 -----------------
+
+    /**
+     * 一对 M/N 端录波文件.
+     *
+     * 字段含义:
+     * - m, n: M 端和 N 端文件名解析结果, M 端作为双端公式中的 A 端.
+     * - lineLengthKm: 线路全长, km; 未知时为 NaN.
+     * - nameOffsetSeconds: N 端文件名时刻减 M 端文件名时刻, 秒; 精确配对为 0.
+     * - clockRollover: 是否按日期错误规则配对 (两端日期不一致, 疑似一端时钟翻转).
+     */
+    public static final class Pair {
+        public final RecordingName m;
+        public final RecordingName n;
+        public final double lineLengthKm;
+        public final long nameOffsetSeconds;
+        public final boolean clockRollover;
+
+        public Pair(RecordingName m, RecordingName n, double lineLengthKm,
+                long nameOffsetSeconds, boolean clockRollover) {
+            this.m = m;
+            this.n = n;
+            this.lineLengthKm = lineLengthKm;
+            this.nameOffsetSeconds = nameOffsetSeconds;
+            this.clockRollover = clockRollover;
+        }
+
+        @Override
+        public String toString() {
+            String s = String.format(Locale.ROOT, "%s <-> %s (L=%.3f km)", m, n, lineLengthKm);
+            if (clockRollover) {
+                return s + " [日期不一致]";
+            }
+            if (nameOffsetSeconds != 0L) {
+                return s + String.format(Locale.ROOT, " [文件名时刻差 %+d s]", nameOffsetSeconds);
+            }
+            return s;
+        }
+    }
+
+    private static final class GroupKey {
+        final LocalDateTime timestamp;
+        final String lineName;
+
+        GroupKey(LocalDateTime timestamp, String lineName) {
+            this.timestamp = timestamp;
+            this.lineName = lineName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey k = (GroupKey) o;
+            return timestamp.equals(k.timestamp) && lineName.equals(k.lineName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(timestamp, lineName);
+        }
+    }
+
+    private static final class Group {
+        final List<RecordingName> mEnds = new ArrayList<>(1);
+        final List<RecordingName> nEnds = new ArrayList<>(1);
+    }
+}
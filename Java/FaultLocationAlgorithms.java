@@ -38,15 +38,32 @@ public final class FaultLocationAlgorithms {
             double tAms,
             double tBms) {
         double L = lineLengthKm;
-        double v = waveSpeedKmPerMs;
 
-        double dFromA = (L + v * (tAms - tBms)) / 2.0;
+        double dFromA = doubleEndRawDistanceFromA(lineLengthKm, waveSpeedKmPerMs, tAms, tBms);
         dFromA = clamp(dFromA, 0.0, L);
         double dFromB = L - dFromA;
 
         return new DoubleEndResult(dFromA, dFromB);
     }
 
+    /**
+     * 双端行波测距的原始距离, 不做 [0, L] 限制.
+     *
+     * 输入:
+     * - 同 doubleEndByTimes.
+     *
+     * 输出:
+     * - d = (L + v * (tA - tB)) / 2, 单位 km. 结果落在 [0, L] 之外说明两端时间不一致,
+     *   调用方可据此判断时间校正是否合理.
+     */
+    public static double doubleEndRawDistanceFromA(
+            double lineLengthKm,
+            double waveSpeedKmPerMs,
+            double tAms,
+            double tBms) {
+        return (lineLengthKm + waveSpeedKmPerMs * (tAms - tBms)) / 2.0;
+    }
+
     /**
      * 单端行波故障测距.
      *
@@ -0,0 +1,516 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 常驻测距服务.
+ *
+ * 类作用:
+ * - 在本机回环地址上提供 HTTP 接口, JVM 常驻, 解码与分析代码只需预热一次, 之后每个请求只付分析本身的耗时.
+ * - 请求在固定大小的工作线程池上并发执行; 在途请求 (执行中 + 排队) 达到上限时立即返回 503, 不无限排队.
+ * - 每个请求有超时, 超时返回 504, 仍在排队的任务随即取消.
+ * - 按路径请求的录波经 DecodedRecordingCache 缓存, 同一文件重复分析不再解码.
+ *
+ * 接口:
+ * - GET  /analyze?path=<相对数据目录的路径>[&phase=A|B|C][&refine=true][&配置参数...]
+ * - POST /analyze?name=<文件名>[&phase=...]  请求体为完整 .all 文件内容 (不超过 MAX_UPLOAD_BYTES).
+ *   配置参数与 WaveformFaultAnalyzer.Config 字段同名 (samplingIntervalMs, waveSpeedKmPerMs, lineLengthKm,
+ *   firstWaveSigma, secondWaveSigma, minSamplesBetweenWaves), 未给出的取默认配置. 浮点参数须为正数,
+ *   minSamplesBetweenWaves 须为 0 到 MAX_MIN_SAMPLES_BETWEEN_WAVES 之间的整数, 否则返回 400.
+ *   未指定 phase 时采用 ThreePhaseAnalyzer 选出的最佳相.
+ * - GET  /stats   已完成 / 拒绝 / 超时 / 失败请求数, 在途数, 服务端耗时百分位, 缓存命中率.
+ * - GET  /health  返回 ok.
+ *
+ * 使用方式:
+ * - try (FaultLocationService s = new FaultLocationService(root, port, workers, queue, timeoutMs, cacheBytes)) {
+ *       s.warmUp(200);
+ *       s.start();
+ *       ...
+ *   }
+ * - 命令行入口见 FaultLocationServiceRunner.
+ *
+ * 注意:
+ * - 只监听回环地址; path 只能指向数据目录内的文件.
+ * - 分析本身不响应中断, 超时后已开始执行的任务会跑完, 但其结果被丢弃; 跑完之前仍占用在途名额.
+ */
+public final class FaultLocationService implements Closeable {
+
+    /** 默认端口. */
+    public static final int DEFAULT_PORT = 8731;
+
+    /** 上传内容上限, 与 AllFileDecoder 能解析的最大文件一致. */
+    public static final int MAX_UPLOAD_BYTES = 512 * 1024;
+
+    /** minSamplesBetweenWaves 查询参数上限, 远大于任何录波的采样点数. */
+    static final int MAX_MIN_SAMPLES_BETWEEN_WAVES = 10_000_000;
+
+    private final Path dataRoot;
+    private final long timeoutMs;
+    private final HttpServer http;
+    private final ExecutorService httpThreads;
+    private final ExecutorService workers;
+    private final Semaphore admission;
+    private final int maxInFlight;
+    private final DecodedRecordingCache cache;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * 输入:
+     * - dataRoot: 数据目录, path 参数相对于它解析.
+     * - port: 监听端口, 0 表示由系统分配 (见 port()).
+     * - workers: 分析线程数, 必须 >= 1.
+     * - queueCapacity: 工作线程全忙时最多排队的请求数, 必须 >= 0.
+     * - timeoutMs: 单个请求从受理到完成的时限, ms.
+     * - cacheBytes: 解码缓存的三相采样字节数上限, 0 表示不缓存.
+     */
+    public FaultLocationService(Path dataRoot, int port, int workers, int queueCapacity, long timeoutMs,
+            long cacheBytes) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers 必须 >= 1: " + workers);
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity 必须 >= 0: " + queueCapacity);
+        }
+        this.dataRoot = dataRoot.toAbsolutePath().normalize();
+        this.timeoutMs = timeoutMs;
+        this.maxInFlight = workers + queueCapacity;
+        this.admission = new Semaphore(maxInFlight);
+        this.cache = cacheBytes > 0 ? new DecodedRecordingCache(cacheBytes) : null;
+        this.workers = Executors.newFixedThreadPool(workers, new NamedThreadFactory("service-worker-"));
+        // 接收线程在等待结果时阻塞, 数量按在途上限再留几个给拒绝 / 统计请求
+        this.httpThreads = Executors.newFixedThreadPool(maxInFlight + 4, new NamedThreadFactory("service-http-"));
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.setExecutor(httpThreads);
+        http.createContext("/analyze", this::handleAnalyze);
+        http.createContext("/stats", ex -> send(ex, 200, statsJson()));
+        http.createContext("/health", ex -> send(ex, 200, "ok"));
+    }
+
+    /** 开始接受请求. */
+    public void start() {
+        http.start();
+    }
+
+    /** 实际监听端口. */
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * 预热: 在数据目录中的录波上循环执行与请求相同的解码与分析, 直到完成 iterations 次.
+     *
+     * 输出:
+     * - 实际完成的分析次数; 目录中没有可解析的录波时为 0. 单个文件解码或分析失败 (含运行时异常)
+     *   只在第一轮输出到 stderr 并跳过, 不中断预热; 只有列目录失败时抛出 IOException.
+     */
+    public int warmUp(int iterations) throws IOException {
+        List<Path> files = BatchAnalysisEngine.listAllFiles(dataRoot);
+        WaveformFaultAnalyzer.Config cfg = WaveformFaultAnalyzer.Config.defaultConfig();
+        int done = 0;
+        boolean anyOk = true;
+        boolean firstPass = true;
+        while (done < iterations && anyOk) {
+            anyOk = false;
+            for (Path f : files) {
+                if (done >= iterations) {
+                    break;
+                }
+                try {
+                    CurrentData df = AllFileDecoder.decode(f);
+                    ThreePhaseAnalyzer.Result all = ThreePhaseAnalyzer.analyze(df, cfg);
+                    if (all.best() != null) {
+                        WaveformFaultAnalyzer.refineSubSample(df, all.best());
+                    }
+                    done++;
+                    anyOk = true;
+                } catch (IOException | RuntimeException e) {
+                    // 预热时跳过无法解析的文件
+                    if (firstPass) {
+                        System.err.println("预热跳过 " + f + ": " + e);
+                    }
+                }
+            }
+            firstPass = false;
+        }
+        return done;
+    }
+
+    /** 停止接受请求, 等待已受理的请求在超时内结束. */
+    @Override
+    public void close() {
+        http.stop(0);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        httpThreads.shutdownNow();
+    }
+
+    // ----------------- 请求处理 -----------------
+
+    private void handleAnalyze(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        Map<String, String> q;
+        Request req;
+        try {
+            q = parseQuery(ex.getRequestURI().getRawQuery());
+            req = parseRequest(ex, q);
+        } catch (BadRequest e) {
+            failed.incrementAndGet();
+            send(ex, e.status, errorJson(e.getMessage()));
+            return;
+        }
+
+        if (!admission.tryAcquire()) {
+            rejected.incrementAndGet();
+            ex.getResponseHeaders().set("Retry-After", "1");
+            send(ex, 503, errorJson("服务繁忙, 在途请求已达上限 " + maxInFlight));
+            return;
+        }
+        // 名额由先认领者归还: 任务体开始执行时认领, 在任务体退出时归还 (超时 cancel(true) 不会打断分析,
+        // 不能在 done() 里提前归还); 排队中被取消、任务体从未执行时由 done() 认领并归还.
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<String> task = new FutureTask<String>(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return analyze(req, t0);
+            } finally {
+                admission.release();
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (claimed.compareAndSet(false, true)) {
+                    admission.release();
+                }
+            }
+        };
+        try {
+            workers.execute(task);
+        } catch (RuntimeException e) {
+            task.cancel(false);
+            send(ex, 503, errorJson("服务正在关闭"));
+            return;
+        }
+
+        String body;
+        try {
+            body = task.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            task.cancel(true);
+            timedOut.incrementAndGet();
+            send(ex, 504, errorJson("分析超时 (" + timeoutMs + " ms)"));
+            return;
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            send(ex, 503, errorJson("服务正在关闭"));
+            return;
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            Throwable cause = e.getCause();
+            // IOException 来自解码: 文件格式异常, 属于请求内容问题
+            send(ex, cause instanceof IOException ? 422 : 500, errorJson(String.valueOf(cause.getMessage())));
+            return;
+        }
+        latency.record(System.nanoTime() - t0);
+        completed.incrementAndGet();
+        send(ex, 200, body);
+    }
+
+    private Request parseRequest(HttpExchange ex, Map<String, String> q) throws IOException, BadRequest {
+        String method = ex.getRequestMethod();
+        Request r = new Request();
+        if ("POST".equalsIgnoreCase(method)) {
+            r.upload = readBody(ex.getRequestBody());
+            r.name = q.getOrDefault("name", "upload.all");
+        } else if ("GET".equalsIgnoreCase(method)) {
+            String p = q.get("path");
+            if (p == null || p.isEmpty()) {
+                throw new BadRequest(400, "缺少 path 参数");
+            }
+            Path file;
+            try {
+                file = dataRoot.resolve(p).normalize();
+            } catch (InvalidPathException e) {
+                throw new BadRequest(400, "path 不是合法路径: " + p);
+            }
+            if (!file.startsWith(dataRoot)) {
+                throw new BadRequest(403, "path 不在数据目录内: " + p);
+            }
+            if (!Files.isRegularFile(file)) {
+                throw new BadRequest(404, "文件不存在: " + p);
+            }
+            r.path = file;
+            r.name = file.getFileName().toString();
+        } else {
+            throw new BadRequest(405, "只支持 GET / POST");
+        }
+
+        String phase = q.get("phase");
+        if (phase != null && !phase.isEmpty()) {
+            try {
+                r.phase = WaveformFaultAnalyzer.Phase.valueOf(phase.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequest(400, "phase 只能是 A/B/C: " + phase);
+            }
+        }
+        r.refine = "true".equalsIgnoreCase(q.get("refine"));
+        r.cfg = parseConfig(q);
+        return r;
+    }
+
+    private static WaveformFaultAnalyzer.Config parseConfig(Map<String, String> q) throws BadRequest {
+        WaveformFaultAnalyzer.Config d = WaveformFaultAnalyzer.Config.defaultConfig();
+        return new WaveformFaultAnalyzer.Config(
+                doubleParam(q, "samplingIntervalMs", d.samplingIntervalMs),
+                doubleParam(q, "waveSpeedKmPerMs", d.waveSpeedKmPerMs),
+                doubleParam(q, "lineLengthKm", d.lineLengthKm),
+                doubleParam(q, "firstWaveSigma", d.firstWaveSigma),
+                doubleParam(q, "secondWaveSigma", d.secondWaveSigma),
+                intParam(q, "minSamplesBetweenWaves", d.minSamplesBetweenWaves, 0, MAX_MIN_SAMPLES_BETWEEN_WAVES));
+    }
+
+    private static int intParam(Map<String, String> q, String key, int def, int min, int max) throws BadRequest {
+        String v = q.get(key);
+        if (v == null || v.isEmpty()) {
+            return def;
+        }
+        try {
+            double d = Double.parseDouble(v);
+            // NaN 与无穷大不满足区间比较; 先判区间再转 int, 避免 (int) 截断成合法值
+            if (!(d >= min && d <= max) || d != Math.rint(d)) {
+                throw new NumberFormatException();
+            }
+            return (int) d;
+        } catch (NumberFormatException e) {
+            throw new BadRequest(400, key + " 必须是 " + min + " 到 " + max + " 之间的整数: " + v);
+        }
+    }
+
+    private static double doubleParam(Map<String, String> q, String key, double def) throws BadRequest {
+        String v = q.get(key);
+        if (v == null || v.isEmpty()) {
+            return def;
+        }
+        try {
+            double d = Double.parseDouble(v);
+            if (Double.isNaN(d) || Double.isInfinite(d) || d <= 0) {
+                throw new NumberFormatException();
+            }
+            return d;
+        } catch (NumberFormatException e) {
+            throw new BadRequest(400, key + " 必须是正数: " + v);
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException, BadRequest {
+        byte[] body = in.readNBytes(MAX_UPLOAD_BYTES + 1);
+        if (body.length > MAX_UPLOAD_BYTES) {
+            throw new BadRequest(413, "上传内容超过 " + MAX_UPLOAD_BYTES + " 字节");
+        }
+        if (body.length == 0) {
+            throw new BadRequest(400, "请求体为空");
+        }
+        return body;
+    }
+
+    /** 在工作线程上执行: 解码、三相分析并生成响应. */
+    private String analyze(Request r, long t0) throws IOException {
+        CurrentData df;
+        if (r.upload != null) {
+            df = AllFileDecoder.decode(r.upload, r.name);
+        } else if (cache != null) {
+            df = cache.get(r.path);
+        } else {
+            df = AllFileDecoder.decode(r.path);
+        }
+        ThreePhaseAnalyzer.Result all = ThreePhaseAnalyzer.analyze(df, r.cfg);
+        WaveformFaultAnalyzer.Phase phase = r.phase != null ? r.phase : all.bestPhase;
+        WaveformFaultAnalyzer.Result res = all.result(phase);
+        WaveformFaultAnalyzer.Result refined = r.refine && res != null
+                ? WaveformFaultAnalyzer.refineSubSample(df, res) : null;
+        return resultJson(r.name, df, all, phase, res, refined, System.nanoTime() - t0);
+    }
+
+    // ----------------- 响应 -----------------
+
+    private static String resultJson(String name, CurrentData df, ThreePhaseAnalyzer.Result all,
+            WaveformFaultAnalyzer.Phase phase, WaveformFaultAnalyzer.Result res,
+            WaveformFaultAnalyzer.Result refined, long elapsedNanos) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"file\":");
+        ResultWriters.jsonString(sb, name);
+        sb.append(",\"station\":").append(df.station)
+                .append(",\"line\":").append(df.line)
+                .append(",\"datetime\":\"").append(String.format(Locale.ROOT, "%04d-%02d-%02dT%02d:%02d:%02d",
+                        df.year, df.month, df.day, df.hour, df.minute, df.second)).append('"')
+                .append(",\"dataLength\":").append(df.dataLength)
+                .append(",\"bestPhase\":\"").append(all.bestPhase)
+                .append("\",\"phase\":\"").append(phase)
+                .append("\",\"result\":");
+        appendResult(sb, res);
+        if (refined != null) {
+            sb.append(",\"refined\":");
+            appendResult(sb, refined);
+        }
+        sb.append(",\"phases\":{");
+        WaveformFaultAnalyzer.Phase[] phases = WaveformFaultAnalyzer.Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            WaveformFaultAnalyzer.Result pr = all.result(phases[i]);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(phases[i]).append("\":{\"peak\":");
+            ResultWriters.jsonDouble(sb, all.peakAmplitude(phases[i])).append(",\"noiseStd\":");
+            ResultWriters.jsonDouble(sb, all.noiseStd(phases[i])).append(",\"distanceKm\":");
+            ResultWriters.jsonDouble(sb, pr == null ? Double.NaN : pr.distanceFromMeasuredEndKm).append('}');
+        }
+        sb.append("},\"elapsedUs\":").append(elapsedNanos / 1000).append('}');
+        return sb.toString();
+    }
+
+    private static void appendResult(StringBuilder sb, WaveformFaultAnalyzer.Result r) {
+        if (r == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append("{\"t1Index\":").append(r.firstWaveIndex)
+                .append(",\"t2Index\":").append(r.secondWaveIndex)
+                .append(",\"t1Ms\":");
+        ResultWriters.jsonDouble(sb, r.firstWaveTimeMs).append(",\"t2Ms\":");
+        ResultWriters.jsonDouble(sb, r.secondWaveTimeMs).append(",\"distanceKm\":");
+        ResultWriters.jsonDouble(sb, r.distanceFromMeasuredEndKm).append('}');
+    }
+
+    private String statsJson() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"completed\":").append(completed.get())
+                .append(",\"rejected\":").append(rejected.get())
+                .append(",\"timedOut\":").append(timedOut.get())
+                .append(",\"failed\":").append(failed.get())
+                .append(",\"inFlight\":").append(maxInFlight - admission.availablePermits())
+                .append(",\"maxInFlight\":").append(maxInFlight)
+                .append(",\"latencyUs\":{\"p50\":").append(latency.percentile(50) / 1000)
+                .append(",\"p90\":").append(latency.percentile(90) / 1000)
+                .append(",\"p99\":").append(latency.percentile(99) / 1000)
+                .append(",\"max\":").append(latency.max() / 1000)
+                .append('}');
+        if (cache != null) {
+            DecodedRecordingCache.Stats s = cache.stats();
+            sb.append(",\"cache\":{\"hits\":").append(s.hits)
+                    .append(",\"misses\":").append(s.misses)
+                    .append(",\"entries\":").append(s.entries)
+                    .append(",\"sampleBytes\":").append(s.sampleBytes)
+                    .append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String errorJson(String message) {
+        StringBuilder sb = new StringBuilder(64).append("{\"error\":");
+        return ResultWriters.jsonString(sb, message).append('}').toString();
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type",
+                body.startsWith("{") ? "application/json; charset=utf-8" : "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String raw) throws BadRequest {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return q;
+        }
+        try {
+            for (String kv : raw.split("&")) {
+                int eq = kv.indexOf('=');
+                String k = URLDecoder.decode(eq < 0 ? kv : kv.substring(0, eq), StandardCharsets.UTF_8);
+                String v = eq < 0 ? "" : URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8);
+                q.put(k, v);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest(400, "查询参数编码错误");
+        }
+        return q;
+    }
+
+    /** 解析后的请求; path 与 upload 二者只有一个非 null. */
+    private static final class Request {
+        Path path;
+        byte[] upload;
+        String name;
+        WaveformFaultAnalyzer.Phase phase;
+        boolean refine;
+        WaveformFaultAnalyzer.Config cfg;
+    }
+
+    /** 请求参数错误, 直接以 status 返回. */
+    private static final class BadRequest extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        BadRequest(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger seq = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 以常驻服务方式运行测距.
+ *
+ * 使用方法（在项目根目录执行）：
+ * java -cp src FaultLocationServiceRunner src\\data
+ *
+ * 第一个参数为数据目录, 其后为可选的 键=值 参数：
+ *   port=N        监听端口 (默认 8731, 只监听 127.0.0.1)
+ *   workers=N     分析线程数 (默认为 CPU 核数)
+ *   queue=N       工作线程全忙时最多排队的请求数 (默认 workers * 4), 超出返回 503
+ *   timeout=N     单个请求时限, ms (默认 2000), 超时返回 504
+ *   cacheMB=N     解码缓存上限, MB (默认 256, 0 表示不缓存)
+ *   warmup=N      启动前在数据目录的录波上预热分析的次数 (默认 200)
+ * 例如：
+ * java -cp src FaultLocationServiceRunner d:\\archive port=9000 workers=8 timeout=500
+ *
+ * 请求示例：
+ * curl "http://127.0.0.1:8731/analyze?path=20160505101341-极1-M818.all&phase=A&refine=true"
+ * curl --data-binary @x.all "http://127.0.0.1:8731/analyze?name=x.all"
+ * curl http://127.0.0.1:8731/stats
+ *
+ * Ctrl+C 结束, 结束前等待已受理的请求完成.
+ */
+public final class FaultLocationServiceRunner {
+
+    private FaultLocationServiceRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+
+        if (args.length < 1) {
+            System.err.println("用法: FaultLocationServiceRunner <数据目录> [port=N] [workers=N] [queue=N] "
+                    + "[timeout=ms] [cacheMB=N] [warmup=N]");
+            return;
+        }
+        Path root = Paths.get(args[0]);
+        if (!Files.isDirectory(root)) {
+            System.err.println("目录不存在: " + root.toAbsolutePath());
+            return;
+        }
+
+        int port = FaultLocationService.DEFAULT_PORT;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = -1;
+        long timeoutMs = 2000;
+        long cacheMb = 256;
+        int warmup = 200;
+        for (int i = 1; i < args.length; i++) {
+            String a = args[i];
+            int eq = a.indexOf('=');
+            if (eq < 0) {
+                System.err.println("忽略无法识别的参数: " + a);
+                continue;
+            }
+            String key = a.substring(0, eq).toLowerCase(Locale.ROOT);
+            String value = a.substring(eq + 1);
+            switch (key) {
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "workers":
+                    workers = Integer.parseInt(value);
+                    break;
+                case "queue":
+                    queue = Integer.parseInt(value);
+                    break;
+                case "timeout":
+                    timeoutMs = Long.parseLong(value);
+                    break;
+                case "cachemb":
+                    cacheMb = Long.parseLong(value);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("忽略无法识别的参数: " + a);
+            }
+        }
+        if (queue < 0) {
+            queue = workers * 4;
+        }
+
+        FaultLocationService service = new FaultLocationService(root, port, workers, queue, timeoutMs,
+                cacheMb << 20);
+        if (warmup > 0) {
+            long t0 = System.nanoTime();
+            int n = service.warmUp(warmup);
+            System.out.printf(Locale.ROOT, "预热完成: %d 次分析, 耗时 %.1f ms%n", n, (System.nanoTime() - t0) / 1e6);
+        }
+        service.start();
+        System.out.printf(Locale.ROOT, "测距服务已启动: http://127.0.0.1:%d/analyze, 数据目录 %s, "
+                        + "工作线程 %d, 排队上限 %d, 超时 %d ms%n",
+                service.port(), root.toAbsolutePath(), workers, queue, timeoutMs);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.close();
+            stopped.countDown();
+        }, "service-shutdown"));
+        stopped.await();
+    }
+}
@@ -0,0 +1,605 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * .all 文件头部的持久化二进制索引.
+ *
+ * 类作用:
+ * - 只读取每个文件开头 80 字节的头部 (AllFileDecoder.readHeader), 把站号、线路号、录波时刻、
+ *   GPS / 断路器标志、启动方式与启动值写入一个定长记录的索引文件, 查询时不再打开任何 .all 文件.
+ * - 索引文件以内存映射方式打开, 打开时只校验文件头, 不逐条解析记录, 因此启动耗时与归档规模无关.
+ * - update 按 (相对路径, 文件大小, 修改时间) 增量更新: 未变化的文件不再读取, 新文件追加记录,
+ *   被修改的文件原位覆盖, 已删除的文件标记为删除.
+ *
+ * 索引文件格式 (小端序):
+ * - 文件头 16 字节: 魔数 "ALLHIDX1" (8 字节), 格式版本 (int), 记录长度 (int).
+ * - 之后为定长 RECORD_SIZE 字节的记录, 第 i 条记录位于 HEADER_SIZE + i * RECORD_SIZE;
+ *   末尾不足一条的残缺记录 (写入中途中断) 在打开时被忽略.
+ * - 记录内的路径为相对归档根目录的路径, 以 '/' 分隔, UTF-8 编码, 最长 PATH_BYTES 字节.
+ *
+ * 使用方式:
+ * - HeaderIndex.update(archiveRoot, indexFile) 建立或增量更新索引 (同一索引文件同一时刻只能有一个写入方).
+ * - HeaderIndex.open(indexFile).query(Query.all().line(3).between(from, to).breakFlagSet()) 查询.
+ */
+public final class HeaderIndex {
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 384;
+    static final int FORMAT_VERSION = 1;
+    private static final byte[] MAGIC = "ALLHIDX1".getBytes(StandardCharsets.US_ASCII);
+
+    // 记录内各字段的字节偏移
+    private static final int OFF_FILE_SIZE = 0;
+    private static final int OFF_MODIFIED = 8;
+    private static final int OFF_EPOCH_SECOND = 16;
+    private static final int OFF_MICRO_SECOND = 24;
+    private static final int OFF_GPS_FREQUENCY = 32;
+    private static final int OFF_STARTUP_VALUE1 = 40;
+    private static final int OFF_STARTUP_VALUE2 = 48;
+    private static final int OFF_STARTUP_VALUE3 = 56;
+    private static final int OFF_STATION = 64;
+    private static final int OFF_LINE = 68;
+    private static final int OFF_GPS_FLAG = 72;
+    private static final int OFF_BREAK_FLAG = 76;
+    private static final int OFF_STARTUP_TYPE = 80;
+    private static final int OFF_DATA_LENGTH = 84;
+    private static final int OFF_FLAGS = 88;
+    private static final int OFF_PATH_LENGTH = 92;
+    private static final int OFF_PATH = 94;
+    static final int PATH_BYTES = RECORD_SIZE - OFF_PATH;
+
+    /** 记录标志位: 文件已从归档中删除. */
+    static final int FLAG_DELETED = 1;
+    /** 记录标志位: 头部无法解析, 其余字段无意义. */
+    static final int FLAG_UNREADABLE = 1 << 1;
+    /** 记录标志位: 头部日期时间非法, epochSecond 无意义. */
+    static final int FLAG_BAD_TIME = 1 << 2;
+
+    private final ByteBuffer records;
+    private final int count;
+
+    private HeaderIndex(ByteBuffer records, int count) {
+        this.records = records;
+        this.count = count;
+    }
+
+    /**
+     * 以只读内存映射方式打开索引文件.
+     *
+     * 输入:
+     * - indexFile: update 生成的索引文件.
+     *
+     * 输出:
+     * - 索引视图; 打开后对索引文件的更新不会反映到该视图中. 文件格式不符时抛出 IOException.
+     */
+    public static HeaderIndex open(Path indexFile) throws IOException {
+        try (FileChannel ch = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long size = ch.size();
+            checkFileHeader(ch, size, indexFile);
+            long count = (size - HEADER_SIZE) / RECORD_SIZE;
+            if (count > Integer.MAX_VALUE / RECORD_SIZE) {
+                throw new IOException("索引文件过大: " + indexFile);
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, count * RECORD_SIZE);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            return new HeaderIndex(map, (int) count);
+        }
+    }
+
+    /** 记录总数, 包括已删除与头部无法解析的记录. */
+    public int size() {
+        return count;
+    }
+
+    /** 第 i 条记录. */
+    public Entry entry(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("记录序号越界: " + i + ", 共 " + count + " 条");
+        }
+        return new Entry(records, i * RECORD_SIZE);
+    }
+
+    /**
+     * 按条件筛选记录, 只读取索引本身.
+     *
+     * 输入:
+     * - q: 查询条件; 已删除、头部无法解析的记录总是被排除, 指定时间范围时头部时间非法的记录也被排除.
+     *
+     * 输出:
+     * - 满足条件的记录, 按索引中的顺序排列.
+     */
+    public List<Entry> query(Query q) {
+        List<Entry> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int base = i * RECORD_SIZE;
+            if (q.matches(records, base)) {
+                out.add(new Entry(records, base));
+            }
+        }
+        return out;
+    }
+
+    // ----------------- 建立与增量更新 -----------------
+
+    /**
+     * 扫描归档目录, 建立或增量更新索引文件.
+     *
+     * 输入:
+     * - archiveRoot: 归档根目录, 递归查找 .all 文件.
+     * - indexFile: 索引文件, 不存在时新建; 格式不符时抛出 IOException 而不是覆盖.
+     *
+     * 输出:
+     * - 本次更新的统计.
+     */
+    public static UpdateResult update(Path archiveRoot, Path indexFile) throws IOException {
+        Path root = archiveRoot.toAbsolutePath().normalize();
+        List<Path> files = BatchAnalysisEngine.listAllFiles(root);
+        int scanned = 0;
+        int added = 0;
+        int updated = 0;
+        int unchanged = 0;
+        int removed = 0;
+        int unreadable = 0;
+        int skipped = 0;
+        int count;
+
+        try (FileChannel ch = FileChannel.open(indexFile,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long size = ch.size();
+            if (size == 0L) {
+                writeFileHeader(ch);
+                size = HEADER_SIZE;
+            } else {
+                checkFileHeader(ch, size, indexFile);
+            }
+            count = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+            Map<String, Slot> slots = loadSlots(ch, count);
+
+            ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (Path file : files) {
+                scanned++;
+                String rel = relativeName(root, file);
+                byte[] relBytes = rel.getBytes(StandardCharsets.UTF_8);
+                if (relBytes.length > PATH_BYTES) {
+                    skipped++;
+                    continue;
+                }
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                long modified = attrs.lastModifiedTime().toMillis();
+                Slot slot = slots.remove(rel);
+                if (slot != null && (slot.flags & FLAG_DELETED) == 0
+                        && slot.fileSize == attrs.size() && slot.modified == modified) {
+                    unchanged++;
+                    continue;
+                }
+
+                int flags = fillRecord(rec, file, attrs.size(), modified, relBytes);
+                if ((flags & FLAG_UNREADABLE) != 0) {
+                    unreadable++;
+                }
+                int index;
+                if (slot != null) {
+                    index = slot.index;
+                    updated++;
+                } else {
+                    index = count++;
+                    added++;
+                }
+                writeFully(ch, rec, recordPosition(index));
+            }
+
+            // 剩下未出现的路径对应的文件已被删除
+            ByteBuffer flagBuf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for (Slot slot : slots.values()) {
+                if ((slot.flags & FLAG_DELETED) != 0) {
+                    continue;
+                }
+                flagBuf.clear();
+                flagBuf.putInt(0, slot.flags | FLAG_DELETED);
+                writeFully(ch, flagBuf, recordPosition(slot.index) + OFF_FLAGS);
+                removed++;
+            }
+            ch.force(false);
+        }
+        return new UpdateResult(scanned, added, updated, unchanged, removed, unreadable, skipped, count);
+    }
+
+    /** 读取现有记录的路径、大小、修改时间与标志, 按相对路径索引. */
+    private static Map<String, Slot> loadSlots(FileChannel ch, int count) throws IOException {
+        Map<String, Slot> slots = new HashMap<>(Math.max(16, count * 2));
+        if (count == 0) {
+            return slots;
+        }
+        MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * RECORD_SIZE);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            int base = i * RECORD_SIZE;
+            Slot s = new Slot(i, map.getLong(base + OFF_FILE_SIZE), map.getLong(base + OFF_MODIFIED),
+                    map.getInt(base + OFF_FLAGS));
+            slots.put(readPath(map, base), s);
+        }
+        return slots;
+    }
+
+    /**
+     * 读取文件头部并填充一条记录 (rec 的位置与界限被重置为整条记录).
+     *
+     * 输出:
+     * - 记录标志位.
+     */
+    private static int fillRecord(ByteBuffer rec, Path file, long fileSize, long modified, byte[] relBytes) {
+        rec.clear();
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            rec.putLong(i, 0L);
+        }
+        int flags = 0;
+        RecordingHeader h = null;
+        try {
+            h = AllFileDecoder.readHeader(file);
+        } catch (IOException e) {
+            // 头部损坏的文件同样入索引, 避免每次更新都重复读取
+            flags |= FLAG_UNREADABLE;
+        }
+        if (h != null) {
+            try {
+                rec.putLong(OFF_EPOCH_SECOND, h.epochSecond());
+            } catch (DateTimeException e) {
+                flags |= FLAG_BAD_TIME;
+            }
+            rec.putDouble(OFF_MICRO_SECOND, parseDoubleOrNaN(h.microSecond));
+            rec.putDouble(OFF_GPS_FREQUENCY, parseDoubleOrNaN(h.gpsFrequency));
+            rec.putDouble(OFF_STARTUP_VALUE1, h.startupValue1);
+            rec.putDouble(OFF_STARTUP_VALUE2, h.startupValue2);
+            rec.putDouble(OFF_STARTUP_VALUE3, h.startupValue3);
+            rec.putInt(OFF_STATION, h.station);
+            rec.putInt(OFF_LINE, h.line);
+            rec.putInt(OFF_GPS_FLAG, h.gpsFlag);
+            rec.putInt(OFF_BREAK_FLAG, h.breakFlag);
+            rec.putInt(OFF_STARTUP_TYPE, h.startupType);
+            rec.putInt(OFF_DATA_LENGTH, h.dataLength);
+        }
+        rec.putLong(OFF_FILE_SIZE, fileSize);
+        rec.putLong(OFF_MODIFIED, modified);
+        rec.putInt(OFF_FLAGS, flags);
+        rec.putShort(OFF_PATH_LENGTH, (short) relBytes.length);
+        rec.position(OFF_PATH);
+        rec.put(relBytes);
+        rec.clear();
+        return flags;
+    }
+
+    private static double parseDoubleOrNaN(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String relativeName(Path root, Path file) {
+        Path rel = root.relativize(file.toAbsolutePath().normalize());
+        StringBuilder sb = new StringBuilder();
+        for (Path part : rel) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    private static long recordPosition(int index) {
+        return HEADER_SIZE + (long) index * RECORD_SIZE;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        buf.rewind();
+        while (buf.hasRemaining()) {
+            position += ch.write(buf, position);
+        }
+    }
+
+    private static void writeFileHeader(FileChannel ch) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        head.put(MAGIC).putInt(FORMAT_VERSION).putInt(RECORD_SIZE);
+        writeFully(ch, head, 0L);
+    }
+
+    private static void checkFileHeader(FileChannel ch, long size, Path indexFile) throws IOException {
+        if (size < HEADER_SIZE) {
+            throw new IOException("不是头部索引文件: " + indexFile);
+        }
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (head.hasRemaining()) {
+            if (ch.read(head, head.position()) < 0) {
+                throw new IOException("不是头部索引文件: " + indexFile);
+            }
+        }
+        byte[] magic = new byte[MAGIC.length];
+        head.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("不是头部索引文件: " + indexFile);
+        }
+        int version = head.getInt(8);
+        int recordSize = head.getInt(12);
+        if (version != FORMAT_VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("索引文件格式版本不符: version=" + version + ", recordSize=" + recordSize
+                    + ", 文件=" + indexFile);
+        }
+    }
+
+    private static String readPath(ByteBuffer buf, int base) {
+        int len = Math.min(buf.getShort(base + OFF_PATH_LENGTH) & 0xFFFF, PATH_BYTES);
+        byte[] bytes = new byte[len];
+        buf.get(base + OFF_PATH, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ----------------- 辅助类型 -----------------
+
+    private static final class Slot {
+        final int index;
+        final long fileSize;
+        final long modified;
+        final int flags;
+
+        Slot(int index, long fileSize, long modified, int flags) {
+            this.index = index;
+            this.fileSize = fileSize;
+            this.modified = modified;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * 索引中的一条记录, 字段按需从映射区读取.
+     *
+     * 字段含义与 RecordingHeader 相同; microSecond / gpsFrequency 无法解析为数字时为 NaN.
+     */
+    public static final class Entry {
+        private final ByteBuffer buf;
+        private final int base;
+
+        Entry(ByteBuffer buf, int base) {
+            this.buf = buf;
+            this.base = base;
+        }
+
+        /** 相对归档根目录的路径, 以 '/' 分隔. */
+        public String relativePath() {
+            return readPath(buf, base);
+        }
+
+        /** 在给定归档根目录下解析出文件路径. */
+        public Path resolve(Path archiveRoot) {
+            Path p = archiveRoot;
+            for (String part : relativePath().split("/")) {
+                p = p.resolve(part);
+            }
+            return p;
+        }
+
+        public long fileSize() {
+            return buf.getLong(base + OFF_FILE_SIZE);
+        }
+
+        /** 建立索引时的文件修改时间, 毫秒. */
+        public long lastModifiedMillis() {
+            return buf.getLong(base + OFF_MODIFIED);
+        }
+
+        public boolean isDeleted() {
+            return (flags() & FLAG_DELETED) != 0;
+        }
+
+        public boolean isReadable() {
+            return (flags() & FLAG_UNREADABLE) == 0;
+        }
+
+        public boolean hasValidTime() {
+            return (flags() & (FLAG_UNREADABLE | FLAG_BAD_TIME)) == 0;
+        }
+
+        /** 头部日期时间 (到整秒); hasValidTime() 为 false 时返回 null. */
+        public LocalDateTime dateTime() {
+            return hasValidTime() ? LocalDateTime.ofEpochSecond(epochSecond(), 0, ZoneOffset.UTC) : null;
+        }
+
+        /** 头部日期时间按 UTC 计算的秒数, 与 RecordingHeader.epochSecond() 一致. */
+        public long epochSecond() {
+            return buf.getLong(base + OFF_EPOCH_SECOND);
+        }
+
+        public double microSecond() {
+            return buf.getDouble(base + OFF_MICRO_SECOND);
+        }
+
+        public double gpsFrequency() {
+            return buf.getDouble(base + OFF_GPS_FREQUENCY);
+        }
+
+        public int station() {
+            return buf.getInt(base + OFF_STATION);
+        }
+
+        public int line() {
+            return buf.getInt(base + OFF_LINE);
+        }
+
+        public int gpsFlag() {
+            return buf.getInt(base + OFF_GPS_FLAG);
+        }
+
+        public int breakFlag() {
+            return buf.getInt(base + OFF_BREAK_FLAG);
+        }
+
+        public int startupType() {
+            return buf.getInt(base + OFF_STARTUP_TYPE);
+        }
+
+        public double startupValue1() {
+            return buf.getDouble(base + OFF_STARTUP_VALUE1);
+        }
+
+        public double startupValue2() {
+            return buf.getDouble(base + OFF_STARTUP_VALUE2);
+        }
+
+        public double startupValue3() {
+            return buf.getDouble(base + OFF_STARTUP_VALUE3);
+        }
+
+        public int dataLength() {
+            return buf.getInt(base + OFF_DATA_LENGTH);
+        }
+
+        private int flags() {
+            return buf.getInt(base + OFF_FLAGS);
+        }
+    }
+
+    /**
+     * 查询条件, 不可变; 每个方法返回追加了一个条件的新对象, 各条件之间为 "且" 关系.
+     *
+     * 使用方式:
+     * - Query.all().line(3).between(from, to).breakFlagSet()
+     */
+    public static final class Query {
+        private static final int ANY = Integer.MIN_VALUE;
+
+        private final int station;
+        private final int line;
+        private final int startupType;
+        private final int gpsFlag;
+        private final boolean breakFlagSet;
+        private final long fromEpochSecond;
+        private final long toEpochSecond;
+
+        private Query(int station, int line, int startupType, int gpsFlag, boolean breakFlagSet,
+                long fromEpochSecond, long toEpochSecond) {
+            this.station = station;
+            this.line = line;
+            this.startupType = startupType;
+            this.gpsFlag = gpsFlag;
+            this.breakFlagSet = breakFlagSet;
+            this.fromEpochSecond = fromEpochSecond;
+            this.toEpochSecond = toEpochSecond;
+        }
+
+        /** 不带条件, 匹配全部有效记录. */
+        public static Query all() {
+            return new Query(ANY, ANY, ANY, ANY, false, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        public Query station(int station) {
+            return new Query(station, line, startupType, gpsFlag, breakFlagSet, fromEpochSecond, toEpochSecond);
+        }
+
+        public Query line(int line) {
+            return new Query(station, line, startupType, gpsFlag, breakFlagSet, fromEpochSecond, toEpochSecond);
+        }
+
+        public Query startupType(int startupType) {
+            return new Query(station, line, startupType, gpsFlag, breakFlagSet, fromEpochSecond, toEpochSecond);
+        }
+
+        public Query gpsFlag(int gpsFlag) {
+            return new Query(station, line, startupType, gpsFlag, breakFlagSet, fromEpochSecond, toEpochSecond);
+        }
+
+        /** 只保留 breakFlag != 0 的记录. */
+        public Query breakFlagSet() {
+            return new Query(station, line, startupType, gpsFlag, true, fromEpochSecond, toEpochSecond);
+        }
+
+        /**
+         * 录波时刻在 [from, to] 之间 (含两端); 任一端为 null 表示该端不限.
+         */
+        public Query between(LocalDateTime from, LocalDateTime to) {
+            long lo = from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC);
+            long hi = to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC);
+            return new Query(station, line, startupType, gpsFlag, breakFlagSet, lo, hi);
+        }
+
+        boolean matches(ByteBuffer buf, int base) {
+            int flags = buf.getInt(base + OFF_FLAGS);
+            if ((flags & (FLAG_DELETED | FLAG_UNREADABLE)) != 0) {
+                return false;
+            }
+            if (station != ANY && buf.getInt(base + OFF_STATION) != station) {
+                return false;
+            }
+            if (line != ANY && buf.getInt(base + OFF_LINE) != line) {
+                return false;
+            }
+            if (startupType != ANY && buf.getInt(base + OFF_STARTUP_TYPE) != startupType) {
+                return false;
+            }
+            if (gpsFlag != ANY && buf.getInt(base + OFF_GPS_FLAG) != gpsFlag) {
+                return false;
+            }
+            if (breakFlagSet && buf.getInt(base + OFF_BREAK_FLAG) == 0) {
+                return false;
+            }
+            if (fromEpochSecond != Long.MIN_VALUE || toEpochSecond != Long.MAX_VALUE) {
+                if ((flags & FLAG_BAD_TIME) != 0) {
+                    return false;
+                }
+                long t = buf.getLong(base + OFF_EPOCH_SECOND);
+                return t >= fromEpochSecond && t <= toEpochSecond;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * update 的统计结果.
+     *
+     * 字段含义:
+     * - scanned: 归档中找到的 .all 文件数.
+     * - added / updated / unchanged: 新增、因大小或修改时间变化而重写、未变化而跳过的文件数.
+     * - removed: 本次新标记为删除的记录数.
+     * - unreadable: 本次写入的记录中头部无法解析的个数.
+     * - skipped: 相对路径超过 PATH_BYTES 字节而未入索引的文件数.
+     * - records: 更新后索引中的记录总数.
+     */
+    public static final class UpdateResult {
+        public final int scanned;
+        public final int added;
+        public final int updated;
+        public final int unchanged;
+        public final int removed;
+        public final int unreadable;
+        public final int skipped;
+        public final int records;
+
+        UpdateResult(int scanned, int added, int updated, int unchanged, int removed, int unreadable,
+                int skipped, int records) {
+            this.scanned = scanned;
+            this.added = added;
+            this.updated = updated;
+            this.unchanged = unchanged;
+            this.removed = removed;
+            this.unreadable = unreadable;
+            this.skipped = skipped;
+            this.records = records;
+        }
+    }
+}
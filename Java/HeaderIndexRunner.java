@@ -0,0 +1,96 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 建立 / 更新头部索引并按条件查询录波文件.
+ *
+ * 使用方法（在项目根目录执行）：
+ * java -cp src HeaderIndexRunner src\\data headers.idx
+ *
+ * 第一个参数为归档目录, 第二个参数为索引文件 (默认为当前目录下的 headers.idx)。
+ * 每次运行先增量更新索引, 再按其后的条件查询, 条件之间为 "且" 关系：
+ *   station=N     站号
+ *   line=N        线路号
+ *   startup=N     启动方式
+ *   from=日期     录波日期不早于该日 (yyyy-MM-dd)
+ *   to=日期       录波日期不晚于该日 (yyyy-MM-dd)
+ *   break         只保留跳闸标志非 0 的录波
+ * 例如：
+ * java -cp src HeaderIndexRunner d:\\archive headers.idx line=3 from=2016-05-01 to=2016-05-31 break
+ *
+ * 只查询而不更新索引时, 把归档目录写为 "-"。
+ */
+public final class HeaderIndexRunner {
+
+    private HeaderIndexRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+
+        if (args.length < 1) {
+            System.err.println("用法: HeaderIndexRunner <归档目录|-> [索引文件] [条件...]");
+            return;
+        }
+        Path indexFile = Paths.get(args.length > 1 ? args[1] : "headers.idx");
+
+        if (!"-".equals(args[0])) {
+            Path root = Paths.get(args[0]);
+            if (!Files.isDirectory(root)) {
+                System.err.println("目录不存在: " + root.toAbsolutePath());
+                return;
+            }
+            long t0 = System.nanoTime();
+            HeaderIndex.UpdateResult u = HeaderIndex.update(root, indexFile);
+            System.out.printf(Locale.ROOT,
+                    "更新索引 %s: 文件 %d, 新增 %d, 重写 %d, 未变 %d, 删除 %d, 头部异常 %d, 路径过长 %d, 记录 %d, 耗时 %.1f ms%n",
+                    indexFile, u.scanned, u.added, u.updated, u.unchanged, u.removed, u.unreadable, u.skipped,
+                    u.records, (System.nanoTime() - t0) / 1e6);
+        }
+
+        HeaderIndex.Query q = HeaderIndex.Query.all();
+        LocalDate from = null;
+        LocalDate to = null;
+        for (int i = 2; i < args.length; i++) {
+            String a = args[i];
+            if ("break".equalsIgnoreCase(a)) {
+                q = q.breakFlagSet();
+            } else if (a.startsWith("station=")) {
+                q = q.station(Integer.parseInt(a.substring(8)));
+            } else if (a.startsWith("line=")) {
+                q = q.line(Integer.parseInt(a.substring(5)));
+            } else if (a.startsWith("startup=")) {
+                q = q.startupType(Integer.parseInt(a.substring(8)));
+            } else if (a.startsWith("from=")) {
+                from = LocalDate.parse(a.substring(5));
+            } else if (a.startsWith("to=")) {
+                to = LocalDate.parse(a.substring(3));
+            } else {
+                System.err.println("无法识别的条件: " + a);
+                return;
+            }
+        }
+        if (from != null || to != null) {
+            q = q.between(from == null ? null : from.atStartOfDay(),
+                    to == null ? null : to.atTime(23, 59, 59));
+        }
+
+        long t0 = System.nanoTime();
+        HeaderIndex index = HeaderIndex.open(indexFile);
+        List<HeaderIndex.Entry> hits = index.query(q);
+        double elapsedMs = (System.nanoTime() - t0) / 1e6;
+
+        for (HeaderIndex.Entry e : hits) {
+            System.out.printf(Locale.ROOT, "%s  站号 %d, 线路 %d, 时间 %s, 点数 %d, GPS %d, 跳闸 %d, 启动 %d%n",
+                    e.relativePath(), e.station(), e.line(), e.dateTime(), e.dataLength(),
+                    e.gpsFlag(), e.breakFlag(), e.startupType());
+        }
+        System.out.println("------------------------------------------------------------");
+        System.out.printf(Locale.ROOT, "匹配 %d / %d 条记录, 打开并查询耗时 %.2f ms%n",
+                hits.size(), index.size(), elapsedMs);
+    }
+}
@@ -0,0 +1,456 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分阶段耗时与数据量统计模块.
+ *
+ * 类作用:
+ * - 对读取、头部解析、采样解码、噪声估计、波头搜索、距离计算 6 个阶段做纳秒级计时,
+ *   每个阶段一个 LatencyHistogram, 可随时取得各阶段的次数、总耗时与 p50 / p90 / p99 / p99.9 / 最大值快照.
+ * - 按文件汇总: FileScope 记录一个文件在各阶段的耗时、读取字节数、采样点数,
+ *   以及在 HotSpot 上可用时该文件处理期间当前线程分配的堆内存字节数; 文件结束时交给各个 Sink.
+ * - 输出方式可插拔: 注册任意个 Sink (见 MetricsSinks: 文本汇总、JSON lines),
+ *   由 Reporter 定期或在结束时推送快照.
+ *
+ * 开关:
+ * - 只有以 -Dfl.metrics=true 启动时才统计. 关闭时 ENABLED 为 static final 常量 false,
+ *   start() 返回 0, stop() / count() / begin() 直接返回, JIT 编译后整段代码被消除, 不读时钟、不分配对象.
+ *
+ * 使用方式:
+ * - 阶段计时: long t = Instrumentation.start(); ...; Instrumentation.stop(Stage.DECODE, t);
+ * - 文件范围: FileScope f = Instrumentation.begin(path); try { ... } finally { f.end(); }
+ *   跨线程处理同一文件时 (如 DecodePipeline), 在交出前 suspend(), 在另一线程上 resume() 后继续.
+ * - 输出: try (Instrumentation.Reporter r = Instrumentation.reporterFromSystemProperties()) { ... }
+ *   按系统属性注册 Sink 并在结束时输出最终快照; 也可自行 addSink / new Reporter(...).
+ */
+public final class Instrumentation {
+
+    /** 是否统计, 由 -Dfl.metrics=true 打开; 运行期间不可更改. */
+    public static final boolean ENABLED = Boolean.getBoolean("fl.metrics");
+
+    /** 计时阶段. */
+    public enum Stage {
+        /** 读取文件字节 (readAllBytes、定位读取、建立内存映射). */
+        READ,
+        /** 解析 80 字节头部. */
+        HEADER_PARSE,
+        /** 数据区三元组解码为三相采样. */
+        DECODE,
+        /** 噪声窗口差分标准差估计. */
+        NOISE,
+        /** 入射波 / 反射波搜索; ThreePhaseAnalyzer 在同一循环内完成噪声估计, 一并计入本阶段. */
+        WAVEFRONT_SEARCH,
+        /** 采样点换算时间与测距公式. */
+        DISTANCE
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[STAGES.length];
+    private static final AtomicLong FILES = new AtomicLong();
+    private static final AtomicLong BYTES = new AtomicLong();
+    private static final AtomicLong SAMPLES = new AtomicLong();
+    private static final AtomicLong ALLOCATED = new AtomicLong();
+    private static final List<Sink> SINKS = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<FileScope> CURRENT = new ThreadLocal<>();
+    private static final FileScope NONE = new FileScope(null);
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private Instrumentation() {
+    }
+
+    // ----------------- 记录 -----------------
+
+    /**
+     * 阶段开始时刻; 未启用时返回 0, 不读时钟.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 结束一个阶段, 耗时计入全局直方图与当前线程上的文件范围.
+     *
+     * 输入:
+     * - stage: 阶段.
+     * - startNanos: start() 的返回值.
+     */
+    public static void stop(Stage stage, long startNanos) {
+        if (!ENABLED) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        HISTOGRAMS[stage.ordinal()].record(nanos);
+        FileScope f = CURRENT.get();
+        if (f != null) {
+            f.stageNanos[stage.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     * 累计读取的字节数与解码的采样点数 (三相合计一个点).
+     */
+    public static void count(long bytes, long samples) {
+        if (!ENABLED) {
+            return;
+        }
+        BYTES.addAndGet(bytes);
+        SAMPLES.addAndGet(samples);
+        FileScope f = CURRENT.get();
+        if (f != null) {
+            f.bytes += bytes;
+            f.samples += samples;
+        }
+    }
+
+    /**
+     * 在当前线程上开始一个文件范围.
+     *
+     * 输出:
+     * - 文件范围; 未启用时返回一个共享的空对象, 其方法均不做任何事.
+     */
+    public static FileScope begin(Path path) {
+        if (!ENABLED) {
+            return NONE;
+        }
+        FileScope f = new FileScope(path);
+        f.resume();
+        return f;
+    }
+
+    // ----------------- 输出 -----------------
+
+    /** 注册输出; 文件结束与快照推送时依次调用. */
+    public static void addSink(Sink sink) {
+        SINKS.add(sink);
+    }
+
+    public static void removeSink(Sink sink) {
+        SINKS.remove(sink);
+    }
+
+    /** 把当前快照推送给全部已注册的 Sink. */
+    public static void publish() {
+        Snapshot s = snapshot();
+        for (Sink sink : SINKS) {
+            sink.snapshot(s);
+        }
+    }
+
+    /**
+     * 当前的全局统计快照; 未启用时各项为 0.
+     */
+    public static Snapshot snapshot() {
+        StageStats[] stages = new StageStats[STAGES.length];
+        for (int i = 0; i < STAGES.length; i++) {
+            LatencyHistogram h = HISTOGRAMS[i];
+            stages[i] = new StageStats(STAGES[i], h.count(), h.sum(), h.percentile(50.0), h.percentile(90.0),
+                    h.percentile(99.0), h.percentile(99.9), h.max());
+        }
+        return new Snapshot(System.currentTimeMillis(), FILES.get(), BYTES.get(), SAMPLES.get(),
+                AllocationCounter.SUPPORTED ? ALLOCATED.get() : -1L, stages);
+    }
+
+    /** 清空全部统计 (不影响已注册的 Sink). */
+    public static void reset() {
+        for (LatencyHistogram h : HISTOGRAMS) {
+            h.reset();
+        }
+        FILES.set(0L);
+        BYTES.set(0L);
+        SAMPLES.set(0L);
+        ALLOCATED.set(0L);
+    }
+
+    /**
+     * 按系统属性配置输出.
+     *
+     * 系统属性:
+     * - fl.metrics.jsonl=<文件>: 追加写入 JSON lines (每个文件一行, 每次快照一行).
+     * - fl.metrics.period=<秒>: 每隔该秒数向 stderr 打印一次文本汇总, 默认 0 (只在结束时打印).
+     *
+     * 输出:
+     * - Reporter, close() 时向 stderr 打印最终文本汇总并关闭 JSON 文件;
+     *   未启用统计时返回不做任何事的 Reporter.
+     */
+    public static Reporter reporterFromSystemProperties() throws IOException {
+        if (!ENABLED) {
+            return new Reporter(0L, new Sink[0]);
+        }
+        String jsonl = System.getProperty("fl.metrics.jsonl");
+        Sink text = MetricsSinks.text(System.err);
+        Sink[] sinks = jsonl == null || jsonl.isEmpty()
+                ? new Sink[] {text}
+                : new Sink[] {text, MetricsSinks.jsonLines(Paths.get(jsonl))};
+        long periodMs = (long) (Double.parseDouble(System.getProperty("fl.metrics.period", "0")) * 1000.0);
+        return new Reporter(periodMs, sinks);
+    }
+
+    // ----------------- 类型 -----------------
+
+    /**
+     * 统计输出接口, 实现需可被多个线程同时调用.
+     */
+    public interface Sink extends Closeable {
+        /** 一个文件处理结束. */
+        default void fileCompleted(FileRecord record) {
+        }
+
+        /** 一次全局快照. */
+        default void snapshot(Snapshot snapshot) {
+        }
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * 一个文件的处理范围, 同一时刻只属于一个线程.
+     */
+    public static final class FileScope {
+        private final Path path;
+        private final long beginNanos;
+        final long[] stageNanos = new long[STAGES.length];
+        long bytes;
+        long samples;
+        private long allocated;
+        private long allocMark = -1L;
+
+        FileScope(Path path) {
+            this.path = path;
+            this.beginNanos = path == null ? 0L : System.nanoTime();
+        }
+
+        /** 暂时脱离当前线程, 之后可在另一线程上 resume(). */
+        public void suspend() {
+            if (path == null) {
+                return;
+            }
+            if (allocMark >= 0) {
+                allocated += AllocationCounter.currentThread() - allocMark;
+                allocMark = -1L;
+            }
+            if (CURRENT.get() == this) {
+                CURRENT.remove();
+            }
+        }
+
+        /** 绑定到当前线程, 之后本线程上的阶段计时计入本文件. */
+        public void resume() {
+            if (path == null) {
+                return;
+            }
+            CURRENT.set(this);
+            allocMark = AllocationCounter.currentThread();
+        }
+
+        /** 结束本文件, 汇总到全局计数并交给各个 Sink. */
+        public void end() {
+            if (path == null) {
+                return;
+            }
+            suspend();
+            FILES.incrementAndGet();
+            if (AllocationCounter.SUPPORTED) {
+                ALLOCATED.addAndGet(allocated);
+            }
+            FileRecord r = new FileRecord(path, System.nanoTime() - beginNanos, bytes, samples,
+                    AllocationCounter.SUPPORTED ? allocated : -1L, stageNanos.clone());
+            for (Sink sink : SINKS) {
+                sink.fileCompleted(r);
+            }
+        }
+    }
+
+    /**
+     * 单个文件的统计.
+     *
+     * 字段含义:
+     * - path: 文件路径.
+     * - wallNanos: begin 到 end 的时间, 包括排队等待.
+     * - bytes / samples: 读取的字节数与解码的采样点数.
+     * - allocatedBytes: 处理期间 (在本文件范围所绑定的线程上) 分配的堆内存, 不支持时为 -1.
+     * - stageNanos: 按 Stage.ordinal() 索引的各阶段耗时之和.
+     */
+    public static final class FileRecord {
+        public final Path path;
+        public final long wallNanos;
+        public final long bytes;
+        public final long samples;
+        public final long allocatedBytes;
+        private final long[] stageNanos;
+
+        FileRecord(Path path, long wallNanos, long bytes, long samples, long allocatedBytes, long[] stageNanos) {
+            this.path = path;
+            this.wallNanos = wallNanos;
+            this.bytes = bytes;
+            this.samples = samples;
+            this.allocatedBytes = allocatedBytes;
+            this.stageNanos = stageNanos;
+        }
+
+        public long stageNanos(Stage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+    }
+
+    /**
+     * 单个阶段的延迟统计, 单位 ns.
+     */
+    public static final class StageStats {
+        public final Stage stage;
+        public final long count;
+        public final long totalNanos;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long p999;
+        public final long max;
+
+        StageStats(Stage stage, long count, long totalNanos, long p50, long p90, long p99, long p999, long max) {
+            this.stage = stage;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public double meanNanos() {
+            return count == 0 ? 0.0 : (double) totalNanos / count;
+        }
+    }
+
+    /**
+     * 全局统计快照.
+     *
+     * 字段含义:
+     * - timeMillis: 快照时刻 (epoch 毫秒).
+     * - files / bytes / samples: 已结束的文件数, 累计读取字节数与采样点数.
+     * - allocatedBytes: 已结束文件的堆分配合计, 不支持时为 -1.
+     */
+    public static final class Snapshot {
+        public final long timeMillis;
+        public final long files;
+        public final long bytes;
+        public final long samples;
+        public final long allocatedBytes;
+        private final StageStats[] stages;
+
+        Snapshot(long timeMillis, long files, long bytes, long samples, long allocatedBytes, StageStats[] stages) {
+            this.timeMillis = timeMillis;
+            this.files = files;
+            this.bytes = bytes;
+            this.samples = samples;
+            this.allocatedBytes = allocatedBytes;
+            this.stages = stages;
+        }
+
+        public StageStats stage(Stage stage) {
+            return stages[stage.ordinal()];
+        }
+    }
+
+    /**
+     * 定期推送快照, 关闭时推送最后一次并关闭所持有的 Sink.
+     */
+    public static final class Reporter implements Closeable {
+        private final Sink[] sinks;
+        private final ScheduledExecutorService timer;
+
+        /**
+         * 输入:
+         * - periodMs: 推送间隔, ms; <= 0 时只在 close() 时推送.
+         * - sinks: 注册到 Instrumentation 的输出, close() 时注销并关闭.
+         */
+        public Reporter(long periodMs, Sink... sinks) {
+            this.sinks = sinks.clone();
+            for (Sink s : this.sinks) {
+                addSink(s);
+            }
+            if (periodMs > 0 && this.sinks.length > 0) {
+                timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "metrics-reporter");
+                    t.setDaemon(true);
+                    return t;
+                });
+                timer.scheduleAtFixedRate(Instrumentation::publish, periodMs, periodMs, TimeUnit.MILLISECONDS);
+            } else {
+                timer = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+            if (sinks.length == 0) {
+                return;
+            }
+            Snapshot s = snapshot();
+            IOException first = null;
+            for (Sink sink : sinks) {
+                sink.snapshot(s);
+                removeSink(sink);
+                try {
+                    sink.close();
+                } catch (IOException e) {
+                    if (first == null) {
+                        first = e;
+                    }
+                }
+            }
+            if (first != null) {
+                throw first;
+            }
+        }
+    }
+
+    /**
+     * 线程堆分配计数; 依赖 HotSpot 的 com.sun.management.ThreadMXBean, 只在启用统计后才加载.
+     */
+    private static final class AllocationCounter {
+        private static final com.sun.management.ThreadMXBean BEAN = load();
+        static final boolean SUPPORTED = BEAN != null;
+
+        private AllocationCounter() {
+        }
+
+        private static com.sun.management.ThreadMXBean load() {
+            try {
+                java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+                    if (b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled()) {
+                        return b;
+                    }
+                }
+            } catch (LinkageError | UnsupportedOperationException e) {
+                System.err.println(String.format(Locale.ROOT, "堆分配统计不可用: %s", e));
+            }
+            return null;
+        }
+
+        static long currentThread() {
+            return BEAN == null ? 0L : BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
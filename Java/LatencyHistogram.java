@@ -0,0 +1,118 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 并发记录的对数-线性延迟直方图 (HdrHistogram 风格).
+ *
+ * 类作用:
+ * - 0 ~ 127 ns 每个值一个桶; 更大的值按 2 的幂分段, 每段再线性分为 64 个桶,
+ *   任意值的桶宽不超过其值的 1/64, 百分位相对误差 < 1.6%; 覆盖到 Long.MAX_VALUE 只需 3712 个桶 (约 29 KB).
+ * - 记录只做一次原子自增, 可被多个线程同时调用, 不加锁、不分配对象.
+ *
+ * 使用方式:
+ * - record(nanos) 记录; percentile(99.0) 等读取; 读取与记录可以并发, 读到的是近似一致的快照.
+ */
+public final class LatencyHistogram {
+
+    /** 每个 2 的幂分段内的线性桶数 = 2^SUB_BITS. */
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** 小于该值的记录每个值一个桶. */
+    private static final int LINEAR_LIMIT = SUB_COUNT * 2;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BITS - 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值, 负值按 0 记录.
+     */
+    public void record(long value) {
+        long v = Math.max(0L, value);
+        counts.incrementAndGet(bucketOf(v));
+        total.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /** 记录个数. */
+    public long count() {
+        return total.get();
+    }
+
+    /** 全部记录之和. */
+    public long sum() {
+        return sum.get();
+    }
+
+    /** 最大记录值 (精确值); 没有记录时为 0. */
+    public long max() {
+        return max.get();
+    }
+
+    /** 平均值; 没有记录时为 0. */
+    public double mean() {
+        long n = total.get();
+        return n == 0 ? 0.0 : (double) sum.get() / n;
+    }
+
+    /**
+     * 百分位值.
+     *
+     * 输入:
+     * - percent: 0 ~ 100.
+     *
+     * 输出:
+     * - 至少 percent% 的记录不大于的最小桶上界 (不超过 max()); 没有记录时为 0.
+     */
+    public long percentile(double percent) {
+        long n = total.get();
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(n * Math.min(100.0, Math.max(0.0, percent)) / 100.0));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** 清空全部记录. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        total.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+
+    static int bucketOf(long v) {
+        if (v < LINEAR_LIMIT) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int shift = exp - SUB_BITS;
+        int sub = (int) (v >>> shift) - SUB_COUNT;
+        return LINEAR_LIMIT + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /** 桶内最大的值. */
+    static long highestEquivalent(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int k = bucket - LINEAR_LIMIT;
+        int exp = k / SUB_COUNT + SUB_BITS + 1;
+        int shift = exp - SUB_BITS;
+        long lower = (long) (SUB_COUNT + k % SUB_COUNT) << shift;
+        long width = 1L << shift;
+        return lower + (width - 1);
+    }
+}
@@ -13,6 +13,7 @@ import java.io.InputStreamReader;
  * - 调用 AllFileDecoder 解析录波头部和三相数据.
  * - 打印基本信息, 询问用户选择 A/B/C 相, 调用单端测距模块输出结果.
  * A B C三相也要分别计算幅值，默认输出幅值最大的相
+ *   (由 ThreePhaseAnalyzer 一次遍历得到三相结果和幅值, 直接回车即采用其选出的最佳相)
  *
  * 注意:
  * - 当前版本不使用数据库, 仅处理本地 .all 文件.
@@ -61,16 +62,26 @@ public class Main {
             System.out.println("=== 解析并分析指定 .all 文件 ===");
             System.out.println("目标文件: " + target.toAbsolutePath());
 
+            // 以 -Dfl.metrics=true 启动时, 结束后在 stderr 打印各阶段耗时
+            Instrumentation.Reporter metrics = Instrumentation.reporterFromSystemProperties();
+            Instrumentation.FileScope scope = Instrumentation.begin(target);
             CurrentData df = AllFileDecoder.decode(target);
             // 先打印一段概要信息
             printSummary(df);
 
-            // 询问用户选择测距相别
-            WaveformFaultAnalyzer.Phase phase = askPhaseFromConsole();
-
-            // 再做单端测距分析
+            // 三相一次遍历完成测距, 并按幅值选出默认相别
             WaveformFaultAnalyzer.Config cfg = WaveformFaultAnalyzer.Config.defaultConfig();
-            WaveformFaultAnalyzer.Result result = WaveformFaultAnalyzer.analyzeSingleEnded(df, cfg, phase);
+            ThreePhaseAnalyzer.Result all = ThreePhaseAnalyzer.analyze(df, cfg);
+            scope.end();
+            metrics.close();
+            for (WaveformFaultAnalyzer.Phase p : WaveformFaultAnalyzer.Phase.values()) {
+                System.out.printf(Locale.ROOT, "%s 相幅值: %.3f%s%n", p, all.peakAmplitude(p),
+                        all.result(p) == null ? " (波头识别失败)" : "");
+            }
+
+            // 询问用户选择测距相别
+            WaveformFaultAnalyzer.Phase phase = askPhaseFromConsole(all.bestPhase);
+            WaveformFaultAnalyzer.Result result = all.result(phase);
             if (result == null) {
                 System.out.println("自动波头识别失败，无法给出单端测距结果，请检查波形或调整算法参数。");
             } else {
@@ -80,40 +91,46 @@ public class Main {
                 System.out.printf(Locale.ROOT,
                         "最终故障点位置（相对本端）= %.6f km%n",
                         result.distanceFromMeasuredEndKm);
+                // 亚采样插值修正后的波头时刻与距离, 供对照
+                WaveformFaultAnalyzer.Result refined = WaveformFaultAnalyzer.refineSubSample(df, result);
+                System.out.printf(Locale.ROOT,
+                        "亚采样修正: t1 = %.6f ms, t2 = %.6f ms, 距测量端 %.6f km%n",
+                        refined.firstWaveTimeMs, refined.secondWaveTimeMs, refined.distanceFromMeasuredEndKm);
             }
         }
     }
 
     /**
-     * 在控制台询问用户选择 A/B/C 相, 默认 A 相.
+     * 在控制台询问用户选择 A/B/C 相.
      *
      * 输入:
-     * - 无, 从标准输入读取一个字符.
+     * - defaultPhase: 直接回车、输入无效或出错时使用的相别 (幅值最大的相).
      *
      * 输出:
-     * - 返回用户选择的相别 Phase, 输入无效或出错时返回 A 相.
+     * - 返回用户选择的相别 Phase.
      */
-    private static WaveformFaultAnalyzer.Phase askPhaseFromConsole() {
-        System.out.print("请选择测距相别 (A/B/C)，直接回车默认为 A 相: ");
+    private static WaveformFaultAnalyzer.Phase askPhaseFromConsole(WaveformFaultAnalyzer.Phase defaultPhase) {
+        System.out.print("请选择测距相别 (A/B/C)，直接回车默认为 " + defaultPhase + " 相: ");
         try {
             BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
             String line = br.readLine();
             if (line == null || line.trim().isEmpty()) {
-                return WaveformFaultAnalyzer.Phase.A;
+                return defaultPhase;
             }
             char ch = Character.toUpperCase(line.trim().charAt(0));
             switch (ch) {
+                case 'A':
+                    return WaveformFaultAnalyzer.Phase.A;
                 case 'B':
                     return WaveformFaultAnalyzer.Phase.B;
                 case 'C':
                     return WaveformFaultAnalyzer.Phase.C;
-                case 'A':
                 default:
-                    return WaveformFaultAnalyzer.Phase.A;
+                    return defaultPhase;
             }
         } catch (Exception e) {
-            System.out.println("读取相别输入失败，默认使用 A 相。错误: " + e.getMessage());
-            return WaveformFaultAnalyzer.Phase.A;
+            System.out.println("读取相别输入失败，默认使用 " + defaultPhase + " 相。错误: " + e.getMessage());
+            return defaultPhase;
         }
     }
 
@@ -135,9 +152,10 @@ public class Main {
                 df.gpsFrequency, df.gpsFlag, df.breakFlag);
 
         int printN = Math.min(df.dataLength, 10);
+        PhaseSamples a = df.samples(WaveformFaultAnalyzer.Phase.A);
         System.out.println("前 " + printN + " 个 A 相数据:");
         for (int i = 0; i < printN; i++) {
-            System.out.printf(Locale.ROOT, "A[%d] = %f%n", i, df.dataA[i]);
+            System.out.printf(Locale.ROOT, "A[%d] = %f%n", i, a.get(i));
         }
     }
 }
\ No newline at end of file
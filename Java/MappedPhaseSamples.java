@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 直接在 .all 文件映射缓冲区上解码的单相采样视图.
+ *
+ * 类作用:
+ * - 不复制、不展开数据区, 每次 get(i) 时从 6 字节三相采样组中取出本相的 2 个字节并解码.
+ * - 12bit 编码: ((b1 << 4) | b0) - 0x800; 16bit 编码: 小端短整型.
+ *
+ * 使用方式:
+ * - 由 AllFileDecoder.decodeMapped 创建, 只读, 可被多个线程同时读取.
+ */
+final class MappedPhaseSamples implements PhaseSamples {
+
+    /** 只读、小端序的映射缓冲区, 只使用绝对下标读取, 不改变 position. */
+    private final ByteBuffer buf;
+    /** 本相第 0 个采样点在缓冲区中的字节偏移 = 数据区起点 + 相序号 * 2. */
+    private final int base;
+    private final int length;
+    private final boolean twelveBit;
+
+    MappedPhaseSamples(ByteBuffer buf, int dataStart, int phaseIndex, int length, boolean twelveBit) {
+        this.buf = buf.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        this.base = dataStart + phaseIndex * 2;
+        this.length = length;
+        this.twelveBit = twelveBit;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public double get(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("采样下标越界: " + i + ", 点数=" + length);
+        }
+        int p = base + i * 6;
+        if (twelveBit) {
+            int b0 = buf.get(p) & 0xFF;
+            int b1 = buf.get(p + 1) & 0xFF;
+            return ((b1 << 4) | b0) - 0x800;
+        }
+        return buf.getShort(p);
+    }
+
+    /** 数据在映射缓冲区中, 不占用堆内存. */
+    @Override
+    public long heapBytes() {
+        return 0L;
+    }
+}
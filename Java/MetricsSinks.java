@@ -0,0 +1,175 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Instrumentation 的内置输出实现.
+ *
+ * 类作用:
+ * - text: 每次快照打印一张文本汇总表 (各阶段次数、总耗时、均值与百分位), 忽略单个文件.
+ * - jsonLines: 每个文件一行 {"type":"file",...}, 每次快照一行 {"type":"snapshot",...}, 便于后续用脚本分析.
+ *
+ * 使用方式:
+ * - new Instrumentation.Reporter(periodMs, MetricsSinks.text(System.err), MetricsSinks.jsonLines(path)).
+ */
+public final class MetricsSinks {
+
+    private MetricsSinks() {
+    }
+
+    /**
+     * 文本汇总输出.
+     *
+     * 输入:
+     * - out: 输出流, close() 时不关闭.
+     */
+    public static Instrumentation.Sink text(PrintStream out) {
+        return new Instrumentation.Sink() {
+            @Override
+            public void snapshot(Instrumentation.Snapshot s) {
+                out.print(formatText(s));
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * JSON lines 输出, 以追加方式写入 UTF-8 文件.
+     */
+    public static Instrumentation.Sink jsonLines(Path file) throws IOException {
+        return jsonLines(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * JSON lines 输出到任意 Writer, close() 时关闭该 Writer; 每次快照后 flush.
+     */
+    public static Instrumentation.Sink jsonLines(Writer writer) {
+        BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+        return new Instrumentation.Sink() {
+            @Override
+            public void fileCompleted(Instrumentation.FileRecord r) {
+                write(formatJson(r), false);
+            }
+
+            @Override
+            public void snapshot(Instrumentation.Snapshot s) {
+                write(formatJson(s), true);
+            }
+
+            private synchronized void write(String line, boolean flush) {
+                try {
+                    out.write(line);
+                    out.newLine();
+                    if (flush) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // 统计输出失败不影响分析本身
+                    System.err.println("写入统计失败: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public synchronized void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    // ----------------- 格式化 -----------------
+
+    static String formatText(Instrumentation.Snapshot s) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format(Locale.ROOT, "[metrics] 文件 %d, 读取 %.2f MB, 采样 %d 点, 堆分配 %s%n",
+                s.files, s.bytes / 1048576.0, s.samples,
+                s.allocatedBytes < 0 ? "不支持" : String.format(Locale.ROOT, "%.2f MB", s.allocatedBytes / 1048576.0)));
+        sb.append(pad("阶段", -17)).append(pad("次数", 9)).append(pad("总耗时ms", 12))
+                .append(pad("均值us", 10)).append(pad("p50us", 10)).append(pad("p90us", 10))
+                .append(pad("p99us", 10)).append(pad("p99.9us", 10)).append(pad("最大us", 10))
+                .append(System.lineSeparator());
+        for (Instrumentation.Stage stage : Instrumentation.Stage.values()) {
+            Instrumentation.StageStats st = s.stage(stage);
+            sb.append(String.format(Locale.ROOT, "%-17s %8d %11.3f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    stage, st.count, st.totalNanos / 1e6, st.meanNanos() / 1e3, st.p50 / 1e3, st.p90 / 1e3,
+                    st.p99 / 1e3, st.p999 / 1e3, st.max / 1e3));
+        }
+        return sb.toString();
+    }
+
+    static String formatJson(Instrumentation.FileRecord r) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"type\":\"file\",\"path\":");
+        appendString(sb, r.path.toString());
+        sb.append(",\"wallNs\":").append(r.wallNanos)
+                .append(",\"bytes\":").append(r.bytes)
+                .append(",\"samples\":").append(r.samples)
+                .append(",\"allocatedBytes\":").append(r.allocatedBytes)
+                .append(",\"stageNs\":{");
+        Instrumentation.Stage[] stages = Instrumentation.Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(stages[i]).append("\":").append(r.stageNanos(stages[i]));
+        }
+        return sb.append("}}").toString();
+    }
+
+    static String formatJson(Instrumentation.Snapshot s) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"type\":\"snapshot\",\"timeMs\":").append(s.timeMillis)
+                .append(",\"files\":").append(s.files)
+                .append(",\"bytes\":").append(s.bytes)
+                .append(",\"samples\":").append(s.samples)
+                .append(",\"allocatedBytes\":").append(s.allocatedBytes)
+                .append(",\"stages\":{");
+        Instrumentation.Stage[] stages = Instrumentation.Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            Instrumentation.StageStats st = s.stage(stages[i]);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(stages[i]).append("\":{\"count\":").append(st.count)
+                    .append(",\"totalNs\":").append(st.totalNanos)
+                    .append(",\"p50\":").append(st.p50)
+                    .append(",\"p90\":").append(st.p90)
+                    .append(",\"p99\":").append(st.p99)
+                    .append(",\"p999\":").append(st.p999)
+                    .append(",\"max\":").append(st.max)
+                    .append('}');
+        }
+        return sb.append("}}").toString();
+    }
+
+    /** 按显示宽度补齐空格 (汉字占两列); width 为负时左对齐. */
+    private static String pad(String s, int width) {
+        int display = 0;
+        for (int i = 0; i < s.length(); i++) {
+            display += s.charAt(i) >= 0x2E80 ? 2 : 1;
+        }
+        String spaces = " ".repeat(Math.max(0, Math.abs(width) - display));
+        return width < 0 ? s + spaces : spaces + s;
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * 单相波形采样序列的只读视图.
+ *
+ * 类作用:
+ * - 屏蔽采样数据的实际存储方式 (double 数组、内存映射文件等).
+ * - 波头识别等算法只通过该接口按下标读取采样值, 不关心数据来自哪里.
+ *
+ * 使用方式:
+ * - 由 CurrentData.samples(phase) 获得, 有效下标范围为 [0, length()).
+ * - 噪声估计、差分阈值搜索等热点循环通过下面的批量方法完成,
+ *   具体存储 (例如 CompactPhaseSamples) 可以覆盖这些方法, 直接在原始整型数据上计算.
+ */
+public interface PhaseSamples {
+
+    /**
+     * 有效采样点个数, 与 CurrentData.dataLength 一致.
+     */
+    int length();
+
+    /**
+     * 读取第 i 个采样值.
+     *
+     * 输入:
+     * - i: 采样点下标, 0 <= i < length().
+     *
+     * 输出:
+     * - 采样值, 单位与原装置一致.
+     */
+    double get(int i);
+
+    /**
+     * 将全部采样值展开为一个新的 double 数组.
+     *
+     * 输出:
+     * - 长度为 length() 的新数组, 调用方可以随意修改.
+     */
+    default double[] toDoubleArray() {
+        int n = length();
+        double[] out = new double[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = get(i);
+        }
+        return out;
+    }
+
+    /**
+     * 采样数据占用的堆内存估计, 字节; 缓存等按数据量限额的场合使用.
+     * 默认按每点一个 double 估计, 具体存储可以覆盖.
+     */
+    default long heapBytes() {
+        return length() * 8L;
+    }
+
+    /**
+     * 将 [from, from + len) 范围的采样值复制到调用方提供的数组中, 不分配新数组.
+     *
+     * 输入:
+     * - from: 起始采样下标.
+     * - dst, dstOff: 目标数组及写入起点.
+     * - len: 复制点数.
+     */
+    default void copyTo(int from, double[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = get(from + i);
+        }
+    }
+
+    // ----------------- 一阶差分批量计算 -----------------
+
+    /**
+     * 计算一阶差分 dx[i] = x[i] - x[i-1] 在 [from, to) 上的平方和.
+     *
+     * 输入:
+     * - from, to: 差分下标区间, 要求 1 <= from <= to <= length().
+     *
+     * 输出:
+     * - sum(dx[i]^2).
+     */
+    default double diffSumSquares(int from, int to) {
+        double sumSq = 0.0;
+        for (int i = from; i < to; i++) {
+            double dx = get(i) - get(i - 1);
+            sumSq += dx * dx;
+        }
+        return sumSq;
+    }
+
+    /**
+     * 在 [from, to) 上寻找第一个 |dx[i]| > threshold 的下标.
+     *
+     * 输出:
+     * - 找到返回下标 i, 否则返回 -1.
+     */
+    default int firstAbsDiffAbove(int from, int to, double threshold) {
+        for (int i = from; i < to; i++) {
+            if (Math.abs(get(i) - get(i - 1)) > threshold) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在 [from, to) 上寻找 |dx[i]| 最大且大于 threshold 的下标, 并列时取最早的一个.
+     *
+     * 输出:
+     * - 找到返回下标 i, 否则返回 -1.
+     */
+    default int argMaxAbsDiffAbove(int from, int to, double threshold) {
+        int best = -1;
+        double bestDx = 0.0;
+        for (int i = from; i < to; i++) {
+            double adx = Math.abs(get(i) - get(i - 1));
+            if (adx > threshold && adx > bestDx) {
+                bestDx = adx;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
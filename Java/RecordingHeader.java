@@ -0,0 +1,86 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * .all 文件头部信息 (不含波形).
+ *
+ * 类作用:
+ * - 承载头部 16 个字段以及由文件大小推算出的数据点数, 字段含义与 CurrentData 中的同名字段一致.
+ * - 供只需要头部的场合使用 (清点归档、建立头部索引、配对等), 不读取、不解码数据区.
+ *
+ * 使用方式:
+ * - 由 AllFileDecoder.readHeader(path) 创建.
+ */
+public final class RecordingHeader {
+
+    public final int station; // 站号
+    public final int line; // 线路号
+    public final int year;
+    public final int month;
+    public final int day;
+    public final int hour;
+    public final int minute;
+    public final int second;
+    /** 微秒字段, 保留原始文本. */
+    public final String microSecond;
+    /** GPS 频率字段 (kHz), 保留原始文本. */
+    public final String gpsFrequency;
+    public final int gpsFlag;
+    public final int breakFlag;
+    public final int startupType;
+    public final double startupValue1;
+    public final double startupValue2;
+    public final double startupValue3;
+
+    /** 数据区起始字节偏移. */
+    public final int dataStart;
+    /** 由文件大小推算的数据点数: (fileSize - dataStart) / 6. */
+    public final int dataLength;
+    /** 文件总字节数. */
+    public final long fileSize;
+    /** 源文件名. */
+    public final String fileName;
+
+    RecordingHeader(int station, int line, int year, int month, int day, int hour, int minute, int second,
+            String microSecond, String gpsFrequency, int gpsFlag, int breakFlag, int startupType,
+            double startupValue1, double startupValue2, double startupValue3,
+            int dataStart, int dataLength, long fileSize, String fileName) {
+        this.station = station;
+        this.line = line;
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.hour = hour;
+        this.minute = minute;
+        this.second = second;
+        this.microSecond = microSecond;
+        this.gpsFrequency = gpsFrequency;
+        this.gpsFlag = gpsFlag;
+        this.breakFlag = breakFlag;
+        this.startupType = startupType;
+        this.startupValue1 = startupValue1;
+        this.startupValue2 = startupValue2;
+        this.startupValue3 = startupValue3;
+        this.dataStart = dataStart;
+        this.dataLength = dataLength;
+        this.fileSize = fileSize;
+        this.fileName = fileName;
+    }
+
+    /**
+     * 头部日期时间 (到整秒).
+     *
+     * 输出:
+     * - LocalDateTime; 字段非法时抛出 java.time.DateTimeException.
+     */
+    public LocalDateTime dateTime() {
+        return LocalDateTime.of(year, month, day, hour, minute, second);
+    }
+
+    /**
+     * 头部日期时间对应的秒数, 按 UTC 计算, 仅用于比较与求差.
+     */
+    public long epochSecond() {
+        return dateTime().toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,132 @@
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * .all 文件名解析模块.
+ *
+ * 类作用:
+ * - 从录波文件名中提取录波时刻、线路名 (含极别)、测量端 (M/N) 和装置编号.
+ * - 支持两种命名格式:
+ *   - 20230424085713-极II线路-N869.all (yyyyMMddHHmmss-线路名-端别编号).
+ *   - 140423231753左昌线M0170.all (yyMMddHHmmss线路名端别编号, 早期装置).
+ *
+ * 使用方式:
+ * - RecordingName.parse(path), 文件名不符合上述格式时返回 null.
+ */
+public final class RecordingName {
+
+    private static final Pattern DASHED = Pattern.compile("^(\\d{14})-(.+)-([MN])(\\d+)\\.all$",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMPACT = Pattern.compile("^(\\d{12})(.+?)([MN])(\\d+)\\.all$",
+            Pattern.CASE_INSENSITIVE);
+    /** 线路名中独立出现的罗马数字, 例如 "贺罗II线" 中的 II. */
+    private static final Pattern ROMAN = Pattern.compile("(?<![A-Za-z])(IV|V|I{1,3})(?![A-Za-z])");
+
+    /** 源文件路径. */
+    public final Path path;
+    /** 文件名中的录波时刻, 精确到秒. */
+    public final LocalDateTime timestamp;
+    /** 线路名, 包含极别, 例如 "极II线路"、"牛从甲线直流极1". */
+    public final String lineName;
+    /** 测量端, 'M' 或 'N'. */
+    public final char end;
+    /** 装置编号, 文件名中端别后面的数字, 保留前导零. */
+    public final String deviceNo;
+
+    private RecordingName(Path path, LocalDateTime timestamp, String lineName, char end, String deviceNo) {
+        this.path = path;
+        this.timestamp = timestamp;
+        this.lineName = lineName;
+        this.end = end;
+        this.deviceNo = deviceNo;
+    }
+
+    /**
+     * 解析文件名.
+     *
+     * 输入:
+     * - path: .all 文件路径, 只使用文件名部分.
+     *
+     * 输出:
+     * - 解析成功返回 RecordingName; 格式不符或时间非法时返回 null.
+     */
+    public static RecordingName parse(Path path) {
+        String name = path.getFileName().toString();
+        Matcher m = DASHED.matcher(name);
+        String ts;
+        if (m.matches()) {
+            ts = m.group(1);
+        } else {
+            m = COMPACT.matcher(name);
+            if (!m.matches()) {
+                return null;
+            }
+            // 早期装置只有两位年份, 统一按 20xx 处理
+            ts = "20" + m.group(1);
+        }
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.of(
+                    Integer.parseInt(ts.substring(0, 4)),
+                    Integer.parseInt(ts.substring(4, 6)),
+                    Integer.parseInt(ts.substring(6, 8)),
+                    Integer.parseInt(ts.substring(8, 10)),
+                    Integer.parseInt(ts.substring(10, 12)),
+                    Integer.parseInt(ts.substring(12, 14)));
+        } catch (DateTimeException e) {
+            return null;
+        }
+        char end = Character.toUpperCase(m.group(3).charAt(0));
+        return new RecordingName(path, time, m.group(2), end, m.group(4));
+    }
+
+    /**
+     * 规范化后的线路名, 用于两端命名不完全一致时的容错配对.
+     */
+    public String normalizedLineName() {
+        return normalizeLineName(lineName);
+    }
+
+    /**
+     * 线路名规范化: 罗马数字与 "极" 后的中文数字统一为阿拉伯数字.
+     *
+     * 例如:
+     * - "贺罗II线" 与 "贺罗2线" 都规范化为 "贺罗2线".
+     * - "普侨直流极一" 规范化为 "普侨直流极1".
+     */
+    public static String normalizeLineName(String lineName) {
+        Matcher m = ROMAN.matcher(lineName);
+        StringBuilder sb = new StringBuilder(lineName.length());
+        while (m.find()) {
+            m.appendReplacement(sb, romanToArabic(m.group(1)));
+        }
+        m.appendTail(sb);
+        return sb.toString()
+                .replace("极一", "极1")
+                .replace("极二", "极2");
+    }
+
+    private static String romanToArabic(String roman) {
+        switch (roman) {
+            case "I":
+                return "1";
+            case "II":
+                return "2";
+            case "III":
+                return "3";
+            case "IV":
+                return "4";
+            case "V":
+            default:
+                return "5";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName().toString();
+    }
+}
@@ -0,0 +1,141 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * 监视归档目录, 对新到达的录波做增量分析.
+ *
+ * 使用方法（在项目根目录执行）：
+ * java -cp src RecordingWatchRunner d:\\archive
+ *
+ * 第一个参数为归档目录, 其后为可选的 键=值 参数：
+ *   checkpoint=文件  检查点文件 (默认为当前目录下的 watch.ckpt)
+ *   stable=N         文件保持不变多久才开始处理, ms (默认 2000)
+ *   threads=N        分析线程数 (默认为 CPU 核数)
+ *   phase=A|B|C      双端测距相别 (默认 A)
+ *   window=N         双端配对与时钟校正时间窗, 秒 (默认 1, -1 表示只做精确配对)
+ *   out=文件         结果写入文件 (.csv / .jsonl, 见 ResultWriters), 不指定时逐行打印;
+ *                    不支持 .flr: 列式文件 flush 不写出未满的行组, 与检查点一起无法保证结果不丢
+ * 例如：
+ * java -cp src RecordingWatchRunner d:\\archive checkpoint=d:\\archive.ckpt stable=5000 out=watch.jsonl
+ *
+ * 启动时先处理检查点中没有的已有文件, 之后持续处理新文件; Ctrl+C 结束。
+ */
+public final class RecordingWatchRunner {
+
+    private RecordingWatchRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+
+        if (args.length < 1) {
+            System.err.println("用法: RecordingWatchRunner <归档目录> [checkpoint=文件] [stable=ms] [threads=N] "
+                    + "[phase=A|B|C] [window=N] [out=文件]");
+            return;
+        }
+        Path root = Paths.get(args[0]);
+        if (!Files.isDirectory(root)) {
+            System.err.println("目录不存在: " + root.toAbsolutePath());
+            return;
+        }
+
+        Path checkpoint = Paths.get("watch.ckpt");
+        long stableMillis = 2000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        WaveformFaultAnalyzer.Phase phase = WaveformFaultAnalyzer.Phase.A;
+        int window = 1;
+        Path outFile = null;
+        for (int i = 1; i < args.length; i++) {
+            String a = args[i];
+            int eq = a.indexOf('=');
+            String key = eq < 0 ? a : a.substring(0, eq).toLowerCase(Locale.ROOT);
+            String value = eq < 0 ? "" : a.substring(eq + 1);
+            switch (key) {
+                case "checkpoint":
+                    checkpoint = Paths.get(value);
+                    break;
+                case "stable":
+                    stableMillis = Long.parseLong(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "phase":
+                    phase = WaveformFaultAnalyzer.Phase.valueOf(value.trim().toUpperCase(Locale.ROOT));
+                    break;
+                case "window":
+                    window = Integer.parseInt(value);
+                    break;
+                case "out":
+                    if (value.toLowerCase(Locale.ROOT).endsWith(".flr")) {
+                        System.err.println("监视模式不支持 .flr 输出 (flush 不写出未满的行组), 请改用 .csv / .jsonl: "
+                                + value);
+                        return;
+                    }
+                    outFile = Paths.get(value);
+                    break;
+                default:
+                    System.err.println("忽略无法识别的参数: " + a);
+            }
+        }
+
+        ResultSink sink = outFile == null ? new ConsoleSink() : ResultWriters.open(outFile);
+        RecordingWatcher watcher = new RecordingWatcher(root, checkpoint, WaveformFaultAnalyzer.Config.defaultConfig(),
+                phase, threads, stableMillis, window, sink);
+        System.out.printf(Locale.ROOT, "监视目录: %s, 检查点 %s 中已处理 %d 个文件%n",
+                root.toAbsolutePath(), checkpoint.toAbsolutePath(), watcher.processedCount());
+
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.close();
+                main.join();
+            } catch (Exception e) {
+                // 退出过程中忽略
+            }
+        }, "watch-shutdown"));
+        try {
+            watcher.run();
+        } finally {
+            sink.close();
+        }
+    }
+
+    /** 逐行打印到控制台. */
+    private static final class ConsoleSink implements ResultSink {
+        @Override
+        public void file(FileRow r) {
+            String name = Paths.get(r.path).getFileName().toString();
+            if (r.error != null) {
+                System.out.println(name + " 解析失败: " + r.error);
+                return;
+            }
+            StringBuilder sb = new StringBuilder(name);
+            for (WaveformFaultAnalyzer.Phase p : WaveformFaultAnalyzer.Phase.values()) {
+                sb.append(' ').append(p).append('=');
+                int i = p.ordinal();
+                sb.append(r.t1Index[i] < 0 ? "-" : String.format(Locale.ROOT, "%.3fkm", r.distanceKm[i]));
+            }
+            System.out.println(sb);
+        }
+
+        @Override
+        public void pair(PairRow r) {
+            String m = Paths.get(r.mPath).getFileName().toString();
+            String n = Paths.get(r.nPath).getFileName().toString();
+            if (r.failure != null) {
+                System.out.println("双端 " + m + " / " + n + " 失败: " + r.failure);
+            } else {
+                System.out.printf(Locale.ROOT, "双端 %s / %s: 距 M 端 %.3f km, 距 N 端 %.3f km%n",
+                        m, n, r.distanceFromMKm, r.distanceFromNKm);
+            }
+        }
+
+        @Override
+        public void close() {
+            System.out.flush();
+        }
+    }
+}
@@ -0,0 +1,482 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 归档目录监视与增量分析.
+ *
+ * 类作用:
+ * - 用 WatchService 监视归档目录 (含新建的子目录), 发现新出现或被改写的 .all 文件.
+ * - 文件大小与修改时间连续 stableMillis 毫秒不变后才认为写入完成, 再交给 BatchAnalysisEngine 解码与三相分析.
+ * - 已处理的文件 (相对路径 + 大小 + 修改时间) 和已计算的 M/N 配对记入检查点文件,
+ *   重启后只处理检查点中没有的文件; 同一文件内容改变 (大小或修改时间变化) 时视为新版本重新分析.
+ * - 新文件的 M/N 对端文件已处理过时, 自动按 DoubleEndPairIndex 的容错规则配对并由 DoubleEndLocator 做双端测距;
+ *   对端只在新文件时刻前后 1 天内查找, 见 newPairs.
+ *
+ * 使用方式:
+ * - try (RecordingWatcher w = new RecordingWatcher(root, checkpoint, cfg, phase, threads, 2000, 1, sink)) {
+ *       w.run();   // 阻塞, 直到另一线程调用 close()
+ *   }
+ * - 结果通过 ResultSink 输出: 每个文件一次 file(...), 每个新配对一次 pair(...).
+ *
+ * 注意:
+ * - 每批结果先交给 sink 并 flush, 再把对应条目追加写入检查点并落盘; 进程在两者之间崩溃时,
+ *   重启后这一批会再输出一次, 其余文件不会重复处理.
+ *   因此 sink 的 flush 必须真正写出已缓冲的结果; ColumnarResultFile (.flr) 不满足, 不应作为输出.
+ * - 检查点在启动时整理一次 (去掉已删除文件的条目), 以临时文件 + 原子改名方式重写.
+ */
+public final class RecordingWatcher implements Closeable {
+
+    /** 两次检查待定文件之间的间隔, ms. */
+    private static final long POLL_MILLIS = 200;
+
+    private final Path root;
+    private final Path checkpointFile;
+    private final WaveformFaultAnalyzer.Config cfg;
+    private final WaveformFaultAnalyzer.Phase phase;
+    private final long stableMillis;
+    private final int pairWindowSeconds;
+    private final ResultSink sink;
+    private final DecodedRecordingCache cache;
+    /** 整个运行期间共用的工作线程池, 单端分析与双端入射波识别都在上面执行, run() 结束时关闭. */
+    private final ExecutorService pool;
+    private final BatchAnalysisEngine engine;
+    private final DoubleEndLocator locator;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    /** 已处理文件: 相对路径 -> 大小与修改时间. */
+    private final Map<String, FileStamp> processed = new HashMap<>();
+    /** 已计算的配对, 键为 "M 端相对路径\tN 端相对路径". */
+    private final Set<String> processedPairs = new HashSet<>();
+    /** 已处理且文件名可解析的录波, 按规范化线路名分组, 用于查找对端. */
+    private final Map<String, List<RecordingName>> byLine = new HashMap<>();
+    /** 等待写入完成的文件, 按发现顺序. */
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+
+    private BufferedWriter checkpointOut;
+    private FileChannel checkpointChannel;
+    private volatile boolean closed;
+
+    /**
+     * 输入:
+     * - root: 归档根目录.
+     * - checkpointFile: 检查点文件, 不存在时视为从未处理过任何文件.
+     * - cfg: 单端测距配置.
+     * - phase: 双端测距使用的相别.
+     * - parallelism: 分析线程数, 必须 >= 1.
+     * - stableMillis: 文件大小与修改时间保持不变多久才开始处理, ms.
+     * - pairWindowSeconds: 配对与时钟校正的时间窗半宽, 秒 (同 DoubleEndBatchRunner); 小于 0 时只做精确配对.
+     * - sink: 结果输出, 只在 run() 所在线程上调用.
+     */
+    public RecordingWatcher(Path root, Path checkpointFile, WaveformFaultAnalyzer.Config cfg,
+            WaveformFaultAnalyzer.Phase phase, int parallelism, long stableMillis, int pairWindowSeconds,
+            ResultSink sink) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism 必须 >= 1: " + parallelism);
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.checkpointFile = checkpointFile;
+        this.cfg = cfg;
+        this.phase = phase;
+        this.stableMillis = stableMillis;
+        this.pairWindowSeconds = pairWindowSeconds;
+        this.sink = sink;
+        // 刚分析完的文件紧接着可能参与双端测距, 缓存避免再解码一次
+        this.cache = new DecodedRecordingCache(64L << 20);
+        this.pool = BatchAnalysisEngine.newWorkerPool(parallelism);
+        this.engine = new BatchAnalysisEngine(parallelism, cfg, cache, null, pool);
+        this.locator = new DoubleEndLocator(cfg, phase, pairWindowSeconds, engine);
+        this.watcher = FileSystems.getDefault().newWatchService();
+        loadCheckpoint();
+    }
+
+    /** 已处理的文件数 (含本次运行之前). */
+    public int processedCount() {
+        return processed.size();
+    }
+
+    /** 等待写入完成的文件数. */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 注册目录监视并扫描现有文件, 然后持续处理新文件, 直到 close() 被调用.
+     */
+    public void run() throws IOException, InterruptedException {
+        try {
+            registerTree(root);
+            while (!closed) {
+                WatchKey key;
+                try {
+                    key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ClosedWatchServiceException e) {
+                    break;
+                }
+                if (key != null) {
+                    handleEvents(key);
+                }
+                processStableFiles();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** 停止 run(), 可从任意线程调用. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+        synchronized (this) {
+            if (checkpointOut != null) {
+                checkpointOut.close();
+                checkpointOut = null;
+            }
+        }
+    }
+
+    // ----------------- 监视 -----------------
+
+    private void registerTree(Path dir) throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> s = Files.walk(dir)) {
+            dirs = s.filter(Files::isDirectory).collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        for (Path d : dirs) {
+            WatchKey key = d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirs.put(key, d);
+        }
+        // 注册之前已经存在的文件不会产生事件, 逐个检查
+        for (Path d : dirs) {
+            scanDirectory(d);
+        }
+    }
+
+    private void scanDirectory(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                if (isAllFile(p)) {
+                    touch(p);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // 目录已被删除
+        }
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // 事件丢失, 重新扫描整个目录树
+                scanTree();
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path p = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(p)) {
+                registerTree(p);
+            } else if (isAllFile(p)) {
+                touch(p);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    private void scanTree() throws IOException {
+        for (Path d : new ArrayList<>(watchedDirs.values())) {
+            scanDirectory(d);
+        }
+    }
+
+    /** 记下文件当前状态; 已按相同大小与修改时间处理过的文件忽略. */
+    private void touch(Path p) throws IOException {
+        FileStamp stamp;
+        try {
+            stamp = FileStamp.of(p);
+        } catch (NoSuchFileException e) {
+            pending.remove(p);
+            return;
+        }
+        if (stamp.equals(processed.get(relative(p)))) {
+            return;
+        }
+        Pending old = pending.get(p);
+        if (old == null || !old.stamp.equals(stamp)) {
+            pending.put(p, new Pending(stamp, System.nanoTime()));
+        }
+    }
+
+    // ----------------- 处理 -----------------
+
+    private void processStableFiles() throws IOException, InterruptedException {
+        long now = System.nanoTime();
+        List<Path> ready = new ArrayList<>();
+        List<FileStamp> readyStamps = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Path, Pending> e = it.next();
+            Path p = e.getKey();
+            FileStamp stamp;
+            try {
+                stamp = FileStamp.of(p);
+            } catch (NoSuchFileException ex) {
+                it.remove();
+                continue;
+            }
+            Pending pd = e.getValue();
+            if (!stamp.equals(pd.stamp)) {
+                // 仍在写入, 重新计时
+                e.setValue(new Pending(stamp, now));
+                continue;
+            }
+            if (stamp.size > 0 && now - pd.sinceNanos >= TimeUnit.MILLISECONDS.toNanos(stableMillis)) {
+                ready.add(p);
+                readyStamps.add(stamp);
+                it.remove();
+            }
+        }
+        if (ready.isEmpty()) {
+            return;
+        }
+
+        // 1. 单端分析, 结果顺序与 ready 一致
+        List<String> entries = new ArrayList<>();
+        int[] next = {0};
+        engine.run(ready, r -> {
+            FileStamp stamp = readyStamps.get(next[0]++);
+            try {
+                sink.file(ResultSink.FileRow.of(r));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            String rel = relative(r.path);
+            if (processed.put(rel, stamp) != null) {
+                // 文件内容已变, 与它有关的配对需要重新计算
+                processedPairs.removeIf(k -> k.startsWith(rel + "\t") || k.endsWith("\t" + rel));
+            } else {
+                RecordingName name = RecordingName.parse(r.path);
+                if (name != null) {
+                    byLine.computeIfAbsent(name.normalizedLineName(), k -> new ArrayList<>()).add(name);
+                }
+            }
+            entries.add("F\t" + stamp.size + "\t" + stamp.modifiedMillis + "\t" + rel);
+        });
+
+        // 2. 新文件与已处理的对端配对
+        List<DoubleEndPairIndex.Pair> pairs = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Path p : ready) {
+            pairs.addAll(newPairs(p, seen));
+        }
+        if (!pairs.isEmpty()) {
+            for (DoubleEndLocator.PairResult r : locator.locate(pairs)) {
+                sink.pair(ResultSink.PairRow.of(r));
+                String key = pairKey(r.pair);
+                processedPairs.add(key);
+                entries.add("P\t" + key);
+            }
+        }
+        cache.clear();
+
+        // 3. 输出落地后再写检查点
+        sink.flush();
+        appendCheckpoint(entries);
+    }
+
+    /**
+     * 找出 p 与已处理对端文件组成的、尚未计算过的配对.
+     *
+     * 规则:
+     * - 只考虑同一线路、文件名时刻与 p 相差不超过 1 天 + 2 * 窗口的已处理文件 (两端都计入,
+     *   DoubleEndPairIndex 据此判断对端是否已有同时刻的配对), 跨零点的日期翻转仍能配上;
+     *   更大的整体错日 (例如日期被重置) 不在监视模式中识别, 由 DoubleEndBatchRunner 对整个归档处理.
+     *
+     * 输入:
+     * - seen: 本批已选出的配对键, 两端文件在同一批到达时避免重复.
+     */
+    private List<DoubleEndPairIndex.Pair> newPairs(Path p, Set<String> seen) {
+        RecordingName name = RecordingName.parse(p);
+        if (name == null) {
+            return List.of();
+        }
+        long range = 86400L + 2L * Math.max(0, pairWindowSeconds);
+        long t = name.timestamp.toEpochSecond(ZoneOffset.UTC);
+        List<Path> candidates = new ArrayList<>();
+        candidates.add(p);
+        boolean anyOpposite = false;
+        for (RecordingName other : byLine.getOrDefault(name.normalizedLineName(), List.of())) {
+            if (!other.path.equals(p) && Math.abs(other.timestamp.toEpochSecond(ZoneOffset.UTC) - t) <= range) {
+                candidates.add(other.path);
+                anyOpposite |= other.end != name.end;
+            }
+        }
+        if (!anyOpposite) {
+            return List.of();
+        }
+        DoubleEndPairIndex index = DoubleEndPairIndex.build(candidates);
+        List<DoubleEndPairIndex.Pair> out = new ArrayList<>();
+        for (DoubleEndPairIndex.Pair pair : pairWindowSeconds < 0 ? index.pairs()
+                : index.tolerantPairs(pairWindowSeconds)) {
+            String key = pairKey(pair);
+            if ((pair.m.path.equals(p) || pair.n.path.equals(p)) && !processedPairs.contains(key) && seen.add(key)) {
+                out.add(pair);
+            }
+        }
+        return out;
+    }
+
+    private String pairKey(DoubleEndPairIndex.Pair pair) {
+        return relative(pair.m.path) + "\t" + relative(pair.n.path);
+    }
+
+    private String relative(Path p) {
+        return root.relativize(p.toAbsolutePath().normalize()).toString();
+    }
+
+    private static boolean isAllFile(Path p) {
+        return p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".all") && !Files.isDirectory(p);
+    }
+
+    // ----------------- 检查点 -----------------
+
+    /**
+     * 读入检查点并整理: 丢弃已不存在的文件, 同一文件只保留最后一条, 以临时文件 + 改名方式重写.
+     */
+    private void loadCheckpoint() throws IOException {
+        if (Files.exists(checkpointFile)) {
+            for (String line : Files.readAllLines(checkpointFile, StandardCharsets.UTF_8)) {
+                String[] f = line.split("\t");
+                try {
+                    if (f.length == 4 && "F".equals(f[0])) {
+                        processed.put(f[3], new FileStamp(Long.parseLong(f[1]), Long.parseLong(f[2])));
+                    } else if (f.length == 3 && "P".equals(f[0])) {
+                        processedPairs.add(f[1] + "\t" + f[2]);
+                    }
+                } catch (NumberFormatException e) {
+                    // 上次写到一半的行, 忽略
+                }
+            }
+        }
+        processed.keySet().removeIf(rel -> !Files.exists(root.resolve(rel)));
+        processedPairs.removeIf(k -> {
+            String[] f = k.split("\t");
+            return !processed.containsKey(f[0]) || !processed.containsKey(f[1]);
+        });
+        for (String rel : processed.keySet()) {
+            RecordingName name = RecordingName.parse(root.resolve(rel));
+            if (name != null) {
+                byLine.computeIfAbsent(name.normalizedLineName(), k -> new ArrayList<>()).add(name);
+            }
+        }
+
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, FileStamp> e : processed.entrySet()) {
+                w.write("F\t" + e.getValue().size + "\t" + e.getValue().modifiedMillis + "\t" + e.getKey());
+                w.newLine();
+            }
+            for (String k : processedPairs) {
+                w.write("P\t" + k);
+                w.newLine();
+            }
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        checkpointChannel = FileChannel.open(checkpointFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        checkpointOut = new BufferedWriter(Channels.newWriter(checkpointChannel, StandardCharsets.UTF_8));
+    }
+
+    private synchronized void appendCheckpoint(List<String> entries) throws IOException {
+        if (checkpointOut == null || entries.isEmpty()) {
+            return;
+        }
+        for (String e : entries) {
+            checkpointOut.write(e);
+            checkpointOut.newLine();
+        }
+        checkpointOut.flush();
+        checkpointChannel.force(false);
+    }
+
+    // ----------------- 辅助类型 -----------------
+
+    /** 文件大小与修改时间, 二者都不变视为同一版本. */
+    private static final class FileStamp {
+        final long size;
+        final long modifiedMillis;
+
+        FileStamp(long size, long modifiedMillis) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        static FileStamp of(Path p) throws IOException {
+            BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+            return new FileStamp(a.size(), a.lastModifiedTime().toMillis());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp s = (FileStamp) o;
+            return size == s.size && modifiedMillis == s.modifiedMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(modifiedMillis);
+        }
+    }
+
+    /** 待定文件: 最近一次观察到的状态及其开始时刻. */
+    private static final class Pending {
+        final FileStamp stamp;
+        final long sinceNanos;
+
+        Pending(FileStamp stamp, long sinceNanos) {
+            this.stamp = stamp;
+            this.sinceNanos = sinceNanos;
+        }
+    }
+}
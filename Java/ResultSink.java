@@ -0,0 +1,180 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 批量测距结果的机器可读输出.
+ *
+ * 类作用:
+ * - 以 FileRow (单个录波的头部信息 + 三相单端结果 + 耗时) 和 PairRow (一对 M/N 录波的双端结果)
+ *   为单位接收结果, 由具体实现写成 CSV、JSON lines 或二进制列式文件 (见 ResultWriters / ColumnarResultFile).
+ * - 行对象只含数值与短字符串, 不引用 CurrentData 的采样数组, 可以放心排队等待写出.
+ *
+ * 使用方式:
+ * - try (ResultSink out = ResultWriters.open(path)) {
+ *       engine.run(files, r -> out.file(ResultSink.FileRow.of(r)));
+ *   }
+ * - 除 ResultWriters.async 返回的实现外, 各实现不是线程安全的, 应只在一个线程上调用.
+ */
+public interface ResultSink extends Closeable {
+
+    /** 写出一个录波的结果. */
+    void file(FileRow row) throws IOException;
+
+    /** 写出一对录波的双端结果. */
+    void pair(PairRow row) throws IOException;
+
+    /** 把已缓冲的内容写到底层文件. */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * 单个录波的结果行.
+     *
+     * 字段含义:
+     * - path: 文件路径.
+     * - error: 解析失败原因, 成功时为 null; 失败时头部字段为 0 / 空串, 各相均为识别失败.
+     * - station ... dataLength: 与 CurrentData 同名字段相同.
+     * - elapsedNanos: 解码与分析耗时, ns.
+     * - t1Index / t2Index / t1Ms / t2Ms / distanceKm: 按 Phase.ordinal() 索引的三相单端结果,
+     *   某相识别失败时下标为 -1, 其余为 NaN.
+     */
+    final class FileRow {
+        public final String path;
+        public final String error;
+        public final int station;
+        public final int line;
+        public final int year;
+        public final int month;
+        public final int day;
+        public final int hour;
+        public final int minute;
+        public final int second;
+        public final String microSecond;
+        public final String gpsFrequency;
+        public final int gpsFlag;
+        public final int breakFlag;
+        public final int startupType;
+        public final double startupValue1;
+        public final double startupValue2;
+        public final double startupValue3;
+        public final int dataLength;
+        public final long elapsedNanos;
+        public final int[] t1Index;
+        public final int[] t2Index;
+        public final double[] t1Ms;
+        public final double[] t2Ms;
+        public final double[] distanceKm;
+
+        FileRow(String path, String error, int station, int line, int year, int month, int day, int hour,
+                int minute, int second, String microSecond, String gpsFrequency, int gpsFlag, int breakFlag,
+                int startupType, double startupValue1, double startupValue2, double startupValue3, int dataLength,
+                long elapsedNanos, int[] t1Index, int[] t2Index, double[] t1Ms, double[] t2Ms, double[] distanceKm) {
+            this.path = path;
+            this.error = error;
+            this.station = station;
+            this.line = line;
+            this.year = year;
+            this.month = month;
+            this.day = day;
+            this.hour = hour;
+            this.minute = minute;
+            this.second = second;
+            this.microSecond = microSecond;
+            this.gpsFrequency = gpsFrequency;
+            this.gpsFlag = gpsFlag;
+            this.breakFlag = breakFlag;
+            this.startupType = startupType;
+            this.startupValue1 = startupValue1;
+            this.startupValue2 = startupValue2;
+            this.startupValue3 = startupValue3;
+            this.dataLength = dataLength;
+            this.elapsedNanos = elapsedNanos;
+            this.t1Index = t1Index;
+            this.t2Index = t2Index;
+            this.t1Ms = t1Ms;
+            this.t2Ms = t2Ms;
+            this.distanceKm = distanceKm;
+        }
+
+        /**
+         * 由批量分析结果生成结果行, 在工作线程上调用, 之后 r.data 可被回收.
+         */
+        public static FileRow of(BatchAnalysisEngine.FileResult r) {
+            WaveformFaultAnalyzer.Phase[] phases = WaveformFaultAnalyzer.Phase.values();
+            int[] t1 = new int[phases.length];
+            int[] t2 = new int[phases.length];
+            double[] t1ms = new double[phases.length];
+            double[] t2ms = new double[phases.length];
+            double[] km = new double[phases.length];
+            for (WaveformFaultAnalyzer.Phase p : phases) {
+                WaveformFaultAnalyzer.Result res = r.result(p);
+                int i = p.ordinal();
+                t1[i] = res == null ? -1 : res.firstWaveIndex;
+                t2[i] = res == null ? -1 : res.secondWaveIndex;
+                t1ms[i] = res == null ? Double.NaN : res.firstWaveTimeMs;
+                t2ms[i] = res == null ? Double.NaN : res.secondWaveTimeMs;
+                km[i] = res == null ? Double.NaN : res.distanceFromMeasuredEndKm;
+            }
+            String path = r.path.toString();
+            CurrentData d = r.data;
+            if (d == null) {
+                String error = r.error == null ? "未知错误" : String.valueOf(r.error.getMessage());
+                return new FileRow(path, error, 0, 0, 0, 0, 0, 0, 0, 0, "", "", 0, 0, 0, 0.0, 0.0, 0.0, 0,
+                        r.elapsedNanos, t1, t2, t1ms, t2ms, km);
+            }
+            return new FileRow(path, null, d.station, d.line, d.year, d.month, d.day, d.hour, d.minute, d.second,
+                    d.microSecond, d.gpsFrequency, d.gpsFlag, d.breakFlag, d.startupType,
+                    d.startupValue1, d.startupValue2, d.startupValue3, d.dataLength,
+                    r.elapsedNanos, t1, t2, t1ms, t2ms, km);
+        }
+    }
+
+    /**
+     * 一对录波的双端结果行.
+     *
+     * 字段含义:
+     * - mPath / nPath: M 端、N 端文件路径.
+     * - lineLengthKm: 线路全长, 未找到时为 NaN.
+     * - tMms / tNms: 两端入射波到达时间 (N 端已含校正), ms; 失败时为 NaN.
+     * - distanceFromMKm / distanceFromNKm: 距 M 端、N 端的距离, km; 失败时为 NaN.
+     * - correctionSeconds / clockRollover: 对 N 端时间的整秒校正及是否为日期翻转校正.
+     * - failure: 失败原因, 成功时为 null.
+     */
+    final class PairRow {
+        public final String mPath;
+        public final String nPath;
+        public final double lineLengthKm;
+        public final double tMms;
+        public final double tNms;
+        public final double distanceFromMKm;
+        public final double distanceFromNKm;
+        public final long correctionSeconds;
+        public final boolean clockRollover;
+        public final String failure;
+
+        PairRow(String mPath, String nPath, double lineLengthKm, double tMms, double tNms,
+                double distanceFromMKm, double distanceFromNKm, long correctionSeconds, boolean clockRollover,
+                String failure) {
+            this.mPath = mPath;
+            this.nPath = nPath;
+            this.lineLengthKm = lineLengthKm;
+            this.tMms = tMms;
+            this.tNms = tNms;
+            this.distanceFromMKm = distanceFromMKm;
+            this.distanceFromNKm = distanceFromNKm;
+            this.correctionSeconds = correctionSeconds;
+            this.clockRollover = clockRollover;
+            this.failure = failure;
+        }
+
+        /** 由双端测距结果生成结果行. */
+        public static PairRow of(DoubleEndLocator.PairResult r) {
+            boolean ok = r.result != null;
+            return new PairRow(r.pair.m.path.toString(), r.pair.n.path.toString(), r.pair.lineLengthKm,
+                    r.tMms, r.tNms,
+                    ok ? r.result.distanceFromA : Double.NaN,
+                    ok ? r.result.distanceFromB : Double.NaN,
+                    r.correction.shiftSeconds, r.correction.clockRollover, r.failure);
+        }
+    }
+}
@@ -0,0 +1,483 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResultSink 的文本实现与异步包装.
+ *
+ * 类作用:
+ * - csv: 每个录波一行 (头部字段 + 耗时 + A/B/C 三相 t1、t2、距离), 双端结果写到另一个 CSV; UTF-8, RFC 4180 转义.
+ * - jsonLines: 每个录波一行 {"type":"file",...}, 每对录波一行 {"type":"pair",...}.
+ * - async: 把任意 ResultSink 放到单独的写出线程上, 调用方只把结果行放入队列, 写出线程成批取出、
+ *   成批写入, 队列空时才 flush; 分析线程不做格式化和 I/O.
+ * - open: 按扩展名选择格式并包装为 async: .csv / .jsonl (.json) / .flr (ColumnarResultFile).
+ *
+ * 使用方式:
+ * - try (ResultSink out = ResultWriters.open(Paths.get("results.csv"))) { ... }
+ *   close() 会等待队列中的结果全部写出; 写出线程出错时, 之后的 file / pair / close 抛出 IOException.
+ */
+public final class ResultWriters {
+
+    /** 文本输出的缓冲区大小, 字符. */
+    private static final int BUFFER_CHARS = 1 << 16;
+    /** async 默认队列容量, 行. 写出线程落后超过该数量时调用方才会阻塞. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+    private ResultWriters() {
+    }
+
+    /**
+     * 按扩展名打开输出并包装为 async.
+     *
+     * 输入:
+     * - path: .csv 时双端结果写入同目录的 "<主名>-pairs.csv"; .jsonl / .json 为 JSON lines; .flr 为列式二进制.
+     */
+    public static ResultSink open(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        String lower = name.toLowerCase(Locale.ROOT);
+        ResultSink sink;
+        if (lower.endsWith(".csv")) {
+            Path pairs = path.resolveSibling(name.substring(0, name.length() - 4) + "-pairs.csv");
+            sink = csv(path, pairs);
+        } else if (lower.endsWith(".jsonl") || lower.endsWith(".json")) {
+            sink = jsonLines(path);
+        } else if (lower.endsWith(".flr")) {
+            sink = ColumnarResultFile.writer(path);
+        } else {
+            throw new IllegalArgumentException("无法识别的结果文件扩展名 (应为 .csv / .jsonl / .flr): " + path);
+        }
+        return async(sink, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    // ----------------- CSV -----------------
+
+    /**
+     * CSV 输出.
+     *
+     * 输入:
+     * - filesCsv: 单端结果文件.
+     * - pairsCsv: 双端结果文件; 只在第一次写入双端结果时创建.
+     */
+    public static ResultSink csv(Path filesCsv, Path pairsCsv) throws IOException {
+        return new CsvSink(newWriter(filesCsv), pairsCsv);
+    }
+
+    private static final class CsvSink implements ResultSink {
+        private final BufferedWriter files;
+        private final Path pairsPath;
+        private BufferedWriter pairs;
+        private final StringBuilder sb = new StringBuilder(512);
+
+        CsvSink(BufferedWriter files, Path pairsPath) throws IOException {
+            this.files = files;
+            this.pairsPath = pairsPath;
+            sb.append("path,error,station,line,datetime,microSecond,gpsFrequency,gpsFlag,breakFlag,startupType,"
+                    + "startupValue1,startupValue2,startupValue3,dataLength,elapsedNs");
+            for (WaveformFaultAnalyzer.Phase p : WaveformFaultAnalyzer.Phase.values()) {
+                sb.append(',').append(p).append("_t1Index,").append(p).append("_t2Index,")
+                        .append(p).append("_t1Ms,").append(p).append("_t2Ms,").append(p).append("_distanceKm");
+            }
+            writeLine(files);
+        }
+
+        @Override
+        public void file(FileRow r) throws IOException {
+            csvString(sb, r.path).append(',');
+            csvString(sb, r.error).append(',');
+            sb.append(r.station).append(',').append(r.line).append(',');
+            if (r.error == null) {
+                sb.append(String.format(Locale.ROOT, "%04d-%02d-%02d %02d:%02d:%02d",
+                        r.year, r.month, r.day, r.hour, r.minute, r.second));
+            }
+            sb.append(',');
+            csvString(sb, r.microSecond).append(',');
+            csvString(sb, r.gpsFrequency).append(',');
+            sb.append(r.gpsFlag).append(',').append(r.breakFlag).append(',').append(r.startupType).append(',');
+            csvDouble(sb, r.startupValue1).append(',');
+            csvDouble(sb, r.startupValue2).append(',');
+            csvDouble(sb, r.startupValue3).append(',');
+            sb.append(r.dataLength).append(',').append(r.elapsedNanos);
+            for (int i = 0; i < r.t1Index.length; i++) {
+                sb.append(',').append(r.t1Index[i]).append(',').append(r.t2Index[i]).append(',');
+                csvDouble(sb, r.t1Ms[i]).append(',');
+                csvDouble(sb, r.t2Ms[i]).append(',');
+                csvDouble(sb, r.distanceKm[i]);
+            }
+            writeLine(files);
+        }
+
+        @Override
+        public void pair(PairRow r) throws IOException {
+            if (pairs == null) {
+                pairs = newWriter(pairsPath);
+                sb.append("mPath,nPath,lineLengthKm,tMms,tNms,distanceFromMKm,distanceFromNKm,"
+                        + "correctionSeconds,clockRollover,failure");
+                writeLine(pairs);
+            }
+            csvString(sb, r.mPath).append(',');
+            csvString(sb, r.nPath).append(',');
+            csvDouble(sb, r.lineLengthKm).append(',');
+            csvDouble(sb, r.tMms).append(',');
+            csvDouble(sb, r.tNms).append(',');
+            csvDouble(sb, r.distanceFromMKm).append(',');
+            csvDouble(sb, r.distanceFromNKm).append(',');
+            sb.append(r.correctionSeconds).append(',').append(r.clockRollover).append(',');
+            csvString(sb, r.failure);
+            writeLine(pairs);
+        }
+
+        private void writeLine(BufferedWriter w) throws IOException {
+            sb.append('\n');
+            w.append(sb);
+            sb.setLength(0);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            files.flush();
+            if (pairs != null) {
+                pairs.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                files.close();
+            } finally {
+                if (pairs != null) {
+                    pairs.close();
+                }
+            }
+        }
+    }
+
+    /** null 写为空字段; 含逗号、引号或换行时加引号并把引号加倍. */
+    private static StringBuilder csvString(StringBuilder sb, String s) {
+        if (s == null) {
+            return sb;
+        }
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(s);
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    /** NaN 写为空字段, 其余按 Double.toString (可无损读回). */
+    private static StringBuilder csvDouble(StringBuilder sb, double v) {
+        return Double.isNaN(v) ? sb : sb.append(v);
+    }
+
+    // ----------------- JSON lines -----------------
+
+    /** JSON lines 输出, UTF-8. */
+    public static ResultSink jsonLines(Path file) throws IOException {
+        return new JsonLinesSink(newWriter(file));
+    }
+
+    private static final class JsonLinesSink implements ResultSink {
+        private final BufferedWriter out;
+        private final StringBuilder sb = new StringBuilder(512);
+
+        JsonLinesSink(BufferedWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void file(FileRow r) throws IOException {
+            sb.append("{\"type\":\"file\",\"path\":");
+            jsonString(sb, r.path);
+            sb.append(",\"error\":");
+            jsonString(sb, r.error);
+            if (r.error == null) {
+                sb.append(",\"station\":").append(r.station)
+                        .append(",\"line\":").append(r.line)
+                        .append(",\"datetime\":\"").append(String.format(Locale.ROOT, "%04d-%02d-%02dT%02d:%02d:%02d",
+                                r.year, r.month, r.day, r.hour, r.minute, r.second)).append('"')
+                        .append(",\"microSecond\":");
+                jsonString(sb, r.microSecond);
+                sb.append(",\"gpsFrequency\":");
+                jsonString(sb, r.gpsFrequency);
+                sb.append(",\"gpsFlag\":").append(r.gpsFlag)
+                        .append(",\"breakFlag\":").append(r.breakFlag)
+                        .append(",\"startupType\":").append(r.startupType)
+                        .append(",\"startupValues\":[");
+                jsonDouble(sb, r.startupValue1).append(',');
+                jsonDouble(sb, r.startupValue2).append(',');
+                jsonDouble(sb, r.startupValue3).append(']')
+                        .append(",\"dataLength\":").append(r.dataLength);
+            }
+            sb.append(",\"elapsedNs\":").append(r.elapsedNanos).append(",\"phases\":{");
+            WaveformFaultAnalyzer.Phase[] phases = WaveformFaultAnalyzer.Phase.values();
+            for (int i = 0; i < phases.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append('"').append(phases[i]).append("\":");
+                if (r.t1Index[i] < 0) {
+                    sb.append("null");
+                    continue;
+                }
+                sb.append("{\"t1Index\":").append(r.t1Index[i]).append(",\"t2Index\":").append(r.t2Index[i])
+                        .append(",\"t1Ms\":");
+                jsonDouble(sb, r.t1Ms[i]).append(",\"t2Ms\":");
+                jsonDouble(sb, r.t2Ms[i]).append(",\"distanceKm\":");
+                jsonDouble(sb, r.distanceKm[i]).append('}');
+            }
+            sb.append("}}");
+            writeLine();
+        }
+
+        @Override
+        public void pair(PairRow r) throws IOException {
+            sb.append("{\"type\":\"pair\",\"mPath\":");
+            jsonString(sb, r.mPath);
+            sb.append(",\"nPath\":");
+            jsonString(sb, r.nPath);
+            sb.append(",\"lineLengthKm\":");
+            jsonDouble(sb, r.lineLengthKm).append(",\"tMms\":");
+            jsonDouble(sb, r.tMms).append(",\"tNms\":");
+            jsonDouble(sb, r.tNms).append(",\"distanceFromMKm\":");
+            jsonDouble(sb, r.distanceFromMKm).append(",\"distanceFromNKm\":");
+            jsonDouble(sb, r.distanceFromNKm).append(",\"correctionSeconds\":").append(r.correctionSeconds)
+                    .append(",\"clockRollover\":").append(r.clockRollover).append(",\"failure\":");
+            jsonString(sb, r.failure);
+            sb.append('}');
+            writeLine();
+        }
+
+        private void writeLine() throws IOException {
+            sb.append('\n');
+            out.append(sb);
+            sb.setLength(0);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static StringBuilder jsonString(StringBuilder sb, String s) {
+        if (s == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    /** JSON 没有 NaN / 无穷, 写为 null. */
+    static StringBuilder jsonDouble(StringBuilder sb, double v) {
+        return Double.isNaN(v) || Double.isInfinite(v) ? sb.append("null") : sb.append(v);
+    }
+
+    private static BufferedWriter newWriter(Path file) throws IOException {
+        Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        return new BufferedWriter(w, BUFFER_CHARS);
+    }
+
+    // ----------------- 异步写出 -----------------
+
+    /**
+     * 把 sink 放到单独的写出线程上.
+     *
+     * 输入:
+     * - sink: 实际输出, 之后只由写出线程调用.
+     * - capacity: 队列容量, 行.
+     *
+     * 输出:
+     * - 线程安全的 ResultSink; flush() 等待此前放入的结果全部写出并 flush; close() 写完剩余结果后关闭 sink.
+     */
+    public static ResultSink async(ResultSink sink, int capacity) {
+        return new AsyncSink(sink, capacity);
+    }
+
+    private static final class AsyncSink implements ResultSink {
+        /** 每次从队列最多取出的行数. */
+        private static final int BATCH = 1024;
+
+        private final ResultSink sink;
+        private final BlockingQueue<Object> queue;
+        private final Thread writer;
+        /** 写出线程上的第一个异常 (含 RuntimeException / Error); 非 null 后所有调用都抛出. */
+        private volatile Throwable failure;
+        private boolean closed;
+
+        AsyncSink(ResultSink sink, int capacity) {
+            this.sink = sink;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.writer = new Thread(this::drain, "result-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        @Override
+        public void file(FileRow row) throws IOException {
+            put(row);
+        }
+
+        @Override
+        public void pair(PairRow row) throws IOException {
+            put(row);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            Barrier b = new Barrier();
+            put(b);
+            try {
+                synchronized (b) {
+                    while (!b.done && writer.isAlive()) {
+                        b.wait(100L);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待结果写出时被中断");
+            }
+            checkFailure();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (writer.isAlive()) {
+                    try {
+                        enqueue(Barrier.END);
+                    } catch (IOException e) {
+                        // 写出线程已退出, 下面的 checkFailure 报告原因
+                    }
+                }
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待结果写出时被中断");
+            }
+            checkFailure();
+        }
+
+        private void put(Object item) throws IOException {
+            checkFailure();
+            try {
+                enqueue(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("结果排队时被中断");
+            }
+        }
+
+        /** 队列满时分段等待; 写出线程已退出时不再阻塞, 抛出其失败原因. */
+        private void enqueue(Object item) throws IOException, InterruptedException {
+            while (!queue.offer(item, 100L, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    checkFailure();
+                    throw new IOException("结果写出线程已退出");
+                }
+            }
+        }
+
+        private void checkFailure() throws IOException {
+            Throwable f = failure;
+            if (f != null) {
+                throw new IOException("结果写出失败", f);
+            }
+        }
+
+        private void drain() {
+            List<Object> batch = new ArrayList<>(BATCH);
+            boolean end = false;
+            try {
+                while (!end) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, BATCH - 1);
+                    for (Object item : batch) {
+                        if (item instanceof FileRow) {
+                            sink.file((FileRow) item);
+                        } else if (item instanceof PairRow) {
+                            sink.pair((PairRow) item);
+                        } else if (item == Barrier.END) {
+                            end = true;
+                        } else {
+                            sink.flush();
+                            ((Barrier) item).release();
+                        }
+                    }
+                    batch.clear();
+                    if (queue.isEmpty()) {
+                        sink.flush();
+                    }
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                // 任何异常都记录下来, 之后的 put / flush / close 据此报告失败, 不会误报写出成功
+                failure = e;
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("结果写出线程被中断, 剩余结果未写出");
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    sink.close();
+                } catch (IOException | RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                // 出错退出后调用方可能阻塞在 put 上, 清空队列让其返回并在下一次调用时看到 failure
+                queue.clear();
+            }
+        }
+    }
+
+    /** flush 与 close 放入队列的标记. */
+    private static final class Barrier {
+        static final Barrier END = new Barrier();
+
+        boolean done;
+
+        synchronized void release() {
+            done = true;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.Locale;
+
+/**
+ * 采样解码与差分计算的热点内核.
+ *
+ * 类作用:
+ * - 把解码 (三相交织数据拆分、12bit / 16bit 换算、整型到浮点换算) 和差分搜索 (平方和、首个越限、最大值) 的内层循环
+ *   集中到一处, 由 AllFileDecoder、CompactPhaseSamples、ThreePhaseAnalyzer 共用.
+ * - 有两种实现, 结果逐位一致:
+ *   ScalarSampleKernels: 普通标量循环, 始终可用;
+ *   VectorSampleKernels: 基于 JDK Vector API (jdk.incubator.vector) 的向量化实现,
+ *   源码在 vector/ 目录, 只在 Maven vector profile 下编译, 运行时需要 --add-modules jdk.incubator.vector.
+ *
+ * 使用方式:
+ * - SampleKernels.get() 取得进程内选定的实现, 由系统属性 fl.kernels 决定:
+ *   auto (默认, 向量实现可用时用向量实现, 否则退回标量), scalar, vector (不可用时退回标量并在 stderr 提示).
+ * - 实现均无状态, 可被多个线程同时使用.
+ */
+public interface SampleKernels {
+
+    /** 实现名称, 用于日志与基准输出. */
+    String name();
+
+    /**
+     * 把数据区中连续 count 个 6 字节三相采样组解码到三个 short 数组.
+     *
+     * 输入:
+     * - src, srcOff: 原始字节及第一个采样组的起点.
+     * - count: 采样组个数.
+     * - twelveBit: 12bit 编码 ((b1 << 4) | b0) - 0x800, 否则为 16bit 小端短整型.
+     * - dstA, dstB, dstC, dstOff: 三相输出数组及写入起点.
+     */
+    void decodeTriplets(byte[] src, int srcOff, int count, boolean twelveBit,
+            short[] dstA, short[] dstB, short[] dstC, int dstOff);
+
+    /**
+     * 把 raw[from .. from + len) 换算为 raw * scale + offset, 写入 dst[dstOff ..].
+     */
+    void toDouble(short[] raw, int from, double[] dst, int dstOff, int len, double scale, double offset);
+
+    /**
+     * 整型差分 d[i] = raw[i] - raw[i-1] 在 [from, to) 上的平方和, 要求 from >= 1.
+     */
+    long diffSumSquares(short[] raw, int from, int to);
+
+    /**
+     * 在 [from, to) 上寻找第一个 |raw[i] - raw[i-1]| * absScale > threshold 的下标, 要求 from >= 1.
+     *
+     * 输出:
+     * - 找到返回下标, 否则返回 -1.
+     */
+    int firstAbsDiffAbove(short[] raw, int from, int to, double absScale, double threshold);
+
+    /**
+     * 在 [from, to) 上寻找 |raw[i] - raw[i-1]| 最大的下标, 并列时取最早的一个, 要求 from >= 1.
+     *
+     * 输出:
+     * - 下标; 区间为空时返回 -1.
+     */
+    int argMaxAbsDiff(short[] raw, int from, int to);
+
+    /**
+     * 在 [from, to) 上寻找第一个 |x[i] - x[i-1]| > threshold 的下标, 要求 from >= 1.
+     *
+     * 输出:
+     * - 找到返回下标, 否则返回 -1.
+     */
+    int firstAbsDiffAbove(double[] x, int from, int to, double threshold);
+
+    /**
+     * 在 [from, to) 上寻找 |x[i] - x[i-1]| 最大的下标, 并列时取最早的一个, 要求 from >= 1.
+     *
+     * 输出:
+     * - 下标; 区间为空时返回 -1.
+     */
+    int argMaxAbsDiff(double[] x, int from, int to);
+
+    /**
+     * [from, to) 上 |x[i] - mean| 的最大值; 区间为空时返回 0.
+     */
+    double maxAbsDeviation(double[] x, int from, int to, double mean);
+
+    /**
+     * 进程内选定的实现.
+     */
+    static SampleKernels get() {
+        return Holder.INSTANCE;
+    }
+
+    /** 延迟初始化持有者, 第一次调用 get() 时按系统属性选择实现. */
+    final class Holder {
+        static final SampleKernels INSTANCE = select(System.getProperty("fl.kernels", "auto"));
+
+        private Holder() {
+        }
+
+        static SampleKernels select(String mode) {
+            String m = mode.trim().toLowerCase(Locale.ROOT);
+            if ("scalar".equals(m)) {
+                return ScalarSampleKernels.INSTANCE;
+            }
+            SampleKernels vector = loadVector();
+            if (vector != null) {
+                return vector;
+            }
+            if ("vector".equals(m)) {
+                System.err.println("向量内核不可用 (需要 vector profile 编译并以 --add-modules jdk.incubator.vector 运行), 使用标量内核");
+            }
+            return ScalarSampleKernels.INSTANCE;
+        }
+
+        /** 向量实现可能未编译, 或运行时未加载 jdk.incubator.vector 模块, 两种情况都返回 null. */
+        private static SampleKernels loadVector() {
+            try {
+                Class<?> c = Class.forName("VectorSampleKernels");
+                return (SampleKernels) c.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
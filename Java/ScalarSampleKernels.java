@@ -0,0 +1,127 @@
+/**
+ * SampleKernels 的标量实现.
+ *
+ * 类作用:
+ * - 逐点循环的参考实现, 向量实现必须与它逐位一致; 向量实现不可用时使用.
+ *
+ * 使用方式:
+ * - 通过 SampleKernels.get() 或 ScalarSampleKernels.INSTANCE 获得.
+ */
+final class ScalarSampleKernels implements SampleKernels {
+
+    static final ScalarSampleKernels INSTANCE = new ScalarSampleKernels();
+
+    ScalarSampleKernels() {
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void decodeTriplets(byte[] src, int srcOff, int count, boolean twelveBit,
+            short[] dstA, short[] dstB, short[] dstC, int dstOff) {
+        if (twelveBit) {
+            // 12bit 数据：((b1 << 4) | b0) - 0x800
+            for (int i = 0; i < count; i++) {
+                int base = srcOff + i * 6;
+                int a0 = src[base] & 0xFF;
+                int a1 = src[base + 1] & 0xFF;
+                int b0 = src[base + 2] & 0xFF;
+                int b1 = src[base + 3] & 0xFF;
+                int c0 = src[base + 4] & 0xFF;
+                int c1 = src[base + 5] & 0xFF;
+
+                dstA[dstOff + i] = (short) (((a1 << 4) | a0) - 0x800);
+                dstB[dstOff + i] = (short) (((b1 << 4) | b0) - 0x800);
+                dstC[dstOff + i] = (short) (((c1 << 4) | c0) - 0x800);
+            }
+        } else {
+            // 16bit 小端短整型
+            for (int i = 0; i < count; i++) {
+                int base = srcOff + i * 6;
+                dstA[dstOff + i] = (short) ((src[base] & 0xFF) | ((src[base + 1] & 0xFF) << 8));
+                dstB[dstOff + i] = (short) ((src[base + 2] & 0xFF) | ((src[base + 3] & 0xFF) << 8));
+                dstC[dstOff + i] = (short) ((src[base + 4] & 0xFF) | ((src[base + 5] & 0xFF) << 8));
+            }
+        }
+    }
+
+    @Override
+    public void toDouble(short[] raw, int from, double[] dst, int dstOff, int len, double scale, double offset) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = raw[from + i] * scale + offset;
+        }
+    }
+
+    @Override
+    public long diffSumSquares(short[] raw, int from, int to) {
+        long sum = 0L;
+        for (int i = from; i < to; i++) {
+            int d = raw[i] - raw[i - 1];
+            sum += (long) d * d;
+        }
+        return sum;
+    }
+
+    @Override
+    public int firstAbsDiffAbove(short[] raw, int from, int to, double absScale, double threshold) {
+        for (int i = from; i < to; i++) {
+            if (Math.abs(raw[i] - raw[i - 1]) * absScale > threshold) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int argMaxAbsDiff(short[] raw, int from, int to) {
+        int best = -1;
+        int bestAbs = -1;
+        for (int i = from; i < to; i++) {
+            int ad = Math.abs(raw[i] - raw[i - 1]);
+            if (ad > bestAbs) {
+                bestAbs = ad;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int firstAbsDiffAbove(double[] x, int from, int to, double threshold) {
+        for (int i = from; i < to; i++) {
+            if (Math.abs(x[i] - x[i - 1]) > threshold) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int argMaxAbsDiff(double[] x, int from, int to) {
+        int best = -1;
+        double bestAbs = -1.0;
+        for (int i = from; i < to; i++) {
+            double ad = Math.abs(x[i] - x[i - 1]);
+            if (ad > bestAbs) {
+                bestAbs = ad;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public double maxAbsDeviation(double[] x, int from, int to, double mean) {
+        double max = 0.0;
+        for (int i = from; i < to; i++) {
+            double dev = Math.abs(x[i] - mean);
+            if (dev > max) {
+                max = dev;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,344 @@
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * 流式 (增量) 波头识别模块.
+ *
+ * 类作用:
+ * - 采样值按块到达 (录波装置实时推送, 或分块读取 .all 文件), 不必等整段波形解析完成.
+ * - 噪声统计随采样增量累计, 取代 analyzeSingleEnded 中对前 preN 个样本的单独循环;
+ *   噪声窗口结束后阈值固定, 之后每个采样只做一次差分比较.
+ * - 入射波一经越限立即通过回调发出; 反射波取 t1 + minGap 之后的最大差分,
+ *   在其后 confirmSamples 个采样内没有更大的差分即视为确认并发出, 否则在 finish() 时发出.
+ * - 只保留最近 RING_CAPACITY 个采样的环形缓冲, 内存占用与录波长度无关.
+ * - 以 AdaptiveNoiseEstimator 构造时改用局部自适应阈值: 噪声窗口只作预热, 之后噪声估计随采样滑动更新,
+ *   入射波之后冻结, 判定规则与 WaveformFaultAnalyzer.analyzeSingleEndedAdaptive 相同.
+ *
+ * 使用方式:
+ * - new StreamingWavefrontDetector(name, cfg, phase, expectedLength, confirmSamples, listener).
+ * - 反复调用 acceptTriplets(chunk, twelveBit) (.all 数据区的 6 字节 A/B/C 三元组, 可在任意字节处切块)
+ *   或 accept(raw, off, len) (已拆出的单相原始值); 数据结束后调用 finish() 取得 Result.
+ * - expectedLength 已知 (例如头部已读到数据点数) 且 confirmSamples <= 0 时,
+ *   结果与 WaveformFaultAnalyzer.analyzeSingleEnded (自适应模式下为 analyzeSingleEndedAdaptive)
+ *   对同一文件的结果逐点一致.
+ * - 实例不是线程安全的, 一路数据流对应一个实例.
+ */
+public final class StreamingWavefrontDetector {
+
+    /** 环形缓冲保留的最近采样个数, 2 的幂. */
+    public static final int RING_CAPACITY = 4096;
+
+    /** 流长度未知时的噪声窗口长度, 与 analyzeSingleEnded 对长录波的取值相同. */
+    private static final int DEFAULT_NOISE_WINDOW = 1000;
+
+    private final String sourceName;
+    private final WaveformFaultAnalyzer.Config cfg;
+    private final WaveformFaultAnalyzer.Phase phase;
+    private final int phaseOffset;
+    private final int confirmSamples;
+    private final Consumer<Event> listener;
+
+    private final int noiseWindow;
+    private final int minGap;
+
+    private final short[] ring = new short[RING_CAPACITY];
+    private long count;
+    private int prev;
+
+    // 噪声统计: 差分平方和, 与 CompactPhaseSamples.diffSumSquares 相同使用整型累加
+    private long diffSumSq;
+    private double threshold1 = Double.NaN;
+    private double threshold2 = Double.NaN;
+
+    // 自适应模式: 局部噪声估计, 固定阈值模式下为 null
+    private final AdaptiveNoiseEstimator noise;
+
+    private long t1Index = -1L;
+    private long t2Index = -1L;
+    private int t2Abs;
+    private boolean t2Emitted;
+
+    // 跨块的不完整三元组
+    private final byte[] carry = new byte[6];
+    private int carryLen;
+
+    private boolean finished;
+
+    /**
+     * 输入:
+     * - sourceName: 数据来源名称, 写入 Result.fileName.
+     * - cfg: 单端测距配置, 阈值倍数、最小间隔与采样间隔均取自这里.
+     * - phase: 要识别的相别; acceptTriplets 只取该相.
+     * - expectedLength: 预计总点数 (头部已知时), 用于与批处理一致地确定噪声窗口和最小间隔;
+     *   未知时传 0, 噪声窗口取 1000 点, 最小间隔取 cfg.minSamplesBetweenWaves.
+     * - confirmSamples: 反射波候选之后多少个采样内没有更大差分即确认; <= 0 表示只在 finish() 时确认.
+     * - listener: 波头事件回调, 在调用 accept / finish 的线程上执行, 可以为 null.
+     */
+    public StreamingWavefrontDetector(String sourceName, WaveformFaultAnalyzer.Config cfg,
+            WaveformFaultAnalyzer.Phase phase, int expectedLength, int confirmSamples, Consumer<Event> listener) {
+        this(sourceName, cfg, phase, expectedLength, confirmSamples, listener, null);
+    }
+
+    /**
+     * 输入:
+     * - noise: 局部噪声估计器, 由本实例 reset 并独占使用; 为 null 时与上一个构造方法相同, 使用固定阈值.
+     * - 其余同上.
+     */
+    public StreamingWavefrontDetector(String sourceName, WaveformFaultAnalyzer.Config cfg,
+            WaveformFaultAnalyzer.Phase phase, int expectedLength, int confirmSamples, Consumer<Event> listener,
+            AdaptiveNoiseEstimator noise) {
+        this.sourceName = sourceName;
+        this.cfg = cfg;
+        this.phase = phase;
+        this.phaseOffset = phase.ordinal() * 2;
+        this.confirmSamples = confirmSamples;
+        this.listener = listener;
+        if (expectedLength > 0) {
+            this.noiseWindow = Math.min(1000, Math.max(50, expectedLength / 10));
+            this.minGap = (int) Math.max(cfg.minSamplesBetweenWaves, expectedLength * 0.02);
+        } else {
+            this.noiseWindow = DEFAULT_NOISE_WINDOW;
+            this.minGap = cfg.minSamplesBetweenWaves;
+        }
+        this.noise = noise;
+        if (noise != null) {
+            noise.reset(noiseWindow - 1);
+        }
+    }
+
+    // ----------------- 数据输入 -----------------
+
+    /**
+     * 输入一块 .all 数据区字节.
+     *
+     * 输入:
+     * - chunk: position 到 limit 之间为数据区的连续字节, 读取后 position 移到 limit;
+     *   块边界不必与 6 字节对齐, 不完整的三元组留到下一块拼接.
+     * - twelveBit: 数据区编码, 与 AllFileDecoder 相同按总点数判定 (小于 32769 点为 12bit).
+     */
+    public void acceptTriplets(ByteBuffer chunk, boolean twelveBit) {
+        checkNotFinished();
+        if (carryLen > 0) {
+            int need = Math.min(6 - carryLen, chunk.remaining());
+            chunk.get(carry, carryLen, need);
+            carryLen += need;
+            if (carryLen < 6) {
+                return;
+            }
+            int lo = carry[phaseOffset] & 0xFF;
+            int hi = carry[phaseOffset + 1] & 0xFF;
+            acceptSample(decode(lo, hi, twelveBit));
+            carryLen = 0;
+        }
+        int p = chunk.position();
+        int end = p + chunk.remaining() / 6 * 6;
+        for (; p < end; p += 6) {
+            int lo = chunk.get(p + phaseOffset) & 0xFF;
+            int hi = chunk.get(p + phaseOffset + 1) & 0xFF;
+            acceptSample(decode(lo, hi, twelveBit));
+        }
+        chunk.position(end);
+        carryLen = chunk.remaining();
+        chunk.get(carry, 0, carryLen);
+    }
+
+    /**
+     * 输入一块已拆出的单相原始采样值.
+     */
+    public void accept(short[] raw, int off, int len) {
+        checkNotFinished();
+        for (int i = off; i < off + len; i++) {
+            acceptSample(raw[i]);
+        }
+    }
+
+    private static int decode(int lo, int hi, boolean twelveBit) {
+        // 12bit: ((b1 << 4) | b0) - 0x800; 16bit: 小端短整型
+        return twelveBit ? ((hi << 4) | lo) - 0x800 : (short) (lo | (hi << 8));
+    }
+
+    private void acceptSample(int x) {
+        long i = count++;
+        ring[(int) i & (RING_CAPACITY - 1)] = (short) x;
+        if (i == 0L) {
+            prev = x;
+            return;
+        }
+        int d = x - prev;
+        int ad = Math.abs(d);
+        prev = x;
+        if (noise != null) {
+            acceptAdaptive(i, d, ad);
+            return;
+        }
+
+        // 1. 噪声窗口内只累计差分平方和
+        if (i < noiseWindow) {
+            diffSumSq += (long) ad * ad;
+            return;
+        }
+        if (i == noiseWindow) {
+            double noiseStd = Math.sqrt(diffSumSq / (double) Math.max(1, noiseWindow - 1));
+            threshold1 = cfg.firstWaveSigma * noiseStd;
+            threshold2 = cfg.secondWaveSigma * noiseStd;
+        }
+
+        // 2. 入射波: 第一个越限的差分
+        if (t1Index < 0L) {
+            if (ad > threshold1) {
+                t1Index = i;
+                emit(Event.Kind.FIRST_WAVE, i, ad, threshold1);
+            }
+            return;
+        }
+
+        // 3. 反射波: 最小间隔之后的最大差分, 相同取最早
+        if (t2Emitted || i < t1Index + minGap) {
+            return;
+        }
+        if (ad > t2Abs) {
+            t2Abs = ad;
+            t2Index = i;
+        } else if (confirmSamples > 0 && t2Abs > threshold2 && i - t2Index >= confirmSamples) {
+            emitReflected();
+        }
+    }
+
+    /** 自适应模式的单点判定: 先用更新前的局部阈值判定, 再把该差分计入噪声估计. */
+    private void acceptAdaptive(long i, int d, int ad) {
+        if (i >= noiseWindow) {
+            if (t1Index < 0L) {
+                if (noise.exceeds(d, cfg.firstWaveSigma)) {
+                    t1Index = i;
+                    threshold1 = cfg.firstWaveSigma * noise.std();
+                    emit(Event.Kind.FIRST_WAVE, i, ad, threshold1);
+                }
+            } else if (!t2Emitted && i >= t1Index + minGap) {
+                // 越限用偏离判定, 候选按 |d| 排序, 与固定阈值模式及批量分析一致
+                if (ad > t2Abs && noise.exceeds(d, cfg.secondWaveSigma)) {
+                    t2Abs = ad;
+                    t2Index = i;
+                    threshold2 = cfg.secondWaveSigma * noise.std();
+                } else if (confirmSamples > 0 && t2Index >= 0L && i - t2Index >= confirmSamples) {
+                    emitReflected();
+                }
+            }
+        }
+        if (t1Index < 0L) {
+            noise.update(d);
+        }
+    }
+
+    // ----------------- 结果 -----------------
+
+    /**
+     * 数据结束: 发出尚未确认的反射波事件, 并返回测距结果.
+     *
+     * 输出:
+     * - Result; 点数过少、未找到入射波或反射波时返回 null. 重复调用返回相同结果.
+     */
+    public WaveformFaultAnalyzer.Result finish() {
+        if (!finished) {
+            finished = true;
+            // 自适应模式下只有越过当时局部阈值的点才会成为候选
+            if (!t2Emitted && t2Index >= 0L && (noise != null || t2Abs > threshold2)) {
+                emitReflected();
+            }
+        }
+        if (count < 10L || t1Index < 0L || !t2Emitted) {
+            return null;
+        }
+        double t1ms = FaultLocationAlgorithms.sampleIndexToTimeMs((int) t1Index, cfg.samplingIntervalMs);
+        double t2ms = FaultLocationAlgorithms.sampleIndexToTimeMs((int) t2Index, cfg.samplingIntervalMs);
+        double distanceKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(cfg.waveSpeedKmPerMs, t1ms, t2ms);
+        return new WaveformFaultAnalyzer.Result(sourceName, phase, (int) t1Index, (int) t2Index,
+                t1ms, t2ms, distanceKm, cfg);
+    }
+
+    /** 已输入的采样点数. */
+    public long sampleCount() {
+        return count;
+    }
+
+    /** 噪声窗口结束后的入射波阈值 (自适应模式下为入射波越限时的局部阈值); 窗口未满或尚未越限时为 NaN. */
+    public double firstWaveThreshold() {
+        return threshold1;
+    }
+
+    /**
+     * 复制最近的采样值 (按时间先后) 到 dst.
+     *
+     * 输出:
+     * - 实际复制的点数, 不超过 dst.length、已输入点数与 RING_CAPACITY.
+     */
+    public int copyRecent(double[] dst) {
+        int k = (int) Math.min(Math.min(dst.length, count), RING_CAPACITY);
+        long first = count - k;
+        for (int j = 0; j < k; j++) {
+            dst[j] = ring[(int) (first + j) & (RING_CAPACITY - 1)];
+        }
+        return k;
+    }
+
+    private void emitReflected() {
+        t2Emitted = true;
+        emit(Event.Kind.REFLECTED_WAVE, t2Index, t2Abs, threshold2);
+    }
+
+    private void emit(Event.Kind kind, long index, int amplitude, double threshold) {
+        if (listener != null) {
+            listener.accept(new Event(kind, phase, index,
+                    FaultLocationAlgorithms.sampleIndexToTimeMs((int) index, cfg.samplingIntervalMs),
+                    amplitude, threshold));
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("finish() 之后不能继续输入数据: " + sourceName);
+        }
+    }
+
+    // ----------------- 事件类型 -----------------
+
+    /**
+     * 波头事件.
+     *
+     * 字段含义:
+     * - kind: 入射波或反射波.
+     * - sampleIndex: 波头所在采样点, 从数据流第一个采样开始计.
+     * - timeMs: 对应时间, ms.
+     * - amplitude: 波头处差分绝对值 (原始整数单位).
+     * - threshold: 判定时使用的阈值.
+     */
+    public static final class Event {
+
+        public enum Kind {
+            FIRST_WAVE, REFLECTED_WAVE
+        }
+
+        public final Kind kind;
+        public final WaveformFaultAnalyzer.Phase phase;
+        public final long sampleIndex;
+        public final double timeMs;
+        public final int amplitude;
+        public final double threshold;
+
+        Event(Kind kind, WaveformFaultAnalyzer.Phase phase, long sampleIndex, double timeMs,
+                int amplitude, double threshold) {
+            this.kind = kind;
+            this.phase = phase;
+            this.sampleIndex = sampleIndex;
+            this.timeMs = timeMs;
+            this.amplitude = amplitude;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s 相 idx=%d t=%.6f ms |dx|=%d th=%.3f",
+                    kind == Kind.FIRST_WAVE ? "入射波" : "反射波", phase, sampleIndex, timeMs, amplitude, threshold);
+        }
+    }
+}
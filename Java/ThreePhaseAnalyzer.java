@@ -0,0 +1,297 @@
+import java.util.Arrays;
+
+/**
+ * 三相单次遍历分析模块.
+ *
+ * 类作用:
+ * - 对 A/B/C 三相只遍历一次采样数据, 在同一个循环里完成三相各自的噪声估计、峰值幅值统计和
+ *   入射波 / 反射波波头搜索, 不再对每一相分别调用 analyzeSingleEnded 重复扫描.
+ * - 按峰值幅值自动选择最佳相别: 在识别成功的相中取幅值最大的一相.
+ * - 各相的波头判定规则与 WaveformFaultAnalyzer.analyzeSingleEnded 完全相同, 结果逐点一致.
+ * - 噪声窗口之后的峰值、首个越限与最大差分搜索按块交给 SampleKernels, 可使用向量化内核.
+ *
+ * 使用方式:
+ * - ThreePhaseAnalyzer.Result r = ThreePhaseAnalyzer.analyze(df, cfg);
+ *   r.result(phase) 取单相结果, r.bestPhase / r.best() 取自动选出的相别及其结果;
+ *   r.firstWaveIndex(phase) 取单相入射波, 反射波识别失败时仍然有效.
+ */
+public final class ThreePhaseAnalyzer {
+
+    /** 每次从 PhaseSamples 批量复制到暂存数组的点数. */
+    private static final int BLOCK = 4096;
+
+    private static final WaveformFaultAnalyzer.Phase[] PHASES = WaveformFaultAnalyzer.Phase.values();
+
+    /** 每个线程一份三相暂存数组与扫描状态, 同一线程的多次调用之间复用, 稳态下只分配结果对象. */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private ThreePhaseAnalyzer() {
+    }
+
+    /**
+     * 单次遍历分析三相波形.
+     *
+     * 输入:
+     * - df: 解析后的 .all 波形数据.
+     * - cfg: 单端测距配置参数.
+     *
+     * 输出:
+     * - 三相结果、峰值幅值、噪声水平以及自动选出的最佳相别.
+     */
+    public static Result analyze(CurrentData df, WaveformFaultAnalyzer.Config cfg) {
+        WaveformFaultAnalyzer.Phase[] phases = PHASES;
+        int n = df.dataLength;
+        if (n < 10) {
+            WaveformFaultAnalyzer.Result[] none = new WaveformFaultAnalyzer.Result[phases.length];
+            int[] noT1 = new int[phases.length];
+            Arrays.fill(noT1, -1);
+            return new Result(none, noT1, new double[phases.length], new double[phases.length]);
+        }
+
+        // 与 analyzeSingleEnded 相同的噪声窗口与最小间隔
+        int preN = Math.min(1000, Math.max(50, n / 10));
+        int minGap = (int) Math.max(cfg.minSamplesBetweenWaves, n * 0.02);
+        Scratch scratch = SCRATCH.get();
+        PhaseScan[] scans = scratch.scans;
+        for (int p = 0; p < phases.length; p++) {
+            scans[p].reset(n, Math.min(preN, n), minGap, cfg);
+        }
+
+        // 三相按块复制后依次推进, 每个采样点只从存储读取一次.
+        // 暂存数组第 0 个元素保留上一块的最后一个采样, 块内第 k 个点放在下标 k + 1, 差分可以跨块连续计算.
+        // 噪声估计与波头搜索在同一循环内完成, 整体计入 WAVEFRONT_SEARCH
+        long t = Instrumentation.start();
+        SampleKernels kernels = SampleKernels.get();
+        double[][] bufs = scratch.bufs;
+        for (int from = 0; from < n; from += BLOCK) {
+            int len = Math.min(BLOCK, n - from);
+            for (int p = 0; p < phases.length; p++) {
+                double[] buf = bufs[p];
+                // 只有整块之后才会有下一块, 此时 buf[BLOCK] 即上一块的最后一个采样
+                buf[0] = buf[BLOCK];
+                df.samples(phases[p]).copyTo(from, buf, 1, len);
+                scans[p].block(kernels, from, buf, len);
+            }
+        }
+
+        Instrumentation.stop(Instrumentation.Stage.WAVEFRONT_SEARCH, t);
+
+        t = Instrumentation.start();
+        WaveformFaultAnalyzer.Result[] results = new WaveformFaultAnalyzer.Result[phases.length];
+        double[] peaks = new double[phases.length];
+        double[] noise = new double[phases.length];
+        int[] firstWaves = new int[phases.length];
+        for (int p = 0; p < phases.length; p++) {
+            results[p] = scans[p].toResult(df.fileName, phases[p], cfg);
+            firstWaves[p] = scans[p].t1Index;
+            peaks[p] = scans[p].peak;
+            noise[p] = scans[p].noiseStd;
+        }
+        Instrumentation.stop(Instrumentation.Stage.DISTANCE, t);
+        return new Result(results, firstWaves, peaks, noise);
+    }
+
+    // ----------------- 单相扫描状态 -----------------
+
+    /** analyze 的线程内暂存. */
+    private static final class Scratch {
+        final double[][] bufs = new double[PHASES.length][BLOCK + 1];
+        final PhaseScan[] scans = new PhaseScan[PHASES.length];
+
+        Scratch() {
+            for (int p = 0; p < scans.length; p++) {
+                scans[p] = new PhaseScan();
+            }
+        }
+    }
+
+    /**
+     * 单相在遍历过程中的状态, 逻辑与 analyzeSingleEnded 的三个步骤一一对应.
+     * 每次分析前 reset, 实例在同一线程内复用.
+     */
+    private static final class PhaseScan {
+        int n;
+        int preN;
+        int minGap;
+        double sigma1;
+        double sigma2;
+
+        double sumSq;
+        double sum;
+        double mean;
+        double noiseStd;
+        double threshold1;
+        double threshold2;
+        /** 噪声窗口之后相对窗口均值的最大偏差. */
+        double peak;
+
+        int t1Index;
+        int searchStart;
+        int t2Index;
+        double t2Abs;
+
+        void reset(int n, int preN, int minGap, WaveformFaultAnalyzer.Config cfg) {
+            this.n = n;
+            this.preN = preN;
+            this.minGap = minGap;
+            this.sigma1 = cfg.firstWaveSigma;
+            this.sigma2 = cfg.secondWaveSigma;
+            sumSq = 0.0;
+            sum = 0.0;
+            mean = 0.0;
+            noiseStd = 0.0;
+            threshold1 = 0.0;
+            threshold2 = 0.0;
+            peak = 0.0;
+            t1Index = -1;
+            searchStart = Integer.MAX_VALUE;
+            t2Index = -1;
+            t2Abs = -1.0;
+        }
+
+        /**
+         * 推进一块采样.
+         *
+         * 输入:
+         * - from: 本块第一个点的采样下标.
+         * - x: x[1 .. len] 为本块采样, x[0] 为上一块的最后一个采样 (第一块时不使用).
+         */
+        void block(SampleKernels kernels, int from, double[] x, int len) {
+            int end = len + 1;
+            int k = 1;
+
+            // 1. 噪声窗口: 逐点累计差分平方和与均值
+            for (; k < end && from + k - 1 < preN; k++) {
+                int i = from + k - 1;
+                double ad = i > 0 ? Math.abs(x[k] - x[k - 1]) : 0.0;
+                sum += x[k];
+                sumSq += ad * ad;
+                if (i == preN - 1) {
+                    mean = sum / preN;
+                    noiseStd = Math.sqrt(sumSq / Math.max(1, preN - 1));
+                    threshold1 = sigma1 * noiseStd;
+                    threshold2 = sigma2 * noiseStd;
+                }
+            }
+            if (k >= end) {
+                return;
+            }
+            double dev = kernels.maxAbsDeviation(x, k, end, mean);
+            if (dev > peak) {
+                peak = dev;
+            }
+
+            // 2. 入射波: 第一个越限的差分
+            if (t1Index < 0) {
+                int hit = kernels.firstAbsDiffAbove(x, k, end, threshold1);
+                if (hit < 0) {
+                    return;
+                }
+                t1Index = from + hit - 1;
+                searchStart = Math.min(n - 1, t1Index + minGap);
+                k = hit + 1;
+            }
+
+            // 3. 反射波: 最小间隔之后的最大差分, 相同取最早
+            int s = (int) Math.max(k, (long) searchStart - from + 1);
+            if (s < end) {
+                int best = kernels.argMaxAbsDiff(x, s, end);
+                double ad = Math.abs(x[best] - x[best - 1]);
+                if (ad > t2Abs) {
+                    t2Abs = ad;
+                    t2Index = from + best - 1;
+                }
+            }
+        }
+
+        WaveformFaultAnalyzer.Result toResult(String fileName, WaveformFaultAnalyzer.Phase phase,
+                WaveformFaultAnalyzer.Config cfg) {
+            if (t1Index < 0 || t2Index < 0 || t2Abs <= threshold2 || t2Index <= t1Index) {
+                return null;
+            }
+            double t1ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t1Index, cfg.samplingIntervalMs);
+            double t2ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t2Index, cfg.samplingIntervalMs);
+            double distanceKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(cfg.waveSpeedKmPerMs, t1ms, t2ms);
+            return new WaveformFaultAnalyzer.Result(fileName, phase, t1Index, t2Index, t1ms, t2ms, distanceKm, cfg);
+        }
+    }
+
+    // ----------------- 结果类型 -----------------
+
+    /**
+     * 三相分析结果.
+     *
+     * 字段含义:
+     * - bestPhase: 自动选出的相别: 识别成功的相中峰值幅值最大者; 三相都失败时取幅值最大的相.
+     */
+    public static final class Result {
+        public final WaveformFaultAnalyzer.Phase bestPhase;
+
+        private final WaveformFaultAnalyzer.Result[] results;
+        private final int[] firstWaveIndices;
+        private final double[] peakAmplitudes;
+        private final double[] noiseStds;
+
+        Result(WaveformFaultAnalyzer.Result[] results, int[] firstWaveIndices, double[] peakAmplitudes,
+                double[] noiseStds) {
+            this.results = results;
+            this.firstWaveIndices = firstWaveIndices;
+            this.peakAmplitudes = peakAmplitudes;
+            this.noiseStds = noiseStds;
+            this.bestPhase = selectBest(results, peakAmplitudes);
+        }
+
+        private static WaveformFaultAnalyzer.Phase selectBest(WaveformFaultAnalyzer.Result[] results,
+                double[] peaks) {
+            WaveformFaultAnalyzer.Phase[] phases = PHASES;
+            int best = -1;
+            for (int p = 0; p < phases.length; p++) {
+                if (results[p] != null && (best < 0 || peaks[p] > peaks[best])) {
+                    best = p;
+                }
+            }
+            if (best < 0) {
+                best = 0;
+                for (int p = 1; p < phases.length; p++) {
+                    if (peaks[p] > peaks[best]) {
+                        best = p;
+                    }
+                }
+            }
+            return phases[best];
+        }
+
+        /** 指定相的单端测距结果, 识别失败时为 null. */
+        public WaveformFaultAnalyzer.Result result(WaveformFaultAnalyzer.Phase phase) {
+            return results[phase.ordinal()];
+        }
+
+        /** 最佳相别的结果, 三相都识别失败时为 null. */
+        public WaveformFaultAnalyzer.Result best() {
+            return result(bestPhase);
+        }
+
+        /**
+         * 指定相入射波 t1 的采样点, 只取决于噪声窗口与首个越限差分, 不要求找到反射波;
+         * 没有越限点时返回 -1. 双端测距只需要两端的入射波, 应使用本方法而不是 result(phase).
+         */
+        public int firstWaveIndex(WaveformFaultAnalyzer.Phase phase) {
+            return firstWaveIndices[phase.ordinal()];
+        }
+
+        /** 指定相在噪声窗口之后相对窗口均值的最大偏差. */
+        public double peakAmplitude(WaveformFaultAnalyzer.Phase phase) {
+            return peakAmplitudes[phase.ordinal()];
+        }
+
+        /** 指定相噪声窗口内的差分标准差. */
+        public double noiseStd(WaveformFaultAnalyzer.Phase phase) {
+            return noiseStds[phase.ordinal()];
+        }
+
+        /** 三相结果数组的副本, 下标为 Phase.ordinal(). */
+        public WaveformFaultAnalyzer.Result[] results() {
+            return results.clone();
+        }
+    }
+}
@@ -0,0 +1,552 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 波头识别阈值参数扫描模块.
+ *
+ * 类作用:
+ * - 对 firstWaveSigma / secondWaveSigma / minSamplesBetweenWaves 的组合网格批量评估单端测距误差,
+ *   每个录波只解码一次, 每相只遍历一次差分.
+ * - 预计算: 每相保存噪声窗口的差分标准差、峰值幅值, 以及噪声窗口之后 |dx| 的两条单调序列:
+ *   前缀最大值的刷新点 (下标递增、值严格递增), 第一个越限点 t1 即第一个值大于阈值的刷新点;
+ *   后缀最大值的候选点 (下标递增、值不增, 同值取最早), 区间 [s, n) 上的最大差分即第一个下标 >= s 的候选点.
+ *   两条序列长度通常只有几十, 每个配置在每相上只做两次二分查找, 与录波点数无关.
+ * - 判定规则与 ThreePhaseAnalyzer / analyzeSingleEnded 完全相同: t1、t2 采样点逐点一致,
+ *   每个录波按 ThreePhaseAnalyzer 的规则在识别成功的相中取峰值幅值最大的一相.
+ * - 时间换算使用头部 GPS 频率 (与 DoubleEndLocator 相同), 无法解析时用基础配置的采样间隔.
+ * - 配置网格用 fork-join 按区间切分并行评估, 预计算也按文件并行.
+ *
+ * 使用方式:
+ * - ThresholdSweep s = ThresholdSweep.prepare(files, truthKm, base, parallelism);
+ *   List<ThresholdSweep.Outcome> out = s.evaluate(ThresholdSweep.grid(base, sigma1s, sigma2s, gaps), parallelism);
+ * - truthKm 为故障点到本端的真实距离, 键与 files 中的路径相同; 可由 readLabels 读取标注文件,
+ *   或由 doubleEndReference 用双端测距结果作为参考值.
+ * - 预计算结果只读, evaluate 可对不同网格反复调用.
+ */
+public final class ThresholdSweep {
+
+    /** 每个 fork-join 叶子任务评估的配置个数. */
+    private static final int CONFIGS_PER_TASK = 16;
+
+    private final List<Recording> recordings;
+    private final int failedFiles;
+    private final int labelled;
+
+    private ThresholdSweep(List<Recording> recordings, int failedFiles) {
+        this.recordings = recordings;
+        this.failedFiles = failedFiles;
+        int l = 0;
+        for (Recording r : recordings) {
+            if (!Double.isNaN(r.truthKm)) {
+                l++;
+            }
+        }
+        this.labelled = l;
+    }
+
+    // ----------------- 预计算 -----------------
+
+    /**
+     * 解码并预计算一批录波.
+     *
+     * 输入:
+     * - files: 录波文件列表.
+     * - truthKm: 故障点到本端的真实距离, km; 没有标注的文件只统计识别成功率, 可以为空表.
+     * - base: 基础配置, 提供波速和头部 GPS 频率无法解析时的采样间隔.
+     * - parallelism: 并行线程数, 必须 >= 1.
+     *
+     * 输出:
+     * - 预计算结果; 无法解码或点数不足 10 的文件计入 failedFiles(), 不参与评估.
+     */
+    public static ThresholdSweep prepare(List<Path> files, Map<Path, Double> truthKm,
+            WaveformFaultAnalyzer.Config base, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism 必须 >= 1: " + parallelism);
+        }
+        Recording[] slots = new Recording[files.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new PrepareTask(files, truthKm, base, slots, 0, slots.length));
+        } finally {
+            pool.shutdown();
+        }
+        List<Recording> ok = new ArrayList<>(slots.length);
+        for (Recording r : slots) {
+            if (r != null) {
+                ok.add(r);
+            }
+        }
+        return new ThresholdSweep(ok, slots.length - ok.size());
+    }
+
+    /** 单个文件的预计算, 失败返回 null. */
+    static Recording prepareFile(Path path, double truthKm, WaveformFaultAnalyzer.Config base) {
+        CurrentData df;
+        try {
+            df = AllFileDecoder.decode(path);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        int n = df.dataLength;
+        if (n < 10) {
+            return null;
+        }
+        // 峰值与噪声水平与阈值无关, 直接取三相一次遍历的结果, 保证选相规则一致
+        ThreePhaseAnalyzer.Result three = ThreePhaseAnalyzer.analyze(df, base);
+        WaveformFaultAnalyzer.Phase[] phases = WaveformFaultAnalyzer.Phase.values();
+        int preN = Math.min(1000, Math.max(50, n / 10));
+        PhaseProfile[] profiles = new PhaseProfile[phases.length];
+        double[] x = new double[n];
+        double[] ad = new double[n];
+        for (int p = 0; p < phases.length; p++) {
+            df.samples(phases[p]).copyTo(0, x, 0, n);
+            for (int i = preN; i < n; i++) {
+                ad[i] = Math.abs(x[i] - x[i - 1]);
+            }
+            profiles[p] = PhaseProfile.of(ad, preN, n, three.noiseStd(phases[p]), three.peakAmplitude(phases[p]));
+        }
+        double intervalMs = DoubleEndLocator.samplingIntervalMs(df, base.samplingIntervalMs);
+        return new Recording(path, n, intervalMs, truthKm, profiles);
+    }
+
+    /**
+     * 单相的阈值无关统计量.
+     *
+     * 字段含义:
+     * - riseIdx / riseVal: 从噪声窗口末尾起 |dx| 的前缀最大值刷新点, riseVal 严格递增.
+     * - peakIdx / peakVal: |dx| 的后缀最大值候选点 (该点 |dx| 不小于其后所有点, 同值保留最早者),
+     *   按下标递增排列, peakVal 不增.
+     */
+    static final class PhaseProfile {
+        final double noiseStd;
+        final double peak;
+        final int[] riseIdx;
+        final double[] riseVal;
+        final int[] peakIdx;
+        final double[] peakVal;
+
+        private PhaseProfile(double noiseStd, double peak, int[] riseIdx, double[] riseVal,
+                int[] peakIdx, double[] peakVal) {
+            this.noiseStd = noiseStd;
+            this.peak = peak;
+            this.riseIdx = riseIdx;
+            this.riseVal = riseVal;
+            this.peakIdx = peakIdx;
+            this.peakVal = peakVal;
+        }
+
+        static PhaseProfile of(double[] ad, int preN, int n, double noiseStd, double peak) {
+            IntDoubleList rise = new IntDoubleList();
+            double max = -1.0;
+            for (int i = preN; i < n; i++) {
+                if (ad[i] > max) {
+                    max = ad[i];
+                    rise.add(i, max);
+                }
+            }
+            // 从右向左: 不小于右侧全部值的点才可能是某个区间的 (最早) 最大值
+            IntDoubleList tail = new IntDoubleList();
+            double right = -1.0;
+            for (int i = n - 1; i >= preN; i--) {
+                if (ad[i] >= right) {
+                    right = ad[i];
+                    tail.add(i, right);
+                }
+            }
+            tail.reverse();
+            return new PhaseProfile(noiseStd, peak, rise.indices(), rise.values(), tail.indices(), tail.values());
+        }
+
+        /** 第一个 |dx| > threshold 的下标, 与 firstAbsDiffAbove(preN, n, threshold) 相同; 没有返回 -1. */
+        int firstAbove(double threshold) {
+            int lo = 0;
+            int hi = riseVal.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (riseVal[mid] > threshold) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo < riseVal.length ? riseIdx[lo] : -1;
+        }
+
+        /** [from, n) 上 |dx| 最大 (同值取最早) 的候选点在 peakIdx 中的位置, from 不超过 n - 1. */
+        int maxFrom(int from) {
+            int lo = 0;
+            int hi = peakIdx.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (peakIdx[mid] >= from) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /** 一个录波的预计算结果. */
+    static final class Recording {
+        final Path path;
+        final int n;
+        final double intervalMs;
+        final double truthKm;
+        final PhaseProfile[] phases;
+
+        Recording(Path path, int n, double intervalMs, double truthKm, PhaseProfile[] phases) {
+            this.path = path;
+            this.n = n;
+            this.intervalMs = intervalMs;
+            this.truthKm = truthKm;
+            this.phases = phases;
+        }
+
+        /**
+         * 按配置识别各相并选相, 返回最佳相的单端测距距离, km; 三相都失败时返回 NaN.
+         */
+        double locate(WaveformFaultAnalyzer.Config cfg) {
+            int minGap = (int) Math.max(cfg.minSamplesBetweenWaves, n * 0.02);
+            double bestPeak = 0.0;
+            double bestKm = Double.NaN;
+            for (PhaseProfile p : phases) {
+                int t1 = p.firstAbove(cfg.firstWaveSigma * p.noiseStd);
+                if (t1 < 0) {
+                    continue;
+                }
+                int searchStart = Math.min(n - 1, t1 + minGap);
+                int k = p.maxFrom(searchStart);
+                int t2 = p.peakIdx[k];
+                double ad = p.peakVal[k];
+                if (ad <= cfg.secondWaveSigma * p.noiseStd || ad <= 0.0 || t2 <= t1) {
+                    continue;
+                }
+                if (Double.isNaN(bestKm) || p.peak > bestPeak) {
+                    double t1ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t1, intervalMs);
+                    double t2ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t2, intervalMs);
+                    bestKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(cfg.waveSpeedKmPerMs, t1ms, t2ms);
+                    bestPeak = p.peak;
+                }
+            }
+            return bestKm;
+        }
+    }
+
+    // ----------------- 评估 -----------------
+
+    /**
+     * 在基础配置上展开三个参数的笛卡尔积, 其余参数 (采样间隔、波速、线路长度) 沿用 base.
+     *
+     * 输出:
+     * - 按 firstSigmas、secondSigmas、minGaps 的嵌套顺序排列的配置列表.
+     */
+    public static List<WaveformFaultAnalyzer.Config> grid(WaveformFaultAnalyzer.Config base,
+            double[] firstSigmas, double[] secondSigmas, int[] minGaps) {
+        List<WaveformFaultAnalyzer.Config> out =
+                new ArrayList<>(firstSigmas.length * secondSigmas.length * minGaps.length);
+        for (double s1 : firstSigmas) {
+            for (double s2 : secondSigmas) {
+                for (int gap : minGaps) {
+                    out.add(new WaveformFaultAnalyzer.Config(base.samplingIntervalMs, base.waveSpeedKmPerMs,
+                            base.lineLengthKm, s1, s2, gap));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 并行评估一组配置.
+     *
+     * 输入:
+     * - configs: 待评估的配置.
+     * - parallelism: 并行线程数, 必须 >= 1.
+     *
+     * 输出:
+     * - 与 configs 一一对应的评估结果.
+     */
+    public List<Outcome> evaluate(List<WaveformFaultAnalyzer.Config> configs, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism 必须 >= 1: " + parallelism);
+        }
+        Outcome[] out = new Outcome[configs.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new EvaluateTask(configs, out, 0, out.length));
+        } finally {
+            pool.shutdown();
+        }
+        return Collections.unmodifiableList(Arrays.asList(out));
+    }
+
+    /** 单个配置在全部录波上的评估. */
+    public Outcome evaluate(WaveformFaultAnalyzer.Config cfg) {
+        int detected = 0;
+        int matched = 0;
+        double sumAbs = 0.0;
+        double sumSq = 0.0;
+        double maxAbs = 0.0;
+        for (Recording r : recordings) {
+            double km = r.locate(cfg);
+            if (Double.isNaN(km)) {
+                continue;
+            }
+            detected++;
+            if (Double.isNaN(r.truthKm)) {
+                continue;
+            }
+            double err = Math.abs(km - r.truthKm);
+            matched++;
+            sumAbs += err;
+            sumSq += err * err;
+            maxAbs = Math.max(maxAbs, err);
+        }
+        return new Outcome(cfg, detected, matched,
+                matched > 0 ? sumAbs / matched : Double.NaN,
+                matched > 0 ? Math.sqrt(sumSq / matched) : Double.NaN,
+                matched > 0 ? maxAbs : Double.NaN);
+    }
+
+    /**
+     * 单个录波在指定配置下的单端测距距离, km; 识别失败或文件不在本批中时返回 NaN.
+     */
+    public double distanceKm(Path path, WaveformFaultAnalyzer.Config cfg) {
+        for (Recording r : recordings) {
+            if (r.path.equals(path)) {
+                return r.locate(cfg);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /** 参与评估的录波数. */
+    public int recordingCount() {
+        return recordings.size();
+    }
+
+    /** 其中有真实距离的录波数. */
+    public int labelledCount() {
+        return labelled;
+    }
+
+    /** 无法解码或点数不足而被跳过的文件数. */
+    public int failedFiles() {
+        return failedFiles;
+    }
+
+    /**
+     * 一个配置的评估结果.
+     *
+     * 字段含义:
+     * - detected: 识别成功 (至少一相得到 t1 / t2) 的录波数.
+     * - matched: 其中有真实距离的录波数, 误差统计只针对这些录波.
+     * - meanAbsErrorKm / rmsErrorKm / maxAbsErrorKm: 平均绝对误差、均方根误差、最大绝对误差, km;
+     *   matched 为 0 时为 NaN.
+     */
+    public static final class Outcome {
+        public final WaveformFaultAnalyzer.Config config;
+        public final int detected;
+        public final int matched;
+        public final double meanAbsErrorKm;
+        public final double rmsErrorKm;
+        public final double maxAbsErrorKm;
+
+        Outcome(WaveformFaultAnalyzer.Config config, int detected, int matched,
+                double meanAbsErrorKm, double rmsErrorKm, double maxAbsErrorKm) {
+            this.config = config;
+            this.detected = detected;
+            this.matched = matched;
+            this.meanAbsErrorKm = meanAbsErrorKm;
+            this.rmsErrorKm = rmsErrorKm;
+            this.maxAbsErrorKm = maxAbsErrorKm;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "sigma1=%.2f sigma2=%.2f gap=%d: 识别 %d, 有标注 %d, MAE %.3f km, RMSE %.3f km, 最大 %.3f km",
+                    config.firstWaveSigma, config.secondWaveSigma, config.minSamplesBetweenWaves,
+                    detected, matched, meanAbsErrorKm, rmsErrorKm, maxAbsErrorKm);
+        }
+    }
+
+    // ----------------- 真实距离来源 -----------------
+
+    /**
+     * 读取故障距离标注文件.
+     *
+     * 文件格式:
+     * - UTF-8 文本, 每行 "<文件路径> <距离 km>", 路径可含空格 (以最后一个空白分隔距离), 相对路径相对 root;
+     *   空行与 # 开头的行忽略.
+     *
+     * 输出:
+     * - 规范化后的绝对路径到距离的映射; 查找时也应使用 toAbsolutePath().normalize() 的路径.
+     */
+    public static Map<Path, Double> readLabels(Path file, Path root) throws IOException {
+        Map<Path, Double> out = new HashMap<>();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNo++;
+            String s = line.trim();
+            if (s.isEmpty() || s.startsWith("#")) {
+                continue;
+            }
+            int sep = Math.max(s.lastIndexOf(' '), s.lastIndexOf('\t'));
+            if (sep <= 0) {
+                throw new IOException("标注格式错误: " + file + " 第 " + lineNo + " 行: " + line);
+            }
+            double km;
+            try {
+                km = Double.parseDouble(s.substring(sep + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("标注距离无法解析: " + file + " 第 " + lineNo + " 行: " + line, e);
+            }
+            out.put(root.resolve(s.substring(0, sep).trim()).toAbsolutePath().normalize(), km);
+        }
+        return out;
+    }
+
+    /**
+     * 以双端测距结果作为各端真实距离的参考值.
+     *
+     * 输入:
+     * - files: 录波文件列表, 按文件名配对 M/N 端 (见 DoubleEndPairIndex).
+     * - cfg: 双端识别所用的配置, 通常为默认配置.
+     * - phase: 双端识别相别.
+     * - windowSeconds: 时钟校正窗口, 秒; 小于 0 表示只做精确配对.
+     *
+     * 输出:
+     * - 双端测距成功的配对中, M 端文件到距 M 端距离、N 端文件到距 N 端距离的映射, 键为 files 中的路径.
+     */
+    public static Map<Path, Double> doubleEndReference(List<Path> files, WaveformFaultAnalyzer.Config cfg,
+            WaveformFaultAnalyzer.Phase phase, int windowSeconds, int parallelism) throws InterruptedException {
+        DoubleEndPairIndex index = DoubleEndPairIndex.build(files);
+        List<DoubleEndPairIndex.Pair> pairs = windowSeconds < 0 ? index.pairs() : index.tolerantPairs(windowSeconds);
+        Map<Path, Double> out = new HashMap<>();
+        for (DoubleEndLocator.PairResult r
+                : new DoubleEndLocator(cfg, phase, parallelism, windowSeconds).locate(pairs)) {
+            if (r.result != null) {
+                out.put(r.pair.m.path, r.result.distanceFromA);
+                out.put(r.pair.n.path, r.result.distanceFromB);
+            }
+        }
+        return out;
+    }
+
+    // ----------------- fork-join 任务 -----------------
+
+    /** 按文件区间二分的预计算任务, 每个叶子处理一个文件. */
+    private static final class PrepareTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final Map<Path, Double> truthKm;
+        private final WaveformFaultAnalyzer.Config base;
+        private final Recording[] slots;
+        private final int from;
+        private final int to;
+
+        PrepareTask(List<Path> files, Map<Path, Double> truthKm, WaveformFaultAnalyzer.Config base,
+                Recording[] slots, int from, int to) {
+            this.files = files;
+            this.truthKm = truthKm;
+            this.base = base;
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    Path path = files.get(from);
+                    Double truth = truthKm.get(path);
+                    slots[from] = prepareFile(path, truth == null ? Double.NaN : truth, base);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new PrepareTask(files, truthKm, base, slots, from, mid),
+                    new PrepareTask(files, truthKm, base, slots, mid, to));
+        }
+    }
+
+    /** 按配置区间二分的评估任务. */
+    private final class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<WaveformFaultAnalyzer.Config> configs;
+        private final Outcome[] out;
+        private final int from;
+        private final int to;
+
+        EvaluateTask(List<WaveformFaultAnalyzer.Config> configs, Outcome[] out, int from, int to) {
+            this.configs = configs;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CONFIGS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    out[i] = evaluate(configs.get(i));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new EvaluateTask(configs, out, from, mid), new EvaluateTask(configs, out, mid, to));
+        }
+    }
+
+    /** 预计算时收集 (下标, 值) 序列的可增长数组. */
+    private static final class IntDoubleList {
+        private int[] idx = new int[16];
+        private double[] val = new double[16];
+        private int size;
+
+        void add(int i, double v) {
+            if (size == idx.length) {
+                idx = Arrays.copyOf(idx, size * 2);
+                val = Arrays.copyOf(val, size * 2);
+            }
+            idx[size] = i;
+            val[size] = v;
+            size++;
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int ti = idx[i];
+                idx[i] = idx[j];
+                idx[j] = ti;
+                double tv = val[i];
+                val[i] = val[j];
+                val[j] = tv;
+            }
+        }
+
+        int[] indices() {
+            return Arrays.copyOf(idx, size);
+        }
+
+        double[] values() {
+            return Arrays.copyOf(val, size);
+        }
+    }
+}
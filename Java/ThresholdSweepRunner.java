@@ -0,0 +1,102 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 波头识别阈值参数扫描入口。
+ *
+ * 使用方法（在项目根目录执行）：
+ * java -cp src ThresholdSweepRunner src\\data
+ * java -cp src ThresholdSweepRunner src\\data labels.txt 8
+ *
+ * 参数依次为：起始目录、故障距离标注文件（每行 "<相对起始目录的路径> <距 km>"，
+ * 写为 "-" 或省略时用默认配置的双端测距结果作为参考距离）、并行线程数（默认为 CPU 核数）。
+ *
+ * 扫描网格：firstWaveSigma 3.0 ~ 12.0、secondWaveSigma 2.0 ~ 10.0（步长均为 0.5），
+ * minSamplesBetweenWaves 100 ~ 2000（步长 100），共 6460 组。
+ * 按有标注且识别成功的录波数从多到少、平均绝对误差从小到大排序，输出前 20 组以及默认配置的评估结果。
+ * 有参考距离的录波少于 10 个时误差统计不可靠（示例数据的双端参考只有 8 个），此时给出警告，
+ * 只按识别成功的录波数排序，误差列仅供参考；需要按误差排序时请提供标注文件。
+ */
+public final class ThresholdSweepRunner {
+
+    private static final int TOP = 20;
+    /** 按误差排序所需的最少参考距离个数. */
+    private static final int MIN_LABELLED = 10;
+
+    private ThresholdSweepRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+
+        Path root = (args.length > 0 ? Paths.get(args[0]) : Paths.get("src", "data")).toAbsolutePath().normalize();
+        String labels = args.length > 1 ? args[1] : "-";
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        if (!Files.isDirectory(root)) {
+            System.err.println("目录不存在: " + root);
+            return;
+        }
+        List<Path> files = BatchAnalysisEngine.listAllFiles(root);
+        WaveformFaultAnalyzer.Config base = WaveformFaultAnalyzer.Config.defaultConfig();
+
+        long t0 = System.nanoTime();
+        Map<Path, Double> truth = "-".equals(labels)
+                ? ThresholdSweep.doubleEndReference(files, base, WaveformFaultAnalyzer.Phase.A, 1, parallelism)
+                : ThresholdSweep.readLabels(Paths.get(labels), root);
+        ThresholdSweep sweep = ThresholdSweep.prepare(files, truth, base, parallelism);
+        double prepareMs = (System.nanoTime() - t0) / 1e6;
+        System.out.printf(Locale.ROOT, "扫描目录: %s%n文件数: %d, 参与评估: %d, 有参考距离: %d (%s), 跳过: %d, 预计算耗时 %.1f ms%n",
+                root, files.size(), sweep.recordingCount(), sweep.labelledCount(),
+                "-".equals(labels) ? "双端测距参考" : labels, sweep.failedFiles(), prepareMs);
+
+        List<WaveformFaultAnalyzer.Config> grid = ThresholdSweep.grid(base,
+                range(3.0, 12.0, 0.5), range(2.0, 10.0, 0.5), gaps(100, 2000, 100));
+        t0 = System.nanoTime();
+        List<ThresholdSweep.Outcome> outcomes = sweep.evaluate(grid, parallelism);
+        double evaluateMs = (System.nanoTime() - t0) / 1e6;
+        System.out.printf(Locale.ROOT, "配置数: %d, 评估耗时 %.1f ms (%.2f us/配置)%n",
+                grid.size(), evaluateMs, evaluateMs * 1000.0 / grid.size());
+
+        List<ThresholdSweep.Outcome> ranked = new ArrayList<>(outcomes);
+        if (sweep.labelledCount() >= MIN_LABELLED) {
+            ranked.sort(Comparator.comparingInt((ThresholdSweep.Outcome o) -> -o.matched)
+                    .thenComparingDouble(o -> Double.isNaN(o.meanAbsErrorKm) ? Double.MAX_VALUE : o.meanAbsErrorKm)
+                    .thenComparingInt(o -> -o.detected));
+        } else {
+            System.out.printf(Locale.ROOT, "警告: 只有 %d 个录波有参考距离 (少于 %d), 误差统计不可靠, "
+                    + "改为只按识别成功数排序; 请提供标注文件后再按误差选择参数%n",
+                    sweep.labelledCount(), MIN_LABELLED);
+            ranked.sort(Comparator.comparingInt((ThresholdSweep.Outcome o) -> -o.detected));
+        }
+        System.out.println("------------------------------------------------------------");
+        for (int i = 0; i < Math.min(TOP, ranked.size()); i++) {
+            System.out.printf(Locale.ROOT, "%2d. %s%n", i + 1, ranked.get(i));
+        }
+        System.out.println("------------------------------------------------------------");
+        System.out.println("默认配置: " + sweep.evaluate(base));
+    }
+
+    private static double[] range(double from, double to, double step) {
+        int count = (int) Math.round((to - from) / step) + 1;
+        double[] out = new double[count];
+        for (int i = 0; i < count; i++) {
+            out[i] = from + i * step;
+        }
+        return out;
+    }
+
+    private static int[] gaps(int from, int to, int step) {
+        int[] out = new int[(to - from) / step + 1];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = from + i * step;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,647 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式压缩波形归档.
+ *
+ * 类作用:
+ * - 把大量 .all 录波转存到一个归档文件中: 每个录波的 A/B/C 三相各自连续存放 (列式),
+ *   每 BLOCK_SAMPLES 个点为一块, 块内对相邻差分做 "最小值偏移 + 定宽位打包" 压缩.
+ *   12bit 录波的差分通常只需几位, 数据量约为 .all 原文件 (每点 6 字节) 的 1/3 以下.
+ * - 文件末尾的头部表按录波保存与 CurrentData 相同的头部字段, 以及每相各块的字节偏移 (块索引);
+ *   打开归档时整表读入内存, 之后任意录波、任意采样区间都可以直接算出要读的字节范围, 一次定位读取.
+ * - load 得到与 AllFileDecoder.decode 逐点一致的 CurrentData; readWindow 只读取并解压窗口覆盖的块.
+ *
+ * 使用方式:
+ * - 转存: WaveformArchive.write(files, archivePath).
+ * - 读取: try (WaveformArchive a = WaveformArchive.open(archivePath)) {
+ *       CurrentData df = a.load(a.indexOf("xxx.all"));
+ *       CurrentData win = a.readWindow(i, t1 - 200, 400);
+ *   }
+ * - 作为解码数据源: new DecodedRecordingCache(bytes, archive.loader()), 再交给 BatchAnalysisEngine /
+ *   DoubleEndLocator; 归档中没有的文件仍按 .all 解码.
+ * - 实例持有打开的文件通道, 用完需 close(); 各读取方法使用定位读取, 可多线程同时调用.
+ *
+ * 文件格式 (小端):
+ * - 32 字节文件头: "FLWARC01", 版本, 每块点数, 录波数, 保留, 头部表偏移 (long).
+ * - 数据区: 依次为各录波的 A 相各块、B 相各块、C 相各块.
+ *   每块: 首点 (short) + 最小差分 (int) + 位宽 (byte) + 其余各点 (差分 - 最小差分) 按位宽紧密排列.
+ * - 头部表: 每个录波一项, 含文件名、头部字段、原文件的 dataStart / 大小、数据区偏移,
+ *   以及每相 (块数 + 1) 个相对数据区偏移的块起点.
+ */
+public final class WaveformArchive implements Closeable {
+
+    /** 每块点数; 在波头附近取窗口时最多多解压两块. */
+    public static final int BLOCK_SAMPLES = 256;
+
+    private static final byte[] MAGIC = "FLWARC01".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    /** 块头: 首点 short + 最小差分 int + 位宽 byte. */
+    private static final int BLOCK_HEADER_SIZE = 7;
+    /** decodeBlock 每次读取 3 字节, 读缓冲区末尾留出的余量. */
+    private static final int DECODE_PADDING = 3;
+    private static final int PHASES = 3;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int blockSamples;
+    private final RecordingHeader[] headers;
+    private final long[] dataOffsets;
+    /** [录波][相][块], 长度为块数 + 1, 相对 dataOffsets. */
+    private final int[][][] blockOffsets;
+    private final Map<String, Integer> byName;
+
+    private WaveformArchive(Path path, FileChannel channel, int blockSamples, RecordingHeader[] headers,
+            long[] dataOffsets, int[][][] blockOffsets) {
+        this.path = path;
+        this.channel = channel;
+        this.blockSamples = blockSamples;
+        this.headers = headers;
+        this.dataOffsets = dataOffsets;
+        this.blockOffsets = blockOffsets;
+        this.byName = new HashMap<>(headers.length * 2);
+        for (int i = headers.length - 1; i >= 0; i--) {
+            byName.put(headers[i].fileName, i);
+        }
+    }
+
+    // ----------------- 写入 -----------------
+
+    /**
+     * 把一组 .all 文件转存为归档, 已存在的同名文件被覆盖.
+     *
+     * 输入:
+     * - files: .all 文件, 按给定顺序存放; 大小不受 512 KB 限制 (经 ChunkedRecordingReader 分块读取).
+     * - archive: 归档文件路径.
+     *
+     * 输出:
+     * - 转存统计; 无法解析的文件跳过并计入 skipped.
+     */
+    public static WriteResult write(List<Path> files, Path archive) throws IOException {
+        List<RecordingHeader> headers = new ArrayList<>();
+        List<Long> dataOffsets = new ArrayList<>();
+        List<int[][]> offsets = new ArrayList<>();
+        long sourceBytes = 0;
+        int skipped = 0;
+
+        try (FileChannel out = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(HEADER_SIZE);
+            PhaseEncoder[] enc = new PhaseEncoder[PHASES];
+            for (int p = 0; p < PHASES; p++) {
+                enc[p] = new PhaseEncoder(BLOCK_SAMPLES);
+            }
+            for (Path f : files) {
+                RecordingHeader h;
+                try (ChunkedRecordingReader r = ChunkedRecordingReader.open(f)) {
+                    h = r.header();
+                    for (PhaseEncoder e : enc) {
+                        e.reset();
+                    }
+                    r.forEachBlock(ChunkedRecordingReader.DEFAULT_BLOCK_SAMPLES, (first, a, b, c, count) -> {
+                        enc[0].add(a, count);
+                        enc[1].add(b, count);
+                        enc[2].add(c, count);
+                    });
+                } catch (IOException e) {
+                    skipped++;
+                    continue;
+                }
+                int[][] phaseOffsets = new int[PHASES][];
+                int base = 0;
+                for (int p = 0; p < PHASES; p++) {
+                    enc[p].finish();
+                    phaseOffsets[p] = enc[p].offsets(base);
+                    base += enc[p].out.size;
+                }
+                dataOffsets.add(out.position());
+                for (PhaseEncoder e : enc) {
+                    writeFully(out, ByteBuffer.wrap(e.out.bytes, 0, e.out.size));
+                }
+                headers.add(h);
+                offsets.add(phaseOffsets);
+                sourceBytes += h.fileSize;
+            }
+
+            long tableOffset = out.position();
+            Bytes table = new Bytes(256 * headers.size() + 64);
+            for (int i = 0; i < headers.size(); i++) {
+                writeEntry(table, headers.get(i), dataOffsets.get(i), offsets.get(i));
+            }
+            writeFully(out, ByteBuffer.wrap(table.bytes, 0, table.size));
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            head.put(MAGIC).putInt(FORMAT_VERSION).putInt(BLOCK_SAMPLES).putInt(headers.size()).putInt(0)
+                    .putLong(tableOffset).flip();
+            out.position(0);
+            writeFully(out, head);
+        }
+        return new WriteResult(headers.size(), skipped, sourceBytes, Files.size(archive));
+    }
+
+    private static void writeEntry(Bytes t, RecordingHeader h, long dataOffset, int[][] phaseOffsets) {
+        t.putString(h.fileName);
+        t.putString(h.microSecond);
+        t.putString(h.gpsFrequency);
+        t.putInt(h.station);
+        t.putInt(h.line);
+        t.putInt(h.year);
+        t.putInt(h.month);
+        t.putInt(h.day);
+        t.putInt(h.hour);
+        t.putInt(h.minute);
+        t.putInt(h.second);
+        t.putInt(h.gpsFlag);
+        t.putInt(h.breakFlag);
+        t.putInt(h.startupType);
+        t.putDouble(h.startupValue1);
+        t.putDouble(h.startupValue2);
+        t.putDouble(h.startupValue3);
+        t.putInt(h.dataStart);
+        t.putInt(h.dataLength);
+        t.putLong(h.fileSize);
+        t.putLong(dataOffset);
+        for (int[] o : phaseOffsets) {
+            for (int v : o) {
+                t.putInt(v);
+            }
+        }
+    }
+
+    /**
+     * 转存统计.
+     *
+     * 字段含义:
+     * - recordings: 写入的录波数.
+     * - skipped: 无法解析而跳过的文件数.
+     * - sourceBytes: 写入录波的 .all 原文件总字节数.
+     * - archiveBytes: 归档文件字节数 (含头部表).
+     */
+    public static final class WriteResult {
+        public final int recordings;
+        public final int skipped;
+        public final long sourceBytes;
+        public final long archiveBytes;
+
+        WriteResult(int recordings, int skipped, long sourceBytes, long archiveBytes) {
+            this.recordings = recordings;
+            this.skipped = skipped;
+            this.sourceBytes = sourceBytes;
+            this.archiveBytes = archiveBytes;
+        }
+
+        /** 原文件与归档的字节数之比. */
+        public double compressionRatio() {
+            return archiveBytes == 0 ? 0.0 : (double) sourceBytes / archiveBytes;
+        }
+    }
+
+    // ----------------- 读取 -----------------
+
+    /**
+     * 打开归档并读入头部表.
+     *
+     * 输出:
+     * - 归档读取器; 文件格式不符时抛出 IOException.
+     */
+    public static WaveformArchive open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, head, 0);
+            head.flip();
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            int version = head.getInt();
+            if (!Arrays.equals(magic, MAGIC) || version != FORMAT_VERSION) {
+                throw new IOException("不是波形归档文件或版本不符: " + path);
+            }
+            int blockSamples = head.getInt();
+            int count = head.getInt();
+            head.getInt();
+            long tableOffset = head.getLong();
+            long tableSize = ch.size() - tableOffset;
+            if (blockSamples <= 0 || count < 0 || tableOffset < HEADER_SIZE || tableSize < 0
+                    || tableSize > Integer.MAX_VALUE) {
+                throw new IOException("归档文件头损坏: " + path);
+            }
+
+            ByteBuffer t = ByteBuffer.allocate((int) tableSize).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, t, tableOffset);
+            t.flip();
+            RecordingHeader[] headers = new RecordingHeader[count];
+            long[] dataOffsets = new long[count];
+            int[][][] blockOffsets = new int[count][PHASES][];
+            for (int i = 0; i < count; i++) {
+                String fileName = getString(t);
+                String microSecond = getString(t);
+                String gpsFrequency = getString(t);
+                int station = t.getInt();
+                int line = t.getInt();
+                int year = t.getInt();
+                int month = t.getInt();
+                int day = t.getInt();
+                int hour = t.getInt();
+                int minute = t.getInt();
+                int second = t.getInt();
+                int gpsFlag = t.getInt();
+                int breakFlag = t.getInt();
+                int startupType = t.getInt();
+                double v1 = t.getDouble();
+                double v2 = t.getDouble();
+                double v3 = t.getDouble();
+                int dataStart = t.getInt();
+                int dataLength = t.getInt();
+                long fileSize = t.getLong();
+                dataOffsets[i] = t.getLong();
+                headers[i] = new RecordingHeader(station, line, year, month, day, hour, minute, second,
+                        microSecond, gpsFrequency, gpsFlag, breakFlag, startupType, v1, v2, v3,
+                        dataStart, dataLength, fileSize, fileName);
+                int blocks = (dataLength + blockSamples - 1) / blockSamples;
+                for (int p = 0; p < PHASES; p++) {
+                    int[] o = new int[blocks + 1];
+                    for (int b = 0; b <= blocks; b++) {
+                        o[b] = t.getInt();
+                    }
+                    blockOffsets[i][p] = o;
+                }
+            }
+            return new WaveformArchive(path, ch, blockSamples, headers, dataOffsets, blockOffsets);
+        } catch (BufferUnderflowException e) {
+            ch.close();
+            throw new IOException("归档头部表损坏: " + path, e);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** 归档中的录波数. */
+    public int size() {
+        return headers.length;
+    }
+
+    /** 第 i 个录波的头部信息; fileSize / dataStart 为原 .all 文件的值. */
+    public RecordingHeader header(int i) {
+        return headers[i];
+    }
+
+    /** 按文件名查找录波下标, 没有时返回 -1; 同名文件取最先写入的一个. */
+    public int indexOf(String fileName) {
+        Integer i = byName.get(fileName);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * 第 i 个录波在归档中占用的字节数 (不含头部表).
+     */
+    public long storedBytes(int i) {
+        int[][] o = blockOffsets[i];
+        return o[PHASES - 1][o[PHASES - 1].length - 1];
+    }
+
+    /**
+     * 读取并解压第 i 个录波的全部采样.
+     *
+     * 输出:
+     * - 与对原文件调用 AllFileDecoder.decode 逐点一致的 CurrentData.
+     */
+    public CurrentData load(int i) throws IOException {
+        RecordingHeader h = headers[i];
+        int n = h.dataLength;
+        int len = (int) storedBytes(i);
+        byte[] buf = new byte[len + DECODE_PADDING];
+        long t = Instrumentation.start();
+        readFully(channel, ByteBuffer.wrap(buf, 0, len), dataOffsets[i]);
+        Instrumentation.stop(Instrumentation.Stage.READ, t);
+        t = Instrumentation.start();
+        short[][] phases = new short[PHASES][];
+        for (int p = 0; p < PHASES; p++) {
+            short[] dst = new short[n];
+            int[] o = blockOffsets[i][p];
+            for (int b = 0; b < o.length - 1; b++) {
+                int from = b * blockSamples;
+                decodeBlock(buf, o[b], Math.min(blockSamples, n - from), dst, from);
+            }
+            phases[p] = dst;
+        }
+        Instrumentation.stop(Instrumentation.Stage.DECODE, t);
+        Instrumentation.count(len, n);
+        return toCurrentData(h, n, phases[0], phases[1], phases[2]);
+    }
+
+    /** 按文件名读取, 归档中没有时抛出 IOException. */
+    public CurrentData load(String fileName) throws IOException {
+        int i = indexOf(fileName);
+        if (i < 0) {
+            throw new IOException("归档中没有该录波: " + fileName + ", 归档=" + path);
+        }
+        return load(i);
+    }
+
+    /**
+     * 读取第 i 个录波的采样区间 [from, from + length) 作为一段独立的录波.
+     *
+     * 输出:
+     * - 与 ChunkedRecordingReader.readWindow 相同: 头部字段不变, dataLength = length,
+     *   窗口内第 k 个点对应原录波第 from + k 个点.
+     */
+    public CurrentData readWindow(int i, int from, int length) throws IOException {
+        RecordingHeader h = headers[i];
+        short[] a = new short[length];
+        short[] b = new short[length];
+        short[] c = new short[length];
+        readWindow(i, WaveformFaultAnalyzer.Phase.A, from, a, 0, length);
+        readWindow(i, WaveformFaultAnalyzer.Phase.B, from, b, 0, length);
+        readWindow(i, WaveformFaultAnalyzer.Phase.C, from, c, 0, length);
+        return toCurrentData(h, length, a, b, c);
+    }
+
+    /**
+     * 读取第 i 个录波某一相的采样区间到调用方数组, 只读取并解压窗口覆盖的块.
+     *
+     * 输入:
+     * - from, length: 采样区间, 0 <= from, length > 0, from + length <= dataLength.
+     * - dst, dstOff: 输出数组及写入起点.
+     */
+    public void readWindow(int i, WaveformFaultAnalyzer.Phase phase, int from, short[] dst, int dstOff,
+            int length) throws IOException {
+        int n = headers[i].dataLength;
+        if (from < 0 || length <= 0 || length > n - from) {
+            throw new IndexOutOfBoundsException("窗口越界: from=" + from + ", length=" + length + ", 点数=" + n);
+        }
+        int[] o = blockOffsets[i][phase.ordinal()];
+        int b0 = from / blockSamples;
+        int b1 = (from + length - 1) / blockSamples;
+        int len = o[b1 + 1] - o[b0];
+        byte[] buf = new byte[len + DECODE_PADDING];
+        long t = Instrumentation.start();
+        readFully(channel, ByteBuffer.wrap(buf, 0, len), dataOffsets[i] + o[b0]);
+        Instrumentation.stop(Instrumentation.Stage.READ, t);
+
+        t = Instrumentation.start();
+        int first = b0 * blockSamples;
+        short[] tmp = new short[Math.min((b1 - b0 + 1) * blockSamples, n - first)];
+        for (int b = b0; b <= b1; b++) {
+            int s = (b - b0) * blockSamples;
+            decodeBlock(buf, o[b] - o[b0], Math.min(blockSamples, n - first - s), tmp, s);
+        }
+        System.arraycopy(tmp, from - first, dst, dstOff, length);
+        Instrumentation.stop(Instrumentation.Stage.DECODE, t);
+        Instrumentation.count(len, length);
+    }
+
+    /**
+     * 以本归档为数据源的加载函数: 按文件名在归档中查找, 找不到时按 .all 文件解码.
+     */
+    public DecodedRecordingCache.Loader loader() {
+        return p -> {
+            int i = indexOf(p.getFileName().toString());
+            return i >= 0 ? load(i) : AllFileDecoder.decode(p);
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static CurrentData toCurrentData(RecordingHeader h, int n, short[] a, short[] b, short[] c) {
+        return new CurrentData(
+                h.station,
+                h.line,
+                h.year,
+                h.month,
+                h.day,
+                h.hour,
+                h.minute,
+                h.second,
+                h.microSecond,
+                h.gpsFrequency,
+                h.gpsFlag,
+                h.breakFlag,
+                h.startupType,
+                h.startupValue1,
+                h.startupValue2,
+                h.startupValue3,
+                n,
+                new CompactPhaseSamples(a, n),
+                new CompactPhaseSamples(b, n),
+                new CompactPhaseSamples(c, n),
+                h.fileName);
+    }
+
+    // ----------------- 块编码 -----------------
+
+    /**
+     * 编码一块: 首点原值, 其余点的差分减去块内最小差分后按统一位宽打包.
+     */
+    static void encodeBlock(short[] v, int n, Bytes out) {
+        int min = 0;
+        int max = 0;
+        if (n > 1) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            for (int k = 1; k < n; k++) {
+                int d = v[k] - v[k - 1];
+                if (d < min) {
+                    min = d;
+                }
+                if (d > max) {
+                    max = d;
+                }
+            }
+        }
+        int width = 32 - Integer.numberOfLeadingZeros(max - min);
+        out.putShort(v[0]);
+        out.putInt(min);
+        out.putByte(width);
+        if (width == 0) {
+            return;
+        }
+        long acc = 0;
+        int bits = 0;
+        for (int k = 1; k < n; k++) {
+            acc |= (long) (v[k] - v[k - 1] - min) << bits;
+            bits += width;
+            while (bits >= 8) {
+                out.putByte((int) acc);
+                acc >>>= 8;
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            out.putByte((int) acc);
+        }
+    }
+
+    /**
+     * 解码一块 n 个点到 dst[dstOff, dstOff + n).
+     * 每个差分按位偏移直接取 3 字节 (位宽不超过 17), src 末尾须留 DECODE_PADDING 字节余量.
+     */
+    static void decodeBlock(byte[] src, int off, int n, short[] dst, int dstOff) {
+        int prev = (short) ((src[off] & 0xFF) | (src[off + 1] << 8));
+        int min = (src[off + 2] & 0xFF) | (src[off + 3] & 0xFF) << 8 | (src[off + 4] & 0xFF) << 16
+                | src[off + 5] << 24;
+        int width = src[off + 6];
+        int p = off + BLOCK_HEADER_SIZE;
+        dst[dstOff] = (short) prev;
+        int mask = (1 << width) - 1;
+        int bitPos = 0;
+        for (int k = 1; k < n; k++) {
+            int i = p + (bitPos >>> 3);
+            int word = (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16;
+            prev += ((word >>> (bitPos & 7)) & mask) + min;
+            bitPos += width;
+            dst[dstOff + k] = (short) prev;
+        }
+    }
+
+    /** 单相的逐块编码器, 按任意大小追加采样, 凑满一块即编码. */
+    private static final class PhaseEncoder {
+        final Bytes out = new Bytes(64 * 1024);
+        private final short[] pending;
+        private int pendingCount;
+        private int[] starts = new int[64];
+        private int blocks;
+
+        PhaseEncoder(int blockSamples) {
+            this.pending = new short[blockSamples];
+        }
+
+        void reset() {
+            out.size = 0;
+            pendingCount = 0;
+            blocks = 0;
+        }
+
+        void add(short[] src, int count) {
+            int i = 0;
+            while (i < count) {
+                int k = Math.min(pending.length - pendingCount, count - i);
+                System.arraycopy(src, i, pending, pendingCount, k);
+                pendingCount += k;
+                i += k;
+                if (pendingCount == pending.length) {
+                    flushBlock();
+                }
+            }
+        }
+
+        void finish() {
+            if (pendingCount > 0) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() {
+            if (blocks == starts.length) {
+                starts = Arrays.copyOf(starts, blocks * 2);
+            }
+            starts[blocks++] = out.size;
+            encodeBlock(pending, pendingCount, out);
+            pendingCount = 0;
+        }
+
+        /** 各块起点加上 base, 末尾附总长度. */
+        int[] offsets(int base) {
+            int[] o = new int[blocks + 1];
+            for (int b = 0; b < blocks; b++) {
+                o[b] = base + starts[b];
+            }
+            o[blocks] = base + out.size;
+            return o;
+        }
+    }
+
+    /** 小端字节缓冲, 按需扩容. */
+    static final class Bytes {
+        byte[] bytes;
+        int size;
+
+        Bytes(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void putByte(int v) {
+            ensure(1);
+            bytes[size++] = (byte) v;
+        }
+
+        void putShort(int v) {
+            ensure(2);
+            bytes[size++] = (byte) v;
+            bytes[size++] = (byte) (v >> 8);
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            bytes[size++] = (byte) v;
+            bytes[size++] = (byte) (v >> 8);
+            bytes[size++] = (byte) (v >> 16);
+            bytes[size++] = (byte) (v >> 24);
+        }
+
+        void putLong(long v) {
+            putInt((int) v);
+            putInt((int) (v >>> 32));
+        }
+
+        void putDouble(double v) {
+            putLong(Double.doubleToLongBits(v));
+        }
+
+        void putString(String s) {
+            byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+            putShort(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+    }
+
+    private static String getString(ByteBuffer t) {
+        int len = t.getShort() & 0xFFFF;
+        byte[] b = new byte[len];
+        t.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            int r = ch.read(buf, pos);
+            if (r < 0) {
+                throw new EOFException("归档文件意外结束");
+            }
+            pos += r;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 把目录下的 .all 录波转存为列式压缩归档, 并校验读取结果.
+ *
+ * 使用方法（在项目根目录执行）：
+ * java -cp src WaveformArchiveRunner src\\data waves.wfa
+ *
+ * 第一个参数为录波目录 (递归查找 .all), 第二个参数为归档文件。
+ * 转存后逐个对比归档读出的采样与 AllFileDecoder.decode 的结果, 并分别统计整段读取和
+ * 波头附近 400 点窗口读取的耗时。目录写为 "-" 时不转存, 只读取已有归档统计窗口读取耗时。
+ */
+public final class WaveformArchiveRunner {
+
+    private static final int WINDOW = 400;
+
+    private WaveformArchiveRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+
+        if (args.length < 2) {
+            System.err.println("用法: WaveformArchiveRunner <录波目录|-> <归档文件>");
+            return;
+        }
+        Path archivePath = Paths.get(args[1]);
+        List<Path> files = null;
+        if (!"-".equals(args[0])) {
+            Path root = Paths.get(args[0]);
+            if (!Files.isDirectory(root)) {
+                System.err.println("目录不存在: " + root.toAbsolutePath());
+                return;
+            }
+            files = BatchAnalysisEngine.listAllFiles(root);
+            long t0 = System.nanoTime();
+            WaveformArchive.WriteResult w = WaveformArchive.write(files, archivePath);
+            System.out.printf(Locale.ROOT,
+                    "转存 %d 个录波 (跳过 %d): 原文件 %.2f MB, 归档 %.2f MB, 压缩比 %.2f, 耗时 %.1f ms%n",
+                    w.recordings, w.skipped, w.sourceBytes / 1048576.0, w.archiveBytes / 1048576.0,
+                    w.compressionRatio(), (System.nanoTime() - t0) / 1e6);
+        }
+
+        try (WaveformArchive archive = WaveformArchive.open(archivePath)) {
+            if (files != null) {
+                verify(archive, files);
+            }
+            windowTiming(archive);
+        }
+    }
+
+    /** 逐点对比归档与 .all 解码结果, 并比较整段读取耗时. */
+    private static void verify(WaveformArchive archive, List<Path> files) throws Exception {
+        int checked = 0;
+        int mismatched = 0;
+        long decodeNanos = 0;
+        long loadNanos = 0;
+        for (Path f : files) {
+            int i = archive.indexOf(f.getFileName().toString());
+            if (i < 0 || Files.size(f) > 512 * 1024) {
+                continue;
+            }
+            long t0 = System.nanoTime();
+            CurrentData expected = AllFileDecoder.decode(f);
+            long t1 = System.nanoTime();
+            CurrentData actual = archive.load(i);
+            long t2 = System.nanoTime();
+            decodeNanos += t1 - t0;
+            loadNanos += t2 - t1;
+            checked++;
+            if (!sameSamples(expected, actual)) {
+                mismatched++;
+                System.out.println("采样不一致: " + f);
+            }
+        }
+        System.out.printf(Locale.ROOT, "校验 %d 个录波, 不一致 %d; 整段读取: .all 解码 %.1f ms, 归档 %.1f ms%n",
+                checked, mismatched, decodeNanos / 1e6, loadNanos / 1e6);
+    }
+
+    private static boolean sameSamples(CurrentData x, CurrentData y) {
+        if (x.dataLength != y.dataLength) {
+            return false;
+        }
+        for (WaveformFaultAnalyzer.Phase p : WaveformFaultAnalyzer.Phase.values()) {
+            PhaseSamples a = x.samples(p);
+            PhaseSamples b = y.samples(p);
+            for (int k = 0; k < x.dataLength; k++) {
+                if (a.get(k) != b.get(k)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** 在每个录波的中部取一个窗口, 比较归档与原文件的窗口读取耗时. */
+    private static void windowTiming(WaveformArchive archive) throws Exception {
+        long nanos = 0;
+        int windows = 0;
+        for (int i = 0; i < archive.size(); i++) {
+            int n = archive.header(i).dataLength;
+            if (n < WINDOW) {
+                continue;
+            }
+            int from = n / 2 - WINDOW / 2;
+            long t0 = System.nanoTime();
+            archive.readWindow(i, from, WINDOW);
+            nanos += System.nanoTime() - t0;
+            windows++;
+        }
+        System.out.printf(Locale.ROOT, "窗口读取 %d 次 (%d 点), 平均 %.1f us%n",
+                windows, WINDOW, windows == 0 ? 0.0 : nanos / 1e3 / windows);
+    }
+}
@@ -40,20 +40,28 @@ public final class WaveformFaultAnalyzer {
      * - 返回 Result, 包含波头采样点、时间和距离; 自动识别失败返回 null.
      */
     public static Result analyzeSingleEnded(CurrentData df, Config cfg, Phase phase) {
-        double[] x;
-        switch (phase) {
-            case B:
-                x = df.dataB;
-                break;
-            case C:
-                x = df.dataC;
-                break;
-            case A:
-            default:
-                x = df.dataA;
-                break;
-        }
+        return analyzeSingleEnded(df, cfg, phase, null);
+    }
+
+    /**
+     * 用预先建立的差分金字塔对指定相别做单端测距, 供同一录波以不同配置反复分析.
+     *
+     * 输入:
+     * - pyramid: DiffPyramid.of(df, phase) 的结果; 噪声估计、入射波与反射波搜索都在金字塔上由粗到细完成,
+     *   单次分析的开销与录波长度基本无关. 为 null 时等同于 analyzeSingleEnded(df, cfg, phase).
+     * - 其余同上.
+     *
+     * 输出:
+     * - 与 analyzeSingleEnded(df, cfg, phase) 的结果一致.
+     * - pyramid 不是由 df 的该相采样建立 (或点数与 df.dataLength 不符) 时抛出 IllegalArgumentException.
+     */
+    public static Result analyzeSingleEnded(CurrentData df, Config cfg, Phase phase, DiffPyramid pyramid) {
         int n = df.dataLength;
+        if (pyramid != null && (pyramid.length() != n || !pyramid.isBuiltFrom(df.samples(phase)))) {
+            throw new IllegalArgumentException("金字塔不是由 " + df.fileName + " 的 " + phase + " 相采样建立, 点数="
+                    + pyramid.length() + ", dataLength=" + n);
+        }
+        PhaseSamples x = pyramid != null ? pyramid : df.samples(phase);
         if (n < 10) {
             return null;
         }
@@ -64,68 +72,214 @@ public final class WaveformFaultAnalyzer {
          * 
          * 
          */
-        // 1. 用前 preN 个样本估计“背景噪声”
-        int preN = Math.min(1000, Math.max(50, n / 10));
-        double mean = 0.0;
-        for (int i = 0; i < preN; i++) {
-            mean += x[i];
-        }
-        mean /= preN;
+        // 1. 用前 preN 个样本估计“背景噪声”; 点数不足 50 时整段都是噪声窗口 (识别失败), 不越界读取
+        int preN = Math.min(Math.min(1000, Math.max(50, n / 10)), n);
 
-        // 计算差分的标准差，用于设置阈值
-        double sumSq = 0.0;
-        for (int i = 1; i < preN; i++) {
-            double dx = (x[i] - mean) - (x[i - 1] - mean);
-            sumSq += dx * dx;
-        }
         /*
          * 计算差分的标准差，用于设置阈值
-         * 差分：x[i] - x[i-1]
-         * 标准差：sqrt(sum((x[i] - x[i-1] - mean)^2) / (n-1))
+         * 差分：x[i] - x[i-1]（与减去均值后再差分等价）
+         * 标准差：sqrt(sum((x[i] - x[i-1])^2) / (n-1))
          * 阈值：cfg.firstWaveSigma * noiseStd
+         * 差分相关循环由 PhaseSamples 的批量方法完成，紧凑存储时直接在 short 数据上计算
          */
+        long t = Instrumentation.start();
+        double sumSq = x.diffSumSquares(1, preN);
         double noiseStd = Math.sqrt(sumSq / Math.max(1, preN - 1));
+        Instrumentation.stop(Instrumentation.Stage.NOISE, t);
         double threshold1 = cfg.firstWaveSigma * noiseStd;
         double threshold2 = cfg.secondWaveSigma * noiseStd;
 
         // 2. 寻找第一个大幅突变点，作为“入射波” t1
-        int t1Index = -1;
-        for (int i = preN; i < n; i++) {
-            double dx = (x[i] - mean) - (x[i - 1] - mean);
-            if (Math.abs(dx) > threshold1) {
-                t1Index = i;
-                break;
-            }
-        }
+        t = Instrumentation.start();
+        int t1Index = x.firstAbsDiffAbove(preN, n, threshold1);
         if (t1Index < 0) {
+            Instrumentation.stop(Instrumentation.Stage.WAVEFRONT_SEARCH, t);
             return null; // 没找到明显入射波
         }
 
         // 3. 在 t1 之后一定间隔内寻找下一个大幅突变，作为“反射波” t2
         int minGap = (int) Math.max(cfg.minSamplesBetweenWaves, n * 0.02); // 至少相隔 2% 采样点
         int searchStart = Math.min(n - 1, t1Index + minGap);
-        int t2Index = -1;
-        double bestDx = 0.0;
-        for (int i = searchStart; i < n; i++) {
-            double dx = (x[i] - mean) - (x[i - 1] - mean);
-            double adx = Math.abs(dx);
-            if (adx > threshold2 && adx > bestDx) {
-                bestDx = adx;
-                t2Index = i;
-            }
-        }
+        int t2Index = x.argMaxAbsDiffAbove(searchStart, n, threshold2);
+        Instrumentation.stop(Instrumentation.Stage.WAVEFRONT_SEARCH, t);
         if (t2Index < 0 || t2Index <= t1Index) {
             return null; // 没有找到可靠的反射波
         }
 
         // 4. 采样点 → 时间（ms），并套用单端测距公式
+        t = Instrumentation.start();
         double t1ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t1Index, cfg.samplingIntervalMs);
         double t2ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t2Index, cfg.samplingIntervalMs);
         double distanceKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(cfg.waveSpeedKmPerMs, t1ms, t2ms);
+        Instrumentation.stop(Instrumentation.Stage.DISTANCE, t);
+
+        return new Result(df.fileName, phase, t1Index, t2Index, t1ms, t2ms, distanceKm, cfg);
+    }
+
+    /** 每个线程一个小波检测器, 暂存数组在同一线程的多次调用之间复用. */
+    private static final ThreadLocal<WaveletWavefrontDetector> WAVELET =
+            ThreadLocal.withInitial(WaveletWavefrontDetector::new);
+
+    /**
+     * 用多尺度小波法对指定相别波形进行单端故障测距分析.
+     *
+     * 与 analyzeSingleEnded 的区别:
+     * - 不再对一阶差分设阈值, 而是在 4 个小波尺度上分别找模极大值, 通过跨尺度一致性确定 t1 / t2,
+     *   对单点毛刺和缓慢漂移不敏感. 算法见 WaveletWavefrontDetector.
+     *
+     * 输入 / 输出:
+     * - 同 analyzeSingleEnded(df, cfg, phase); 可在多个线程中并发调用.
+     */
+    public static Result analyzeSingleEndedWavelet(CurrentData df, Config cfg, Phase phase) {
+        return WAVELET.get().detect(df, cfg, phase);
+    }
+
+    /** 每个线程一份自适应噪声估计器和分块暂存数组, 同一线程的多次调用之间复用. */
+    private static final ThreadLocal<AdaptiveScratch> ADAPTIVE = ThreadLocal.withInitial(AdaptiveScratch::new);
+
+    /**
+     * 用局部自适应阈值对指定相别波形进行单端故障测距分析.
+     *
+     * 与 analyzeSingleEnded 的区别:
+     * - 噪声不再只由前 preN 个点决定一次, 而是由 AdaptiveNoiseEstimator 随采样滑动估计;
+     *   第 i 点的阈值为 sigma * (i 之前的局部差分标准差), 比较量为差分相对局部均值的偏离.
+     * - 前 preN 个点仍只用于预热, 不参与判定, 预热结束时的阈值与 analyzeSingleEnded 基本相同.
+     * - 入射波之后噪声估计冻结, 反射波按故障前的局部噪声判定, 故障暂态不会把阈值抬高.
+     * - 反射波取 t1 + minGap 之后 "偏离超过局部阈值" 的点中 |dx| 最大的一个, 并列取最早;
+     *   阈值判定用偏离, 排序用 |dx|, 与 analyzeSingleEnded 的反射波排序量一致.
+     * - 整段只遍历一次, 采样按 ADAPTIVE_BLOCK 分块复制到暂存数组, 循环内不分配对象.
+     *
+     * 输入 / 输出:
+     * - 同 analyzeSingleEnded(df, cfg, phase); 可在多个线程中并发调用.
+     * - 与 StreamingWavefrontDetector 以 AdaptiveNoiseEstimator 构造、expectedLength = dataLength、
+     *   confirmSamples <= 0 时的结果一致.
+     */
+    public static Result analyzeSingleEndedAdaptive(CurrentData df, Config cfg, Phase phase) {
+        PhaseSamples x = df.samples(phase);
+        int n = df.dataLength;
+        if (n < 10) {
+            return null;
+        }
+        int preN = Math.min(Math.min(1000, Math.max(50, n / 10)), n);
+        int minGap = (int) Math.max(cfg.minSamplesBetweenWaves, n * 0.02);
+
+        long t = Instrumentation.start();
+        AdaptiveScratch s = ADAPTIVE.get();
+        AdaptiveNoiseEstimator noise = s.noise;
+        double[] block = s.block;
+        noise.reset(preN - 1);
+        int t1Index = -1;
+        int t2Index = -1;
+        double t2Abs = 0.0;
+        double prev = x.get(0);
+        for (int from = 1; from < n; from += block.length) {
+            int len = Math.min(block.length, n - from);
+            x.copyTo(from, block, 0, len);
+            for (int j = 0; j < len; j++) {
+                int i = from + j;
+                double dx = block[j] - prev;
+                prev = block[j];
+                if (i >= preN) {
+                    if (t1Index < 0) {
+                        if (noise.exceeds(dx, cfg.firstWaveSigma)) {
+                            t1Index = i;
+                        }
+                    } else if (i >= t1Index + minGap) {
+                        double ad = Math.abs(dx);
+                        if (ad > t2Abs && noise.exceeds(dx, cfg.secondWaveSigma)) {
+                            t2Abs = ad;
+                            t2Index = i;
+                        }
+                    }
+                }
+                if (t1Index < 0) {
+                    noise.update(dx);
+                }
+            }
+        }
+        Instrumentation.stop(Instrumentation.Stage.WAVEFRONT_SEARCH, t);
+        if (t1Index < 0 || t2Index < 0) {
+            return null;
+        }
 
+        t = Instrumentation.start();
+        double t1ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t1Index, cfg.samplingIntervalMs);
+        double t2ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t2Index, cfg.samplingIntervalMs);
+        double distanceKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(cfg.waveSpeedKmPerMs, t1ms, t2ms);
+        Instrumentation.stop(Instrumentation.Stage.DISTANCE, t);
         return new Result(df.fileName, phase, t1Index, t2Index, t1ms, t2ms, distanceKm, cfg);
     }
 
+    /** analyzeSingleEndedAdaptive 每次复制到暂存数组的采样点数. */
+    private static final int ADAPTIVE_BLOCK = 4096;
+
+    /** analyzeSingleEndedAdaptive 的线程内暂存. */
+    private static final class AdaptiveScratch {
+        final AdaptiveNoiseEstimator noise = new AdaptiveNoiseEstimator();
+        final double[] block = new double[ADAPTIVE_BLOCK];
+    }
+
+    /**
+     * 亚采样波头时刻修正 (可选的后处理步骤).
+     *
+     * 原理:
+     * - 整数下标的时间分辨率为一个采样间隔 (100kHz 时约 1 km 测距量化误差).
+     * - 以检测点 t 本身为中心, 用 |dx[t-1]|、|dx[t]|、|dx[t+1]| 三点抛物线拟合求顶点偏移 delta,
+     *   限制在 [-0.5, 0.5], 波头时刻取 (t + delta) * 采样间隔, 与检测结果相差不超过半个采样.
+     *   |dx[t]| 不是三点中的局部极大 (小于任一相邻点), 抛物线开口向上或为直线, 或三点越出录波两端时 delta = 0;
+     *   越限检测得到的入射波常位于上升沿而非峰值, 此时不做修正, 避免外推造成固定的半个采样偏差.
+     * - 每个波头只读取固定的 4 个采样, 不分配对象, 开销与录波长度无关, 不需要升采样.
+     *
+     * 输入:
+     * - df: 得到 r 时使用的波形数据.
+     * - r: analyzeSingleEnded 等方法的结果, 可以为 null.
+     *
+     * 输出:
+     * - 新的 Result: 采样点索引不变, 两个波头时间与故障距离按亚采样时刻重新计算; r 为 null 时返回 null.
+     */
+    public static Result refineSubSample(CurrentData df, Result r) {
+        if (r == null) {
+            return null;
+        }
+        PhaseSamples x = df.samples(r.phase);
+        int n = df.dataLength;
+        double t1ms = subSampleIndex(x, n, r.firstWaveIndex) * r.config.samplingIntervalMs;
+        double t2ms = subSampleIndex(x, n, r.secondWaveIndex) * r.config.samplingIntervalMs;
+        double distanceKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(r.config.waveSpeedKmPerMs, t1ms, t2ms);
+        return new Result(r.fileName, r.phase, r.firstWaveIndex, r.secondWaveIndex, t1ms, t2ms, distanceKm, r.config);
+    }
+
+    /**
+     * 检测点附近的亚采样波头位置, 单位为采样点, 与整数下标同一坐标 (差分 dx[i] = x[i] - x[i-1] 记在 i 处).
+     *
+     * 输入:
+     * - x, n: 单相采样与点数.
+     * - index: 整数波头下标, 1 <= index < n.
+     */
+    static double subSampleIndex(PhaseSamples x, int n, int index) {
+        // 三点 dx[index - 1], dx[index], dx[index + 1] 需要 x[index - 2 .. index + 1]
+        if (index < 2 || index + 1 >= n) {
+            return index;
+        }
+        double x0 = x.get(index - 2);
+        double x1 = x.get(index - 1);
+        double x2 = x.get(index);
+        double x3 = x.get(index + 1);
+        double a = Math.abs(x1 - x0);
+        double b = Math.abs(x2 - x1);
+        double c = Math.abs(x3 - x2);
+        // 只在检测点本身是 |dx| 局部极大时拟合; 入射波常是上升沿上的越限点, 拟合会外推并被截到 +0.5
+        if (b < a || b < c) {
+            return index;
+        }
+        double denom = a - 2.0 * b + c;
+        if (denom >= 0.0) {
+            return index;
+        }
+        double delta = 0.5 * (a - c) / denom;
+        return index + Math.max(-0.5, Math.min(0.5, delta));
+    }
+
     // ----------------- 配置与结果类型 -----------------
 
     /** 相别枚举, 表示 A/B/C 三相. */
@@ -0,0 +1,292 @@
+/**
+ * 多尺度小波波头检测模块.
+ *
+ * 类作用:
+ * - 对选定相别做 4 尺度 Daubechies-4 (4 抽头, 即 PyWavelets 中的 db2) 提升格式小波分解,
+ *   分解在同一个数组内原地完成 (in-place lifting), 第 j 尺度的细节系数 k 存放在下标 (2k+1)*2^(j-1) 处,
+ *   该下标本身即对应的原始采样点位置, 无需额外的时间映射表.
+ * - 各尺度用 MAD (中位数绝对偏差) 估计噪声, 找首个超过 firstWaveSigma 倍噪声的模极大值作为入射波候选,
+ *   在 t1 之后找超过 secondWaveSigma 倍噪声的最大模极大值作为反射波候选.
+ * - 跨尺度一致性校验 (同 Python 原型 _cross_scale_select): 以尺度 1 为基准, 与尺度 2/3 相符则采用;
+ *   否则取位置最接近的两个尺度的均值.
+ *
+ * 使用方式:
+ * - 一个实例持有可复用的暂存数组, 按遇到过的最长录波扩容, 之后的调用不再分配数组;
+ *   实例不是线程安全的, 每个线程各用一个 (WaveformFaultAnalyzer.analyzeSingleEndedWavelet 已按线程缓存).
+ */
+public final class WaveletWavefrontDetector {
+
+    /** 分解尺度数. */
+    public static final int SCALES = 4;
+
+    private static final double SQRT3 = Math.sqrt(3.0);
+    private static final double PREDICT_0 = SQRT3 / 4.0;
+    private static final double PREDICT_1 = (SQRT3 - 2.0) / 4.0;
+    private static final double NORM_S = (SQRT3 - 1.0) / Math.sqrt(2.0);
+    private static final double NORM_D = (SQRT3 + 1.0) / Math.sqrt(2.0);
+
+    /** 跨尺度一致性容限, ms. */
+    private static final double TOLERANCE_MS = 0.05;
+    /** 首个过阈值点之后, 在多少个系数内寻找局部模极大值. */
+    private static final int LOCAL_PEAK_SPAN = 5;
+    /** 每个尺度两端各跳过的系数个数, 避开边界延拓带来的伪极值. */
+    private static final int EDGE_SKIP = 2;
+
+    private double[] coeffs = new double[0];
+    private double[] work = new double[0];
+    private final int[] detailCount = new int[SCALES];
+    private final double[] sigma = new double[SCALES];
+    private final int[] firstIdx = new int[SCALES];
+    private final int[] secondIdx = new int[SCALES];
+
+    /**
+     * 多尺度小波法单端测距.
+     *
+     * 输入:
+     * - df: 解析后的 .all 波形数据.
+     * - cfg: 单端测距配置参数.
+     * - phase: 相别.
+     *
+     * 输出:
+     * - 返回 Result; 点数过少或任一波头未通过跨尺度校验时返回 null.
+     */
+    public WaveformFaultAnalyzer.Result detect(CurrentData df, WaveformFaultAnalyzer.Config cfg,
+            WaveformFaultAnalyzer.Phase phase) {
+        int n = df.dataLength;
+        if (n < 32) {
+            return null;
+        }
+        ensureCapacity(n);
+        df.samples(phase).copyTo(0, coeffs, 0, n);
+        int levels = transform(n);
+
+        // 1. 各尺度噪声估计与入射波候选
+        for (int j = 0; j < levels; j++) {
+            sigma[j] = madSigma(j);
+            firstIdx[j] = firstPeak(j, threshold(j, cfg.firstWaveSigma));
+        }
+        int t1Index = crossScaleSelect(firstIdx, levels, cfg.samplingIntervalMs);
+        if (t1Index < 0) {
+            return null;
+        }
+
+        // 2. 与阈值法相同的最小间隔之后寻找反射波
+        int minGap = (int) Math.max(cfg.minSamplesBetweenWaves, n * 0.02);
+        int searchStart = Math.min(n - 1, t1Index + minGap);
+        for (int j = 0; j < levels; j++) {
+            secondIdx[j] = maxPeak(j, searchStart, threshold(j, cfg.secondWaveSigma));
+        }
+        int t2Index = crossScaleSelect(secondIdx, levels, cfg.samplingIntervalMs);
+        if (t2Index < 0 || t2Index <= t1Index) {
+            return null;
+        }
+
+        double t1ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t1Index, cfg.samplingIntervalMs);
+        double t2ms = FaultLocationAlgorithms.sampleIndexToTimeMs(t2Index, cfg.samplingIntervalMs);
+        double distanceKm = FaultLocationAlgorithms.singleEndByTwoWaveTimes(cfg.waveSpeedKmPerMs, t1ms, t2ms);
+        return new WaveformFaultAnalyzer.Result(df.fileName, phase, t1Index, t2Index, t1ms, t2ms, distanceKm, cfg);
+    }
+
+    // ----------------- 提升格式小波分解 -----------------
+
+    /**
+     * 在 coeffs[0, n) 上原地做最多 SCALES 层 D4 提升分解.
+     *
+     * 每层对步长为 step 的近似系数序列 e[k] = coeffs[k * step] 做:
+     * - s[k] = e[2k] + √3 e[2k+1]
+     * - d[k] = e[2k+1] - (√3/4) s[k] - ((√3-2)/4) s[k-1]
+     * - s[k] = s[k] - d[k+1]
+     * - s[k] *= (√3-1)/√2, d[k] *= (√3+1)/√2
+     * 边界处缺失的 s[-1] / d[half] 用最近的系数代替. 近似系数个数为奇数时最后一个原样留到下一层.
+     *
+     * 输出:
+     * - 实际完成的层数.
+     */
+    private int transform(int n) {
+        double[] a = coeffs;
+        int count = n;
+        int step = 1;
+        int level = 0;
+        while (level < SCALES && count >= 8) {
+            int half = count / 2;
+            int s2 = 2 * step;
+            for (int k = 0, e = 0; k < half; k++, e += s2) {
+                a[e] += SQRT3 * a[e + step];
+            }
+            for (int k = 0, e = 0; k < half; k++, e += s2) {
+                double sPrev = k > 0 ? a[e - s2] : a[e];
+                a[e + step] -= PREDICT_0 * a[e] + PREDICT_1 * sPrev;
+            }
+            for (int k = 0, e = 0; k < half; k++, e += s2) {
+                double dNext = k + 1 < half ? a[e + s2 + step] : a[e + step];
+                a[e] -= dNext;
+            }
+            for (int k = 0, e = 0; k < half; k++, e += s2) {
+                a[e] *= NORM_S;
+                a[e + step] *= NORM_D;
+            }
+            detailCount[level] = half;
+            count = (count + 1) / 2;
+            step = s2;
+            level++;
+        }
+        return level;
+    }
+
+    /** 第 j 尺度 (从 0 开始) 第 k 个细节系数在 coeffs 中的下标, 也是其对应的采样点位置. */
+    private static int detailPos(int j, int k) {
+        return (2 * k + 1) << j;
+    }
+
+    // ----------------- 单尺度模极大值搜索 -----------------
+
+    /**
+     * 第 j 尺度的噪声标准差估计: median(|d|) / 0.6745, 偶数个时取上中位数.
+     */
+    private double madSigma(int j) {
+        int m = detailCount[j];
+        for (int k = 0; k < m; k++) {
+            work[k] = Math.abs(coeffs[detailPos(j, k)]);
+        }
+        return select(work, m, m / 2) / 0.6745;
+    }
+
+    /** 第 j 尺度的检测阈值; 噪声近似为 0 时退化为该尺度最大模值的 10%. */
+    private double threshold(int j, double sigmaMult) {
+        double thr = sigmaMult * sigma[j];
+        if (thr >= 1e-12) {
+            return thr;
+        }
+        double peak = 0.0;
+        for (int k = 0; k < detailCount[j]; k++) {
+            peak = Math.max(peak, Math.abs(coeffs[detailPos(j, k)]));
+        }
+        return peak * 0.1;
+    }
+
+    /** 首个超过阈值的系数附近的局部模极大值位置, 没有则返回 -1. */
+    private int firstPeak(int j, double thr) {
+        int end = detailCount[j] - EDGE_SKIP;
+        for (int k = EDGE_SKIP; k < end; k++) {
+            if (Math.abs(coeffs[detailPos(j, k)]) > thr) {
+                int best = k;
+                int spanEnd = Math.min(end, k + LOCAL_PEAK_SPAN);
+                for (int q = k + 1; q < spanEnd; q++) {
+                    if (Math.abs(coeffs[detailPos(j, q)]) > Math.abs(coeffs[detailPos(j, best)])) {
+                        best = q;
+                    }
+                }
+                return detailPos(j, best);
+            }
+        }
+        return -1;
+    }
+
+    /** 采样位置 >= fromSample 的系数中超过阈值的最大模值位置, 没有则返回 -1. */
+    private int maxPeak(int j, int fromSample, double thr) {
+        int end = detailCount[j] - EDGE_SKIP;
+        // detailPos(j, k) >= fromSample  <=>  2k + 1 >= c, c = ceil(fromSample / 2^j)  <=>  k >= c / 2
+        int c = (fromSample + (1 << j) - 1) >> j;
+        int kStart = Math.max(EDGE_SKIP, c / 2);
+        int best = -1;
+        double bestAbs = thr;
+        for (int k = kStart; k < end; k++) {
+            double v = Math.abs(coeffs[detailPos(j, k)]);
+            if (v > bestAbs) {
+                bestAbs = v;
+                best = k;
+            }
+        }
+        return best < 0 ? -1 : detailPos(j, best);
+    }
+
+    // ----------------- 跨尺度一致性 -----------------
+
+    /**
+     * 跨尺度选择最终波头位置.
+     *
+     * 规则:
+     * - 尺度 1 有候选且与尺度 2 或 3 的偏差不超过容限时, 直接取尺度 1 (时间分辨率最高).
+     * - 否则在有候选的尺度中找位置最接近的两个, 取其均值.
+     * - 有候选的尺度少于 2 个时视为未通过校验, 返回 -1.
+     * 容限取 TOLERANCE_MS 对应的点数, 且不小于较粗尺度的系数间距.
+     */
+    private static int crossScaleSelect(int[] idx, int levels, double intervalMs) {
+        double tolSamples = intervalMs > 0.0 ? TOLERANCE_MS / intervalMs : 50.0;
+        if (idx[0] >= 0) {
+            for (int j = 1; j < Math.min(levels, 3); j++) {
+                if (idx[j] >= 0 && Math.abs(idx[0] - idx[j]) <= Math.max(tolSamples, 2 << j)) {
+                    return idx[0];
+                }
+            }
+        }
+        int bestI = -1;
+        int bestJ = -1;
+        int bestDiff = Integer.MAX_VALUE;
+        for (int i = 0; i < levels; i++) {
+            if (idx[i] < 0) {
+                continue;
+            }
+            for (int j = i + 1; j < levels; j++) {
+                if (idx[j] < 0) {
+                    continue;
+                }
+                int d = Math.abs(idx[i] - idx[j]);
+                if (d < bestDiff) {
+                    bestDiff = d;
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+        }
+        if (bestI < 0) {
+            return -1;
+        }
+        return (idx[bestI] + idx[bestJ]) / 2;
+    }
+
+    // ----------------- 工具方法 -----------------
+
+    private void ensureCapacity(int n) {
+        if (coeffs.length < n) {
+            coeffs = new double[n];
+            work = new double[n / 2 + 1];
+        }
+    }
+
+    /**
+     * 原地快速选择: 返回 a[0, len) 中第 k 小的元素 (k 从 0 开始), 会打乱 a 的顺序.
+     */
+    private static double select(double[] a, int len, int k) {
+        int lo = 0;
+        int hi = len - 1;
+        while (lo < hi) {
+            double pivot = a[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) {
+                    i++;
+                }
+                while (a[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+}
@@ -0,0 +1,64 @@
+package faultlocation.bench;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 端到端批量吞吐量.
+ *
+ * 度量 (每次调用处理 data/ 下的全部 .all 文件, 文件列表在 setup 中准备好):
+ * - singleEndBatch: BatchAnalysisEngine 解码 + 三相单端测距.
+ * - doubleEndLocate: 容错配对 (窗口 1 s) + DoubleEndLocator 双端测距.
+ * 文件数在 setup 时打印, 用 ms/op 除以文件数即为单文件平均耗时.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private List<Path> files;
+    private List<?> pairs;
+    private Object cfg;
+    private Object phaseA;
+
+    @Setup
+    public void setup() throws Throwable {
+        files = Production.listAllFiles(Recordings.root());
+        pairs = Production.tolerantPairs(files, 1);
+        cfg = Production.defaultConfig();
+        phaseA = Production.phase("A");
+        System.out.println("files=" + files.size() + ", pairs=" + pairs.size());
+    }
+
+    @Benchmark
+    public int singleEndBatch() throws Throwable {
+        AtomicInteger n = new AtomicInteger();
+        Production.runBatch(files, parallelism, cfg, r -> n.incrementAndGet());
+        return n.get();
+    }
+
+    @Benchmark
+    public List<?> doubleEndLocate() throws Throwable {
+        return Production.locate(Production.tolerantPairs(files, 1), cfg, phaseA, parallelism, 1);
+    }
+}
@@ -0,0 +1,45 @@
+package faultlocation.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar 的入口.
+ *
+ * 与 org.openjdk.jmh.Main 的区别:
+ * - 始终附带 GC 分析器, 输出 gc.alloc.rate 与 gc.alloc.rate.norm, 热点路径的分配回退一眼可见.
+ * - 被测 JVM 统一使用 UTF-8 文件名编码, 以便打开 data/ 下的中文文件名.
+ * - 数据目录用启动 JVM 的系统属性指定: java -Dfl.data=<目录> -jar target/benchmarks.jar.
+ * - 被测 JVM 加载 jdk.incubator.vector 模块, 以 -Pjmh,vector 打包时使用向量化内核;
+ *   java -Dfl.kernels=scalar -jar target/benchmarks.jar 可强制使用标量内核做对比.
+ * 其余命令行参数与 JMH 相同, 例如: java -jar target/benchmarks.jar Detection -p phase=A
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        // 数据目录在启动 JVM 上解析为绝对路径后传给被测 JVM; 命令行上的 -jvmArgsAppend 保留在后面
+        List<String> jvmArgs = new ArrayList<>(List.of("-Dfile.encoding=UTF-8", "-Dsun.jnu.encoding=UTF-8",
+                "-Dfl.data=" + Recordings.root().toAbsolutePath(),
+                "--add-modules=jdk.incubator.vector",
+                "-Dfl.kernels=" + System.getProperty("fl.kernels", "auto")));
+        if (cmd.getJvmArgsAppend().hasValue()) {
+            jvmArgs.addAll(cmd.getJvmArgsAppend().get());
+        }
+        Options opt = new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend(jvmArgs.toArray(new String[0]))
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,55 @@
+package faultlocation.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * .all 文件解码吞吐量.
+ *
+ * 度量:
+ * - decode: 读入整个文件并解码三相 (ops/s); 乘以文件大小即为 MB/s, 文件大小在 setup 时打印.
+ * - decodeMapped: 内存映射方式, 只解析头部并建立视图, 采样值在访问时才解码.
+ * - 配合 GC 分析器 (BenchmarkMain 默认开启) 看 gc.alloc.rate.norm, 即每次解码分配的字节数.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"12bit", "16bit"})
+    public String recording;
+
+    private Path file;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Recordings.resolve(recording);
+        System.out.println(recording + ": " + file.getFileName() + ", " + Files.size(file) + " bytes");
+    }
+
+    @Benchmark
+    public Object decode() throws Throwable {
+        return Production.decode(file);
+    }
+
+    @Benchmark
+    public Object decodeMapped() throws Throwable {
+        return Production.decodeMapped(file);
+    }
+}
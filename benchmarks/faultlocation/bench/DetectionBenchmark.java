@@ -0,0 +1,84 @@
+package faultlocation.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 单相波头识别延迟.
+ *
+ * 度量 (数据在 setup 中解码一次, 只测识别本身):
+ * - threshold: WaveformFaultAnalyzer.analyzeSingleEnded, 差分阈值法, 单相.
+ * - wavelet: analyzeSingleEndedWavelet, 多尺度小波法, 单相.
+ * - adaptive: analyzeSingleEndedAdaptive, 局部自适应阈值法, 单相; 与 threshold 对比逐点噪声更新的开销.
+ * - pyramid: 与 threshold 相同的判定, 在 setup 中预先建立的 DiffPyramid 上由粗到细搜索,
+ *   即同一录波换配置反复分析时每次分析的开销; buildPyramid 为建立金字塔本身的开销.
+ * - threePhase: ThreePhaseAnalyzer.analyze, 三相一次遍历; 与 3 倍 threshold 对比.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectionBenchmark {
+
+    @Param({"12bit", "16bit"})
+    public String recording;
+
+    @Param({"A", "B", "C"})
+    public String phase;
+
+    private Object data;
+    private Object cfg;
+    private Object phaseValue;
+    private Object pyramid;
+
+    @Setup
+    public void setup() throws Throwable {
+        data = Production.decode(Recordings.resolve(recording));
+        cfg = Production.defaultConfig();
+        phaseValue = Production.phase(phase);
+        pyramid = Production.buildPyramid(data, phaseValue);
+    }
+
+    @Benchmark
+    public Object threshold() throws Throwable {
+        return Production.analyzeSingleEnded(data, cfg, phaseValue);
+    }
+
+    @Benchmark
+    public Object wavelet() throws Throwable {
+        return Production.analyzeSingleEndedWavelet(data, cfg, phaseValue);
+    }
+
+    @Benchmark
+    public Object adaptive() throws Throwable {
+        return Production.analyzeSingleEndedAdaptive(data, cfg, phaseValue);
+    }
+
+    @Benchmark
+    public Object pyramid() throws Throwable {
+        return Production.analyzeSingleEnded(data, cfg, phaseValue, pyramid);
+    }
+
+    @Benchmark
+    public Object buildPyramid() throws Throwable {
+        return Production.buildPyramid(data, phaseValue);
+    }
+
+    @Benchmark
+    public Object threePhase() throws Throwable {
+        return Production.analyzeThreePhase(data, cfg);
+    }
+}
@@ -0,0 +1,201 @@
+package faultlocation.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 被测代码的调用入口.
+ *
+ * 类作用:
+ * - Java/ 下的源文件都在默认包中, 而 JMH 要求基准类位于具名包, 具名包又无法 import 默认包的类.
+ * - 这里在类加载时按类名查找一次 MethodHandle, 并把参数/返回类型统一为 Object;
+ *   static final 的 MethodHandle 会被 JIT 当作常量内联, 调用开销与直接调用相当.
+ *
+ * 使用方式:
+ * - 基准方法中直接调用下面的静态方法, 返回的 Object 交给 JMH 返回值或 Blackhole 消费.
+ */
+final class Production {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> DECODER = load("AllFileDecoder");
+    private static final Class<?> CURRENT_DATA = load("CurrentData");
+    private static final Class<?> ANALYZER = load("WaveformFaultAnalyzer");
+    private static final Class<?> CONFIG = load("WaveformFaultAnalyzer$Config");
+    private static final Class<?> PHASE = load("WaveformFaultAnalyzer$Phase");
+    private static final Class<?> PYRAMID = load("DiffPyramid");
+    private static final Class<?> RESULT = load("WaveformFaultAnalyzer$Result");
+    private static final Class<?> THREE_PHASE = load("ThreePhaseAnalyzer");
+    private static final Class<?> BATCH = load("BatchAnalysisEngine");
+    private static final Class<?> PAIR_INDEX = load("DoubleEndPairIndex");
+    private static final Class<?> LOCATOR = load("DoubleEndLocator");
+
+    private static final MethodHandle DECODE =
+            findStatic(DECODER, "decode", CURRENT_DATA, Path.class);
+    private static final MethodHandle DECODE_MAPPED =
+            findStatic(DECODER, "decodeMapped", CURRENT_DATA, Path.class);
+    private static final MethodHandle DEFAULT_CONFIG =
+            findStatic(CONFIG, "defaultConfig", CONFIG);
+    private static final MethodHandle ANALYZE_SINGLE_ENDED =
+            findStatic(ANALYZER, "analyzeSingleEnded", RESULT, CURRENT_DATA, CONFIG, PHASE);
+    private static final MethodHandle ANALYZE_WAVELET =
+            findStatic(ANALYZER, "analyzeSingleEndedWavelet", RESULT, CURRENT_DATA, CONFIG, PHASE);
+    private static final MethodHandle BUILD_PYRAMID =
+            findStatic(PYRAMID, "of", PYRAMID, CURRENT_DATA, PHASE);
+    private static final MethodHandle ANALYZE_PYRAMID =
+            findStatic(ANALYZER, "analyzeSingleEnded", RESULT, CURRENT_DATA, CONFIG, PHASE, PYRAMID);
+    private static final MethodHandle ANALYZE_ADAPTIVE =
+            findStatic(ANALYZER, "analyzeSingleEndedAdaptive", RESULT, CURRENT_DATA, CONFIG, PHASE);
+    private static final MethodHandle ANALYZE_THREE_PHASE =
+            findStatic(THREE_PHASE, "analyze", load("ThreePhaseAnalyzer$Result"), CURRENT_DATA, CONFIG);
+    private static final MethodHandle LIST_ALL_FILES =
+            findStatic(BATCH, "listAllFiles", List.class, Path.class);
+    private static final MethodHandle NEW_BATCH =
+            findConstructor(BATCH, int.class, CONFIG);
+    private static final MethodHandle BATCH_RUN =
+            findVirtual(BATCH, "run", void.class, List.class, Consumer.class);
+    private static final MethodHandle BUILD_PAIR_INDEX =
+            findStatic(PAIR_INDEX, "build", PAIR_INDEX, List.class);
+    private static final MethodHandle TOLERANT_PAIRS =
+            findVirtual(PAIR_INDEX, "tolerantPairs", List.class, int.class);
+    private static final MethodHandle NEW_LOCATOR =
+            findConstructor(LOCATOR, CONFIG, PHASE, int.class, int.class);
+    private static final MethodHandle LOCATE =
+            findVirtual(LOCATOR, "locate", List.class, List.class);
+
+    private Production() {
+    }
+
+    // ----------------- 解码 -----------------
+
+    static Object decode(Path path) throws Throwable {
+        return (Object) DECODE.invokeExact(path);
+    }
+
+    static Object decodeMapped(Path path) throws Throwable {
+        return (Object) DECODE_MAPPED.invokeExact(path);
+    }
+
+    // ----------------- 波头识别 -----------------
+
+    static Object defaultConfig() throws Throwable {
+        return (Object) DEFAULT_CONFIG.invokeExact();
+    }
+
+    /** 按名称 ("A"/"B"/"C") 取得 WaveformFaultAnalyzer.Phase 枚举值. */
+    static Object phase(String name) {
+        for (Object p : PHASE.getEnumConstants()) {
+            if (((Enum<?>) p).name().equals(name)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("未知相别: " + name);
+    }
+
+    static Object analyzeSingleEnded(Object data, Object cfg, Object phase) throws Throwable {
+        return (Object) ANALYZE_SINGLE_ENDED.invokeExact(data, cfg, phase);
+    }
+
+    static Object analyzeSingleEndedWavelet(Object data, Object cfg, Object phase) throws Throwable {
+        return (Object) ANALYZE_WAVELET.invokeExact(data, cfg, phase);
+    }
+
+    static Object buildPyramid(Object data, Object phase) throws Throwable {
+        return (Object) BUILD_PYRAMID.invokeExact(data, phase);
+    }
+
+    static Object analyzeSingleEnded(Object data, Object cfg, Object phase, Object pyramid) throws Throwable {
+        return (Object) ANALYZE_PYRAMID.invokeExact(data, cfg, phase, pyramid);
+    }
+
+    static Object analyzeSingleEndedAdaptive(Object data, Object cfg, Object phase) throws Throwable {
+        return (Object) ANALYZE_ADAPTIVE.invokeExact(data, cfg, phase);
+    }
+
+    static Object analyzeThreePhase(Object data, Object cfg) throws Throwable {
+        return (Object) ANALYZE_THREE_PHASE.invokeExact(data, cfg);
+    }
+
+    // ----------------- 批量与双端 -----------------
+
+    @SuppressWarnings("unchecked")
+    static List<Path> listAllFiles(Path root) throws Throwable {
+        return (List<Path>) LIST_ALL_FILES.invokeExact(root);
+    }
+
+    /** 用 BatchAnalysisEngine 分析全部文件, 每个 FileResult 交给 consumer. */
+    static void runBatch(List<Path> files, int parallelism, Object cfg, Consumer<Object> consumer) throws Throwable {
+        Object engine = (Object) NEW_BATCH.invokeExact(parallelism, cfg);
+        BATCH_RUN.invokeExact(engine, files, (Consumer<?>) consumer);
+    }
+
+    /** 建立配对索引并按容错规则取得配对列表. */
+    static List<?> tolerantPairs(List<Path> files, int windowSeconds) throws Throwable {
+        Object index = (Object) BUILD_PAIR_INDEX.invokeExact(files);
+        return (List<?>) TOLERANT_PAIRS.invokeExact(index, windowSeconds);
+    }
+
+    /** 对配对列表批量做双端测距, 返回 PairResult 列表. */
+    static List<?> locate(List<?> pairs, Object cfg, Object phase, int parallelism, int windowSeconds)
+            throws Throwable {
+        Object locator = (Object) NEW_LOCATOR.invokeExact(cfg, phase, parallelism, windowSeconds);
+        return (List<?>) LOCATE.invokeExact(locator, pairs);
+    }
+
+    // ----------------- 查找 -----------------
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError("找不到被测类 " + name + ", 请确认 Java/ 已一同编译");
+        }
+    }
+
+    private static MethodHandle findStatic(Class<?> owner, String name, Class<?> ret, Class<?>... params) {
+        try {
+            MethodHandle h = LOOKUP.findStatic(owner, name, MethodType.methodType(ret, params));
+            return h.asType(erase(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> owner, Class<?>... params) {
+        try {
+            MethodHandle h = LOOKUP.findConstructor(owner, MethodType.methodType(void.class, params));
+            return h.asType(erase(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> owner, String name, Class<?> ret, Class<?>... params) {
+        try {
+            MethodHandle h = LOOKUP.findVirtual(owner, name, MethodType.methodType(ret, params));
+            return h.asType(erase(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** 把引用类型参数/返回值统一为 Object, 基本类型、void 与 JDK 类型保持不变. */
+    private static MethodType erase(MethodType t) {
+        MethodType out = t;
+        for (int i = 0; i < t.parameterCount(); i++) {
+            Class<?> p = t.parameterType(i);
+            if (!p.isPrimitive() && p.getClassLoader() != null) {
+                out = out.changeParameterType(i, Object.class);
+            }
+        }
+        Class<?> r = t.returnType();
+        if (!r.isPrimitive() && r.getClassLoader() != null) {
+            out = out.changeReturnType(Object.class);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,53 @@
+package faultlocation.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 基准使用的录波文件.
+ *
+ * 类作用:
+ * - 数据根目录取系统属性 fl.data, 默认为当前目录下的 data/.
+ * - "12bit" / "16bit" 对应 data/ 中两种编码的代表性录波 (约 98 KB / 450 KB).
+ */
+final class Recordings {
+
+    /** 12bit 编码, 16384 点, 约 98 KB. */
+    static final String TWELVE_BIT = "140423231753左昌线N0170.all";
+    /** 16bit 编码, 75000 点, 约 450 KB; 也是 Main 默认分析的文件. */
+    static final String SIXTEEN_BIT = "20160505101341-极1-M818.all";
+
+    private Recordings() {
+    }
+
+    static Path root() {
+        return Paths.get(System.getProperty("fl.data", "data"));
+    }
+
+    /**
+     * 输入:
+     * - kind: "12bit" 或 "16bit".
+     *
+     * 输出:
+     * - 对应录波文件路径; 文件不存在时抛出 IllegalStateException.
+     */
+    static Path resolve(String kind) {
+        String name;
+        switch (kind) {
+            case "12bit":
+                name = TWELVE_BIT;
+                break;
+            case "16bit":
+                name = SIXTEEN_BIT;
+                break;
+            default:
+                throw new IllegalArgumentException("未知录波类型: " + kind);
+        }
+        Path p = root().resolve(name);
+        if (!Files.isRegularFile(p)) {
+            throw new IllegalStateException("找不到基准录波 " + p.toAbsolutePath() + ", 可用 -Dfl.data=<目录> 指定数据目录");
+        }
+        return p;
+    }
+}
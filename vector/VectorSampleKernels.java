@@ -0,0 +1,281 @@
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SampleKernels 的向量化实现, 基于 JDK Vector API (jdk.incubator.vector).
+ *
+ * 类作用:
+ * - 三相拆分: 一次装入 3 个 short 向量 (L 个采样组), 各自按相 rearrange 后用 blend 合并出 A/B/C 三个向量,
+ *   12bit 换算在 short 通道上按位完成.
+ * - 差分搜索: 整型差分先扩展为 int 通道再求绝对值, 避免 16bit 差分溢出; 浮点差分直接在 double 通道上计算.
+ *   "首个越限" 用比较掩码的 firstTrue 定位, "最大值下标" 先求最大值再找第一个等于它的位置.
+ * - 每个方法的尾部不足一个向量的部分交给 ScalarSampleKernels, 结果与标量实现逐位一致.
+ *
+ * 使用方式:
+ * - 只在 Maven vector profile 下编译 (mvn -Pvector package), 运行时加 --add-modules jdk.incubator.vector;
+ *   由 SampleKernels.get() 通过反射加载, 不要直接引用.
+ */
+final class VectorSampleKernels implements SampleKernels {
+
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /** 与 INTS 通道数相同的 short 形状, 用于扩展为 int; 不足 64bit 时取 64bit, 多出的通道不参与换算. */
+    private static final VectorSpecies<Short> SHORTS_FOR_INTS =
+            VectorSpecies.of(short.class, shapeAtLeast(INTS.vectorBitSize() / 2));
+    /** 整型差分每步实际读取的 short 个数, 循环边界按它检查, 保证不越过 to. */
+    private static final int INT_SPAN = Math.max(INTS.length(), SHORTS_FOR_INTS.length());
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    /**
+     * 与 DOUBLES 通道数相同的 short 形状, 用于换算为 double. 128bit 硬件上需要的 32bit 形状不存在,
+     * 取最小的 64bit 形状, convertShape 只换算前 DOUBLES.length() 个通道.
+     */
+    private static final VectorSpecies<Short> SHORTS_FOR_DOUBLES =
+            VectorSpecies.of(short.class, shapeAtLeast(DOUBLES.vectorBitSize() / 4));
+    /** toDouble 每步实际读取的 short 个数. */
+    private static final int DOUBLE_SPAN = Math.max(DOUBLES.length(), SHORTS_FOR_DOUBLES.length());
+
+    private static final ScalarSampleKernels SCALAR = ScalarSampleKernels.INSTANCE;
+
+    /**
+     * 三相拆分用的 shuffle 与掩码: shuffles[phase][v] 把第 v 个输入向量中属于本相的元素移到目标通道,
+     * masks[phase][v] 标出这些目标通道. 下标 phase 为 0/1/2 对应 A/B/C.
+     */
+    private final VectorShuffle<Short>[][] shuffles;
+    private final VectorMask<Short>[][] masks;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    VectorSampleKernels() {
+        int lanes = SHORTS.length();
+        shuffles = new VectorShuffle[3][3];
+        masks = new VectorMask[3][3];
+        for (int phase = 0; phase < 3; phase++) {
+            int[][] index = new int[3][lanes];
+            boolean[][] take = new boolean[3][lanes];
+            for (int j = 0; j < lanes; j++) {
+                // 第 j 个采样组的本相元素位于 3 个向量拼接后的第 3j + phase 个 short
+                int e = 3 * j + phase;
+                index[e / lanes][j] = e % lanes;
+                take[e / lanes][j] = true;
+            }
+            for (int v = 0; v < 3; v++) {
+                shuffles[phase][v] = VectorShuffle.fromArray(SHORTS, index[v], 0);
+                masks[phase][v] = VectorMask.fromArray(SHORTS, take[v], 0);
+            }
+        }
+    }
+
+    /** 不小于 bits 的向量形状; Vector API 没有小于 64bit 的形状. */
+    private static VectorShape shapeAtLeast(int bits) {
+        return VectorShape.forBitSize(Math.max(bits, VectorShape.S_64_BIT.vectorBitSize()));
+    }
+
+    @Override
+    public String name() {
+        return "vector(" + SHORTS.vectorBitSize() + "bit)";
+    }
+
+    // ----------------- 解码 -----------------
+
+    @Override
+    public void decodeTriplets(byte[] src, int srcOff, int count, boolean twelveBit,
+            short[] dstA, short[] dstB, short[] dstC, int dstOff) {
+        int lanes = SHORTS.length();
+        int vecBytes = lanes * 2;
+        int i = 0;
+        for (; i + lanes <= count; i += lanes) {
+            int base = srcOff + i * 6;
+            ShortVector v0 = ShortVector.fromByteArray(SHORTS, src, base, ByteOrder.LITTLE_ENDIAN);
+            ShortVector v1 = ShortVector.fromByteArray(SHORTS, src, base + vecBytes, ByteOrder.LITTLE_ENDIAN);
+            ShortVector v2 = ShortVector.fromByteArray(SHORTS, src, base + 2 * vecBytes, ByteOrder.LITTLE_ENDIAN);
+            split(v0, v1, v2, 0, twelveBit).intoArray(dstA, dstOff + i);
+            split(v0, v1, v2, 1, twelveBit).intoArray(dstB, dstOff + i);
+            split(v0, v1, v2, 2, twelveBit).intoArray(dstC, dstOff + i);
+        }
+        SCALAR.decodeTriplets(src, srcOff + i * 6, count - i, twelveBit, dstA, dstB, dstC, dstOff + i);
+    }
+
+    private ShortVector split(ShortVector v0, ShortVector v1, ShortVector v2, int phase, boolean twelveBit) {
+        VectorShuffle<Short>[] s = shuffles[phase];
+        VectorMask<Short>[] m = masks[phase];
+        ShortVector w = v0.rearrange(s[0])
+                .blend(v1.rearrange(s[1]), m[1])
+                .blend(v2.rearrange(s[2]), m[2]);
+        if (!twelveBit) {
+            return w;
+        }
+        // 小端读入的 short 为 (b1 << 8) | b0, 12bit 值为 ((b1 << 4) | b0) - 0x800
+        ShortVector b0 = w.and((short) 0xFF);
+        ShortVector b1 = w.lanewise(VectorOperators.LSHR, 8);
+        return b1.lanewise(VectorOperators.LSHL, 4).or(b0).sub((short) 0x800);
+    }
+
+    @Override
+    public void toDouble(short[] raw, int from, double[] dst, int dstOff, int len, double scale, double offset) {
+        int lanes = DOUBLES.length();
+        int i = 0;
+        for (; i + DOUBLE_SPAN <= len; i += lanes) {
+            // 先乘后加, 与标量表达式 raw * scale + offset 的两次舍入相同 (不使用 fma)
+            ((DoubleVector) ShortVector.fromArray(SHORTS_FOR_DOUBLES, raw, from + i)
+                    .convertShape(VectorOperators.S2D, DOUBLES, 0))
+                    .mul(scale).add(offset)
+                    .intoArray(dst, dstOff + i);
+        }
+        SCALAR.toDouble(raw, from + i, dst, dstOff + i, len - i, scale, offset);
+    }
+
+    // ----------------- 整型差分 -----------------
+
+    /** raw[i .. i + L) - raw[i - 1 .. i - 1 + L) 的绝对值, 以 int 通道表示. */
+    private static IntVector absDiff(short[] raw, int i) {
+        IntVector cur = (IntVector) ShortVector.fromArray(SHORTS_FOR_INTS, raw, i)
+                .convertShape(VectorOperators.S2I, INTS, 0);
+        IntVector prev = (IntVector) ShortVector.fromArray(SHORTS_FOR_INTS, raw, i - 1)
+                .convertShape(VectorOperators.S2I, INTS, 0);
+        return cur.sub(prev).abs();
+    }
+
+    @Override
+    public long diffSumSquares(short[] raw, int from, int to) {
+        // 单个差分的平方可达 2^32, 累加需要 long 通道; 这里只用于噪声窗口 (至多 1000 点), 保持标量
+        return SCALAR.diffSumSquares(raw, from, to);
+    }
+
+    @Override
+    public int firstAbsDiffAbove(short[] raw, int from, int to, double absScale, double threshold) {
+        int limit = minAbsDiffAbove(absScale, threshold);
+        if (limit < 0) {
+            return SCALAR.firstAbsDiffAbove(raw, from, to, absScale, threshold);
+        }
+        if (limit > 65535) {
+            return -1;
+        }
+        int lanes = INTS.length();
+        int i = from;
+        for (; i + INT_SPAN <= to; i += lanes) {
+            VectorMask<Integer> hit = absDiff(raw, i).compare(VectorOperators.GE, limit);
+            if (hit.anyTrue()) {
+                return i + hit.firstTrue();
+            }
+        }
+        return SCALAR.firstAbsDiffAbove(raw, i, to, absScale, threshold);
+    }
+
+    /**
+     * 满足 a * absScale > threshold 的最小非负整数 a; 该条件对 a 单调, 因此 "|d| >= 返回值" 与原条件等价.
+     * absScale 为 0 或非有限值时返回 -1, 由调用方退回标量实现.
+     */
+    private static int minAbsDiffAbove(double absScale, double threshold) {
+        if (!(absScale > 0.0) || Double.isInfinite(absScale) || Double.isNaN(threshold)) {
+            return -1;
+        }
+        double guess = Math.floor(threshold / absScale);
+        int a = (int) Math.max(0.0, Math.min(65536.0, guess));
+        while (a > 0 && (a - 1) * absScale > threshold) {
+            a--;
+        }
+        while (a <= 65535 && !(a * absScale > threshold)) {
+            a++;
+        }
+        return a;
+    }
+
+    @Override
+    public int argMaxAbsDiff(short[] raw, int from, int to) {
+        int lanes = INTS.length();
+        if (to - from < INT_SPAN) {
+            return SCALAR.argMaxAbsDiff(raw, from, to);
+        }
+        // 第一遍求最大值, 第二遍找第一个等于最大值的位置
+        IntVector acc = IntVector.zero(INTS);
+        int i = from;
+        for (; i + INT_SPAN <= to; i += lanes) {
+            acc = acc.max(absDiff(raw, i));
+        }
+        int max = acc.reduceLanes(VectorOperators.MAX);
+        for (int k = i; k < to; k++) {
+            max = Math.max(max, Math.abs(raw[k] - raw[k - 1]));
+        }
+        i = from;
+        for (; i + INT_SPAN <= to; i += lanes) {
+            VectorMask<Integer> hit = absDiff(raw, i).compare(VectorOperators.EQ, max);
+            if (hit.anyTrue()) {
+                return i + hit.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (Math.abs(raw[i] - raw[i - 1]) == max) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ----------------- 浮点差分 -----------------
+
+    private static DoubleVector absDiff(double[] x, int i) {
+        return DoubleVector.fromArray(DOUBLES, x, i).sub(DoubleVector.fromArray(DOUBLES, x, i - 1)).abs();
+    }
+
+    @Override
+    public int firstAbsDiffAbove(double[] x, int from, int to, double threshold) {
+        int lanes = DOUBLES.length();
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+            VectorMask<Double> hit = absDiff(x, i).compare(VectorOperators.GT, threshold);
+            if (hit.anyTrue()) {
+                return i + hit.firstTrue();
+            }
+        }
+        return SCALAR.firstAbsDiffAbove(x, i, to, threshold);
+    }
+
+    @Override
+    public int argMaxAbsDiff(double[] x, int from, int to) {
+        int lanes = DOUBLES.length();
+        if (to - from < lanes) {
+            return SCALAR.argMaxAbsDiff(x, from, to);
+        }
+        DoubleVector acc = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+            acc = acc.max(absDiff(x, i));
+        }
+        double max = acc.reduceLanes(VectorOperators.MAX);
+        for (int k = i; k < to; k++) {
+            max = Math.max(max, Math.abs(x[k] - x[k - 1]));
+        }
+        i = from;
+        for (; i + lanes <= to; i += lanes) {
+            VectorMask<Double> hit = absDiff(x, i).compare(VectorOperators.EQ, max);
+            if (hit.anyTrue()) {
+                return i + hit.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (Math.abs(x[i] - x[i - 1]) == max) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double maxAbsDeviation(double[] x, int from, int to, double mean) {
+        int lanes = DOUBLES.length();
+        DoubleVector acc = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+            acc = acc.max(DoubleVector.fromArray(DOUBLES, x, i).sub(mean).abs());
+        }
+        double max = acc.reduceLanes(VectorOperators.MAX);
+        return Math.max(max, SCALAR.maxAbsDeviation(x, i, to, mean));
+    }
+}